@@ -4,6 +4,7 @@ import static org.apache.commons.cli.Option.builder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,10 +20,11 @@ import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.kenetre.bio.FastqFormat;
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
-import fr.ens.biologie.genomique.kenetre.bio.io.FastqReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.FastqByteReader;
 import fr.ens.biologie.genomique.kenetre.bio.io.FastqWriter;
 import fr.ens.biologie.genomique.kenetre.bio.readfilter.MultiReadFilterBuilder;
 import fr.ens.biologie.genomique.kenetre.bio.readfilter.ReadFilter;
+import fr.ens.biologie.genomique.kenetre.bio.readfilter.ReadFilterPipeline;
 import fr.ens.biologie.genomique.kenetre.io.CompressionType;
 import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
 import fr.ens.biologie.genomique.kenetre.util.Reporter;
@@ -44,6 +46,7 @@ public class FilterReadsAction implements Action {
   private File outputFile2;
   private FastqFormat format = FastqFormat.FASTQ_SANGER;
   private boolean printStats = true;
+  private int threads = 1;
 
   @Override
   public String getName() {
@@ -69,13 +72,31 @@ public class FilterReadsAction implements Action {
     try {
 
       // Parse command line and create filter
+      final Map<String, String> parameters = parseOptions(arguments);
       MultiReadFilterBuilder filterBuilder = new MultiReadFilterBuilder();
-      filterBuilder.addParameters(parseOptions(arguments));
+      filterBuilder.addParameters(parameters);
       ReadFilter filter = filterBuilder.getReadFilter();
 
       Reporter reporter = new LocalReporter();
 
-      if (this.inputFile != null) {
+      if (this.threads > 1) {
+
+        // Each worker thread requires its own filter instances
+        final List<ReadFilter> filters = new ArrayList<>();
+        filters.add(filter);
+        for (int i = 1; i < this.threads; i++) {
+          filters.add(new MultiReadFilterBuilder(parameters).getReadFilter());
+        }
+
+        if (this.inputFile != null) {
+          filterFile(this.inputFile, this.outputFile, reporter, filters,
+              this.format);
+        } else {
+          filterFile(this.inputFile1, this.inputFile2, this.outputFile1,
+              this.outputFile2, reporter, filters, this.format);
+        }
+
+      } else if (this.inputFile != null) {
         filterFile(this.inputFile, this.outputFile, reporter, filter,
             this.format);
       } else {
@@ -131,6 +152,10 @@ public class FilterReadsAction implements Action {
             "FASTQ format (sanger,  solexa, fastq-illumina-1.3, fastq-illumina-1.5), default: sanger")
         .build());
 
+    options.addOption(builder("p").longOpt("threads").hasArg()
+        .argName("count").desc("number of filtering threads, default: 1")
+        .build());
+
     options.addOption("s", "stdin", false, "stdin input");
     options.addOption("t", "stdout", false, "stdout output");
     options.addOption("n", "no-stats", false, "stdout output");
@@ -180,7 +205,7 @@ public class FilterReadsAction implements Action {
       }
 
       if (line.hasOption("i2")) {
-        this.inputFile1 = new File(line.getOptionValue("input2"));
+        this.inputFile2 = new File(line.getOptionValue("input2"));
       }
 
       if (line.hasOption("o")) {
@@ -188,11 +213,11 @@ public class FilterReadsAction implements Action {
       }
 
       if (line.hasOption("o1")) {
-        this.inputFile1 = new File(line.getOptionValue("output1"));
+        this.outputFile1 = new File(line.getOptionValue("output1"));
       }
 
       if (line.hasOption("o2")) {
-        this.inputFile1 = new File(line.getOptionValue("output2"));
+        this.outputFile2 = new File(line.getOptionValue("output2"));
       }
 
       if (line.hasOption("f")) {
@@ -205,6 +230,19 @@ public class FilterReadsAction implements Action {
         }
       }
 
+      if (line.hasOption("p")) {
+        try {
+          this.threads = Integer.parseInt(line.getOptionValue("threads"));
+        } catch (NumberFormatException e) {
+          error("Error: Invalid thread count: "
+              + line.getOptionValue("threads"));
+        }
+
+        if (this.threads < 1) {
+          error("Error: Invalid thread count: " + this.threads);
+        }
+      }
+
       for (String arg : line.getArgList()) {
 
         int pos = arg.indexOf('=');
@@ -290,7 +328,8 @@ public class FilterReadsAction implements Action {
       final Reporter reporter, final ReadFilter filter,
       final FastqFormat fastqFormat) throws IOException {
 
-    try (FastqReader reader = new FastqReader(CompressionType.open(inFile));
+    try (FastqByteReader reader =
+        new FastqByteReader(CompressionType.open(inFile), true);
         FastqWriter writer = new FastqWriter(CompressionType.create(outFile))) {
       for (final ReadSequence read : reader) {
 
@@ -334,10 +373,12 @@ public class FilterReadsAction implements Action {
       final ReadFilter filter, final FastqFormat fastqFormat)
       throws IOException {
 
-    try (FastqReader reader2 = new FastqReader(CompressionType.open(inFile2));
+    try (FastqByteReader reader2 =
+        new FastqByteReader(CompressionType.open(inFile2), true);
         FastqWriter writer1 = new FastqWriter(CompressionType.create(outFile1));
         FastqWriter writer2 = new FastqWriter(CompressionType.create(outFile2));
-        FastqReader reader1 = new FastqReader(CompressionType.open(inFile1))) {
+        FastqByteReader reader1 =
+            new FastqByteReader(CompressionType.open(inFile1), true)) {
       for (final ReadSequence read1 : reader1) {
 
         // Test if the second read exists
@@ -385,4 +426,80 @@ public class FilterReadsAction implements Action {
 
   }
 
+  /**
+   * Filter a file in single end mode using several threads.
+   * @param inFile input file
+   * @param outFile output file
+   * @param reporter reporter to use
+   * @param filters reads filters to use, one for each thread
+   * @param fastqFormat FastqFormat
+   * @throws IOException if an error occurs while filtering data
+   */
+  private static void filterFile(final File inFile, final File outFile,
+      final Reporter reporter, final List<ReadFilter> filters,
+      final FastqFormat fastqFormat) throws IOException {
+
+    final ReadFilterPipeline pipeline =
+        new ReadFilterPipeline(filters, fastqFormat, reporter, COUNTER_GROUP);
+
+    // Compress and uncompress gzip files using several threads
+    final int threads = filters.size();
+
+    try (
+        FastqByteReader reader =
+            new FastqByteReader(CompressionType.open(inFile, threads));
+        FastqWriter writer =
+            new FastqWriter(CompressionType.create(outFile, threads))) {
+
+      pipeline.filter(reader, writer);
+
+    } catch (BadBioEntryException e) {
+
+      throw new IOException("Invalid Fastq format: "
+          + e.getMessage() + " File: " + inFile + " Entry: " + e.getEntry());
+    }
+  }
+
+  /**
+   * Filter a file in pair-end mode using several threads.
+   * @param inFile1 first input file
+   * @param inFile2 second input file
+   * @param outFile1 first output file
+   * @param outFile2 second output file
+   * @param reporter reporter to use
+   * @param filters reads filters to use, one for each thread
+   * @param fastqFormat FastqFormat
+   * @throws IOException if an error occurs while filtering data
+   */
+  private static void filterFile(final File inFile1, final File inFile2,
+      final File outFile1, final File outFile2, final Reporter reporter,
+      final List<ReadFilter> filters, final FastqFormat fastqFormat)
+      throws IOException {
+
+    final ReadFilterPipeline pipeline =
+        new ReadFilterPipeline(filters, fastqFormat, reporter, COUNTER_GROUP);
+
+    // Compress and uncompress gzip files using several threads
+    final int threads = filters.size();
+
+    try (
+        FastqByteReader reader1 =
+            new FastqByteReader(CompressionType.open(inFile1, threads));
+        FastqByteReader reader2 =
+            new FastqByteReader(CompressionType.open(inFile2, threads));
+        FastqWriter writer1 =
+            new FastqWriter(CompressionType.create(outFile1, threads));
+        FastqWriter writer2 =
+            new FastqWriter(CompressionType.create(outFile2, threads))) {
+
+      pipeline.filter(reader1, reader2, writer1, writer2);
+
+    } catch (BadBioEntryException e) {
+
+      throw new IOException("Invalid Fastq format: "
+          + e.getMessage() + " File 1: " + inFile1 + " File2:" + inFile2
+          + " Entry: " + e.getEntry());
+    }
+  }
+
 }
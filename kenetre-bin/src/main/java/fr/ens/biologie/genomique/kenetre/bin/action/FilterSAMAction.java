@@ -2,12 +2,15 @@ package fr.ens.biologie.genomique.kenetre.bin.action;
 
 import static org.apache.commons.cli.Option.builder;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -19,10 +22,14 @@ import org.apache.commons.cli.ParseException;
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.bio.SAMComparator;
 import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.MultiReadAlignmentFilterBuilder;
+import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.ParallelReadAlignmentFilterBuffer;
 import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.ReadAlignmentFilter;
 import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.ReadAlignmentFilterBuffer;
+import fr.ens.biologie.genomique.kenetre.bio.io.ParallelBAMWriter;
+import fr.ens.biologie.genomique.kenetre.bio.io.StreamingSAMReader;
 import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
 import fr.ens.biologie.genomique.kenetre.util.Reporter;
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMFileWriterFactory;
 import htsjdk.samtools.SAMFormatException;
@@ -45,6 +52,7 @@ public class FilterSAMAction implements Action {
   private File outputFile;
   private File tmpDir = new File(System.getProperty("java.io.tmpdir"));
   private boolean printStats = true;
+  private int threads = 1;
 
   @Override
   public String getName() {
@@ -70,15 +78,30 @@ public class FilterSAMAction implements Action {
     try {
 
       // Parse command line and create filter
+      final Map<String, String> parameters = parseOptions(arguments);
       MultiReadAlignmentFilterBuilder filterBuilder =
           new MultiReadAlignmentFilterBuilder();
-      filterBuilder.addParameters(parseOptions(arguments));
+      filterBuilder.addParameters(parameters);
       ReadAlignmentFilter filter = filterBuilder.getAlignmentFilter();
 
       Reporter reporter = new LocalReporter();
 
-      filterFile(this.inputFile, this.outputFile, reporter, filter,
-          this.tmpDir);
+      if (this.threads > 1) {
+
+        // Each worker thread requires its own filter instances
+        final List<ReadAlignmentFilter> filters = new ArrayList<>();
+        filters.add(filter);
+        for (int i = 1; i < this.threads; i++) {
+          filters.add(new MultiReadAlignmentFilterBuilder(parameters)
+              .getAlignmentFilter());
+        }
+
+        filterFile(this.inputFile, this.outputFile, reporter, filters,
+            this.tmpDir);
+      } else {
+        filterFile(this.inputFile, this.outputFile, reporter, filter,
+            this.tmpDir);
+      }
 
       if (this.printStats) {
         System.err.println(reporter);
@@ -113,6 +136,10 @@ public class FilterSAMAction implements Action {
     options.addOption(builder("T").longOpt("tmpdir").hasArg().argName("dire")
         .desc("temporary directory").build());
 
+    options.addOption(builder("p").longOpt("threads").hasArg()
+        .argName("count").desc("number of filtering threads, default: 1")
+        .build());
+
     options.addOption("s", "stdin", false, "stdin input");
     options.addOption("t", "stdout", false, "stdout output");
     options.addOption("n", "no-stats", false, "stdout output");
@@ -165,6 +192,19 @@ public class FilterSAMAction implements Action {
         this.tmpDir = new File(line.getOptionValue("tmpdir"));
       }
 
+      if (line.hasOption("p")) {
+        try {
+          this.threads = Integer.parseInt(line.getOptionValue("threads"));
+        } catch (NumberFormatException e) {
+          error("Error: Invalid thread count: "
+              + line.getOptionValue("threads"));
+        }
+
+        if (this.threads < 1) {
+          error("Error: Invalid thread count: " + this.threads);
+        }
+      }
+
       for (String arg : line.getArgList()) {
 
         int pos = arg.indexOf('=');
@@ -303,10 +343,105 @@ public class FilterSAMAction implements Action {
       counterOutput++;
     }
 
+    incrCounters(reporter, pairedEnd, counterInput, counterOutput,
+        counterInvalid);
+
+    // Close files
+    inputSam.close();
+    outputSam.close();
+  }
+
+  /**
+   * Filter a file in single-end mode or paired-end mode using several threads.
+   * The alignments are decoded in a dedicated thread. If the output file is a
+   * BAM file, the output file is compressed using several threads.
+   * @param inFile input file
+   * @param outFile output file
+   * @param reporter reporter to use
+   * @param filters alignments filters to use, one for each thread
+   * @param tmpDir temporary directory
+   * @throws IOException if an error occurs while filtering data
+   */
+  private static void filterFile(final File inFile, final File outFile,
+      final Reporter reporter, final List<ReadAlignmentFilter> filters,
+      final File tmpDir) throws IOException {
+
+    long counterInput = 0;
+    boolean pairedEnd = false;
+
+    // Get reader, the invalid alignments are skipped
+    try (StreamingSAMReader reader = new StreamingSAMReader(inFile, true)) {
+
+      final SAMFileHeader header = reader.getFileHeader();
+      final Consumer<SAMRecord> output;
+      final Closeable writer;
+
+      // Get Writer
+      if (outFile.getName().toLowerCase().endsWith(".bam")) {
+
+        final ParallelBAMWriter bamWriter =
+            new ParallelBAMWriter(outFile, header, filters.size());
+        output = r -> {
+          try {
+            bamWriter.write(r);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        };
+        writer = bamWriter;
+
+      } else {
+
+        final SAMFileWriter samWriter = new SAMFileWriterFactory()
+            .setTempDirectory(tmpDir).makeSAMWriter(header, false, outFile);
+        output = samWriter::addAlignment;
+        writer = samWriter::close;
+      }
+
+      try (Closeable w = writer;
+          ParallelReadAlignmentFilterBuffer buffer =
+              new ParallelReadAlignmentFilterBuffer(filters,
+                  new SAMComparator(), output)) {
+
+        for (SAMRecord samRecord : reader) {
+
+          // single-end or paired-end mode ?
+          if (counterInput == 0 && samRecord.getReadPairedFlag()) {
+            pairedEnd = true;
+          }
+
+          counterInput++;
+          buffer.addAlignment(samRecord);
+        }
+
+        // Filter the last alignments
+        buffer.close();
+
+        incrCounters(reporter, pairedEnd, counterInput,
+            buffer.getOutputCount(), reader.getInvalidRecordCount());
+
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  /**
+   * Update the counters of the filtering.
+   * @param reporter reporter to use
+   * @param pairedEnd true if data is paired-end
+   * @param counterInput number of input alignments
+   * @param counterOutput number of output alignments
+   * @param counterInvalid number of invalid alignments
+   */
+  private static void incrCounters(final Reporter reporter,
+      final boolean pairedEnd, final long counterInput,
+      final long counterOutput, final long counterInvalid) {
+
     // paired-end mode
     if (pairedEnd) {
-      int nbInput = counterInput / 2;
-      int nbOutput = counterOutput / 2;
+      long nbInput = counterInput / 2;
+      long nbOutput = counterOutput / 2;
       reporter.incrCounter(COUNTER_GROUP, "input alignments", nbInput);
       reporter.incrCounter(COUNTER_GROUP, "output filtered alignments",
           nbOutput);
@@ -326,10 +461,6 @@ public class FilterSAMAction implements Action {
       reporter.incrCounter(COUNTER_GROUP, "alignments rejected by filters",
           counterInput - counterOutput);
     }
-
-    // Close files
-    inputSam.close();
-    outputSam.close();
   }
 
 }
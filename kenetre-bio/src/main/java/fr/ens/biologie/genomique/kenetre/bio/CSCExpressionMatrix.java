@@ -0,0 +1,774 @@
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import com.google.common.math.DoubleMath;
+
+/**
+ * This class define an immutable sparse expression matrix stored in the
+ * compressed sparse column (CSC) format. The non zero values of each column
+ * are stored contiguously in primitive arrays, sorted by row index. Values
+ * are stored as int when all the values of the matrix are integers. This
+ * matrix can only be created using a Builder, and all the methods that modify
+ * the matrix throw an UnsupportedOperationException.
+ * @author Laurent Jourdren
+ * @since 0.36
+ */
+public class CSCExpressionMatrix extends AbstractMatrix<Double>
+    implements ExpressionMatrix {
+
+  private static final double DEFAULT_VALUE = 0.0;
+
+  private final List<String> rowNames;
+  private final List<String> columnNames;
+  private final Map<String, Integer> rowIndexes;
+  private final Map<String, Integer> columnIndexes;
+
+  // Index of the first non zero value of each column, with a last value
+  // equals to the number of non zero values
+  private final int[] columnPointers;
+  private final int[] rowIndices;
+  private final int[] intValues;
+  private final double[] doubleValues;
+
+  /**
+   * This class define a view on the non zero values of a column.
+   */
+  public final class Column {
+
+    private final int columnIndex;
+    private final int start;
+    private final int end;
+
+    /**
+     * Get the index of the column.
+     * @return the index of the column
+     */
+    public int getColumnIndex() {
+      return this.columnIndex;
+    }
+
+    /**
+     * Get the number of non zero values in the column.
+     * @return the number of non zero values in the column
+     */
+    public int size() {
+      return this.end - this.start;
+    }
+
+    /**
+     * Get the row index of a non zero value of the column.
+     * @param i the index of the non zero value in the column
+     * @return the row index of the value
+     */
+    public int getRowIndex(final int i) {
+      return rowIndices[checkIndex(i)];
+    }
+
+    /**
+     * Get a non zero value of the column.
+     * @param i the index of the non zero value in the column
+     * @return the value
+     */
+    public double getValue(final int i) {
+      return value(checkIndex(i));
+    }
+
+    private int checkIndex(final int i) {
+
+      if (i < 0 || i >= size()) {
+        throw new IndexOutOfBoundsException("Invalid index: " + i);
+      }
+
+      return this.start + i;
+    }
+
+    private Column(final int columnIndex) {
+
+      this.columnIndex = columnIndex;
+      this.start = columnPointers[columnIndex];
+      this.end = columnPointers[columnIndex + 1];
+    }
+  }
+
+  /**
+   * This class define a cursor on the non zero values of the matrix. The
+   * values are iterated column by column, and by row index in a column.
+   */
+  public final class NonZeroCursor {
+
+    private int column;
+    private int pos = -1;
+
+    /**
+     * Move the cursor to the next non zero value.
+     * @return false if there is no more non zero values
+     */
+    public boolean next() {
+
+      if (this.pos + 1 >= rowIndices.length) {
+        this.pos = rowIndices.length;
+        return false;
+      }
+
+      this.pos++;
+      while (columnPointers[this.column + 1] <= this.pos) {
+        this.column++;
+      }
+
+      return true;
+    }
+
+    /**
+     * Get the row index of the current value.
+     * @return the row index of the current value
+     */
+    public int getRowIndex() {
+      return rowIndices[checkPosition()];
+    }
+
+    /**
+     * Get the column index of the current value.
+     * @return the column index of the current value
+     */
+    public int getColumnIndex() {
+      checkPosition();
+      return this.column;
+    }
+
+    /**
+     * Get the row name of the current value.
+     * @return the row name of the current value
+     */
+    public String getRowName() {
+      return rowNames.get(getRowIndex());
+    }
+
+    /**
+     * Get the column name of the current value.
+     * @return the column name of the current value
+     */
+    public String getColumnName() {
+      return columnNames.get(getColumnIndex());
+    }
+
+    /**
+     * Get the current value.
+     * @return the current value
+     */
+    public double getValue() {
+      return value(checkPosition());
+    }
+
+    private int checkPosition() {
+
+      if (this.pos < 0 || this.pos >= rowIndices.length) {
+        throw new NoSuchElementException();
+      }
+
+      return this.pos;
+    }
+
+    private NonZeroCursor() {
+    }
+  }
+
+  /**
+   * This class define a builder for CSCExpressionMatrix. Non zero values can
+   * be added in any order. The values are sorted by column and row at the
+   * creation of the matrix. If a cell is set several times, the last value is
+   * kept.
+   */
+  public static final class Builder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<String> rowNames;
+    private final List<String> columnNames;
+
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int size;
+    private boolean built;
+
+    /**
+     * Add a value to the matrix. When several values are added at the same
+     * position, the last one is kept, so a zero value removes a previous
+     * non zero value.
+     * @param rowIndex index of the row
+     * @param columnIndex index of the column
+     * @param value the value
+     * @return the builder
+     */
+    public Builder add(final int rowIndex, final int columnIndex,
+        final double value) {
+
+      if (this.built) {
+        throw new IllegalStateException("The matrix has been already built");
+      }
+
+      if (rowIndex < 0 || rowIndex >= this.rowNames.size()) {
+        throw new IndexOutOfBoundsException("Invalid row index: " + rowIndex);
+      }
+
+      if (columnIndex < 0 || columnIndex >= this.columnNames.size()) {
+        throw new IndexOutOfBoundsException(
+            "Invalid column index: " + columnIndex);
+      }
+
+      if (this.size == this.rows.length) {
+
+        if (this.size == Integer.MAX_VALUE - 8) {
+          throw new IllegalStateException("Too many non zero values");
+        }
+
+        final int newCapacity =
+            (int) Math.min(Integer.MAX_VALUE - 8, 2L * this.size);
+        this.rows = Arrays.copyOf(this.rows, newCapacity);
+        this.columns = Arrays.copyOf(this.columns, newCapacity);
+        this.values = Arrays.copyOf(this.values, newCapacity);
+      }
+
+      this.rows[this.size] = rowIndex;
+      this.columns[this.size] = columnIndex;
+      this.values[this.size] = value;
+      this.size++;
+
+      return this;
+    }
+
+    /**
+     * Create the matrix.
+     * @return a new CSCExpressionMatrix
+     */
+    public CSCExpressionMatrix build() {
+
+      if (this.built) {
+        throw new IllegalStateException("The matrix has been already built");
+      }
+      this.built = true;
+
+      final int columnCount = this.columnNames.size();
+
+      // Count the values of each column
+      final int[] columnPointers = new int[columnCount + 1];
+      for (int i = 0; i < this.size; i++) {
+        columnPointers[this.columns[i] + 1]++;
+      }
+      for (int i = 0; i < columnCount; i++) {
+        columnPointers[i + 1] += columnPointers[i];
+      }
+
+      // Sort the values by column, keeping the insertion order in a column
+      final int[] order = new int[this.size];
+      final int[] next = Arrays.copyOf(columnPointers, columnCount);
+      for (int i = 0; i < this.size; i++) {
+        order[next[this.columns[i]]++] = i;
+      }
+      this.columns = null;
+
+      // Sort the values of each column by row, remove duplicates and zeros
+      final int[] rowIndices = new int[this.size];
+      final double[] values = new double[this.size];
+      boolean intValues = true;
+      int count = 0;
+
+      for (int c = 0; c < columnCount; c++) {
+
+        final int start = columnPointers[c];
+        final int end = columnPointers[c + 1];
+        columnPointers[c] = count;
+
+        sortByRow(order, start, end);
+
+        for (int i = start; i < end; i++) {
+
+          final int row = this.rows[order[i]];
+
+          // The last value set is kept
+          while (i + 1 < end && this.rows[order[i + 1]] == row) {
+            i++;
+          }
+
+          final double value = this.values[order[i]];
+
+          if (value != DEFAULT_VALUE) {
+            rowIndices[count] = row;
+            values[count++] = value;
+          }
+        }
+      }
+      columnPointers[columnCount] = count;
+
+      this.rows = null;
+      this.values = null;
+
+      // Use int values if possible
+      for (int i = 0; i < count && intValues; i++) {
+        intValues = DoubleMath.isMathematicalInteger(values[i])
+            && values[i] >= Integer.MIN_VALUE
+            && values[i] <= Integer.MAX_VALUE;
+      }
+
+      int[] resultIntValues = null;
+      double[] resultDoubleValues = null;
+
+      if (intValues) {
+        resultIntValues = new int[count];
+        for (int i = 0; i < count; i++) {
+          resultIntValues[i] = (int) values[i];
+        }
+      } else {
+        resultDoubleValues =
+            count == values.length ? values : Arrays.copyOf(values, count);
+      }
+
+      return new CSCExpressionMatrix(this.rowNames, this.columnNames,
+          columnPointers,
+          count == rowIndices.length
+              ? rowIndices : Arrays.copyOf(rowIndices, count),
+          resultIntValues, resultDoubleValues);
+    }
+
+    /**
+     * Sort a range of value indexes by row. The sort is stable, so the last
+     * value set for a cell is the last value of the cell after sorting.
+     * @param order the value indexes
+     * @param start start of the range
+     * @param end end of the range
+     */
+    private void sortByRow(final int[] order, final int start, final int end) {
+
+      // Values are often already sorted
+      boolean sorted = true;
+      for (int i = start + 1; i < end && sorted; i++) {
+        sorted = this.rows[order[i - 1]] <= this.rows[order[i]];
+      }
+
+      if (sorted) {
+        return;
+      }
+
+      final long[] keys = new long[end - start];
+      for (int i = start; i < end; i++) {
+        keys[i - start] = ((long) this.rows[order[i]] << 32) | order[i];
+      }
+      Arrays.sort(keys);
+
+      for (int i = start; i < end; i++) {
+        order[i] = (int) keys[i - start];
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Public constructor.
+     * @param rowNames the names of the rows of the matrix
+     * @param columnNames the names of the columns of the matrix
+     */
+    public Builder(final List<String> rowNames,
+        final List<String> columnNames) {
+
+      Objects.requireNonNull(rowNames, "rowNames argument cannot be null");
+      Objects.requireNonNull(columnNames,
+          "columnNames argument cannot be null");
+
+      this.rowNames = Collections.unmodifiableList(new ArrayList<>(rowNames));
+      this.columnNames =
+          Collections.unmodifiableList(new ArrayList<>(columnNames));
+    }
+  }
+
+  //
+  // Primitive access methods
+  //
+
+  /**
+   * Get the number of non zero values of the matrix.
+   * @return the number of non zero values of the matrix
+   */
+  public int getNonZeroCount() {
+
+    return this.rowIndices.length;
+  }
+
+  /**
+   * Test if all the values of the matrix are integers.
+   * @return true if all the values of the matrix are integers
+   */
+  public boolean isIntegerMatrix() {
+
+    return this.intValues != null;
+  }
+
+  /**
+   * Get the index of a row.
+   * @param rowName the name of the row
+   * @return the index of the row or -1 if the row does not exist
+   */
+  public int getRowIndex(final String rowName) {
+
+    Objects.requireNonNull(rowName, "rowName argument cannot be null");
+
+    final Integer result = this.rowIndexes.get(rowName);
+
+    return result == null ? -1 : result;
+  }
+
+  /**
+   * Get the index of a column.
+   * @param columnName the name of the column
+   * @return the index of the column or -1 if the column does not exist
+   */
+  public int getColumnIndex(final String columnName) {
+
+    Objects.requireNonNull(columnName, "columnName argument cannot be null");
+
+    final Integer result = this.columnIndexes.get(columnName);
+
+    return result == null ? -1 : result;
+  }
+
+  /**
+   * Get the non zero values of a column.
+   * @param columnIndex the index of the column
+   * @return a view on the non zero values of the column
+   */
+  public Column getColumn(final int columnIndex) {
+
+    if (columnIndex < 0 || columnIndex >= this.columnNames.size()) {
+      throw new IndexOutOfBoundsException(
+          "Invalid column index: " + columnIndex);
+    }
+
+    return new Column(columnIndex);
+  }
+
+  /**
+   * Get a value of the matrix.
+   * @param rowIndex the index of the row
+   * @param columnIndex the index of the column
+   * @return the value of the cell
+   */
+  public double getValue(final int rowIndex, final int columnIndex) {
+
+    if (rowIndex < 0 || rowIndex >= this.rowNames.size()) {
+      throw new IndexOutOfBoundsException("Invalid row index: " + rowIndex);
+    }
+
+    final Column column = getColumn(columnIndex);
+    final int pos = Arrays.binarySearch(this.rowIndices, column.start,
+        column.end, rowIndex);
+
+    return pos < 0 ? DEFAULT_VALUE : value(pos);
+  }
+
+  /**
+   * Create a cursor on the non zero values of the matrix. Unlike
+   * nonZeroValues(), the cursor does not create any object while iterating.
+   * @return a new cursor
+   */
+  public NonZeroCursor nonZeroCursor() {
+
+    return new NonZeroCursor();
+  }
+
+  //
+  // Matrix methods
+  //
+
+  @Override
+  public List<String> getRowNames() {
+
+    return this.rowNames;
+  }
+
+  @Override
+  public int getRowCount() {
+
+    return this.rowNames.size();
+  }
+
+  @Override
+  public List<String> getColumnNames() {
+
+    return this.columnNames;
+  }
+
+  @Override
+  public int getColumnCount() {
+
+    return this.columnNames.size();
+  }
+
+  @Override
+  public Iterable<Entry<Double>> nonZeroValues() {
+
+    return new Iterable<Entry<Double>>() {
+
+      @Override
+      public Iterator<Entry<Double>> iterator() {
+
+        final NonZeroCursor cursor = nonZeroCursor();
+
+        return new Iterator<Entry<Double>>() {
+
+          int remaining = getNonZeroCount();
+
+          @Override
+          public boolean hasNext() {
+
+            return this.remaining > 0;
+          }
+
+          @Override
+          public Entry<Double> next() {
+
+            if (!cursor.next()) {
+              throw new NoSuchElementException();
+            }
+            this.remaining--;
+
+            return new BasicEntry<>(cursor.getRowName(),
+                cursor.getColumnName(), cursor.getValue());
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public List<Double> getColumnValues(final String columnName) {
+
+    final Column column = getColumn(checkColumn(columnName));
+    final double[] result = new double[this.rowNames.size()];
+
+    for (int i = 0; i < column.size(); i++) {
+      result[column.getRowIndex(i)] = column.getValue(i);
+    }
+
+    return asList(result);
+  }
+
+  @Override
+  public List<Double> getRowValues(final String rowName) {
+
+    final int rowIndex = checkRow(rowName);
+    final double[] result = new double[this.columnNames.size()];
+
+    for (int i = 0; i < result.length; i++) {
+      result[i] = getValue(rowIndex, i);
+    }
+
+    return asList(result);
+  }
+
+  @Override
+  public Double getValue(final String rowName, final String columnName) {
+
+    return getValue(checkRow(rowName), checkColumn(columnName));
+  }
+
+  @Override
+  public boolean containsColumn(final String columnName) {
+
+    Objects.requireNonNull(columnName, "columnName argument cannot be null");
+
+    return this.columnIndexes.containsKey(columnName);
+  }
+
+  @Override
+  public boolean containsRow(final String rowName) {
+
+    Objects.requireNonNull(rowName, "rowName argument cannot be null");
+
+    return this.rowIndexes.containsKey(rowName);
+  }
+
+  @Override
+  public void setValue(final String rowName, final String columnName,
+      final double value) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void setValue(final String rowName, final String columnName,
+      final Double value) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void addRow(final String rowName) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void addColumn(final String columnName) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void add(final Matrix<Double> matrix) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void renameColumn(final String oldColumnName,
+      final String newColumnName) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void removeColumn(final String columnName) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void removeColumns(final Collection<String> columnNames) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void removeRow(final String rowName) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void removeRows(final Collection<String> rowNames) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void retainRows(final Collection<String> rowNames) {
+
+    throw immutable();
+  }
+
+  @Override
+  public void retainColumns(final Collection<String> columnNames) {
+
+    throw immutable();
+  }
+
+  @Override
+  public Double getDefaultValue() {
+
+    return DEFAULT_VALUE;
+  }
+
+  //
+  // Internal methods
+  //
+
+  private double value(final int pos) {
+
+    return this.intValues != null
+        ? this.intValues[pos] : this.doubleValues[pos];
+  }
+
+  private int checkRow(final String rowName) {
+
+    final int result = getRowIndex(rowName);
+
+    if (result == -1) {
+      throw new IllegalArgumentException("Unknown row name: " + rowName);
+    }
+
+    return result;
+  }
+
+  private int checkColumn(final String columnName) {
+
+    final int result = getColumnIndex(columnName);
+
+    if (result == -1) {
+      throw new IllegalArgumentException("Unknown column name: " + columnName);
+    }
+
+    return result;
+  }
+
+  private static UnsupportedOperationException immutable() {
+
+    return new UnsupportedOperationException("The matrix is immutable");
+  }
+
+  private static List<Double> asList(final double[] values) {
+
+    return new AbstractList<Double>() {
+
+      @Override
+      public Double get(final int index) {
+        return values[index];
+      }
+
+      @Override
+      public int size() {
+        return values.length;
+      }
+    };
+  }
+
+  private static Map<String, Integer> indexes(final List<String> names,
+      final String type) {
+
+    final Map<String, Integer> result = new HashMap<>();
+
+    for (int i = 0; i < names.size(); i++) {
+
+      final String name = names.get(i);
+      Objects.requireNonNull(name, type + " name cannot be null");
+
+      if (result.put(name, i) != null) {
+        throw new IllegalArgumentException(
+            "Duplicated " + type + " name: " + name);
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  private CSCExpressionMatrix(final List<String> rowNames,
+      final List<String> columnNames, final int[] columnPointers,
+      final int[] rowIndices, final int[] intValues,
+      final double[] doubleValues) {
+
+    this.rowNames = rowNames;
+    this.columnNames = columnNames;
+    this.rowIndexes = indexes(rowNames, "row");
+    this.columnIndexes = indexes(columnNames, "column");
+    this.columnPointers = columnPointers;
+    this.rowIndices = rowIndices;
+    this.intValues = intValues;
+    this.doubleValues = doubleValues;
+  }
+
+}
@@ -65,6 +65,9 @@ public enum FastqFormat {
   FASTQ_ILLUMINA_1_5("fastq-illumina-1.5", new String[] {"illumina-1.5", "1.5"},
       "1.5", 2, 62, 40, 64, true);
 
+  /** Number of characters in the error probability lookup table. */
+  private static final int PROBABILITY_TABLE_SIZE = 128;
+
   private final String name;
   private final Set<String> alias;
   private final String illuminaVersion;
@@ -74,6 +77,7 @@ public enum FastqFormat {
   private final int scoreMaxExpected;
   private final int asciiOffset;
   private final boolean phredScore;
+  private final double[] probabilities;
 
   //
   // Getters
@@ -233,6 +237,10 @@ public enum FastqFormat {
    */
   public double getProbability(final char character) {
 
+    if (character < PROBABILITY_TABLE_SIZE) {
+      return this.probabilities[character];
+    }
+
     return convertScoreToProbability(character - this.asciiOffset);
   }
 
@@ -559,6 +567,12 @@ public enum FastqFormat {
     this.scoreMaxExpected = scoreMaxExpected;
     this.asciiOffset = asciiOffset;
     this.phredScore = phredQualityScore;
+
+    // Precompute the error probabilities of the ASCII characters
+    this.probabilities = new double[PROBABILITY_TABLE_SIZE];
+    for (int i = 0; i < PROBABILITY_TABLE_SIZE; i++) {
+      this.probabilities[i] = convertScoreToProbability(i - asciiOffset);
+    }
   }
 
 }
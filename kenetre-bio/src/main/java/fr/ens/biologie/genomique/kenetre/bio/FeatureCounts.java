@@ -0,0 +1,188 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class define an immutable vector of feature counts. Each feature has a
+ * dense integer index and the features are sorted by identifier, so the counts
+ * can be iterated in the output order without any boxing or hash lookup.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public final class FeatureCounts implements Serializable {
+
+  private static final long serialVersionUID = 3316389150947291265L;
+
+  private final String[] featureIds;
+  private final long[] counts;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of features.
+   * @return the number of features
+   */
+  public int size() {
+
+    return this.featureIds.length;
+  }
+
+  /**
+   * Get the identifier of a feature.
+   * @param index index of the feature
+   * @return the identifier of the feature
+   */
+  public String getFeatureId(final int index) {
+
+    return this.featureIds[index];
+  }
+
+  /**
+   * Get the count of a feature.
+   * @param index index of the feature
+   * @return the count of the feature
+   */
+  public long getCount(final int index) {
+
+    return this.counts[index];
+  }
+
+  /**
+   * Get the index of a feature.
+   * @param featureId identifier of the feature
+   * @return the index of the feature or -1 if the feature does not exist
+   */
+  public int getIndex(final String featureId) {
+
+    requireNonNull(featureId, "featureId argument cannot be null");
+
+    final int result = Arrays.binarySearch(this.featureIds, featureId);
+
+    return result < 0 ? -1 : result;
+  }
+
+  /**
+   * Get the count of a feature.
+   * @param featureId identifier of the feature
+   * @return the count of the feature or 0 if the feature does not exist
+   */
+  public long getCount(final String featureId) {
+
+    final int index = getIndex(featureId);
+
+    return index == -1 ? 0 : this.counts[index];
+  }
+
+  /**
+   * Get the sum of the counts of all the features.
+   * @return the sum of the counts
+   */
+  public long getTotal() {
+
+    long result = 0;
+    for (long count : this.counts) {
+      result += count;
+    }
+
+    return result;
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Convert the counts to a map.
+   * @param zeroCounts true if the features without counts must be in the
+   *          result
+   * @return a map with the counts, sorted by feature identifier
+   */
+  public Map<String, Integer> toMap(final boolean zeroCounts) {
+
+    final Map<String, Integer> result = new LinkedHashMap<>();
+
+    for (int i = 0; i < this.featureIds.length; i++) {
+
+      if (zeroCounts || this.counts[i] > 0) {
+        result.put(this.featureIds[i], Math.toIntExact(this.counts[i]));
+      }
+    }
+
+    return result;
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{features=" + this.featureIds.length + ", total=" + getTotal()
+        + "}";
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param featureIds identifiers of the features, sorted and without
+   *          duplicates
+   * @param counts counts of the features
+   */
+  public FeatureCounts(final String[] featureIds, final long[] counts) {
+
+    requireNonNull(featureIds, "featureIds argument cannot be null");
+    requireNonNull(counts, "counts argument cannot be null");
+
+    if (featureIds.length != counts.length) {
+      throw new IllegalArgumentException(
+          "featureIds and counts arguments must have the same length");
+    }
+
+    for (int i = 0; i < featureIds.length; i++) {
+
+      requireNonNull(featureIds[i], "featureIds cannot contain null values");
+
+      if (i > 0 && featureIds[i - 1].compareTo(featureIds[i]) >= 0) {
+        throw new IllegalArgumentException(
+            "featureIds must be sorted and without duplicates: "
+                + featureIds[i]);
+      }
+    }
+
+    this.featureIds = featureIds.clone();
+    this.counts = counts.clone();
+  }
+
+}
@@ -0,0 +1,516 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This class define an immutable form of a GenomicArray. The zones of each
+ * chromosome strand are stored in sorted arrays of primitive values and the
+ * values of the zones are stored as arrays of value identifiers that are
+ * shared between the zones with the same values. Overlap queries are answered
+ * in a reusable Overlaps object, so queries do not allocate any object.
+ * Instances of this class are created using the GenomicArray.freeze() method
+ * and can be safely shared between threads.
+ * @param <T> type of the values
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public final class FrozenGenomicArray<T> implements Serializable {
+
+  private static final long serialVersionUID = -2474372402693766185L;
+
+  private static final int[] EMPTY_VALUES = new int[0];
+
+  private final Map<String, FrozenChromosomeZones> chromosomes;
+  private final Object[] values;
+  private final Map<T, Integer> valueIds;
+
+  /**
+   * This class define the frozen zones of a chromosome strand. Zones are
+   * contiguous from the position 1 to the length of the chromosome.
+   */
+  private static final class FrozenStrandedZones implements Serializable {
+
+    private static final long serialVersionUID = 6081736315536457651L;
+
+    private final int[] starts;
+    private final int[] ends;
+    private final char[] strands;
+    private final int[][] values;
+    private final int length;
+
+    /**
+     * Find the zone index for a position.
+     * @param pos the position on the chromosome
+     * @return the index of the zone that contains the position
+     */
+    private int findIndexPos(final int pos) {
+
+      int low = 0;
+      int high = this.starts.length - 1;
+
+      while (low < high) {
+
+        final int mid = (low + high + 1) >>> 1;
+
+        if (this.starts[mid] <= pos) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+
+      return low;
+    }
+
+    /**
+     * Add the zones that overlap an interval to an Overlaps object. Like
+     * GenomicArray.getEntries(), an empty zone is added if the interval ends
+     * after the last zone.
+     * @param start start of the interval
+     * @param end end of the interval
+     * @param result the result object
+     */
+    private void addOverlaps(final int start, final int end,
+        final Overlaps result) {
+
+      if (start < 1 || start > this.length) {
+        return;
+      }
+
+      final int last = this.starts.length - 1;
+      final int indexStart = findIndexPos(start);
+      final int indexEnd = end > this.length ? last : findIndexPos(end);
+
+      for (int i = indexStart; i <= indexEnd; i++) {
+        result.add(this.starts[i], this.ends[i], this.strands[i],
+            this.values[i]);
+      }
+
+      if (end > this.length) {
+        result.add(start > this.starts[last] ? start : this.length + 1, end,
+            this.strands[last], EMPTY_VALUES);
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    private FrozenStrandedZones(final int[] starts, final int[] ends,
+        final char[] strands, final int[][] values) {
+
+      this.starts = starts;
+      this.ends = ends;
+      this.strands = strands;
+      this.values = values;
+      this.length = ends.length == 0 ? 0 : ends[ends.length - 1];
+    }
+  }
+
+  /**
+   * This class define the frozen zones of the two strands of a chromosome.
+   */
+  private static final class FrozenChromosomeZones implements Serializable {
+
+    private static final long serialVersionUID = -1905469580302618343L;
+
+    private final FrozenStrandedZones plus;
+    private final FrozenStrandedZones minus;
+
+    private FrozenChromosomeZones(final FrozenStrandedZones plus,
+        final FrozenStrandedZones minus) {
+
+      this.plus = plus;
+      this.minus = minus;
+    }
+  }
+
+  /**
+   * This class define a reusable result of an overlap query. Arrays returned
+   * by this object are shared with the FrozenGenomicArray and must not be
+   * modified.
+   */
+  public static final class Overlaps {
+
+    private int size;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private char[] strands = new char[16];
+    private int[][] values = new int[16][];
+
+    /**
+     * Get the number of zones of the result.
+     * @return the number of zones of the result
+     */
+    public int size() {
+
+      return this.size;
+    }
+
+    /**
+     * Get the start position of a zone.
+     * @param index index of the zone in the result
+     * @return the start position of the zone
+     */
+    public int getStart(final int index) {
+
+      checkIndex(index);
+      return this.starts[index];
+    }
+
+    /**
+     * Get the end position of a zone.
+     * @param index index of the zone in the result
+     * @return the end position of the zone
+     */
+    public int getEnd(final int index) {
+
+      checkIndex(index);
+      return this.ends[index];
+    }
+
+    /**
+     * Get the strand of a zone.
+     * @param index index of the zone in the result
+     * @return the strand of the zone
+     */
+    public char getStrand(final int index) {
+
+      checkIndex(index);
+      return this.strands[index];
+    }
+
+    /**
+     * Get the sorted identifiers of the values of a zone.
+     * @param index index of the zone in the result
+     * @return an array with the identifiers of the values of the zone. This
+     *         array must not be modified
+     */
+    public int[] getValueIds(final int index) {
+
+      checkIndex(index);
+      return this.values[index];
+    }
+
+    /**
+     * Clear the result.
+     */
+    public void clear() {
+
+      Arrays.fill(this.values, 0, this.size, null);
+      this.size = 0;
+    }
+
+    private void add(final int start, final int end, final char strand,
+        final int[] values) {
+
+      if (this.size == this.starts.length) {
+
+        final int newLength = this.size * 2;
+        this.starts = Arrays.copyOf(this.starts, newLength);
+        this.ends = Arrays.copyOf(this.ends, newLength);
+        this.strands = Arrays.copyOf(this.strands, newLength);
+        this.values = Arrays.copyOf(this.values, newLength);
+      }
+
+      this.starts[this.size] = start;
+      this.ends[this.size] = end;
+      this.strands[this.size] = strand;
+      this.values[this.size] = values;
+      this.size++;
+    }
+
+    private void checkIndex(final int index) {
+
+      if (index < 0 || index >= this.size) {
+        throw new IndexOutOfBoundsException("Invalid index: " + index);
+      }
+    }
+  }
+
+  /**
+   * This class allow to build a FrozenGenomicArray zone after zone. Zones of a
+   * chromosome strand must be added in order.
+   */
+  static final class Builder<T> {
+
+    private final List<Object> values = new ArrayList<>();
+    private final Map<T, Integer> valueIds = new HashMap<>();
+    private final Map<IntArrayKey, int[]> internedValues = new HashMap<>();
+    private final Map<String, FrozenStrandedZones[]> chromosomes =
+        new HashMap<>();
+
+    /**
+     * This class define a key to intern arrays of value identifiers.
+     */
+    private static final class IntArrayKey {
+
+      private final int[] array;
+
+      @Override
+      public boolean equals(final Object o) {
+
+        return o instanceof IntArrayKey
+            && Arrays.equals(this.array, ((IntArrayKey) o).array);
+      }
+
+      @Override
+      public int hashCode() {
+
+        return Arrays.hashCode(this.array);
+      }
+
+      private IntArrayKey(final int[] array) {
+        this.array = array;
+      }
+    }
+
+    /**
+     * Get the interned array of identifiers of a set of values.
+     * @param values the values
+     * @return a sorted array of identifiers
+     */
+    private int[] internValues(final Set<T> values) {
+
+      if (values == null || values.isEmpty()) {
+        return EMPTY_VALUES;
+      }
+
+      final int[] ids = new int[values.size()];
+      int i = 0;
+      for (T value : values) {
+
+        Integer id = this.valueIds.get(value);
+        if (id == null) {
+          id = this.values.size();
+          this.values.add(value);
+          this.valueIds.put(value, id);
+        }
+        ids[i++] = id;
+      }
+      Arrays.sort(ids);
+
+      final IntArrayKey key = new IntArrayKey(ids);
+      final int[] interned = this.internedValues.get(key);
+      if (interned != null) {
+        return interned;
+      }
+
+      this.internedValues.put(key, ids);
+
+      return ids;
+    }
+
+    /**
+     * Add the zones of a chromosome strand.
+     * @param chromosomeName name of the chromosome
+     * @param plus true if the zones are the zones of the plus strand
+     * @param starts start positions of the zones
+     * @param ends end positions of the zones
+     * @param strands strands of the zones
+     * @param values values of the zones
+     */
+    void addStrandedZones(final String chromosomeName, final boolean plus,
+        final int[] starts, final int[] ends, final char[] strands,
+        final List<Set<T>> values) {
+
+      final int[][] zoneValues = new int[values.size()][];
+      for (int i = 0; i < zoneValues.length; i++) {
+        zoneValues[i] = internValues(values.get(i));
+      }
+
+      this.chromosomes.computeIfAbsent(chromosomeName,
+          k -> new FrozenStrandedZones[2])[plus ? 0 : 1] =
+              new FrozenStrandedZones(starts, ends, strands, zoneValues);
+    }
+
+    /**
+     * Create the FrozenGenomicArray.
+     * @return a new FrozenGenomicArray object
+     */
+    FrozenGenomicArray<T> build() {
+
+      final FrozenStrandedZones empty = new FrozenStrandedZones(new int[0],
+          new int[0], new char[0], new int[0][]);
+
+      final Map<String, FrozenChromosomeZones> result = new HashMap<>();
+      for (Map.Entry<String, FrozenStrandedZones[]> e : this.chromosomes
+          .entrySet()) {
+
+        final FrozenStrandedZones[] zones = e.getValue();
+        result.put(e.getKey(), new FrozenChromosomeZones(
+            zones[0] == null ? empty : zones[0],
+            zones[1] == null ? empty : zones[1]));
+      }
+
+      return new FrozenGenomicArray<>(result, this.values.toArray(),
+          this.valueIds);
+    }
+  }
+
+  //
+  // Queries
+  //
+
+  /**
+   * Get the zones of the two strands that overlap an interval. The zones are
+   * the same as the ones returned by GenomicArray.getEntries().
+   * @param chromosome chromosome of the interval
+   * @param start start of the interval
+   * @param end end of the interval
+   * @param result the object where to store the zones. It is cleared before
+   *          the query
+   * @return false if the chromosome is unknown
+   */
+  public boolean getOverlaps(final String chromosome, final int start,
+      final int end, final Overlaps result) {
+
+    requireNonNull(chromosome, "chromosome argument cannot be null");
+    requireNonNull(result, "result argument cannot be null");
+
+    result.clear();
+
+    final FrozenChromosomeZones chr = this.chromosomes.get(chromosome);
+
+    if (chr == null) {
+      return false;
+    }
+
+    chr.plus.addOverlaps(start, end, result);
+    chr.minus.addOverlaps(start, end, result);
+
+    return true;
+  }
+
+  /**
+   * Get the number of distinct values of the array.
+   * @return the number of distinct values of the array
+   */
+  public int getValueCount() {
+
+    return this.values.length;
+  }
+
+  /**
+   * Get a value from its identifier.
+   * @param id identifier of the value
+   * @return the value
+   */
+  @SuppressWarnings("unchecked")
+  public T getValue(final int id) {
+
+    return (T) this.values[id];
+  }
+
+  /**
+   * Get the identifier of a value.
+   * @param value the value
+   * @return the identifier of the value or -1 if the value is not in the array
+   */
+  public int getValueId(final T value) {
+
+    final Integer result = this.valueIds.get(value);
+
+    return result == null ? -1 : result;
+  }
+
+  /**
+   * Test if the array contains a chromosome.
+   * @param chromosomeName name of the chromosome to test
+   * @return true if the array contains the chromosome
+   */
+  public boolean containsChromosome(final String chromosomeName) {
+
+    if (chromosomeName == null) {
+      return false;
+    }
+
+    return this.chromosomes.containsKey(chromosomeName);
+  }
+
+  /**
+   * Get the names of the chromosomes that contains the array.
+   * @return a set with the name of the chromosomes
+   */
+  public Set<String> getChromosomesNames() {
+
+    return Collections.unmodifiableSet(this.chromosomes.keySet());
+  }
+
+  /**
+   * Get a set with zone identifiers.
+   * @return a set of strings with identifiers
+   */
+  public Set<String> getFeaturesIds() {
+
+    final Set<String> result = new TreeSet<>();
+
+    for (Object value : this.values) {
+      result.add(String.valueOf(value));
+    }
+
+    return result;
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{chromosomes=" + this.chromosomes.keySet() + ", values="
+        + this.values.length + "}";
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param chromosomes the zones of the chromosomes
+   * @param values the values
+   * @param valueIds the identifiers of the values
+   */
+  private FrozenGenomicArray(
+      final Map<String, FrozenChromosomeZones> chromosomes,
+      final Object[] values, final Map<T, Integer> valueIds) {
+
+    this.chromosomes = chromosomes;
+    this.values = values;
+    this.valueIds = valueIds;
+  }
+
+}
@@ -549,6 +549,65 @@ public class GenomeDescription {
     return result;
   }
 
+  /**
+   * Create a GenomeDescription object from a samtools FASTA index file (.fai).
+   * No checksum will be computed when using this method.
+   * @param faiFile FASTA index file
+   * @return a genome description object
+   * @throws IOException if an error occurs while reading the index file
+   */
+  public static GenomeDescription createGenomeDescFromFastaIndex(
+      final File faiFile) throws IOException {
+
+    requireNonNull(faiFile, "The FASTA index file is null");
+
+    return createGenomeDescFromFastaIndex(FileUtils.createInputStream(faiFile),
+        faiFile.getName());
+  }
+
+  /**
+   * Create a GenomeDescription object from a samtools FASTA index file (.fai).
+   * No checksum will be computed when using this method.
+   * @param faiIs FASTA index input stream
+   * @param filename name of the file of the input stream
+   * @return a genome description object
+   * @throws IOException if an error occurs while reading the index file
+   */
+  public static GenomeDescription createGenomeDescFromFastaIndex(
+      final InputStream faiIs, final String filename) throws IOException {
+
+    requireNonNull(faiIs, "The input stream of the FASTA index is null");
+
+    final GenomeDescription result = new GenomeDescription();
+    result.setGenomeName(StringUtils.basename(filename));
+
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(faiIs))) {
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        final String[] fields = line.split("\t");
+        if (fields.length != 5) {
+          throw new IOException("Invalid FASTA index line: " + line);
+        }
+
+        try {
+          result.addSequence(fields[0], Long.parseLong(fields[1]));
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid sequence length in FASTA index: "
+              + line);
+        }
+      }
+    }
+
+    return result;
+  }
+
   private static String parseChromosomeName(final String fastaHeader)
       throws BadBioEntryException {
 
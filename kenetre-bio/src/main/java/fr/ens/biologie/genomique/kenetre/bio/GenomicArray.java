@@ -814,6 +814,57 @@ public class GenomicArray<T> implements Serializable {
     return Collections.unmodifiableSet(this.chromosomes.keySet());
   }
 
+  /**
+   * Create an immutable copy of the GenomicArray optimized for overlap
+   * queries.
+   * @return a new FrozenGenomicArray object
+   */
+  public FrozenGenomicArray<T> freeze() {
+
+    final FrozenGenomicArray.Builder<T> builder =
+        new FrozenGenomicArray.Builder<>();
+
+    // Sort chromosome names to always get the same value identifiers
+    for (String chromosomeName : new TreeSet<>(this.chromosomes.keySet())) {
+
+      final ChromosomeZones<T> chr = this.chromosomes.get(chromosomeName);
+      freeze(builder, chromosomeName, true, chr.plus);
+      freeze(builder, chromosomeName, false, chr.minus);
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * Add the zones of a chromosome strand to a FrozenGenomicArray builder.
+   * @param builder the builder
+   * @param chromosomeName name of the chromosome
+   * @param plus true if the zones are the zones of the plus strand
+   * @param zones the zones to add
+   */
+  private static <T> void freeze(final FrozenGenomicArray.Builder<T> builder,
+      final String chromosomeName, final boolean plus,
+      final ChromosomeStrandedZones<T> zones) {
+
+    final int count = zones.zones.size();
+    final int[] starts = new int[count];
+    final int[] ends = new int[count];
+    final char[] strands = new char[count];
+    final List<Set<T>> values = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+
+      final Zone<T> zone = zones.get(i);
+      starts[i] = zone.start;
+      ends[i] = zone.end;
+      strands[i] = zone.strand;
+      values.add(zone.getValues());
+    }
+
+    builder.addStrandedZones(chromosomeName, plus, starts, ends, strands,
+        values);
+  }
+
   //
   // Other
   //
@@ -24,48 +24,59 @@
 
 package fr.ens.biologie.genomique.kenetre.bio;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 
 /**
- * This class allow the easily get fields of Illumina reads ids.
+ * This class allow the easily get fields of Illumina reads ids. The format of
+ * the ids is detected when the object is created, then the ids are split in a
+ * single pass without regular expressions. The same object can be used to
+ * parse all the reads of a file: the string fields that do not change between
+ * reads are not recreated.
  * @since 1.0
  * @author Laurent Jourdren
  */
 public final class IlluminaReadId {
 
-  private static final Pattern PATTERN_1 =
-      Pattern.compile("^([a-zA-Z0-9\\-\\_]+):(\\d+):(\\d+):(\\d+):(\\d+)$");
+  private static final String NO_SEQUENCE_INDEX = "0";
 
-  private static final Pattern PATTERN_2 = Pattern
-      .compile("^([a-zA-Z0-9\\-\\_]+):(\\d+):(\\d+):(\\d+):(\\d+)/(\\d)$");
+  /** Formats of the ids, in the order of the detection. */
+  private enum Format {
+    CASAVA_1_8, CASAVA_1_8_WITHOUT_INDEX, CASAVA_1_4, PAIRED, SINGLE, SRA
+  }
 
-  private static final Pattern PATTERN_1_4 = Pattern.compile(
-      "^([a-zA-Z0-9\\-\\_]+):(\\d+):(\\d+):(\\d+):(\\d+)#([0ATGC]+)/(\\d)$");
+  private static final Format[] FORMATS = Format.values();
 
-  private static final Pattern PATTERN_1_8 = Pattern.compile(
-      "^([a-zA-Z0-9\\-\\_]+):(\\d+):([a-zA-Z0-9]+):(\\d+):(\\d+):(\\d+):(\\d+) "
-          + "(\\d+):([YN]):(\\d+):([NATGC\\+]*)$");
+  /** Formats of the ids that contain a sequence index. */
+  private static final Format[] INDEX_FORMATS =
+      {Format.CASAVA_1_8, Format.CASAVA_1_4};
 
-  private static final Pattern PATTERN_3 = Pattern.compile(
-      "^([a-zA-Z0-9\\-\\_]+):(\\d+):([a-zA-Z0-9]+):(\\d+):(\\d+):(\\d+):(\\d+) "
-          + "(\\d+):([YN]):(\\d+):(\\d)$");
+  /** Tokenizer used by the static methods. */
+  private static final ThreadLocal<IlluminaReadId> TOKENIZER =
+      ThreadLocal.withInitial(() -> new IlluminaReadId(Format.SINGLE));
 
-  private static final Pattern PATTERN_SRA = Pattern.compile(
-      "^[a-zA-Z0-9\\.]+ ([a-zA-Z0-9\\-\\_]+):(\\d+):([a-zA-Z0-9]+):(\\d+):(\\d+):(\\d+):(\\d+) "
-          + ".*$");
+  // Character classes of the fields
+  private static final int INSTRUMENT_CHARS = 0;
+  private static final int ACCESSION_CHARS = 1;
+  private static final int FLOW_CELL_CHARS = 2;
+  private static final int DIGIT_CHARS = 3;
+  private static final int INDEX_1_4_CHARS = 4;
+  private static final int INDEX_1_8_CHARS = 5;
 
-  private static final Pattern SEQUENCE_INDEX_SPLITTER_PATTERN =
-      Pattern.compile("\\+");
+  // Numeric fields of the tokenizer
+  private static final int RUN = 0;
+  private static final int LANE = 1;
+  private static final int TILE = 2;
+  private static final int X = 3;
+  private static final int Y = 4;
+  private static final int PAIR = 5;
+  private static final int CONTROL = 6;
+  private static final int IGNORED = 7;
 
-  private static final String NO_SEQUENCE_INDEX = "0";
-
-  private final Pattern pattern;
+  private final Format format;
 
   private String instrumentId;
   private int runId;
@@ -79,6 +90,17 @@ public final class IlluminaReadId {
   private boolean filtered;
   private int controlNumber;
 
+  // Tokenizer state, the fields are only updated when a whole id is valid
+  private final int[] numbers = new int[IGNORED + 1];
+  private int instrumentStart;
+  private int instrumentEnd;
+  private int flowCellStart;
+  private int flowCellEnd;
+  private int indexStart;
+  private int indexEnd;
+  private boolean filteredFlag;
+  private boolean overflow;
+
   //
   // Getters
   //
@@ -157,8 +179,27 @@ public final class IlluminaReadId {
       return Collections.emptyList();
     }
 
-    return Collections.unmodifiableList(Arrays
-        .asList(SEQUENCE_INDEX_SPLITTER_PATTERN.split(this.sequenceIndex)));
+    // Same result as String.split("\\+")
+    final String index = this.sequenceIndex;
+    final List<String> result = new ArrayList<>();
+    int start = 0;
+    int pos;
+
+    while ((pos = index.indexOf('+', start)) != -1) {
+      result.add(index.substring(start, pos));
+      start = pos + 1;
+    }
+
+    if (start == 0) {
+      return Collections.singletonList(index);
+    }
+
+    result.add(index.substring(start));
+    while (!result.isEmpty() && result.get(result.size() - 1).isEmpty()) {
+      result.remove(result.size() - 1);
+    }
+
+    return Collections.unmodifiableList(result);
   }
 
   /**
@@ -204,8 +245,8 @@ public final class IlluminaReadId {
    */
   public final boolean isRunIdField() {
 
-    if (this.pattern == PATTERN_1_4
-        || this.pattern == PATTERN_2 || this.pattern == PATTERN_1) {
+    if (this.format == Format.CASAVA_1_4
+        || this.format == Format.PAIRED || this.format == Format.SINGLE) {
       return false;
     }
 
@@ -218,8 +259,8 @@ public final class IlluminaReadId {
    */
   public final boolean isFlowCellIdField() {
 
-    if (this.pattern == PATTERN_1_4
-        || this.pattern == PATTERN_2 || this.pattern == PATTERN_1) {
+    if (this.format == Format.CASAVA_1_4
+        || this.format == Format.PAIRED || this.format == Format.SINGLE) {
       return false;
     }
 
@@ -265,9 +306,9 @@ public final class IlluminaReadId {
    */
   public final boolean isSequenceIndexField() {
 
-    if (this.pattern == PATTERN_3
-        || this.pattern == PATTERN_2 || this.pattern == PATTERN_1
-        || this.pattern == PATTERN_SRA) {
+    if (this.format == Format.CASAVA_1_8_WITHOUT_INDEX
+        || this.format == Format.PAIRED || this.format == Format.SINGLE
+        || this.format == Format.SRA) {
       return false;
     }
 
@@ -280,7 +321,7 @@ public final class IlluminaReadId {
    */
   public final boolean isPairMemberField() {
 
-    if (this.pattern == PATTERN_1 || this.pattern == PATTERN_SRA) {
+    if (this.format == Format.SINGLE || this.format == Format.SRA) {
       return false;
     }
 
@@ -293,9 +334,9 @@ public final class IlluminaReadId {
    */
   public final boolean isFilteredField() {
 
-    if (this.pattern == PATTERN_1_4
-        || this.pattern == PATTERN_2 || this.pattern == PATTERN_1
-        || this.pattern == PATTERN_SRA) {
+    if (this.format == Format.CASAVA_1_4
+        || this.format == Format.PAIRED || this.format == Format.SINGLE
+        || this.format == Format.SRA) {
       return false;
     }
 
@@ -308,9 +349,9 @@ public final class IlluminaReadId {
    */
   public final boolean isControlNumberField() {
 
-    if (this.pattern == PATTERN_1_4
-        || this.pattern == PATTERN_2 || this.pattern == PATTERN_1
-        || this.pattern == PATTERN_SRA) {
+    if (this.format == Format.CASAVA_1_4
+        || this.format == Format.PAIRED || this.format == Format.SINGLE
+        || this.format == Format.SRA) {
       return false;
     }
 
@@ -318,39 +359,396 @@ public final class IlluminaReadId {
   }
 
   //
-  // Other method
+  // Static methods
   //
 
-  private static Pattern findPattern(final String readId)
-      throws KenetreException {
+  /**
+   * Get the position of the sequence index in an Illumina id without creating
+   * an IlluminaReadId object. The id is split by the same tokenizer as the
+   * parse() method, using an instance of the tokenizer of the current thread.
+   * This method does not use regular expressions and does not create any
+   * object, it is intended to be called for each read of a run.
+   * @param readId String with the Illumina id
+   * @return the position of the first character of the sequence index or -1
+   *         if the id does not contain a sequence index
+   */
+  public static int getSequenceIndexStart(final String readId) {
 
-    if (PATTERN_1_8.matcher(readId).lookingAt()) {
-      return PATTERN_1_8;
+    if (readId == null) {
+      return -1;
     }
 
-    if (PATTERN_3.matcher(readId).lookingAt()) {
-      return PATTERN_3;
+    // Trim the id without creating a new string
+    int start = 0;
+    int end = readId.length();
+    while (start < end && readId.charAt(start) <= ' ') {
+      start++;
     }
+    while (end > start && readId.charAt(end - 1) <= ' ') {
+      end--;
+    }
+
+    final IlluminaReadId tokenizer = TOKENIZER.get();
 
-    if (PATTERN_1_4.matcher(readId).lookingAt()) {
-      return PATTERN_1_4;
+    for (Format f : INDEX_FORMATS) {
+
+      if (tokenizer.tokenize(f, readId, start, end)) {
+
+        final int indexStart = tokenizer.indexStart;
+        final int indexLength = tokenizer.indexEnd - indexStart;
+
+        // An empty index or "0" means no index
+        if (tokenizer.overflow
+            || indexLength == 0 || indexLength == NO_SEQUENCE_INDEX.length()
+                && readId.startsWith(NO_SEQUENCE_INDEX, indexStart)) {
+          return -1;
+        }
+
+        return indexStart;
+      }
     }
 
-    if (PATTERN_2.matcher(readId).lookingAt()) {
-      return PATTERN_2;
+    return -1;
+  }
+
+  //
+  // Tokenizer
+  //
+
+  /**
+   * Detect the format of an id.
+   * @param readId the id
+   * @return the format of the id
+   * @throws KenetreException if the id is not an Illumina id
+   */
+  private Format detectFormat(final String readId) throws KenetreException {
+
+    for (Format f : FORMATS) {
+      if (tokenize(f, readId, 0, readId.length())) {
+        return f;
+      }
     }
 
-    if (PATTERN_1.matcher(readId).lookingAt()) {
-      return PATTERN_1;
+    throw new KenetreException("Invalid illumina id: " + readId);
+  }
+
+  /**
+   * Split an id in fields in a single pass. The positions of the string
+   * fields and the values of the numeric fields are stored in the tokenizer
+   * state.
+   * @param format format of the id
+   * @param s string that contains the id
+   * @param start start of the id in the string
+   * @param end end of the id in the string
+   * @return true if the id matches the format
+   */
+  private boolean tokenize(final Format format, final String s,
+      final int start, final int end) {
+
+    int pos = start;
+    this.overflow = false;
+
+    // SRA ids start with the accession of the read
+    if (format == Format.SRA) {
+      pos = expect(s, token(s, pos, end, ACCESSION_CHARS), end, ' ');
     }
 
-    if (PATTERN_SRA.matcher(readId).lookingAt()) {
-      return PATTERN_SRA;
+    this.instrumentStart = pos;
+    pos = token(s, pos, end, INSTRUMENT_CHARS);
+    this.instrumentEnd = pos;
+    pos = expect(s, pos, end, ':');
+
+    if (isCasava18Format(format)) {
+
+      pos = expect(s, number(s, pos, end, RUN), end, ':');
+      this.flowCellStart = pos;
+      pos = token(s, pos, end, FLOW_CELL_CHARS);
+      this.flowCellEnd = pos;
+      pos = expect(s, pos, end, ':');
     }
 
-    throw new KenetreException("Invalid illumina id: " + readId);
+    pos = expect(s, number(s, pos, end, LANE), end, ':');
+    pos = expect(s, number(s, pos, end, TILE), end, ':');
+    pos = expect(s, number(s, pos, end, X), end, ':');
+    pos = number(s, pos, end, Y);
+
+    switch (format) {
+
+    case SINGLE:
+      return pos == end;
+
+    case PAIRED:
+      pos = digit(s, expect(s, pos, end, '/'), end, PAIR);
+      return pos == end;
+
+    case CASAVA_1_4:
+      pos = expect(s, pos, end, '#');
+      this.indexStart = pos;
+      pos = token(s, pos, end, INDEX_1_4_CHARS);
+      this.indexEnd = pos;
+      pos = digit(s, expect(s, pos, end, '/'), end, PAIR);
+      return pos == end;
+
+    case SRA:
+      // The end of the id is not parsed
+      return expect(s, pos, end, ' ') != -1;
+
+    default:
+      pos = expect(s, number(s, expect(s, pos, end, ' '), end, PAIR), end,
+          ':');
+
+      if (pos == -1 || pos == end) {
+        return false;
+      }
+
+      final char flag = s.charAt(pos);
+      if (flag != 'Y' && flag != 'N') {
+        return false;
+      }
+      this.filteredFlag = flag == 'Y';
+
+      pos = expect(s, pos + 1, end, ':');
+      pos = expect(s, number(s, pos, end, CONTROL), end, ':');
+
+      if (format == Format.CASAVA_1_8_WITHOUT_INDEX) {
+        return digit(s, pos, end, IGNORED) == end;
+      }
+
+      // The index can be empty
+      if (pos == -1) {
+        return false;
+      }
+      this.indexStart = pos;
+      while (pos < end && isInClass(s.charAt(pos), INDEX_1_8_CHARS)) {
+        pos++;
+      }
+      this.indexEnd = pos;
+
+      return pos == end;
+    }
+  }
+
+  /**
+   * Set the fields of the object from the tokenizer state.
+   * @param format format of the id
+   * @param s string that contains the id
+   */
+  private void setFields(final Format format, final String s) {
+
+    final int[] n = this.numbers;
+    final boolean casava18 = isCasava18Format(format);
+
+    this.instrumentId =
+        reuse(this.instrumentId, s, this.instrumentStart, this.instrumentEnd);
+    this.runId = casava18 ? n[RUN] : -1;
+    this.flowCellId = casava18
+        ? reuse(this.flowCellId, s, this.flowCellStart, this.flowCellEnd)
+        : null;
+    this.flowCellLane = n[LANE];
+    this.tileNumberInFlowCellLane = n[TILE];
+    this.xClusterCoordinateInTile = n[X];
+    this.yClusterCoordinateInTile = n[Y];
+
+    switch (format) {
+
+    case CASAVA_1_8:
+    case CASAVA_1_8_WITHOUT_INDEX:
+      this.pairMember = n[PAIR];
+      this.filtered = this.filteredFlag;
+      this.controlNumber = n[CONTROL];
+      this.sequenceIndex = format == Format.CASAVA_1_8
+          ? reuse(this.sequenceIndex, s, this.indexStart, this.indexEnd)
+          : NO_SEQUENCE_INDEX;
+      break;
+
+    case CASAVA_1_4:
+    case PAIRED:
+      this.pairMember = n[PAIR];
+      this.filtered = false;
+      this.controlNumber = -1;
+      this.sequenceIndex = format == Format.CASAVA_1_4
+          ? reuse(this.sequenceIndex, s, this.indexStart, this.indexEnd)
+          : NO_SEQUENCE_INDEX;
+      break;
+
+    default:
+      this.pairMember = -1;
+      this.filtered = false;
+      this.controlNumber = -1;
+      this.sequenceIndex = NO_SEQUENCE_INDEX;
+      break;
+    }
+  }
+
+  /**
+   * Test if a format contains the run id and the flow cell id fields.
+   * @param format the format
+   * @return true if the format contains the run id and the flow cell id
+   */
+  private static boolean isCasava18Format(final Format format) {
+
+    return format == Format.CASAVA_1_8
+        || format == Format.CASAVA_1_8_WITHOUT_INDEX || format == Format.SRA;
+  }
+
+  /**
+   * Skip a non empty field.
+   * @param s the string
+   * @param pos current position, -1 if a previous field is invalid
+   * @param end end of the id
+   * @param charClass character class of the field
+   * @return the end of the field or -1 if the field is empty
+   */
+  private static int token(final String s, final int pos, final int end,
+      final int charClass) {
+
+    if (pos == -1) {
+      return -1;
+    }
+
+    int i = pos;
+    while (i < end && isInClass(s.charAt(i), charClass)) {
+      i++;
+    }
+
+    return i == pos ? -1 : i;
+  }
+
+  /**
+   * Parse a non empty numeric field.
+   * @param s the string
+   * @param pos current position, -1 if a previous field is invalid
+   * @param end end of the id
+   * @param field index of the numeric field in the tokenizer state
+   * @return the end of the field or -1 if the field is empty
+   */
+  private int number(final String s, final int pos, final int end,
+      final int field) {
+
+    final int result = token(s, pos, end, DIGIT_CHARS);
+
+    if (result != -1) {
+
+      long value = 0;
+      for (int i = pos; i < result && value <= Integer.MAX_VALUE; i++) {
+        value = value * 10 + s.charAt(i) - '0';
+      }
+
+      // The error is only reported if the whole id matches the format
+      if (value > Integer.MAX_VALUE) {
+        this.overflow = true;
+      }
+      this.numbers[field] = (int) value;
+    }
+
+    return result;
+  }
+
+  /**
+   * Parse a numeric field of one digit.
+   * @param s the string
+   * @param pos current position, -1 if a previous field is invalid
+   * @param end end of the id
+   * @param field index of the numeric field in the tokenizer state
+   * @return the end of the field or -1 if the field is not a digit
+   */
+  private int digit(final String s, final int pos, final int end,
+      final int field) {
+
+    if (pos == -1 || pos == end) {
+      return -1;
+    }
+
+    final char c = s.charAt(pos);
+    if (c < '0' || c > '9') {
+      return -1;
+    }
+    this.numbers[field] = c - '0';
+
+    return pos + 1;
+  }
+
+  /**
+   * Skip a separator.
+   * @param s the string
+   * @param pos current position, -1 if a previous field is invalid
+   * @param end end of the id
+   * @param c the expected separator
+   * @return the position after the separator or -1 if the separator is not
+   *         found
+   */
+  private static int expect(final String s, final int pos, final int end,
+      final char c) {
+
+    return pos == -1 || pos == end || s.charAt(pos) != c ? -1 : pos + 1;
+  }
+
+  /**
+   * Test if a character is in a character class.
+   * @param c the character
+   * @param charClass the character class
+   * @return true if the character is in the character class
+   */
+  private static boolean isInClass(final char c, final int charClass) {
+
+    final boolean digit = c >= '0' && c <= '9';
+    final boolean alphanumeric =
+        digit || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+
+    switch (charClass) {
+
+    case INSTRUMENT_CHARS:
+      return alphanumeric || c == '-' || c == '_';
+
+    case ACCESSION_CHARS:
+      return alphanumeric || c == '.';
+
+    case FLOW_CELL_CHARS:
+      return alphanumeric;
+
+    case DIGIT_CHARS:
+      return digit;
+
+    case INDEX_1_4_CHARS:
+      return c == '0' || c == 'A' || c == 'T' || c == 'G' || c == 'C';
+
+    case INDEX_1_8_CHARS:
+      return c == 'N'
+          || c == 'A' || c == 'T' || c == 'G' || c == 'C' || c == '+';
+
+    default:
+      return false;
+    }
   }
 
+  /**
+   * Get a substring, reusing the previous value of the field if the content
+   * has not changed. Most of the fields are the same for all the reads of a
+   * file.
+   * @param previous previous value of the field
+   * @param s the string
+   * @param start start of the substring
+   * @param end end of the substring
+   * @return the substring
+   */
+  private static String reuse(final String previous, final String s,
+      final int start, final int end) {
+
+    final int length = end - start;
+
+    if (previous != null
+        && previous.length() == length
+        && s.regionMatches(start, previous, 0, length)) {
+      return previous;
+    }
+
+    return s.substring(start, end);
+  }
+
+  //
+  // Parsing
+  //
+
   /**
    * Parse an Illumina id string in a Sequence object.
    * @param sequence sequence witch name must be parsed
@@ -366,7 +764,8 @@ public final class IlluminaReadId {
   }
 
   /**
-   * Parse an Illumina id string.
+   * Parse an Illumina id string. The format of the id must be the same as the
+   * format of the id used to create the object.
    * @param readId String with the Illumina id
    * @throws KenetreException if the id is not an Illumina id
    */
@@ -376,106 +775,41 @@ public final class IlluminaReadId {
       throw new NullPointerException("The string to parse is null");
     }
 
-    final Matcher matcher = this.pattern.matcher(readId.trim());
-    if (!matcher.lookingAt()) {
-      throw new KenetreException("Invalid illumina id: " + readId);
+    // Trim the id without creating a new string
+    int start = 0;
+    int end = readId.length();
+    while (start < end && readId.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && readId.charAt(end - 1) <= ' ') {
+      end--;
     }
 
-    if (this.pattern == PATTERN_1_8) {
-
-      this.instrumentId = matcher.group(1);
-      this.runId = Integer.parseInt(matcher.group(2));
-      this.flowCellId = matcher.group(3);
-      this.flowCellLane = Integer.parseInt(matcher.group(4));
-      this.tileNumberInFlowCellLane = Integer.parseInt(matcher.group(5));
-      this.xClusterCoordinateInTile = Integer.parseInt(matcher.group(6));
-      this.yClusterCoordinateInTile = Integer.parseInt(matcher.group(7));
-      this.pairMember = Integer.parseInt(matcher.group(8));
-      this.filtered = matcher.group(9).charAt(0) == 'Y';
-      this.controlNumber = Integer.parseInt(matcher.group(10));
-      this.sequenceIndex = matcher.group(11);
-
-      return;
-    } else if (this.pattern == PATTERN_3) {
-
-      this.instrumentId = matcher.group(1);
-      this.runId = Integer.parseInt(matcher.group(2));
-      this.flowCellId = matcher.group(3);
-      this.flowCellLane = Integer.parseInt(matcher.group(4));
-      this.tileNumberInFlowCellLane = Integer.parseInt(matcher.group(5));
-      this.xClusterCoordinateInTile = Integer.parseInt(matcher.group(6));
-      this.yClusterCoordinateInTile = Integer.parseInt(matcher.group(7));
-      this.pairMember = Integer.parseInt(matcher.group(8));
-      this.filtered = matcher.group(9).charAt(0) == 'Y';
-      this.controlNumber = Integer.parseInt(matcher.group(10));
-      this.sequenceIndex = NO_SEQUENCE_INDEX;
-
-      return;
-    } else if (this.pattern == PATTERN_1_4) {
-
-      this.instrumentId = matcher.group(1);
-      this.runId = -1;
-      this.flowCellId = null;
-      this.flowCellLane = Integer.parseInt(matcher.group(2));
-      this.tileNumberInFlowCellLane = Integer.parseInt(matcher.group(3));
-      this.xClusterCoordinateInTile = Integer.parseInt(matcher.group(4));
-      this.yClusterCoordinateInTile = Integer.parseInt(matcher.group(5));
-      this.sequenceIndex = matcher.group(6);
-      this.pairMember = Integer.parseInt(matcher.group(7));
-      this.filtered = false;
-      this.controlNumber = -1;
-
-      return;
-    } else if (this.pattern == PATTERN_2) {
-
-      this.instrumentId = matcher.group(1);
-      this.runId = -1;
-      this.flowCellId = null;
-      this.flowCellLane = Integer.parseInt(matcher.group(2));
-      this.tileNumberInFlowCellLane = Integer.parseInt(matcher.group(3));
-      this.xClusterCoordinateInTile = Integer.parseInt(matcher.group(4));
-      this.yClusterCoordinateInTile = Integer.parseInt(matcher.group(5));
-      this.sequenceIndex = NO_SEQUENCE_INDEX;
-      this.pairMember = Integer.parseInt(matcher.group(6));
-      this.filtered = false;
-      this.controlNumber = -1;
-
-      return;
-    } else if (this.pattern == PATTERN_SRA) {
-
-      this.instrumentId = matcher.group(1);
-      this.runId = Integer.parseInt(matcher.group(2));
-      this.flowCellId = matcher.group(3);
-      this.flowCellLane = Integer.parseInt(matcher.group(4));
-      this.tileNumberInFlowCellLane = Integer.parseInt(matcher.group(5));
-      this.xClusterCoordinateInTile = Integer.parseInt(matcher.group(6));
-      this.yClusterCoordinateInTile = Integer.parseInt(matcher.group(7));
-      this.sequenceIndex = NO_SEQUENCE_INDEX;
-      this.pairMember = -1;
-      this.filtered = false;
-      this.controlNumber = -1;
+    if (!tokenize(this.format, readId, start, end)) {
+      throw new KenetreException("Invalid illumina id: " + readId);
+    }
 
-      return;
+    if (this.overflow) {
+      throw new NumberFormatException(
+          "Numeric field out of range in id: " + readId);
     }
 
-    // PATTERN_1
-    this.instrumentId = matcher.group(1);
-    this.runId = -1;
-    this.flowCellId = null;
-    this.flowCellLane = Integer.parseInt(matcher.group(2));
-    this.tileNumberInFlowCellLane = Integer.parseInt(matcher.group(3));
-    this.xClusterCoordinateInTile = Integer.parseInt(matcher.group(4));
-    this.yClusterCoordinateInTile = Integer.parseInt(matcher.group(5));
-    this.sequenceIndex = NO_SEQUENCE_INDEX;
-    this.pairMember = -1;
-    this.filtered = false;
-    this.controlNumber = -1;
+    setFields(this.format, readId);
   }
 
   //
-  // Constructor
+  // Constructors
   //
 
+  /**
+   * Private constructor used to create the tokenizer of the static methods.
+   * @param format format of the ids
+   */
+  private IlluminaReadId(final Format format) {
+
+    this.format = format;
+  }
+
   /**
    * Public constructor.
    * @param readId String with Illumina id to parse
@@ -487,7 +821,7 @@ public final class IlluminaReadId {
       throw new NullPointerException("The string to parse is null");
     }
 
-    this.pattern = findPattern(readId);
+    this.format = detectFormat(readId);
     parse(readId);
   }
 
@@ -508,7 +842,7 @@ public final class IlluminaReadId {
       throw new NullPointerException("The string to parse is null");
     }
 
-    this.pattern = findPattern(readId);
+    this.format = detectFormat(readId);
     parse(readId);
   }
 
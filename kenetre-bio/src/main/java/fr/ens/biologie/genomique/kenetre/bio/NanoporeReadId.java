@@ -1,9 +1,5 @@
 package fr.ens.biologie.genomique.kenetre.bio;
 
-import java.util.Iterator;
-
-import com.google.common.base.Splitter;
-
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 
 /**
@@ -17,9 +13,6 @@ public class NanoporeReadId {
     TEMPLATE, COMPLEMENT, CONSENSUS
   }
 
-  private final Splitter spaceSplitter = Splitter.on(' ').omitEmptyStrings();
-  private final Splitter equalsSplitter = Splitter.on('=');
-
   private String readId;
   private String runId;
   private int readNumber;
@@ -123,6 +116,10 @@ public class NanoporeReadId {
       throw new NullPointerException("The string to parse is null");
     }
 
+    // The run id and the barcode are usually the same for all the reads
+    final String previousRunId = this.runId;
+    final String previousBarcode = this.barcode;
+
     // clean values
     this.readId = null;
     this.runId = null;
@@ -131,58 +128,113 @@ public class NanoporeReadId {
     this.startTime = null;
     this.barcode = null;
 
-    boolean first = true;
-    for (String s : this.spaceSplitter.split(readId)) {
+    // Split the id on spaces, ignoring empty fields
+    final int len = readId.length();
+    int start = 0;
 
-      if (first) {
+    while (start < len) {
 
-        this.readId = s;
-        first = false;
-      } else {
-
-        Iterator<String> it = this.equalsSplitter.split(s).iterator();
+      if (readId.charAt(start) == ' ') {
+        start++;
+        continue;
+      }
 
-        if (!it.hasNext()) {
-          continue;
-        }
+      int end = indexOf(readId, ' ', start, len);
+      if (end == -1) {
+        end = len;
+      }
 
-        String key = it.next();
+      if (this.readId == null) {
+        this.readId = readId.substring(start, end);
+      } else {
 
-        if (!it.hasNext()) {
-          continue;
+        // Key/value fields, the value ends at the next '=' if exists
+        final int equals = indexOf(readId, '=', start, end);
+
+        if (equals != -1) {
+
+          final int keyLength = equals - start;
+          final int valueStart = equals + 1;
+          int valueEnd = indexOf(readId, '=', valueStart, end);
+          if (valueEnd == -1) {
+            valueEnd = end;
+          }
+
+          if (isKey(readId, start, keyLength, "runid")) {
+            this.runId = substring(previousRunId, readId, valueStart, valueEnd);
+          } else if (isKey(readId, start, keyLength, "read")) {
+            this.readNumber =
+                Integer.parseInt(readId, valueStart, valueEnd, 10);
+          } else if (isKey(readId, start, keyLength, "ch")) {
+            this.channel = Integer.parseInt(readId, valueStart, valueEnd, 10);
+          } else if (isKey(readId, start, keyLength, "start_time")) {
+            this.startTime = readId.substring(valueStart, valueEnd);
+          } else if (isKey(readId, start, keyLength, "barcode")) {
+            this.barcode =
+                substring(previousBarcode, readId, valueStart, valueEnd);
+          }
         }
+      }
+
+      start = end;
+    }
 
-        String value = it.next();
+  }
 
-        switch (key) {
-        case "runid":
-          this.runId = value;
-          break;
+  /**
+   * Get the position of a character in a region of a string.
+   * @param s the string
+   * @param c the character to search
+   * @param start start of the region
+   * @param end end of the region
+   * @return the position of the character or -1 if not found
+   */
+  private static int indexOf(final String s, final char c, final int start,
+      final int end) {
 
-        case "read":
-          this.readNumber = Integer.parseInt(value);
-          break;
+    for (int i = start; i < end; i++) {
+      if (s.charAt(i) == c) {
+        return i;
+      }
+    }
 
-        case "ch":
-          this.channel = Integer.parseInt(value);
-          break;
+    return -1;
+  }
 
-        case "start_time":
-          this.startTime = value;
-          break;
+  /**
+   * Test if a region of a string is a key.
+   * @param s the string
+   * @param start start of the key in the string
+   * @param length length of the key in the string
+   * @param key the key
+   * @return true if the region is the key
+   */
+  private static boolean isKey(final String s, final int start,
+      final int length, final String key) {
 
-        case "barcode":
-          this.barcode = value;
-          break;
+    return length == key.length() && s.regionMatches(start, key, 0, length);
+  }
 
-        default:
-          break;
-        }
+  /**
+   * Get a substring, reusing a previous value if the content is the same.
+   * @param previous the previous value
+   * @param s the string
+   * @param start start of the substring
+   * @param end end of the substring
+   * @return the substring
+   */
+  private static String substring(final String previous, final String s,
+      final int start, final int end) {
 
-      }
+    final int length = end - start;
 
+    if (previous != null
+        && previous.length() == length
+        && s.regionMatches(start, previous, 0, length)) {
+      return previous;
     }
 
+    return s.substring(start, end);
   }
 
   //
@@ -144,6 +144,29 @@ public final class ReadSequence extends Sequence {
     return result;
   }
 
+  /**
+   * Get the mean quality score of the read. The quality string is decoded in
+   * a single pass without any allocation.
+   * @return the mean quality score or NaN if the quality is null or empty
+   */
+  public double meanQuality() {
+
+    if (this.quality == null) {
+      return Double.NaN;
+    }
+
+    final String quality = this.quality;
+    final int len = quality.length();
+    final int offset = this.fastqFormat.getAsciiOffset();
+    int sum = 0;
+
+    for (int i = 0; i < len; i++) {
+      sum += quality.charAt(i) - offset;
+    }
+
+    return (double) sum / len;
+  }
+
   //
   // Sequence methods
   //
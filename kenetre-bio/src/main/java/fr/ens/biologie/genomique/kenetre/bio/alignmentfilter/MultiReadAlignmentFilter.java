@@ -29,6 +29,7 @@ import static java.util.Objects.requireNonNull;
 import java.util.ArrayList;
 import java.util.List;
 
+import fr.ens.biologie.genomique.kenetre.util.CounterHandle;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
 import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
 import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
@@ -45,6 +46,7 @@ public class MultiReadAlignmentFilter implements ReadAlignmentFilter {
 
   private GenericLogger logger = new DummyLogger();
   private final List<ReadAlignmentFilter> list = new ArrayList<>();
+  private final List<CounterHandle> rejectedCounters = new ArrayList<>();
   private final ReporterIncrementer incrementer;
   private final String counterGroup;
 
@@ -61,10 +63,12 @@ public class MultiReadAlignmentFilter implements ReadAlignmentFilter {
       pairedEnd = true;
     }
 
-    for (ReadAlignmentFilter af : this.list) {
+    final int size = this.list.size();
+
+    for (int i = 0; i < size; i++) {
 
       final int sizeBefore = records.size();
-      af.filterReadAlignments(records);
+      this.list.get(i).filterReadAlignments(records);
 
       final int sizeAfter = records.size();
       final int diff = sizeBefore - sizeAfter;
@@ -72,13 +76,11 @@ public class MultiReadAlignmentFilter implements ReadAlignmentFilter {
       if (diff > 0 && this.incrementer != null) {
         // paired-end mode
         if (pairedEnd) {
-          this.incrementer.incrCounter(this.counterGroup,
-              "alignments rejected by " + af.getName() + " filter", diff / 2);
+          this.rejectedCounters.get(i).increment(diff / 2);
         }
         // single-end mode
         else {
-          this.incrementer.incrCounter(this.counterGroup,
-              "alignments rejected by " + af.getName() + " filter", diff);
+          this.rejectedCounters.get(i).increment(diff);
         }
       }
 
@@ -96,6 +98,12 @@ public class MultiReadAlignmentFilter implements ReadAlignmentFilter {
 
     if (filter != null) {
       this.list.add(filter);
+
+      if (this.incrementer != null) {
+        this.rejectedCounters.add(this.incrementer.getCounterHandle(
+            this.counterGroup,
+            "alignments rejected by " + filter.getName() + " filter"));
+      }
     }
 
   }
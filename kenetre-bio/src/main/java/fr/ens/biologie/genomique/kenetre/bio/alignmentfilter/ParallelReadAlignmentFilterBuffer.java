@@ -0,0 +1,355 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.alignmentfilter;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * This class define a buffer that filter the alignments of the reads using
+ * several threads. The alignments with the same read name are grouped, and
+ * the groups are gathered in batches that are filtered by a pool of threads.
+ * The filtered alignments are sent to the output in the input order by the
+ * thread that add the alignments. Like ReadAlignmentFilterBuffer, this class
+ * only works with alignment data where all the alignments for a read name are
+ * in straight.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ParallelReadAlignmentFilterBuffer implements AutoCloseable {
+
+  /** Default minimal number of alignments in a batch. */
+  public static final int DEFAULT_BATCH_SIZE = 10000;
+
+  private final BlockingQueue<ReadAlignmentFilter> filters;
+  private final Comparator<SAMRecord> comparator;
+  private final Consumer<SAMRecord> output;
+  private final int batchSize;
+  private final int maxPendingBatches;
+  private final ExecutorService executor;
+
+  private final Deque<Future<Batch>> pendingBatches = new ArrayDeque<>();
+  private final Deque<Batch> freeBatches = new ArrayDeque<>();
+
+  private Batch batch = new Batch();
+  private List<SAMRecord> group;
+  private String currentName;
+  private long outputCount;
+  private boolean closed;
+
+  /**
+   * This class define a batch of groups of alignments. The lists of the groups
+   * are reused when the batch is recycled.
+   */
+  private static final class Batch {
+
+    private final List<List<SAMRecord>> groups = new ArrayList<>();
+    private int groupCount;
+    private int alignmentCount;
+
+    /**
+     * Create a new group in the batch.
+     * @return the list of the new group
+     */
+    private List<SAMRecord> newGroup() {
+
+      final List<SAMRecord> result;
+
+      if (this.groupCount < this.groups.size()) {
+        result = this.groups.get(this.groupCount);
+      } else {
+        result = new ArrayList<>();
+        this.groups.add(result);
+      }
+
+      this.groupCount++;
+
+      return result;
+    }
+
+    /**
+     * Clear the batch.
+     */
+    private void clear() {
+
+      for (int i = 0; i < this.groupCount; i++) {
+        this.groups.get(i).clear();
+      }
+
+      this.groupCount = 0;
+      this.alignmentCount = 0;
+    }
+  }
+
+  /**
+   * Add an alignment to the buffer.
+   * @param alignment SAM alignment
+   */
+  public void addAlignment(final SAMRecord alignment) {
+
+    if (alignment == null) {
+      return;
+    }
+
+    if (this.closed) {
+      throw new IllegalStateException("The buffer is closed");
+    }
+
+    final String name = parseAlignmentName(alignment);
+
+    // The current alignment has a new read name
+    if (this.currentName != null && !this.currentName.equals(name)) {
+
+      this.group = null;
+
+      if (this.batch.alignmentCount >= this.batchSize) {
+        submitBatch();
+      }
+    }
+
+    if (this.group == null) {
+      this.group = this.batch.newGroup();
+      this.currentName = name;
+    }
+
+    this.group.add(alignment);
+    this.batch.alignmentCount++;
+  }
+
+  /**
+   * Get the number of alignments sent to the output.
+   * @return the number of alignments sent to the output
+   */
+  public long getOutputCount() {
+
+    return this.outputCount;
+  }
+
+  /**
+   * Filter the last alignments and send them to the output.
+   */
+  @Override
+  public void close() {
+
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+
+    try {
+
+      if (this.batch.groupCount > 0) {
+        submitBatch();
+      }
+
+      writePendingBatches(0);
+
+    } finally {
+      this.executor.shutdownNow();
+    }
+  }
+
+  //
+  // Batch handling
+  //
+
+  /**
+   * Submit the current batch to the filtering threads.
+   */
+  private void submitBatch() {
+
+    final Batch b = this.batch;
+    this.pendingBatches.add(this.executor.submit(() -> filter(b)));
+
+    this.batch = this.freeBatches.isEmpty() ? new Batch()
+        : this.freeBatches.removeFirst();
+    this.group = null;
+    this.currentName = null;
+
+    writePendingBatches(this.maxPendingBatches);
+  }
+
+  /**
+   * Filter the groups of a batch.
+   * @param batch batch to filter
+   * @return the batch
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  private Batch filter(final Batch batch) throws InterruptedException {
+
+    // There is a filter for each thread
+    final ReadAlignmentFilter filter = this.filters.take();
+
+    try {
+
+      for (int i = 0; i < batch.groupCount; i++) {
+
+        final List<SAMRecord> records = batch.groups.get(i);
+        filter.filterReadAlignments(records);
+
+        if (this.comparator != null && records.size() > 1) {
+          records.sort(this.comparator);
+        }
+      }
+
+    } finally {
+      this.filters.add(filter);
+    }
+
+    return batch;
+  }
+
+  /**
+   * Send the filtered batches to the output in order until the number of
+   * pending batches is lower or equals to a maximal value.
+   * @param maxPending maximal number of pending batches
+   */
+  private void writePendingBatches(final int maxPending) {
+
+    while (this.pendingBatches.size() > maxPending) {
+
+      final Batch b;
+
+      try {
+        b = this.pendingBatches.removeFirst().get();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException(e.getCause());
+      }
+
+      for (int i = 0; i < b.groupCount; i++) {
+        for (SAMRecord r : b.groups.get(i)) {
+          this.output.accept(r);
+          this.outputCount++;
+        }
+      }
+
+      b.clear();
+      this.freeBatches.add(b);
+    }
+  }
+
+  /**
+   * Parse alignment name.
+   * @param alignment the alignment
+   * @return the name of the sequence in the alignment
+   */
+  private static String parseAlignmentName(final SAMRecord alignment) {
+
+    final String alignmentName = alignment.getReadName();
+    final int spaceIndex = alignmentName.indexOf(' ');
+
+    if (spaceIndex == -1) {
+      return alignmentName;
+    }
+
+    return alignmentName.substring(0, spaceIndex);
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   * @param filters the filters to use, one filter for each thread. As the
+   *          filters may have a state, the same filter object must not be
+   *          used twice in the list
+   * @param comparator comparator to use to sort the filtered alignments of a
+   *          read. Can be null
+   * @param output the consumer of the filtered alignments
+   */
+  public ParallelReadAlignmentFilterBuffer(
+      final List<ReadAlignmentFilter> filters,
+      final Comparator<SAMRecord> comparator,
+      final Consumer<SAMRecord> output) {
+
+    this(filters, comparator, output, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Public constructor.
+   * @param filters the filters to use, one filter for each thread. As the
+   *          filters may have a state, the same filter object must not be
+   *          used twice in the list
+   * @param comparator comparator to use to sort the filtered alignments of a
+   *          read. Can be null
+   * @param output the consumer of the filtered alignments
+   * @param batchSize minimal number of alignments in a batch
+   */
+  public ParallelReadAlignmentFilterBuffer(
+      final List<ReadAlignmentFilter> filters,
+      final Comparator<SAMRecord> comparator,
+      final Consumer<SAMRecord> output, final int batchSize) {
+
+    requireNonNull(filters, "filters argument cannot be null");
+    requireNonNull(output, "output argument cannot be null");
+
+    if (filters.isEmpty()) {
+      throw new IllegalArgumentException("No alignment filter defined");
+    }
+
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+    }
+
+    for (ReadAlignmentFilter f : filters) {
+      requireNonNull(f, "The alignment filter is null");
+    }
+
+    final int threads = filters.size();
+
+    this.filters = new LinkedBlockingQueue<>(filters);
+    this.comparator = comparator;
+    this.output = output;
+    this.batchSize = batchSize;
+    this.maxPendingBatches = 2 * threads;
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      final Thread t = new Thread(r, "alignment-filter");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+}
@@ -4,6 +4,8 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
 
+import fr.ens.biologie.genomique.kenetre.bio.FeatureCounts;
+
 /**
  * This interface define a counts writer.
  * @author Laurent Jourdren
@@ -18,4 +20,15 @@ public interface CountsWriter extends Closeable {
    */
   void write(Map<String, Integer> counts) throws IOException;
 
+  /**
+   * Write the counts of all the features, including the features without
+   * counts.
+   * @param counts counts to write
+   * @throws IOException if an error occurs while writing the file
+   */
+  default void write(FeatureCounts counts) throws IOException {
+
+    write(counts.toMap(true));
+  }
+
 }
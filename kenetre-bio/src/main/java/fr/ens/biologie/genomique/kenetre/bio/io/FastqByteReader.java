@@ -0,0 +1,413 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static fr.ens.biologie.genomique.kenetre.bio.io.BioCharsets.FASTQ_CHARSET;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+
+/**
+ * This class implements a Fastq reader that works directly on the bytes of
+ * the input stream. Unlike FastqReader, this reader does not use a
+ * BufferedReader: it fills a large byte window and find the boundaries of the
+ * four lines of an entry in one pass. Only the name, the sequence and the
+ * quality strings are created for each entry. If the reuseResultObject
+ * argument of the constructor is true, the same ReadSequence object is
+ * returned by each call to next().
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class FastqByteReader implements ReadSequenceReader {
+
+  /** Default size of the byte window. */
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  private final InputStream is;
+  private final boolean reuseResultObject;
+
+  private byte[] buffer;
+  private int pos;
+  private int limit;
+  private boolean eof;
+  private int lineStart;
+
+  // Start and end offsets of the 4 lines of the current entry
+  private final int[] lineStarts = new int[4];
+  private final int[] lineEnds = new int[4];
+
+  private ReadSequence result = null;
+  private int lineCount = 0;
+
+  private boolean end = false;
+  private boolean nextCallDone = true;
+  protected IOException ioException;
+  protected BadBioEntryException bbeException;
+
+  @Override
+  public void close() throws IOException {
+
+    this.is.close();
+  }
+
+  @Override
+  public Iterator<ReadSequence> iterator() {
+
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+
+    if (this.end) {
+      return false;
+    }
+
+    this.nextCallDone = false;
+
+    try {
+
+      int entryLine = 0;
+
+      while (entryLine < 4) {
+
+        final int lineEnd = nextLine(entryLine);
+        final int lineStart = this.lineStart;
+
+        if (lineEnd < 0) {
+
+          // End of the file, incomplete entries are discarded like in
+          // FastqReader
+          this.end = true;
+          return false;
+        }
+
+        // Increment line count
+        this.lineCount++;
+
+        // Trim the line
+        final int start = trimStart(this.buffer, lineStart, lineEnd);
+        final int end = trimEnd(this.buffer, start, lineEnd);
+
+        // Discard empty lines between entries
+        if (entryLine == 0 && start == end) {
+          continue;
+        }
+
+        if (entryLine == 0 && this.buffer[start] != '@') {
+          throw new BadBioEntryException(
+              "Invalid Fastq file. First line of the entry don't start with '@' at line "
+                  + this.lineCount,
+              line(lineStart, lineEnd));
+        }
+
+        if (entryLine == 2 && (start == end || this.buffer[start] != '+')) {
+          throw new BadBioEntryException(
+              "Invalid Fastq file. Third line of the entry don't start with '+' at line "
+                  + this.lineCount,
+              line(lineStart, lineEnd));
+        }
+
+        this.lineStarts[entryLine] = start;
+        this.lineEnds[entryLine] = end;
+        entryLine++;
+      }
+
+      // Fill the ReadSequence object
+      if (this.result == null || !this.reuseResultObject) {
+        this.result = new ReadSequence();
+      }
+
+      this.result.setName(string(this.lineStarts[0] + 1, this.lineEnds[0]));
+      this.result.setSequence(string(this.lineStarts[1], this.lineEnds[1]));
+      this.result.setQuality(string(this.lineStarts[3], this.lineEnds[3]));
+
+      return true;
+
+    } catch (IOException e) {
+
+      this.ioException = e;
+      this.end = true;
+      return false;
+    } catch (BadBioEntryException e) {
+
+      this.bbeException = e;
+      this.end = true;
+      return false;
+    }
+  }
+
+  @Override
+  public ReadSequence next() {
+
+    if (this.nextCallDone) {
+      throw new NoSuchElementException();
+    }
+
+    this.nextCallDone = true;
+
+    return this.result;
+  }
+
+  @Override
+  public void remove() {
+
+    throw new UnsupportedOperationException("Unsupported operation");
+  }
+
+  @Override
+  public void throwException() throws IOException, BadBioEntryException {
+
+    if (this.ioException != null) {
+      throw this.ioException;
+    }
+
+    if (this.bbeException != null) {
+      throw this.bbeException;
+    }
+  }
+
+  //
+  // Buffer management
+  //
+
+  /**
+   * Search the end of the next line in the buffer. The position of the buffer
+   * is moved after the end of line character and the start of the line is
+   * saved in the lineStart field. The offsets of the previous lines of the
+   * current entry are updated if the content of the buffer is moved.
+   * @param entryLine number of the lines of the current entry already read
+   * @return the offset of the end of the line (excluded) or -1 if the end of
+   *         the stream has been reached
+   * @throws IOException if an error occurs while reading the stream
+   */
+  private int nextLine(final int entryLine) throws IOException {
+
+    this.lineStart = this.pos;
+    int i = this.pos;
+
+    while (true) {
+
+      final byte[] buf = this.buffer;
+      final int lim = this.limit;
+
+      while (i < lim) {
+        if (buf[i] == '\n') {
+          this.pos = i + 1;
+          return i;
+        }
+        i++;
+      }
+
+      if (this.eof) {
+
+        // Last line of the file without end of line character
+        if (this.pos < lim) {
+          this.pos = lim;
+          return lim;
+        }
+        return -1;
+      }
+
+      // Fill the buffer and keep the current entry in the buffer
+      final int entryStart = entryLine == 0 ? this.pos : this.lineStarts[0];
+      final int shift = fill(entryStart);
+
+      for (int j = 0; j < entryLine; j++) {
+        this.lineStarts[j] -= shift;
+        this.lineEnds[j] -= shift;
+      }
+      this.lineStart -= shift;
+      i -= shift;
+    }
+  }
+
+  /**
+   * Fill the buffer with new data. The data before the keep offset are
+   * discarded.
+   * @param keep offset of the first byte to keep in the buffer
+   * @return the number of bytes the content of the buffer has been shifted
+   * @throws IOException if an error occurs while reading the stream
+   */
+  private int fill(final int keep) throws IOException {
+
+    final int remaining = this.limit - keep;
+
+    if (keep > 0) {
+      System.arraycopy(this.buffer, keep, this.buffer, 0, remaining);
+    } else if (remaining == this.buffer.length) {
+
+      // The current entry is larger than the buffer
+      this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+    }
+
+    this.pos -= keep;
+    this.limit = remaining;
+
+    final int n =
+        this.is.read(this.buffer, this.limit, this.buffer.length - this.limit);
+
+    if (n < 0) {
+      this.eof = true;
+    } else {
+      this.limit += n;
+    }
+
+    return keep;
+  }
+
+  //
+  // Utility methods
+  //
+
+  private String string(final int start, final int end) {
+
+    return new String(this.buffer, start, end - start, FASTQ_CHARSET);
+  }
+
+  private String line(final int start, final int end) {
+
+    int e = end;
+    if (e > start && this.buffer[e - 1] == '\r') {
+      e--;
+    }
+
+    return string(start, e);
+  }
+
+  private static int trimStart(final byte[] buf, final int start,
+      final int end) {
+
+    int i = start;
+    while (i < end && (buf[i] & 0xff) <= ' ') {
+      i++;
+    }
+
+    return i;
+  }
+
+  private static int trimEnd(final byte[] buf, final int start,
+      final int end) {
+
+    int i = end;
+    while (i > start && (buf[i - 1] & 0xff) <= ' ') {
+      i--;
+    }
+
+    return i;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor
+   * @param is InputStream to use
+   */
+  public FastqByteReader(final InputStream is) {
+
+    this(is, false);
+  }
+
+  /**
+   * Public constructor
+   * @param is InputStream to use
+   * @param reuseResultObject true if the same ReadSequence object must be
+   *          returned by each call of next()
+   */
+  public FastqByteReader(final InputStream is,
+      final boolean reuseResultObject) {
+
+    this(is, reuseResultObject, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Public constructor
+   * @param is InputStream to use
+   * @param reuseResultObject true if the same ReadSequence object must be
+   *          returned by each call of next()
+   * @param bufferSize initial size of the byte window
+   */
+  public FastqByteReader(final InputStream is, final boolean reuseResultObject,
+      final int bufferSize) {
+
+    if (is == null) {
+      throw new NullPointerException("InputStream is null");
+    }
+
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException(
+          "Invalid buffer size: " + bufferSize);
+    }
+
+    this.is = is;
+    this.reuseResultObject = reuseResultObject;
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Public constructor
+   * @param file File to use
+   * @throws FileNotFoundException if the file does not exists
+   */
+  public FastqByteReader(final File file) throws FileNotFoundException {
+
+    this(file, false);
+  }
+
+  /**
+   * Public constructor
+   * @param file File to use
+   * @param reuseResultObject true if the same ReadSequence object must be
+   *          returned by each call of next()
+   * @throws FileNotFoundException if the file does not exists
+   */
+  public FastqByteReader(final File file, final boolean reuseResultObject)
+      throws FileNotFoundException {
+
+    this(FileUtils.createInputStream(file), reuseResultObject);
+  }
+
+  /**
+   * Public constructor
+   * @param filename File to use
+   * @throws FileNotFoundException if the file does not exists
+   */
+  public FastqByteReader(final String filename) throws FileNotFoundException {
+
+    this(FileUtils.createInputStream(filename), false);
+  }
+
+}
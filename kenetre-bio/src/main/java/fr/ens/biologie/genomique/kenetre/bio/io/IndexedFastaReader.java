@@ -0,0 +1,605 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static fr.ens.biologie.genomique.kenetre.bio.io.BioCharsets.FASTA_CHARSET;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ens.biologie.genomique.kenetre.bio.Sequence;
+
+/**
+ * This class implements a random access reader for uncompressed FASTA files.
+ * The FASTA file is memory mapped and sequences are located using a samtools
+ * compatible index (.fai file). If no index file exists, the index is created
+ * while opening the reader. Sub-sequences can be read without loading the
+ * whole genome. Once created, the reader can be used by several threads.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class IndexedFastaReader implements Closeable {
+
+  /** Extension of the index files. */
+  public static final String INDEX_EXTENSION = ".fai";
+
+  /** Size of the mappings of the FASTA file. */
+  private static final int MAPPING_SHIFT = 30;
+  private static final long MAPPING_SIZE = 1L << MAPPING_SHIFT;
+
+  private final FileChannel channel;
+  private final ByteBuffer[] mappings;
+  private final Map<String, IndexEntry> index;
+
+  /**
+   * This class define an entry of the index.
+   */
+  private static final class IndexEntry {
+
+    private final String name;
+    private final long length;
+    private final long offset;
+    private final int lineBases;
+    private final int lineWidth;
+
+    @Override
+    public String toString() {
+
+      return this.name
+          + '\t' + this.length + '\t' + this.offset + '\t' + this.lineBases
+          + '\t' + this.lineWidth;
+    }
+
+    private IndexEntry(final String name, final long length,
+        final long offset, final int lineBases, final int lineWidth) {
+
+      this.name = name;
+      this.length = length;
+      this.offset = offset;
+      this.lineBases = lineBases;
+      this.lineWidth = lineWidth;
+    }
+  }
+
+  /**
+   * This class allow to build the index entries while scanning the FASTA
+   * file.
+   */
+  private static final class IndexBuilder {
+
+    private final Map<String, IndexEntry> result = new LinkedHashMap<>();
+    private final StringBuilder header = new StringBuilder();
+
+    private boolean lineStart = true;
+    private boolean inHeader;
+    private long lineStartPos;
+    private int lineBytes;
+    private int lineBases;
+
+    private String name;
+    private long length;
+    private long offset;
+    private int firstLineBases;
+    private int firstLineWidth;
+    private boolean shortLineFound;
+
+    /**
+     * Process a byte of the FASTA file.
+     * @param b the byte
+     * @param pos position of the byte in the file
+     * @throws IOException if the FASTA file is invalid
+     */
+    private void add(final byte b, final long pos) throws IOException {
+
+      if (this.lineStart) {
+
+        this.lineStart = false;
+        this.lineStartPos = pos;
+        this.lineBytes = 0;
+        this.lineBases = 0;
+
+        if (b == '>') {
+          endSequence();
+          this.inHeader = true;
+          this.header.setLength(0);
+          return;
+        }
+
+        if (this.name == null && b != '\n' && b != '\r') {
+          throw new IOException("No FASTA header found at position " + pos);
+        }
+      }
+
+      if (b == '\n') {
+        endLine(pos + 1, true);
+        return;
+      }
+
+      if (this.inHeader) {
+        this.header.append((char) (b & 0xff));
+      } else if (b != '\r') {
+        this.lineBases++;
+      }
+    }
+
+    /**
+     * End the current line.
+     * @param nextLinePos position of the next line in the file
+     * @param endOfLine true if the line ends with an end of line character
+     * @throws IOException if the FASTA file is invalid
+     */
+    private void endLine(final long nextLinePos, final boolean endOfLine)
+        throws IOException {
+
+      this.lineStart = true;
+      this.lineBytes = (int) (nextLinePos - this.lineStartPos);
+
+      if (this.inHeader) {
+
+        this.inHeader = false;
+        this.name = parseName(this.header);
+        this.length = 0;
+        this.offset = nextLinePos;
+        this.firstLineBases = 0;
+        this.firstLineWidth = 0;
+        this.shortLineFound = false;
+        return;
+      }
+
+      if (this.name == null) {
+        return;
+      }
+
+      if (this.lineBases == 0) {
+        // Empty lines are only allowed at the end of a sequence
+        this.shortLineFound = true;
+        return;
+      }
+
+      if (this.shortLineFound) {
+        throw new IOException(
+            "Different line length in sequence: " + this.name);
+      }
+
+      if (this.length == 0) {
+        this.firstLineBases = this.lineBases;
+        this.firstLineWidth = this.lineBytes;
+      } else if (this.lineBases > this.firstLineBases
+          || (endOfLine && this.lineBases == this.firstLineBases
+              && this.lineBytes != this.firstLineWidth)) {
+        throw new IOException(
+            "Different line length in sequence: " + this.name);
+      } else if (this.lineBases < this.firstLineBases) {
+        this.shortLineFound = true;
+      }
+
+      this.length += this.lineBases;
+    }
+
+    /**
+     * End the current sequence.
+     * @throws IOException if the FASTA file is invalid
+     */
+    private void endSequence() throws IOException {
+
+      if (this.name == null) {
+        return;
+      }
+
+      if (this.result.containsKey(this.name)) {
+        throw new IOException("Sequence name found twice: " + this.name);
+      }
+
+      this.result.put(this.name, new IndexEntry(this.name, this.length,
+          this.offset, this.firstLineBases, this.firstLineWidth));
+      this.name = null;
+    }
+
+    /**
+     * End the FASTA file.
+     * @param fileLength the length of the file
+     * @return the index entries
+     * @throws IOException if the FASTA file is invalid
+     */
+    private Map<String, IndexEntry> end(final long fileLength)
+        throws IOException {
+
+      // Last line without end of line
+      if (!this.lineStart) {
+
+        endLine(fileLength, false);
+      }
+
+      endSequence();
+
+      return this.result;
+    }
+
+    private static String parseName(final CharSequence header)
+        throws IOException {
+
+      final String s = header.toString().trim();
+      int end = 0;
+      while (end < s.length() && !Character.isWhitespace(s.charAt(end))) {
+        end++;
+      }
+
+      if (end == 0) {
+        throw new IOException("Sequence header is empty");
+      }
+
+      return s.substring(0, end);
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the names of the sequences.
+   * @return an unmodifiable list with the names of the sequences
+   */
+  public List<String> getSequenceNames() {
+
+    return Collections.unmodifiableList(new ArrayList<>(this.index.keySet()));
+  }
+
+  /**
+   * Test if the FASTA file contains a sequence.
+   * @param sequenceName the name of the sequence
+   * @return true if the FASTA file contains the sequence
+   */
+  public boolean containsSequence(final String sequenceName) {
+
+    return this.index.containsKey(sequenceName);
+  }
+
+  /**
+   * Get the length of a sequence.
+   * @param sequenceName the name of the sequence
+   * @return the length of the sequence or -1 if the sequence does not exist
+   */
+  public long getSequenceLength(final String sequenceName) {
+
+    final IndexEntry entry = this.index.get(sequenceName);
+
+    return entry == null ? -1 : entry.length;
+  }
+
+  //
+  // Sequence access methods
+  //
+
+  /**
+   * Get a whole sequence.
+   * @param sequenceName the name of the sequence
+   * @return a new Sequence object
+   * @throws IOException if the sequence does not exist or is too long
+   */
+  public Sequence getSequence(final String sequenceName) throws IOException {
+
+    final IndexEntry entry = getEntry(sequenceName);
+
+    if (entry.length > Integer.MAX_VALUE) {
+      throw new IOException("The sequence is too long: " + sequenceName);
+    }
+
+    return getSequence(sequenceName, 1, (int) entry.length);
+  }
+
+  /**
+   * Get a region of a sequence.
+   * @param sequenceName the name of the sequence
+   * @param start the start of the region (1-based)
+   * @param end the end of the region (inclusive)
+   * @return a new Sequence object
+   * @throws IOException if the sequence does not exist or if the region is
+   *           invalid
+   */
+  public Sequence getSequence(final String sequenceName, final long start,
+      final long end) throws IOException {
+
+    final IndexEntry entry = getEntry(sequenceName);
+
+    if (start < 1 || end > entry.length || start > end + 1) {
+      throw new IOException("Invalid region for sequence "
+          + sequenceName + " (length: " + entry.length + "): " + start + "-"
+          + end);
+    }
+
+    if (end - start + 1 > Integer.MAX_VALUE) {
+      throw new IOException("The region is too long: " + start + "-" + end);
+    }
+
+    final byte[] result = new byte[(int) (end - start + 1)];
+    long pos = start - 1;
+    int resultPos = 0;
+
+    while (resultPos < result.length) {
+
+      final long line = pos / entry.lineBases;
+      final int column = (int) (pos % entry.lineBases);
+      final int n =
+          Math.min(result.length - resultPos, entry.lineBases - column);
+
+      read(entry.offset + line * entry.lineWidth + column, result, resultPos,
+          n);
+
+      pos += n;
+      resultPos += n;
+    }
+
+    return new Sequence(sequenceName, new String(result, FASTA_CHARSET));
+  }
+
+  //
+  // Index methods
+  //
+
+  /**
+   * Write the index of the FASTA file in the samtools .fai format.
+   * @param os output stream
+   * @throws IOException if an error occurs while writing the index
+   */
+  public void writeIndex(final OutputStream os) throws IOException {
+
+    requireNonNull(os, "os argument cannot be null");
+
+    try (Writer writer = new BufferedWriter(
+        new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+
+      for (IndexEntry entry : this.index.values()) {
+        writer.write(entry.toString());
+        writer.write('\n');
+      }
+    }
+  }
+
+  /**
+   * Create the samtools .fai index of a FASTA file. The index file is created
+   * in the directory of the FASTA file.
+   * @param fastaFile the FASTA file
+   * @return the index file
+   * @throws IOException if an error occurs while creating the index
+   */
+  public static File createIndex(final File fastaFile) throws IOException {
+
+    requireNonNull(fastaFile, "fastaFile argument cannot be null");
+
+    final File result = indexFile(fastaFile);
+
+    try (IndexedFastaReader reader =
+        new IndexedFastaReader(fastaFile, null)) {
+      reader.writeIndex(new FileOutputStream(result));
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the index file of a FASTA file.
+   * @param fastaFile the FASTA file
+   * @return the index file
+   */
+  public static File indexFile(final File fastaFile) {
+
+    requireNonNull(fastaFile, "fastaFile argument cannot be null");
+
+    return new File(fastaFile.getPath() + INDEX_EXTENSION);
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    this.channel.close();
+  }
+
+  //
+  // Internal methods
+  //
+
+  private IndexEntry getEntry(final String sequenceName) throws IOException {
+
+    requireNonNull(sequenceName, "sequenceName argument cannot be null");
+
+    final IndexEntry result = this.index.get(sequenceName);
+
+    if (result == null) {
+      throw new IOException("Unknown sequence: " + sequenceName);
+    }
+
+    return result;
+  }
+
+  /**
+   * Read bytes of the FASTA file.
+   * @param filePos position in the file
+   * @param dst destination array
+   * @param offset offset in the destination array
+   * @param length number of bytes to read
+   */
+  private void read(final long filePos, final byte[] dst, final int offset,
+      final int length) {
+
+    long pos = filePos;
+    int off = offset;
+    int len = length;
+
+    while (len > 0) {
+
+      final ByteBuffer mapping =
+          this.mappings[(int) (pos >>> MAPPING_SHIFT)].duplicate();
+      final int mappingPos = (int) (pos & (MAPPING_SIZE - 1));
+      final int n = Math.min(len, mapping.limit() - mappingPos);
+
+      mapping.position(mappingPos);
+      mapping.get(dst, off, n);
+
+      pos += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Create the index of the FASTA file by scanning the mappings.
+   * @return the index entries
+   * @throws IOException if the FASTA file is invalid
+   */
+  private Map<String, IndexEntry> createIndex() throws IOException {
+
+    final IndexBuilder builder = new IndexBuilder();
+    long pos = 0;
+
+    for (ByteBuffer mapping : this.mappings) {
+
+      final ByteBuffer buffer = mapping.duplicate();
+      while (buffer.hasRemaining()) {
+        builder.add(buffer.get(), pos++);
+      }
+    }
+
+    return builder.end(pos);
+  }
+
+  /**
+   * Read a samtools .fai index.
+   * @param is input stream of the index
+   * @return the index entries
+   * @throws IOException if an error occurs while reading the index
+   */
+  private static Map<String, IndexEntry> readIndex(final InputStream is)
+      throws IOException {
+
+    final Map<String, IndexEntry> result = new LinkedHashMap<>();
+
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(is, StandardCharsets.UTF_8))) {
+
+      String line;
+      int lineCount = 0;
+
+      while ((line = reader.readLine()) != null) {
+
+        lineCount++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        final String[] fields = line.split("\t");
+        if (fields.length != 5) {
+          throw new IOException("Invalid number of fields found line "
+              + lineCount + " of FASTA index, 5 fields are expected: "
+              + line);
+        }
+
+        try {
+          result.put(fields[0],
+              new IndexEntry(fields[0], Long.parseLong(fields[1]),
+                  Long.parseLong(fields[2]), Integer.parseInt(fields[3]),
+                  Integer.parseInt(fields[4])));
+        } catch (NumberFormatException e) {
+          throw new IOException(
+              "Invalid FASTA index entry line " + lineCount + ": " + line);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor. The index is read from the .fai file next to the
+   * FASTA file if it exists, otherwise the index is created.
+   * @param fastaFile the FASTA file
+   * @throws IOException if an error occurs while opening the file
+   */
+  public IndexedFastaReader(final File fastaFile) throws IOException {
+
+    this(fastaFile, indexFile(fastaFile).isFile() ? indexFile(fastaFile) : null);
+  }
+
+  /**
+   * Public constructor.
+   * @param fastaFile the FASTA file
+   * @param indexFile the .fai index file. If null, the index is created
+   * @throws IOException if an error occurs while opening the file
+   */
+  public IndexedFastaReader(final File fastaFile, final File indexFile)
+      throws IOException {
+
+    requireNonNull(fastaFile, "fastaFile argument cannot be null");
+
+    this.channel = new FileInputStream(fastaFile).getChannel();
+
+    try {
+
+      // Map the file, several mappings are required for files over 2 GB
+      final long size = this.channel.size();
+      final int count = (int) ((size + MAPPING_SIZE - 1) >>> MAPPING_SHIFT);
+      this.mappings = new MappedByteBuffer[count];
+
+      for (int i = 0; i < count; i++) {
+
+        final long start = i * MAPPING_SIZE;
+        this.mappings[i] = this.channel.map(FileChannel.MapMode.READ_ONLY,
+            start, Math.min(MAPPING_SIZE, size - start));
+      }
+
+      this.index = indexFile == null
+          ? createIndex() : readIndex(new FileInputStream(indexFile));
+
+    } catch (IOException | RuntimeException e) {
+      this.channel.close();
+      throw e;
+    }
+  }
+
+}
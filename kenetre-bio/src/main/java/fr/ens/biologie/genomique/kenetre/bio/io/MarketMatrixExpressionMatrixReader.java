@@ -5,12 +5,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.zip.GZIPInputStream;
 
 import com.google.common.base.Splitter;
 
+import fr.ens.biologie.genomique.kenetre.bio.CSCExpressionMatrix;
 import fr.ens.biologie.genomique.kenetre.bio.DenseExpressionMatrix;
 import fr.ens.biologie.genomique.kenetre.bio.ExpressionMatrix;
 import fr.ens.biologie.genomique.kenetre.io.FileUtils;
@@ -28,6 +30,28 @@ public class MarketMatrixExpressionMatrixReader
 
   private final InputStream is;
 
+  /**
+   * This interface define a handler for the content of a matrix file.
+   */
+  private interface EntryHandler {
+
+    /**
+     * Handle the size of the matrix.
+     * @param rowCount the row count
+     * @param columnCount the column count
+     */
+    void size(int rowCount, int columnCount);
+
+    /**
+     * Handle an entry of the matrix.
+     * @param i the row number of the entry
+     * @param j the column number of the entry
+     * @param value the value of the entry
+     * @return false if the entry is invalid
+     */
+    boolean entry(int i, int j, double value);
+  }
+
   /**
    * Get the row name of a row number
    * @param rowNumber row number
@@ -58,10 +82,96 @@ public class MarketMatrixExpressionMatrixReader
 
     Objects.requireNonNull(matrix, "matrix argument cannot be null");
 
+    parse(new EntryHandler() {
+
+      @Override
+      public void size(final int rowCount, final int columnCount) {
+
+        // Fill row names
+        for (int k = 1; k <= rowCount; k++) {
+          matrix.addRow(getRowName(k));
+        }
+
+        // Fill column names
+        for (int k = 1; k <= columnCount; k++) {
+          matrix.addColumn(getColumnName(k));
+        }
+      }
+
+      @Override
+      public boolean entry(final int i, final int j, final double value) {
+
+        matrix.setValue(getRowName(i), getColumnName(j), value);
+        return true;
+      }
+    });
+
+    return matrix;
+  }
+
+  /**
+   * Read the matrix in a compressed sparse column matrix. Values are directly
+   * stored in primitive arrays without any boxing.
+   * @return a CSCExpressionMatrix object
+   * @throws IOException if an error occurs while reading the file
+   */
+  public CSCExpressionMatrix readCSC() throws IOException {
+
+    final class BuilderHandler implements EntryHandler {
+
+      private CSCExpressionMatrix.Builder builder;
+      private int rowCount;
+      private int columnCount;
+
+      @Override
+      public void size(final int rowCount, final int columnCount) {
+
+        final List<String> rowNames = new ArrayList<>(rowCount);
+        for (int k = 1; k <= rowCount; k++) {
+          rowNames.add(getRowName(k));
+        }
+
+        final List<String> columnNames = new ArrayList<>(columnCount);
+        for (int k = 1; k <= columnCount; k++) {
+          columnNames.add(getColumnName(k));
+        }
+
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.builder = new CSCExpressionMatrix.Builder(rowNames, columnNames);
+      }
+
+      @Override
+      public boolean entry(final int i, final int j, final double value) {
+
+        if (i < 1 || i > this.rowCount || j < 1 || j > this.columnCount) {
+          return false;
+        }
+
+        this.builder.add(i - 1, j - 1, value);
+        return true;
+      }
+    }
+
+    final BuilderHandler handler = new BuilderHandler();
+    parse(handler);
+
+    if (handler.builder == null) {
+      throw new IOException("No matrix size found in Market Matrix file");
+    }
+
+    return handler.builder.build();
+  }
+
+  /**
+   * Parse the matrix file.
+   * @param handler the handler of the content of the file
+   * @throws IOException if an error occurs while reading the file
+   */
+  private void parse(final EntryHandler handler) throws IOException {
+
     boolean first = true;
 
-    int rowCount = -1;
-    int columnCount = -1;
     int nonzero = -1;
 
     String line;
@@ -147,27 +257,14 @@ public class MarketMatrixExpressionMatrixReader
         }
 
         if (nonzero == -1) {
-          rowCount = i;
-          columnCount = j;
           nonzero = (int) value;
-
-          // Fill row names
-          for (int k = 1; k <= rowCount; k++) {
-            matrix.addRow(getRowName(k));
-          }
-
-          // Fill column names
-          for (int k = 1; k <= columnCount; k++) {
-            matrix.addColumn(getColumnName(k));
-          }
-
-        } else {
-          matrix.setValue(getRowName(i), getColumnName(j), value);
+          handler.size(i, j);
+        } else if (!handler.entry(i, j, value)) {
+          throw new IOException(
+              "Invalid entry position line #" + lineCount + ": " + line);
         }
       }
     }
-
-    return matrix;
   }
 
   @Override
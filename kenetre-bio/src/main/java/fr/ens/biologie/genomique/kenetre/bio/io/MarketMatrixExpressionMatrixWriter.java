@@ -1,5 +1,6 @@
 package fr.ens.biologie.genomique.kenetre.bio.io;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -17,6 +18,7 @@ import java.util.zip.GZIPOutputStream;
 
 import com.google.common.math.DoubleMath;
 
+import fr.ens.biologie.genomique.kenetre.bio.CSCExpressionMatrix;
 import fr.ens.biologie.genomique.kenetre.bio.ExpressionMatrix;
 import fr.ens.biologie.genomique.kenetre.bio.Matrix;
 
@@ -49,9 +51,24 @@ public class MarketMatrixExpressionMatrixWriter
     Set<String> rowNames = rowNamesToWrite instanceof Set
         ? (Set<String>) rowNamesToWrite : new HashSet<>(rowNamesToWrite);
 
-    int entryCount = entryCount(matrix, rowNames);
-    boolean intMatrix = entryCount < -1;
-    entryCount = Math.abs(entryCount);
+    if (matrix instanceof CSCExpressionMatrix) {
+      write((CSCExpressionMatrix) matrix, rowNames);
+      return;
+    }
+
+    // Count the entries to write
+    int entryCount = 0;
+    boolean intMatrix = true;
+
+    for (Matrix.Entry<Double> e : matrix.nonZeroValues()) {
+
+      if (rowNames.contains(e.getRowName())) {
+        if (intMatrix && !DoubleMath.isMathematicalInteger(e.getValue())) {
+          intMatrix = false;
+        }
+        entryCount++;
+      }
+    }
 
     try (Writer writer = new OutputStreamWriter(this.os)) {
 
@@ -82,46 +99,90 @@ public class MarketMatrixExpressionMatrixWriter
   }
 
   /**
-   * Get the indexes of the rows and columns.
-   * @param entryNames entry names
-   * @return a map with the indexes of the entries
+   * Write a compressed sparse column matrix. The values are directly read
+   * from the primitive arrays of the matrix.
+   * @param matrix matrix to write
+   * @param rowNamesToWrite row names to write
+   * @throws IOException if an error occurs while writing the file
    */
-  private static Map<String, Integer> keyPositions(
-      final List<String> entryNames) {
+  private void write(final CSCExpressionMatrix matrix,
+      final Set<String> rowNamesToWrite) throws IOException {
 
-    final Map<String, Integer> result = new HashMap<>();
-    int count = 1;
+    final boolean[] rowsToWrite = new boolean[matrix.getRowCount()];
+    for (String rowName : rowNamesToWrite) {
 
-    for (String e : entryNames) {
-      result.put(e, count++);
+      final int rowIndex = matrix.getRowIndex(rowName);
+      if (rowIndex != -1) {
+        rowsToWrite[rowIndex] = true;
+      }
     }
 
-    return result;
-  }
-
-  /**
-   * Count the number of entries in the matrix.
-   * @param matrix the matrix
-   * @param rowNames the row names to write
-   * @return the number of the entries in the matrix. If the result is negative
-   *         the matrix is an integer matrix
-   */
-  private static int entryCount(ExpressionMatrix matrix, Set<String> rowNames) {
-
+    // Count the entries to write
     int entryCount = 0;
     boolean intMatrix = true;
+    CSCExpressionMatrix.NonZeroCursor cursor = matrix.nonZeroCursor();
 
-    for (Matrix.Entry<Double> e : matrix.nonZeroValues()) {
+    while (cursor.next()) {
 
-      if (rowNames.contains(e.getRowName())) {
-        if (!intMatrix && DoubleMath.isMathematicalInteger(e.getValue())) {
+      if (rowsToWrite[cursor.getRowIndex()]) {
+        if (intMatrix && !matrix.isIntegerMatrix()
+            && !DoubleMath.isMathematicalInteger(cursor.getValue())) {
           intMatrix = false;
         }
         entryCount++;
       }
     }
 
-    return entryCount * (intMatrix ? -1 : 1);
+    try (Writer writer =
+        new BufferedWriter(new OutputStreamWriter(this.os))) {
+
+      // Write header
+      writer.write(MarketMatrixExpressionMatrixReader.MAGIC_KEY);
+      writer.write("matrix coordinate "
+          + (intMatrix ? "integer" : "real") + " general\n");
+
+      // Write the size of the matrix
+      writer.write(""
+          + matrix.getRowCount() + ' ' + matrix.getColumnCount() + ' '
+          + entryCount + '\n');
+
+      cursor = matrix.nonZeroCursor();
+      while (cursor.next()) {
+
+        final int rowIndex = cursor.getRowIndex();
+
+        if (rowsToWrite[rowIndex]) {
+
+          final double value = cursor.getValue();
+
+          writer.write(Integer.toString(rowIndex + 1));
+          writer.write(' ');
+          writer.write(Integer.toString(cursor.getColumnIndex() + 1));
+          writer.write(' ');
+          writer.write(intMatrix
+              ? Integer.toString((int) value) : Double.toString(value));
+          writer.write('\n');
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the indexes of the rows and columns.
+   * @param entryNames entry names
+   * @return a map with the indexes of the entries
+   */
+  private static Map<String, Integer> keyPositions(
+      final List<String> entryNames) {
+
+    final Map<String, Integer> result = new HashMap<>();
+    int count = 1;
+
+    for (String e : entryNames) {
+      result.put(e, count++);
+    }
+
+    return result;
   }
 
   @Override
@@ -0,0 +1,177 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import fr.ens.biologie.genomique.kenetre.io.ParallelGZipOutputStream;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.util.BinaryCodec;
+
+/**
+ * This class define a BAM writer that compress the BGZF blocks of the output
+ * file using a pool of threads. The records are encoded by the calling thread.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ParallelBAMWriter implements Closeable {
+
+  private static final byte[] BAM_MAGIC = {'B', 'A', 'M', 1};
+
+  private final OutputStream out;
+  private final BAMRecordCodec codec;
+  private long recordCount;
+  private boolean closed;
+
+  /**
+   * Write a record.
+   * @param record the record to write
+   * @throws IOException if an error occurs while writing the record
+   */
+  public void write(final SAMRecord record) throws IOException {
+
+    requireNonNull(record, "record argument cannot be null");
+
+    if (this.closed) {
+      throw new IOException("The BAM writer is closed");
+    }
+
+    try {
+      this.codec.encode(record);
+    } catch (RuntimeException e) {
+      // htsjdk wraps the I/O errors in runtime exceptions
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+
+    this.recordCount++;
+  }
+
+  /**
+   * Get the number of records written.
+   * @return the number of records written
+   */
+  public long getRecordCount() {
+
+    return this.recordCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    this.out.close();
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Write the header of the BAM file.
+   * @param out output stream
+   * @param header the SAM header
+   */
+  private static void writeHeader(final OutputStream out,
+      final SAMFileHeader header) {
+
+    final StringWriter textHeader = new StringWriter();
+    new SAMTextHeaderCodec().encode(textHeader, header);
+
+    final BinaryCodec codec = new BinaryCodec(out);
+
+    codec.writeBytes(BAM_MAGIC);
+    codec.writeString(textHeader.toString(), true, false);
+    codec.writeInt(header.getSequenceDictionary().size());
+
+    for (SAMSequenceRecord sequence : header.getSequenceDictionary()
+        .getSequences()) {
+      codec.writeString(sequence.getSequenceName(), true, true);
+      codec.writeInt(sequence.getSequenceLength());
+    }
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param out output stream
+   * @param header header of the SAM file
+   * @param threads number of compression threads
+   * @throws IOException if an error occurs while writing the header
+   */
+  public ParallelBAMWriter(final OutputStream out, final SAMFileHeader header,
+      final int threads) throws IOException {
+
+    requireNonNull(out, "out argument cannot be null");
+    requireNonNull(header, "header argument cannot be null");
+
+    this.out = new ParallelGZipOutputStream(out, threads);
+
+    try {
+      writeHeader(this.out, header);
+    } catch (RuntimeException e) {
+      this.out.close();
+      throw new IOException("Unable to write the BAM header", e);
+    }
+
+    this.codec = new BAMRecordCodec(header);
+    this.codec.setOutputStream(this.out);
+  }
+
+  /**
+   * Constructor.
+   * @param file output file
+   * @param header header of the SAM file
+   * @param threads number of compression threads
+   * @throws IOException if an error occurs while writing the header
+   */
+  public ParallelBAMWriter(final File file, final SAMFileHeader header,
+      final int threads) throws IOException {
+
+    this(new FileOutputStream(
+        requireNonNull(file, "file argument cannot be null")), header, threads);
+  }
+
+}
@@ -2,63 +2,336 @@ package fr.ens.biologie.genomique.kenetre.bio.io;
 
 import static fr.ens.biologie.genomique.kenetre.bio.io.BEDWriter.DEFAULT_FORMAT;
 import static fr.ens.biologie.genomique.kenetre.bio.io.BioCharsets.BED_CHARSET;
+import static fr.ens.biologie.genomique.kenetre.util.ExternalMerger.BUFFER_SIZE;
 import static java.util.Objects.requireNonNull;
 
-import java.io.BufferedWriter;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
 import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import fr.ens.biologie.genomique.kenetre.bio.BEDEntry;
-import fr.ens.biologie.genomique.kenetre.bio.BEDEntry.DefaultBEDEntryComparator;
 import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+import fr.ens.biologie.genomique.kenetre.util.ExternalMerger;
+import fr.ens.biologie.genomique.kenetre.util.StringUtils;
 
 /**
- * This class define a Sorted BED writer.
+ * This class define a Sorted BED writer. The entries are stored in memory in a
+ * compact form until the memory budget is reached: the sort keys (chromosome
+ * ordinal, start, end and name) are kept in primitive arrays and the BED text
+ * of the entries is kept as encoded bytes. Each chunk is then sorted by a
+ * background thread while the next chunk is filled, and saved in a binary
+ * temporary file. The BED text is written only once, by a k-way merge of the
+ * temporary files. Like Collections.sort(), the sort is stable.
  * @since 0.33
  * @author Laurent Jourdren
  */
 public class SortedBEDWriter implements Closeable {
 
-  private static final int CHUNK_SIZE = 1_000_000;
-  private List<BEDEntry> chunk = new ArrayList<>(CHUNK_SIZE);
-  private List<File> tempFiles = new ArrayList<>();
+  /** Default memory budget in bytes. */
+  public static final long DEFAULT_MAX_MEMORY = 256L * 1024 * 1024;
+
+  private static final int INITIAL_CHUNK_CAPACITY = 1024;
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  /** Estimated memory used by an entry without its name and its BED text. */
+  private static final int ENTRY_OVERHEAD = 48;
+
+  /** Estimated memory used by a String object without its content. */
+  private static final int STRING_OVERHEAD = 64;
 
   private final int format;
   private final Writer writer;
   private File temporaryDirectory;
+  private long maxMemory = DEFAULT_MAX_MEMORY;
+  private int threads = 1;
+
+  private final Map<String, Integer> chromosomeIds = new HashMap<>();
+  private final List<String> chromosomeNames = new ArrayList<>();
+
+  private Chunk chunk = new Chunk();
+  private final List<File> tempFiles = new ArrayList<>();
+  private final Deque<Future<?>> pendingChunks = new ArrayDeque<>();
+  private ExecutorService executor;
+  private boolean closed;
 
   //
   // Internal classes
   //
 
-  private static class BEDLine {
-    private final BEDEntry line;
-    private final BEDReader reader;
+  /**
+   * This class define a chunk of entries stored in memory.
+   */
+  private static final class Chunk {
+
+    private int size;
+    private int[] chromosomes = new int[INITIAL_CHUNK_CAPACITY];
+    private int[] starts = new int[INITIAL_CHUNK_CAPACITY];
+    private int[] ends = new int[INITIAL_CHUNK_CAPACITY];
+    private String[] names = new String[INITIAL_CHUNK_CAPACITY];
+    private int[] offsets = new int[INITIAL_CHUNK_CAPACITY + 1];
+    private byte[] data = new byte[BUFFER_SIZE];
+    private long memory;
+
+    private long[] keys;
+
+    /**
+     * Add an entry to the chunk.
+     * @param chromosome chromosome ordinal of the entry
+     * @param entry the entry
+     * @param bed the BED text of the entry
+     */
+    private void add(final int chromosome, final BEDEntry entry,
+        final byte[] bed) {
+
+      if (this.size == this.chromosomes.length) {
+
+        final int capacity = this.size * 2;
+        this.chromosomes = Arrays.copyOf(this.chromosomes, capacity);
+        this.starts = Arrays.copyOf(this.starts, capacity);
+        this.ends = Arrays.copyOf(this.ends, capacity);
+        this.names = Arrays.copyOf(this.names, capacity);
+        this.offsets = Arrays.copyOf(this.offsets, capacity + 1);
+      }
+
+      final int offset = this.offsets[this.size];
+      if (offset + bed.length > this.data.length) {
+        this.data = Arrays.copyOf(this.data,
+            Math.max(offset + bed.length, this.data.length * 2));
+      }
+      System.arraycopy(bed, 0, this.data, offset, bed.length);
 
-    public BEDLine(BEDEntry line, BEDReader reader) {
-      this.line = line;
-      this.reader = reader;
+      final String name = entry.getName();
+
+      this.chromosomes[this.size] = chromosome;
+      this.starts[this.size] = entry.getStart();
+      this.ends[this.size] = entry.getEnd();
+      this.names[this.size] = name;
+      this.offsets[this.size + 1] = offset + bed.length;
+      this.size++;
+
+      this.memory += ENTRY_OVERHEAD + bed.length;
+      if (name != null) {
+        this.memory += STRING_OVERHEAD + 2 * name.length();
+      }
+    }
+
+    /**
+     * Sort the entries of the chunk.
+     * @param ranks the ranks of the chromosomes in the sort order
+     * @return an array with the indexes of the entries in the sort order
+     */
+    private int[] sort(final int[] ranks) {
+
+      this.keys = new long[this.size];
+      final int[] index = new int[this.size];
+
+      for (int i = 0; i < this.size; i++) {
+        this.keys[i] = packKey(ranks[this.chromosomes[i]], this.starts[i]);
+        index[i] = i;
+      }
+
+      mergeSort(index, index.clone(), 0, this.size);
+      this.keys = null;
+
+      return index;
+    }
+
+    /**
+     * Sort a range of indexes with a stable merge sort.
+     * @param index the array to sort
+     * @param tmp a copy of the array to sort
+     * @param from the start of the range
+     * @param to the end of the range (exclusive)
+     */
+    private void mergeSort(final int[] index, final int[] tmp, final int from,
+        final int to) {
+
+      if (to - from <= INSERTION_SORT_THRESHOLD) {
+
+        for (int i = from + 1; i < to; i++) {
+
+          final int value = index[i];
+          int j = i - 1;
+          while (j >= from && compare(index[j], value) > 0) {
+            index[j + 1] = index[j];
+            j--;
+          }
+          index[j + 1] = value;
+        }
+        return;
+      }
+
+      // Sort the two halves in tmp, then merge them in index
+      final int middle = (from + to) >>> 1;
+      mergeSort(tmp, index, from, middle);
+      mergeSort(tmp, index, middle, to);
+
+      if (compare(tmp[middle - 1], tmp[middle]) <= 0) {
+        System.arraycopy(tmp, from, index, from, to - from);
+        return;
+      }
+
+      for (int i = from, p = from, q = middle; i < to; i++) {
+
+        if (q >= to || p < middle && compare(tmp[p], tmp[q]) <= 0) {
+          index[i] = tmp[p++];
+        } else {
+          index[i] = tmp[q++];
+        }
+      }
+    }
+
+    private int compare(final int i, final int j) {
+
+      return compareEntries(this.keys[i], this.ends[i], this.names[i],
+          this.keys[j], this.ends[j], this.names[j]);
+    }
+
+    /**
+     * Write the entries of the chunk in a temporary file.
+     * @param out output stream of the temporary file
+     * @param index the indexes of the entries in the sort order
+     * @throws IOException if an error occurs while writing the entries
+     */
+    private void write(final DataOutputStream out, final int[] index)
+        throws IOException {
+
+      for (int i : index) {
+
+        out.writeInt(this.chromosomes[i]);
+        out.writeInt(this.starts[i]);
+        out.writeInt(this.ends[i]);
+        writeName(out, this.names[i]);
+        out.writeInt(this.offsets[i + 1] - this.offsets[i]);
+        out.write(this.data, this.offsets[i],
+            this.offsets[i + 1] - this.offsets[i]);
+      }
+    }
+
+    /**
+     * Write the entries of the chunk as text.
+     * @param writer the writer to use
+     * @param index the indexes of the entries in the sort order
+     * @throws IOException if an error occurs while writing the entries
+     */
+    private void write(final Writer writer, final int[] index)
+        throws IOException {
+
+      for (int i : index) {
+        writer.write(new String(this.data, this.offsets[i],
+            this.offsets[i + 1] - this.offsets[i], BED_CHARSET));
+        writer.write('\n');
+      }
     }
   }
 
-  private static class BEDLineComparator implements Comparator<BEDLine> {
+  /**
+   * This class implements a k-way merge of the entries of the temporary files.
+   */
+  private static final class BEDMerger extends ExternalMerger {
+
+    private final int[] ranks;
+
+    private final int[] chromosomes;
+    private final int[] starts;
+    private final int[] ends;
+    private final String[] names;
+    private final long[] keys;
+    private final byte[][] beds;
+    private final int[] bedLengths;
+
+    @Override
+    protected boolean readHead(final int run, final DataInputStream in)
+        throws IOException {
+
+      try {
+        this.chromosomes[run] = in.readInt();
+      } catch (EOFException e) {
+        return false;
+      }
 
-    private static final Comparator<BEDEntry> comparator =
-        new DefaultBEDEntryComparator();
+      this.starts[run] = in.readInt();
+      this.ends[run] = in.readInt();
+      this.names[run] = readName(in);
+      this.keys[run] =
+          packKey(this.ranks[this.chromosomes[run]], this.starts[run]);
+
+      final int length = in.readInt();
+      if (length > this.beds[run].length) {
+        this.beds[run] = new byte[Math.max(length, this.beds[run].length * 2)];
+      }
+      in.readFully(this.beds[run], 0, length);
+      this.bedLengths[run] = length;
+
+      return true;
+    }
 
     @Override
-    public int compare(BEDLine o1, BEDLine o2) {
-      return comparator.compare(o1.line, o2.line);
+    protected int compareHeads(final int run1, final int run2) {
+
+      return compareEntries(this.keys[run1], this.ends[run1], this.names[run1],
+          this.keys[run2], this.ends[run2], this.names[run2]);
+    }
+
+    /**
+     * Copy the head of a run in a temporary file.
+     * @param run the index of the run
+     * @param out output stream of the temporary file
+     * @throws IOException if an error occurs while writing the entry
+     */
+    private void write(final int run, final DataOutputStream out)
+        throws IOException {
+
+      out.writeInt(this.chromosomes[run]);
+      out.writeInt(this.starts[run]);
+      out.writeInt(this.ends[run]);
+      writeName(out, this.names[run]);
+      out.writeInt(this.bedLengths[run]);
+      out.write(this.beds[run], 0, this.bedLengths[run]);
+    }
+
+    /**
+     * Write the head of a run as text.
+     * @param run the index of the run
+     * @param writer the writer to use
+     * @throws IOException if an error occurs while writing the entry
+     */
+    private void write(final int run, final Writer writer) throws IOException {
+
+      writer.write(
+          new String(this.beds[run], 0, this.bedLengths[run], BED_CHARSET));
+      writer.write('\n');
+    }
+
+    private BEDMerger(final List<File> files, final int[] ranks) {
+
+      super(files);
+
+      final int n = files.size();
+      this.ranks = ranks;
+      this.chromosomes = new int[n];
+      this.starts = new int[n];
+      this.ends = new int[n];
+      this.names = new String[n];
+      this.keys = new long[n];
+      this.beds = new byte[n][256];
+      this.bedLengths = new int[n];
     }
   }
 
@@ -84,6 +357,35 @@ public class SortedBEDWriter implements Closeable {
     this.temporaryDirectory = temporaryDirectory;
   }
 
+  /**
+   * Set the memory budget of the writer. The memory is shared between the
+   * chunk being filled and the chunks being sorted.
+   * @param maxMemory the memory budget in bytes
+   */
+  public void setMaxMemory(final long maxMemory) {
+
+    if (maxMemory < 1) {
+      throw new IllegalArgumentException(
+          "maxMemory must be greater than 0: " + maxMemory);
+    }
+
+    this.maxMemory = maxMemory;
+  }
+
+  /**
+   * Set the number of threads used to sort the chunks.
+   * @param threads the number of threads
+   */
+  public void setThreads(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "threads must be greater than 0: " + threads);
+    }
+
+    this.threads = threads;
+  }
+
   /**
    * Write the current entry.
    * @param entry the entry to write
@@ -95,20 +397,62 @@ public class SortedBEDWriter implements Closeable {
       return;
     }
 
-    this.chunk.add(entry);
-    if (this.chunk.size() == CHUNK_SIZE) {
-      createSortedTempFile();
+    if (this.closed) {
+      throw new IllegalStateException("The writer is closed");
+    }
+
+    final String chromosomeName = entry.getChromosomeName();
+    Integer chromosome = this.chromosomeIds.get(chromosomeName);
+    if (chromosome == null) {
+      chromosome = this.chromosomeNames.size();
+      this.chromosomeIds.put(chromosomeName, chromosome);
+      this.chromosomeNames.add(chromosomeName);
+    }
+
+    this.chunk.add(chromosome, entry,
+        entry.toBED(this.format).getBytes(BED_CHARSET));
+
+    if (this.chunk.memory >= this.maxMemory / (this.threads + 1)) {
+      saveChunk();
     }
   }
 
   @Override
   public void close() throws IOException {
 
-    // Save and sort the remaining data
-    createSortedTempFile();
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    try (Writer w = this.writer) {
+
+      // All the entries are in memory
+      if (this.tempFiles.isEmpty()) {
+        this.chunk.write(w, this.chunk.sort(chromosomeRanks()));
+        return;
+      }
+
+      // Save and sort the remaining data
+      if (this.chunk.size > 0) {
+        saveChunk();
+      }
+      ExternalMerger.waitRuns(this.pendingChunks, 0);
+
+      // Merge sorted files
+      mergeSortedFiles(w);
+
+    } finally {
+
+      this.chunk = null;
+      shutdownExecutor();
 
-    // Merge sorted files
-    mergeSortedFiles();
+      // Remove temporary files
+      for (File tempFile : this.tempFiles) {
+        ExternalMerger.deleteRunFile(tempFile);
+      }
+      this.tempFiles.clear();
+    }
   }
 
   //
@@ -116,78 +460,174 @@ public class SortedBEDWriter implements Closeable {
   //
 
   /**
-   * Save a sorted chunk of the data to write in a temporary directory.
-   * @param chunk chunk to sort and write
-   * @param format format of the BED file
-   * @return the path of temporary created file
-   * @throws IOException if an error occurs while writing the temporary file
+   * Sort the current chunk in a background thread and save it in a temporary
+   * file.
+   * @throws IOException if an error occurs while saving a previous chunk
    */
-  private void createSortedTempFile() throws IOException {
+  private void saveChunk() throws IOException {
 
-    // In memory sort
-    Collections.sort(this.chunk);
+    final Chunk c = this.chunk;
+    final int[] ranks = chromosomeRanks();
+    final File tempFile = createTempFile();
 
-    // Save sorted in memory
-    File tempFile =
-        File.createTempFile("sorted_", ".bed.tmp", temporaryDirectory);
+    this.chunk = new Chunk();
+    this.tempFiles.add(tempFile);
 
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-      for (BEDEntry entry : chunk) {
-        writer.write(entry.toBED(this.format) + '\n');
-      }
+    if (this.executor == null) {
+      this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+        final Thread t = new Thread(r, "SortedBEDWriter");
+        t.setDaemon(true);
+        return t;
+      });
     }
 
-    this.chunk.clear();
-    this.tempFiles.add(tempFile);
+    this.pendingChunks.add(this.executor.submit(() -> {
+
+      final int[] index = c.sort(ranks);
+
+      try (DataOutputStream out =
+          ExternalMerger.createRunOutputStream(tempFile)) {
+        c.write(out, index);
+      }
+
+      return null;
+    }));
+
+    // Limit the number of chunks in memory
+    ExternalMerger.waitRuns(this.pendingChunks, this.threads);
+  }
+
+  private void shutdownExecutor() {
+
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+    this.pendingChunks.clear();
   }
 
   /**
-   * Merge temporary files
-   * @param tempFiles temporary file to merge
+   * Merge temporary files.
    * @param writer writer for the merger
-   * @param format format of the BED file
    * @throws IOException if an error occurs while writing the output file
    */
-  private void mergeSortedFiles() throws IOException {
+  private void mergeSortedFiles(final Writer writer) throws IOException {
 
-    PriorityQueue<BEDLine> pq = new PriorityQueue<>(new BEDLineComparator());
+    final int[] ranks = chromosomeRanks();
 
-    List<BEDReader> readers = new ArrayList<>();
+    // Reduce the number of files to avoid opening too many files
+    ExternalMerger.reduceRuns(this.tempFiles, this::createTempFile,
+        (group, output) -> {
 
-    for (File tempFile : this.tempFiles) {
+          try (BEDMerger merger = new BEDMerger(group, ranks);
+              DataOutputStream out =
+                  ExternalMerger.createRunOutputStream(output)) {
 
-      BEDReader reader = new BEDReader(tempFile);
+            int run;
+            while ((run = merger.nextRun()) != -1) {
+              merger.write(run, out);
+            }
+          }
+        });
 
-      readers.add(reader);
-      if (reader.hasNext()) {
-        pq.add(new BEDLine(reader.next(), reader));
+    try (BEDMerger merger = new BEDMerger(this.tempFiles, ranks)) {
+
+      int run;
+      while ((run = merger.nextRun()) != -1) {
+        merger.write(run, writer);
       }
+    }
+  }
 
+  /**
+   * Get the ranks of the chromosomes in the sort order. As the ordinals of the
+   * chromosomes never change, the order of two chromosomes is the same in all
+   * the ranks computed by the writer.
+   * @return an array with the ranks of the chromosomes
+   */
+  private int[] chromosomeRanks() {
+
+    final Integer[] ids = new Integer[this.chromosomeNames.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
     }
 
-    try (Writer w = this.writer) {
-      while (!pq.isEmpty()) {
-        BEDLine smallest = pq.poll();
-        w.write(smallest.line.toBED(format) + '\n');
+    Arrays.sort(ids, (a, b) -> StringUtils.compare(this.chromosomeNames.get(a),
+        this.chromosomeNames.get(b)));
 
-        BEDReader reader = smallest.reader;
-        if (reader.hasNext()) {
-          pq.add(new BEDLine(reader.next(), smallest.reader));
-        } else {
-          smallest.reader.close();
-        }
-      }
+    final int[] result = new int[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      result[ids[i]] = i;
+    }
+
+    return result;
+  }
+
+  private File createTempFile() throws IOException {
+
+    return File.createTempFile("sorted_", ".bed.tmp", this.temporaryDirectory);
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Pack the chromosome rank and the start of an entry in a long that can be
+   * compared in the order of the chromosomes and of the start positions.
+   * @param rank the rank of the chromosome
+   * @param start the start of the entry
+   * @return a long with the packed key
+   */
+  private static long packKey(final int rank, final int start) {
+
+    return (long) rank << 32 | (start ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Compare two entries in the same order as BEDEntry.compareTo().
+   */
+  private static int compareEntries(final long key1, final int end1,
+      final String name1, final long key2, final int end2,
+      final String name2) {
+
+    int result = Long.compare(key1, key2);
+    if (result != 0) {
+      return result;
+    }
+
+    result = Integer.compare(end1, end2);
+    if (result != 0) {
+      return result;
     }
 
-    // Close readers
-    for (BEDReader reader : readers) {
-      reader.close();
+    return StringUtils.compare(name1, name2);
+  }
+
+  private static void writeName(final DataOutputStream out, final String name)
+      throws IOException {
+
+    if (name == null) {
+      out.writeInt(-1);
+      return;
     }
 
-    // Remove temporary files
-    for (File tempFile : this.tempFiles) {
-      tempFile.delete();
+    final byte[] bytes = name.getBytes(BED_CHARSET);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readName(final DataInputStream in) throws IOException {
+
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
     }
+
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+
+    return new String(bytes, BED_CHARSET);
   }
 
   //
@@ -0,0 +1,282 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFormatException;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+/**
+ * This class define a SAM/BAM reader that decodes the records of a stream in a
+ * dedicated thread. The decoded records are handed off to the consumer by
+ * batches.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class StreamingSAMReader
+    implements Iterator<SAMRecord>, Iterable<SAMRecord>, Closeable {
+
+  private static final int BATCH_SIZE = 1024;
+  private static final int MAX_BATCHES = 16;
+  private static final List<SAMRecord> END_OF_STREAM = Collections.emptyList();
+
+  private final SamReader reader;
+  private final BlockingQueue<List<SAMRecord>> queue =
+      new ArrayBlockingQueue<>(MAX_BATCHES);
+  private final Thread decoderThread;
+  private final boolean skipInvalidRecords;
+  private volatile Throwable exception;
+  private volatile long invalidRecordCount;
+
+  private List<SAMRecord> batch = Collections.emptyList();
+  private int index;
+  private boolean end;
+  private boolean closed;
+
+  /**
+   * Get the header of the SAM stream.
+   * @return the header of the SAM stream
+   */
+  public SAMFileHeader getFileHeader() {
+
+    return this.reader.getFileHeader();
+  }
+
+  /**
+   * Get the number of invalid records that have been skipped. The value is
+   * only complete once all the records have been read.
+   * @return the number of invalid records that have been skipped
+   */
+  public long getInvalidRecordCount() {
+
+    return this.invalidRecordCount;
+  }
+
+  @Override
+  public Iterator<SAMRecord> iterator() {
+
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+
+    if (this.index < this.batch.size()) {
+      return true;
+    }
+
+    if (this.end) {
+      return false;
+    }
+
+    if (this.closed) {
+      throw new IllegalStateException("The SAM reader is closed");
+    }
+
+    try {
+      this.batch = this.queue.take();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+    this.index = 0;
+
+    if (this.batch == END_OF_STREAM) {
+      this.end = true;
+
+      final Throwable e = this.exception;
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+      if (e != null) {
+        throw new IllegalStateException(e);
+      }
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public SAMRecord next() {
+
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    return this.batch.get(this.index++);
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    // Stop the decoder thread if all the records have not been read. Closing
+    // the reader unblocks the decoder thread if it waits for data
+    if (!this.end) {
+      this.decoderThread.interrupt();
+      this.queue.clear();
+    }
+
+    try {
+      this.reader.close();
+    } finally {
+
+      try {
+        this.decoderThread.join();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  //
+  // Decoder thread
+  //
+
+  /**
+   * Decode the records of the stream.
+   */
+  private void decode() {
+
+    try {
+
+      final Iterator<SAMRecord> it = this.reader.iterator();
+      List<SAMRecord> records = new ArrayList<>(BATCH_SIZE);
+
+      while (it.hasNext() && !Thread.currentThread().isInterrupted()) {
+
+        final SAMRecord record;
+
+        try {
+          record = it.next();
+        } catch (SAMFormatException e) {
+
+          if (!this.skipInvalidRecords) {
+            throw e;
+          }
+
+          this.invalidRecordCount++;
+          continue;
+        }
+
+        records.add(record);
+
+        if (records.size() == BATCH_SIZE) {
+          this.queue.put(records);
+          records = new ArrayList<>(BATCH_SIZE);
+        }
+      }
+
+      if (!records.isEmpty()) {
+        this.queue.put(records);
+      }
+
+    } catch (InterruptedException e) {
+      // The reader has been closed
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      this.exception = e;
+    } finally {
+
+      // The end of the stream must always be signaled to the consumer
+      try {
+        this.queue.put(END_OF_STREAM);
+      } catch (InterruptedException e) {
+        // The reader has been closed, nobody waits for the end of the stream
+      }
+    }
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param in input stream with SAM data
+   */
+  public StreamingSAMReader(final InputStream in) {
+
+    this(SamInputResource.of(requireNonNull(in, "in argument cannot be null")),
+        false);
+  }
+
+  /**
+   * Constructor.
+   * @param file SAM or BAM file
+   * @param skipInvalidRecords true if the invalid records must be skipped
+   */
+  public StreamingSAMReader(final File file,
+      final boolean skipInvalidRecords) {
+
+    this(SamInputResource
+        .of(requireNonNull(file, "file argument cannot be null")),
+        skipInvalidRecords);
+  }
+
+  /**
+   * Constructor.
+   * @param resource SAM resource to read
+   * @param skipInvalidRecords true if the invalid records must be skipped
+   */
+  private StreamingSAMReader(final SamInputResource resource,
+      final boolean skipInvalidRecords) {
+
+    // With asynchronous I/O, the BGZF blocks of BAM files are uncompressed in
+    // another thread
+    this.reader =
+        SamReaderFactory.makeDefault().setUseAsyncIo(true).open(resource);
+    this.skipInvalidRecords = skipInvalidRecords;
+
+    this.decoderThread = new Thread(this::decode, "SAM decoder");
+    this.decoderThread.setDaemon(true);
+    this.decoderThread.start();
+  }
+
+}
@@ -1,5 +1,6 @@
 package fr.ens.biologie.genomique.kenetre.bio.io;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -13,6 +14,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+import fr.ens.biologie.genomique.kenetre.bio.FeatureCounts;
+
 /**
  * This class define a TSV count writer.
  * @author Laurent Jourdren
@@ -39,6 +42,24 @@ public class TSVCountsWriter implements CountsWriter {
 
   }
 
+  @Override
+  public void write(final FeatureCounts counts) throws IOException {
+
+    Objects.requireNonNull(counts, "counts argument cannot be null");
+
+    // Features are already sorted, no need to build a map
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(this.os))) {
+
+      writer.write("Id\tCount\n");
+      for (int i = 0; i < counts.size(); i++) {
+        writer.write(counts.getFeatureId(i));
+        writer.write('\t');
+        writer.write(Long.toString(counts.getCount(i)));
+        writer.write('\n');
+      }
+    }
+  }
+
   @Override
   public void close() throws IOException {
 
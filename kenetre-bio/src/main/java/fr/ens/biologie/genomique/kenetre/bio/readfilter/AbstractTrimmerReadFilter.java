@@ -0,0 +1,163 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+
+/**
+ * This class define an abstract read filter for trimmers that give the same
+ * results as the Trimmomatic trimmers. The trimmers only compute the bounds of
+ * the region of the read to keep. The sequence and the quality of the read are
+ * updated once all the trimmers of a chain have been applied.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public abstract class AbstractTrimmerReadFilter extends AbstractReadFilter {
+
+  private boolean configured;
+
+  @Override
+  public String getDescription() {
+    return getName() + " trimmer filter";
+  }
+
+  @Override
+  public void setParameter(final String key, final String value)
+      throws KenetreException {
+
+    if ("arguments".equals(key)) {
+
+      try {
+        parseArguments(value == null ? "" : value);
+      } catch (RuntimeException e) {
+        throw new KenetreException("Invalid parameter: " + value, e);
+      }
+      this.configured = true;
+
+    } else {
+      throw new KenetreException(
+          "Unknown parameter for " + getName() + " read filter: " + key);
+    }
+  }
+
+  @Override
+  public void init() throws KenetreException {
+
+    if (!this.configured) {
+      setParameter("arguments", "");
+    }
+  }
+
+  @Override
+  public boolean accept(final ReadSequence read) {
+
+    // The sequence can not be empty
+    if (read == null) {
+      return false;
+    }
+
+    final int[] range = new int[] {0, read.getSequence().length()};
+    final boolean result = trim(read, range);
+
+    // The read is not modified if it is discarded
+    if (result) {
+      applyRange(read, range);
+    }
+
+    return result;
+  }
+
+  //
+  // Trimming methods
+  //
+
+  /**
+   * Parse the arguments of the trimmer. The syntax of the arguments is the
+   * same as the syntax of the Trimmomatic trimmer.
+   * @param arguments the arguments
+   */
+  protected abstract void parseArguments(String arguments);
+
+  /**
+   * Compute the region of the read to keep.
+   * @param sequence the sequence of the read
+   * @param quality the quality of the read
+   * @param asciiOffset the ASCII offset of the quality
+   * @param range the region of the read to trim. The first element is the
+   *          start of the region and the second the end of the region
+   *          (exclusive). This array is updated with the new region
+   * @return false if the read must be discarded
+   */
+  protected abstract boolean trim(String sequence, String quality,
+      int asciiOffset, int[] range);
+
+  /**
+   * Compute the region of the read to keep.
+   * @param read the read
+   * @param range the region of the read to trim
+   * @return false if the read must be discarded
+   */
+  boolean trim(final ReadSequence read, final int[] range) {
+
+    return trim(read.getSequence(), read.getQuality(),
+        read.getFastqFormat().getAsciiOffset(), range);
+  }
+
+  /**
+   * Update the sequence and the quality of a read with a region.
+   * @param read the read to update
+   * @param range the region of the read to keep
+   */
+  static void applyRange(final ReadSequence read, final int[] range) {
+
+    final int start = range[0];
+    final int end = range[1];
+
+    if (start == 0 && end == read.getSequence().length()) {
+      return;
+    }
+
+    read.setSequence(read.getSequence().substring(start, end));
+    read.setQuality(read.getQuality().substring(start, end));
+  }
+
+  /**
+   * Get the quality score of a base like Trimmomatic, the quality score of N
+   * bases is 0.
+   * @param sequence the sequence
+   * @param quality the quality
+   * @param asciiOffset the ASCII offset of the quality
+   * @param index index of the base
+   * @return the quality score of the base
+   */
+  static int score(final String sequence, final String quality,
+      final int asciiOffset, final int index) {
+
+    return sequence.charAt(index) == 'N'
+        ? 0 : quality.charAt(index) - asciiOffset;
+  }
+
+}
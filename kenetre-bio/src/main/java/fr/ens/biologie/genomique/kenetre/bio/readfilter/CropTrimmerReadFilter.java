@@ -14,7 +14,7 @@ public class CropTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
 
   @Override
   public String getName() {
-    return "crop";
+    return "trimmomaticcrop";
   }
 
   @Override
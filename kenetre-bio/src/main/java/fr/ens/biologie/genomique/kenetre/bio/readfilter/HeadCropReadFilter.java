@@ -0,0 +1,71 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+/**
+ * This class define a read filter that remove a number of bases at the start
+ * of the reads. It gives the same results as the Trimmomatic HEADCROP
+ * trimmer.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class HeadCropReadFilter extends AbstractTrimmerReadFilter {
+
+  public static final String FILTER_NAME = "headcrop";
+
+  private int bases;
+
+  @Override
+  public String getName() {
+
+    return FILTER_NAME;
+  }
+
+  @Override
+  protected void parseArguments(final String arguments) {
+
+    this.bases = Integer.parseInt(arguments);
+  }
+
+  @Override
+  protected boolean trim(final String sequence, final String quality,
+      final int asciiOffset, final int[] range) {
+
+    if (range[1] - range[0] <= this.bases) {
+      return false;
+    }
+
+    range[0] += this.bases;
+
+    return true;
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName() + "{bases=" + this.bases + "}";
+  }
+
+}
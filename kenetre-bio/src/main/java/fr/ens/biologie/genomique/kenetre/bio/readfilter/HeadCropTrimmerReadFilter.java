@@ -13,7 +13,7 @@ public class HeadCropTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
 
   @Override
   public String getName() {
-    return "headcrop";
+    return "trimmomaticheadcrop";
   }
 
   @Override
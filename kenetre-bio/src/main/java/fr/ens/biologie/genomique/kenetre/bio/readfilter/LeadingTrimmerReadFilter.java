@@ -14,7 +14,7 @@ public class LeadingTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
 
   @Override
   public String getName() {
-    return "leading";
+    return "trimmomaticleading";
   }
 
   @Override
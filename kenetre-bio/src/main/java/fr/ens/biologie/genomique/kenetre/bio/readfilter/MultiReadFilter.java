@@ -32,6 +32,7 @@ import java.util.List;
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
 import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
+import fr.ens.biologie.genomique.kenetre.util.CounterHandle;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
 
 /**
@@ -44,6 +45,7 @@ public class MultiReadFilter implements ReadFilter {
 
   private GenericLogger logger = new DummyLogger();
   private final List<ReadFilter> list = new ArrayList<>();
+  private final List<CounterHandle> rejectedCounters = new ArrayList<>();
   private final ReporterIncrementer incrementer;
   private final String counterGroup;
 
@@ -67,17 +69,35 @@ public class MultiReadFilter implements ReadFilter {
       return false;
     }
 
-    for (ReadFilter rf : this.list) {
+    final int size = this.list.size();
+    int i = 0;
 
-      if (!rf.accept(read)) {
+    while (i < size) {
 
-        if (this.incrementer != null) {
-          this.incrementer.incrCounter(this.counterGroup,
-              "reads rejected by " + rf.getName() + " filter", 1);
+      // Successive trimmers only update the sequence and the quality once
+      final int end = trimmerRunEnd(i);
+      if (end > i + 1) {
+
+        final int[] range = new int[] {0, read.getSequence().length()};
+
+        for (; i < end; i++) {
+
+          // Like with a single trimmer, a rejected read is not modified
+          if (!trimmer(i).trim(read, range)) {
+            incrementRejectedCounter(i);
+            return false;
+          }
         }
-        return false;
+
+        AbstractTrimmerReadFilter.applyRange(read, range);
+        continue;
       }
 
+      if (!this.list.get(i).accept(read)) {
+        incrementRejectedCounter(i);
+        return false;
+      }
+      i++;
     }
 
     return true;
@@ -86,22 +106,73 @@ public class MultiReadFilter implements ReadFilter {
   @Override
   public boolean accept(final ReadSequence read1, final ReadSequence read2) {
 
-    for (ReadFilter rf : this.list) {
+    final int size = this.list.size();
+    int i = 0;
+
+    while (i < size) {
 
-      if (!rf.accept(read1, read2)) {
+      // Successive trimmers only update the sequences and the qualities once
+      final int end = trimmerRunEnd(i);
+      if (end > i + 1 && read1 != null && read2 != null) {
 
-        if (this.incrementer != null) {
-          this.incrementer.incrCounter(this.counterGroup,
-              "reads rejected by " + rf.getName() + " filter", 1);
+        final int[] range1 = new int[] {0, read1.getSequence().length()};
+        final int[] range2 = new int[] {0, read2.getSequence().length()};
+
+        for (; i < end; i++) {
+
+          final AbstractTrimmerReadFilter trimmer = trimmer(i);
+
+          // Like with a single trimmer, rejected reads are not modified
+          if (!trimmer.trim(read1, range1) || !trimmer.trim(read2, range2)) {
+            incrementRejectedCounter(i);
+            return false;
+          }
         }
-        return false;
+
+        AbstractTrimmerReadFilter.applyRange(read1, range1);
+        AbstractTrimmerReadFilter.applyRange(read2, range2);
+        continue;
       }
 
+      if (!this.list.get(i).accept(read1, read2)) {
+        incrementRejectedCounter(i);
+        return false;
+      }
+      i++;
     }
 
     return true;
   }
 
+  /**
+   * Get the end of the run of successive trimmers that starts at an index.
+   * @param start index of the first filter of the run
+   * @return the index of the first filter after the run. This value is equal
+   *         to start if the filter at start is not a trimmer
+   */
+  private int trimmerRunEnd(final int start) {
+
+    int result = start;
+    while (result < this.list.size()
+        && this.list.get(result) instanceof AbstractTrimmerReadFilter) {
+      result++;
+    }
+
+    return result;
+  }
+
+  private AbstractTrimmerReadFilter trimmer(final int filterIndex) {
+
+    return (AbstractTrimmerReadFilter) this.list.get(filterIndex);
+  }
+
+  private void incrementRejectedCounter(final int filterIndex) {
+
+    if (this.incrementer != null) {
+      this.rejectedCounters.get(filterIndex).increment();
+    }
+  }
+
   /**
    * Add a filter to the multi filter.
    * @param filter filter to add
@@ -110,6 +181,12 @@ public class MultiReadFilter implements ReadFilter {
 
     if (filter != null) {
       this.list.add(filter);
+
+      if (this.incrementer != null) {
+        this.rejectedCounters.add(this.incrementer.getCounterHandle(
+            this.counterGroup,
+            "reads rejected by " + filter.getName() + " filter"));
+      }
     }
 
   }
@@ -0,0 +1,489 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.FastqFormat;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.bio.io.ReadSequenceReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.ReadSequenceWriter;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import fr.ens.biologie.genomique.kenetre.util.Reporter;
+
+/**
+ * This class allow to filter reads using several threads. The pipeline
+ * contains one reader thread for each input file, one worker thread for each
+ * read filter and one writer thread. The reads are processed by batches and
+ * the output reads are written in the same order as the input reads. Each
+ * worker uses its own counters that are merged in the reporter at the end of
+ * the filtering.
+ * <p>
+ * As each worker use its own filter, the filters given to the constructor must
+ * be distinct instances. The readers used with this class must not reuse their
+ * ReadSequence objects. This class is not thread-safe.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ReadFilterPipeline {
+
+  /** Default number of reads in a batch. */
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+
+  /** Input reads counter name. */
+  public static final String INPUT_READS_COUNTER = "input raw reads";
+
+  /** Accepted reads counter name. */
+  public static final String ACCEPTED_READS_COUNTER = "output accepted reads";
+
+  /** Rejected reads counter name. */
+  public static final String REJECTED_READS_COUNTER =
+      "reads rejected by filters";
+
+  private static final ReadSequence[] END_OF_INPUT = new ReadSequence[0];
+  private static final Batch END_OF_BATCHES = new Batch(null, null);
+
+  private final List<ReadFilter> filters;
+  private final FastqFormat fastqFormat;
+  private final Reporter reporter;
+  private final String counterGroup;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  // Pipeline state
+  private final List<Thread> threads = new ArrayList<>();
+  private BlockingQueue<ReadSequence[]> inputQueue1;
+  private BlockingQueue<ReadSequence[]> inputQueue2;
+  private BlockingQueue<Batch> outputQueue;
+  private final Object batchLock = new Object();
+  private boolean inputEnded;
+  private volatile Throwable exception;
+
+  /**
+   * This class define a batch of reads.
+   */
+  private static final class Batch {
+
+    private final ReadSequence[] reads1;
+    private final ReadSequence[] reads2;
+    private final boolean[] accepted;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private Batch(final ReadSequence[] reads1, final ReadSequence[] reads2) {
+
+      this.reads1 = reads1;
+      this.reads2 = reads2;
+      this.accepted = reads1 == null ? null : new boolean[reads1.length];
+    }
+  }
+
+  //
+  // Setter
+  //
+
+  /**
+   * Set the number of reads in a batch.
+   * @param batchSize the number of reads in a batch
+   */
+  public void setBatchSize(final int batchSize) {
+
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+    }
+
+    this.batchSize = batchSize;
+  }
+
+  //
+  // Filtering methods
+  //
+
+  /**
+   * Filter reads in single-end mode.
+   * @param reader reader to use
+   * @param writer writer to use
+   * @throws IOException if an error occurs while reading or writing data
+   * @throws BadBioEntryException if an input entry is invalid
+   */
+  public void filter(final ReadSequenceReader reader,
+      final ReadSequenceWriter writer)
+      throws IOException, BadBioEntryException {
+
+    requireNonNull(reader);
+    requireNonNull(writer);
+
+    run(reader, null, writer, null);
+  }
+
+  /**
+   * Filter reads in paired-end mode.
+   * @param reader1 reader for the first reads
+   * @param reader2 reader for the second reads
+   * @param writer1 writer for the first reads
+   * @param writer2 writer for the second reads
+   * @throws IOException if an error occurs while reading or writing data or if
+   *           the two input files do not have the same number of reads
+   * @throws BadBioEntryException if an input entry is invalid
+   */
+  public void filter(final ReadSequenceReader reader1,
+      final ReadSequenceReader reader2, final ReadSequenceWriter writer1,
+      final ReadSequenceWriter writer2)
+      throws IOException, BadBioEntryException {
+
+    requireNonNull(reader1);
+    requireNonNull(reader2);
+    requireNonNull(writer1);
+    requireNonNull(writer2);
+
+    run(reader1, reader2, writer1, writer2);
+  }
+
+  /**
+   * Run the pipeline.
+   * @param reader1 reader for the first reads
+   * @param reader2 reader for the second reads, null in single-end mode
+   * @param writer1 writer for the first reads
+   * @param writer2 writer for the second reads, null in single-end mode
+   * @throws IOException if an error occurs while reading or writing data
+   * @throws BadBioEntryException if an input entry is invalid
+   */
+  private void run(final ReadSequenceReader reader1,
+      final ReadSequenceReader reader2, final ReadSequenceWriter writer1,
+      final ReadSequenceWriter writer2)
+      throws IOException, BadBioEntryException {
+
+    final int workerCount = this.filters.size();
+    final int queueCapacity = 2 * workerCount;
+
+    this.threads.clear();
+    this.inputEnded = false;
+    this.exception = null;
+    this.inputQueue1 = new ArrayBlockingQueue<>(queueCapacity);
+    this.inputQueue2 =
+        reader2 == null ? null : new ArrayBlockingQueue<>(queueCapacity);
+    this.outputQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+    // Create the reader threads
+    createThread("reader-1", () -> read(reader1, this.inputQueue1));
+    if (reader2 != null) {
+      createThread("reader-2", () -> read(reader2, this.inputQueue2));
+    }
+
+    // Create the worker threads
+    final List<LocalReporter> reporters = new ArrayList<>();
+    for (int i = 0; i < workerCount; i++) {
+
+      final ReadFilter filter = this.filters.get(i);
+      final LocalReporter workerReporter = new LocalReporter();
+      reporters.add(workerReporter);
+      createThread("worker-" + (i + 1), () -> work(filter, workerReporter));
+    }
+
+    // Create the writer thread
+    createThread("writer", () -> write(writer1, writer2));
+
+    // Start the threads
+    for (Thread t : this.threads) {
+      t.start();
+    }
+
+    // Wait the end of the threads
+    for (Thread t : this.threads) {
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        setException(e);
+      }
+    }
+
+    // Merge worker counters
+    for (LocalReporter r : reporters) {
+      for (String group : r.getCounterGroups()) {
+        for (String counter : r.getCounterNames(group)) {
+          this.reporter.incrCounter(group, counter,
+              r.getCounterValue(group, counter));
+        }
+      }
+    }
+
+    // Throw the exception if exists
+    final Throwable e = this.exception;
+    if (e instanceof IOException) {
+      throw (IOException) e;
+    }
+    if (e instanceof BadBioEntryException) {
+      throw (BadBioEntryException) e;
+    }
+    if (e instanceof InterruptedException) {
+      throw new IOException(e);
+    }
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    }
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+  }
+
+  //
+  // Pipeline stages
+  //
+
+  /**
+   * Reader stage.
+   * @param reader the reader
+   * @param queue the output queue of the stage
+   * @throws Exception if an error occurs while reading data
+   */
+  private void read(final ReadSequenceReader reader,
+      final BlockingQueue<ReadSequence[]> queue) throws Exception {
+
+    final int size = this.batchSize;
+    ReadSequence[] reads = new ReadSequence[size];
+    int count = 0;
+
+    for (ReadSequence read : reader) {
+
+      reads[count++] = read;
+
+      if (count == size) {
+        queue.put(reads);
+        reads = new ReadSequence[size];
+        count = 0;
+      }
+    }
+    reader.throwException();
+
+    if (count > 0) {
+      queue.put(Arrays.copyOf(reads, count));
+    }
+    queue.put(END_OF_INPUT);
+  }
+
+  /**
+   * Worker stage.
+   * @param filter the filter to use
+   * @param reporter the reporter of the worker
+   * @throws Exception if an error occurs while filtering data
+   */
+  private void work(final ReadFilter filter, final LocalReporter reporter)
+      throws Exception {
+
+    final String group = this.counterGroup;
+    Batch batch;
+
+    while ((batch = nextBatch()) != null) {
+
+      final ReadSequence[] reads1 = batch.reads1;
+      final ReadSequence[] reads2 = batch.reads2;
+      final boolean[] accepted = batch.accepted;
+      long acceptedCount = 0;
+
+      for (int i = 0; i < reads1.length; i++) {
+
+        final ReadSequence read1 = reads1[i];
+        read1.setFastqFormat(this.fastqFormat);
+
+        if (reads2 == null) {
+          accepted[i] = filter.accept(read1);
+        } else {
+          final ReadSequence read2 = reads2[i];
+          read2.setFastqFormat(this.fastqFormat);
+          accepted[i] = filter.accept(read1, read2);
+        }
+
+        if (accepted[i]) {
+          acceptedCount++;
+        }
+      }
+
+      reporter.incrCounter(group, INPUT_READS_COUNTER, reads1.length);
+      reporter.incrCounter(group, ACCEPTED_READS_COUNTER, acceptedCount);
+      reporter.incrCounter(group, REJECTED_READS_COUNTER,
+          reads1.length - acceptedCount);
+
+      batch.done.countDown();
+    }
+  }
+
+  /**
+   * Get the next batch to process. The batch is also added to the output
+   * queue to keep the order of the reads.
+   * @return the next batch to process or null if there is no more batch
+   * @throws Exception if an error occurs while getting the batch
+   */
+  private Batch nextBatch() throws Exception {
+
+    synchronized (this.batchLock) {
+
+      if (this.inputEnded) {
+        return null;
+      }
+
+      final ReadSequence[] reads1 = this.inputQueue1.take();
+      final ReadSequence[] reads2 =
+          this.inputQueue2 == null ? null : this.inputQueue2.take();
+
+      if (reads2 != null && reads1.length != reads2.length) {
+        throw new IOException("Unexpected end of the "
+            + (reads1.length < reads2.length ? "first" : "second")
+            + " read file. The two read files must have the same number of entries/lines.");
+      }
+
+      if (reads1 == END_OF_INPUT) {
+        this.inputEnded = true;
+        this.outputQueue.put(END_OF_BATCHES);
+        return null;
+      }
+
+      final Batch result = new Batch(reads1, reads2);
+      this.outputQueue.put(result);
+
+      return result;
+    }
+  }
+
+  /**
+   * Writer stage.
+   * @param writer1 writer for the first reads
+   * @param writer2 writer for the second reads, null in single-end mode
+   * @throws Exception if an error occurs while writing data
+   */
+  private void write(final ReadSequenceWriter writer1,
+      final ReadSequenceWriter writer2) throws Exception {
+
+    Batch batch;
+
+    while ((batch = this.outputQueue.take()) != END_OF_BATCHES) {
+
+      // Wait the end of the processing of the batch
+      batch.done.await();
+
+      final boolean[] accepted = batch.accepted;
+
+      for (int i = 0; i < accepted.length; i++) {
+
+        if (accepted[i]) {
+          writer1.write(batch.reads1[i]);
+          if (writer2 != null) {
+            writer2.write(batch.reads2[i]);
+          }
+        }
+      }
+    }
+  }
+
+  //
+  // Thread management
+  //
+
+  /**
+   * Interface for the code of the stages of the pipeline.
+   */
+  private interface Stage {
+
+    void run() throws Exception;
+  }
+
+  /**
+   * Create a thread of the pipeline.
+   * @param name name of the thread
+   * @param stage code of the thread
+   */
+  private void createThread(final String name, final Stage stage) {
+
+    final Thread t = new Thread(() -> {
+      try {
+        stage.run();
+      } catch (InterruptedException e) {
+        // The pipeline has been stopped
+      } catch (Throwable e) {
+        setException(e);
+      }
+    }, "read-filter-pipeline-" + name);
+
+    this.threads.add(t);
+  }
+
+  /**
+   * Save the first exception thrown by a thread of the pipeline and stop all
+   * the threads of the pipeline.
+   * @param e exception to save
+   */
+  private void setException(final Throwable e) {
+
+    synchronized (this.threads) {
+
+      if (this.exception != null) {
+        return;
+      }
+      this.exception = e;
+    }
+
+    for (Thread t : this.threads) {
+      t.interrupt();
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param filters the filters to use, one for each worker thread. The filters
+   *          must be distinct instances
+   * @param fastqFormat the FASTQ format of the reads
+   * @param reporter reporter to use
+   * @param counterGroup counter group for the reporter
+   */
+  public ReadFilterPipeline(final List<? extends ReadFilter> filters,
+      final FastqFormat fastqFormat, final Reporter reporter,
+      final String counterGroup) {
+
+    requireNonNull(filters);
+    requireNonNull(fastqFormat);
+    requireNonNull(reporter);
+    requireNonNull(counterGroup);
+
+    if (filters.isEmpty()) {
+      throw new IllegalArgumentException("No filter defined");
+    }
+
+    this.filters = new ArrayList<>(filters);
+    this.fastqFormat = fastqFormat;
+    this.reporter = reporter;
+    this.counterGroup = counterGroup;
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+/**
+ * This class define a read filter that cut the reads once the average quality
+ * within a sliding window falls below a threshold. It gives the same results
+ * as the Trimmomatic SLIDINGWINDOW trimmer.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class SlidingWindowReadFilter extends AbstractTrimmerReadFilter {
+
+  public static final String FILTER_NAME = "slidingwindow";
+
+  private int windowLength;
+  private float requiredQuality;
+  private float totalRequiredQuality;
+
+  @Override
+  public String getName() {
+
+    return FILTER_NAME;
+  }
+
+  @Override
+  protected void parseArguments(final String arguments) {
+
+    final String[] fields = arguments.split(":");
+
+    this.windowLength = Integer.parseInt(fields[0]);
+    this.requiredQuality = Float.parseFloat(fields[1]);
+    this.totalRequiredQuality = this.requiredQuality * this.windowLength;
+  }
+
+  @Override
+  protected boolean trim(final String sequence, final String quality,
+      final int asciiOffset, final int[] range) {
+
+    final int start = range[0];
+    final int length = range[1] - start;
+
+    if (length < this.windowLength) {
+      return false;
+    }
+
+    int total = 0;
+    for (int i = 0; i < this.windowLength; i++) {
+      total += score(sequence, quality, asciiOffset, start + i);
+    }
+
+    if (total < this.totalRequiredQuality) {
+      return false;
+    }
+
+    int lengthToKeep = length;
+
+    for (int i = 0; i < length - this.windowLength; i++) {
+
+      total = total
+          - score(sequence, quality, asciiOffset, start + i)
+          + score(sequence, quality, asciiOffset,
+              start + i + this.windowLength);
+
+      if (total < this.totalRequiredQuality) {
+        lengthToKeep = i + this.windowLength;
+        break;
+      }
+    }
+
+    // Remove the low quality bases at the end of the last window
+    while (lengthToKeep > 0
+        && score(sequence, quality, asciiOffset,
+            start + lengthToKeep - 1) < this.requiredQuality) {
+      lengthToKeep--;
+    }
+
+    if (lengthToKeep < 1) {
+      return false;
+    }
+
+    range[1] = start + lengthToKeep;
+
+    return true;
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{windowLength=" + this.windowLength + ", requiredQuality="
+        + this.requiredQuality + "}";
+  }
+
+}
@@ -15,7 +15,7 @@ public class SlidingWindowTrimmerReadFilter
 
   @Override
   public String getName() {
-    return "slidingwindow";
+    return "trimmomaticslidingwindow";
   }
 
   @Override
@@ -14,7 +14,7 @@ public class TrailingTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
 
   @Override
   public String getName() {
-    return "trailing";
+    return "trimmomatictrailing";
   }
 
   @Override
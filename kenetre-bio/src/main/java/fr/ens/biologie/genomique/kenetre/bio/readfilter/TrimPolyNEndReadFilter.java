@@ -24,8 +24,6 @@
 
 package fr.ens.biologie.genomique.kenetre.bio.readfilter;
 
-import java.util.regex.Pattern;
-
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 
 /**
@@ -36,7 +34,6 @@ import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 public class TrimPolyNEndReadFilter extends AbstractReadFilter {
 
   public static final String FILTER_NAME = "trimpolynend";
-  private static final Pattern PATTERN = Pattern.compile("NN+$");
 
   @Override
   public boolean accept(final ReadSequence read) {
@@ -68,20 +65,20 @@ public class TrimPolyNEndReadFilter extends AbstractReadFilter {
       return;
     }
 
-    final String[] splitResult = PATTERN.split(read.getSequence());
+    final String sequence = read.getSequence();
+    int end = sequence.length();
 
-    // Test if the sequence contains only N nucleotides
-    if (splitResult == null || splitResult.length == 0) {
-      read.setSequence("");
-      read.setQuality("");
+    while (end > 0 && sequence.charAt(end - 1) == 'N') {
+      end--;
+    }
 
+    // Only polyN with at least 2 nucleotides are removed
+    if (sequence.length() - end < 2) {
       return;
     }
 
-    final ReadSequence tmp = read.subSequence(0, splitResult[0].length());
-
-    read.setSequence(tmp.getSequence());
-    read.setQuality(tmp.getQuality());
+    read.setSequence(sequence.substring(0, end));
+    read.setQuality(read.getQuality().substring(0, end));
   }
 
   @Override
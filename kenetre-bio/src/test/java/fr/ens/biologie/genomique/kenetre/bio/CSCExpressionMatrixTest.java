@@ -0,0 +1,228 @@
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.io.MarketMatrixExpressionMatrixReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.MarketMatrixExpressionMatrixWriter;
+
+public class CSCExpressionMatrixTest {
+
+  private static final List<String> ROWS = Arrays.asList("r1", "r2", "r3");
+  private static final List<String> COLUMNS = Arrays.asList("c1", "c2");
+
+  @Test
+  public void testBuilder() {
+
+    final CSCExpressionMatrix matrix =
+        new CSCExpressionMatrix.Builder(ROWS, COLUMNS).add(2, 1, 5)
+            .add(0, 1, 3).add(1, 0, 0).add(1, 0, 2).add(2, 1, 7).build();
+
+    assertEquals(ROWS, matrix.getRowNames());
+    assertEquals(COLUMNS, matrix.getColumnNames());
+    assertEquals(3, matrix.getNonZeroCount());
+    assertTrue(matrix.isIntegerMatrix());
+
+    assertEquals(0.0, matrix.getValue("r1", "c1"), 0.0);
+    assertEquals(2.0, matrix.getValue("r2", "c1"), 0.0);
+    assertEquals(3.0, matrix.getValue("r1", "c2"), 0.0);
+    assertEquals(7.0, matrix.getValue("r3", "c2"), 0.0);
+
+    assertEquals(Arrays.asList(0.0, 2.0, 0.0), matrix.getColumnValues("c1"));
+    assertEquals(Arrays.asList(3.0, 0.0, 7.0), matrix.getColumnValues("c2"));
+    assertEquals(Arrays.asList(0.0, 3.0), matrix.getRowValues("r1"));
+
+    final CSCExpressionMatrix.Column column = matrix.getColumn(1);
+    assertEquals(2, column.size());
+    assertEquals(0, column.getRowIndex(0));
+    assertEquals(3.0, column.getValue(0), 0.0);
+    assertEquals(2, column.getRowIndex(1));
+    assertEquals(1, matrix.getColumn(0).getRowIndex(0));
+
+    final CSCExpressionMatrix.NonZeroCursor cursor = matrix.nonZeroCursor();
+    assertTrue(cursor.next());
+    assertEquals("r2", cursor.getRowName());
+    assertEquals("c1", cursor.getColumnName());
+    assertEquals(2.0, cursor.getValue(), 0.0);
+    assertTrue(cursor.next());
+    assertTrue(cursor.next());
+    assertEquals(2, cursor.getRowIndex());
+    assertEquals(1, cursor.getColumnIndex());
+    assertFalse(cursor.next());
+    assertFalse(cursor.next());
+
+    int count = 0;
+    for (Matrix.Entry<Double> e : matrix.nonZeroValues()) {
+      assertEquals(matrix.getValue(e.getRowName(), e.getColumnName()),
+          e.getValue());
+      count++;
+    }
+    assertEquals(3, count);
+  }
+
+  @Test
+  public void testZeroOverwrite() {
+
+    final CSCExpressionMatrix matrix =
+        new CSCExpressionMatrix.Builder(ROWS, COLUMNS).add(0, 0, 4)
+            .add(2, 1, 1.5).add(1, 1, 6).add(0, 0, 0).add(2, 1, 0)
+            .add(2, 1, 0).add(1, 0, 0).build();
+
+    assertEquals(1, matrix.getNonZeroCount());
+    assertTrue(matrix.isIntegerMatrix());
+    assertEquals(0.0, matrix.getValue("r1", "c1"), 0.0);
+    assertEquals(0.0, matrix.getValue("r3", "c2"), 0.0);
+    assertEquals(6.0, matrix.getValue("r2", "c2"), 0.0);
+    assertEquals(0, matrix.getColumn(0).size());
+    assertEquals(1, matrix.getColumn(1).size());
+
+    // A value set after a zero is kept
+    assertEquals(2.0, new CSCExpressionMatrix.Builder(ROWS, COLUMNS)
+        .add(0, 0, 1).add(0, 0, 0).add(0, 0, 2).build().getValue("r1", "c1"),
+        0.0);
+  }
+
+  @Test
+  public void testDoubleValues() {
+
+    final CSCExpressionMatrix matrix =
+        new CSCExpressionMatrix.Builder(ROWS, COLUMNS).add(0, 0, 1.5)
+            .add(2, 1, 2).build();
+
+    assertFalse(matrix.isIntegerMatrix());
+    assertEquals(1.5, matrix.getValue("r1", "c1"), 0.0);
+    assertEquals(2.0, matrix.getValue("r3", "c2"), 0.0);
+  }
+
+  @Test
+  public void testRandom() {
+
+    final Random random = new Random(42);
+    final SparseExpressionMatrix expected = new SparseExpressionMatrix();
+    final List<String> rows = Arrays.asList("a", "b", "c", "d", "e", "f");
+    final List<String> columns = Arrays.asList("1", "2", "3", "4", "5");
+    expected.addRows(rows);
+    expected.addColumns(columns);
+
+    final CSCExpressionMatrix.Builder builder =
+        new CSCExpressionMatrix.Builder(rows, columns);
+
+    for (int i = 0; i < 20; i++) {
+
+      final int row = random.nextInt(rows.size());
+      final int column = random.nextInt(columns.size());
+      final double value = 1 + random.nextInt(100);
+
+      builder.add(row, column, value);
+      expected.setValue(rows.get(row), columns.get(column), value);
+    }
+
+    final CSCExpressionMatrix matrix = builder.build();
+
+    for (String row : rows) {
+      assertEquals(expected.getRowValues(row), matrix.getRowValues(row));
+    }
+
+    for (String column : columns) {
+      assertEquals(expected.getColumnValues(column),
+          matrix.getColumnValues(column));
+    }
+  }
+
+  @Test
+  public void testImmutable() {
+
+    final CSCExpressionMatrix matrix =
+        new CSCExpressionMatrix.Builder(ROWS, COLUMNS).build();
+
+    try {
+      matrix.setValue("r1", "c1", 1.0);
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // Expected exception
+    }
+
+    try {
+      matrix.removeRow("r1");
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+
+    final CSCExpressionMatrix matrix =
+        new CSCExpressionMatrix.Builder(ROWS, COLUMNS).add(2, 1, 5)
+            .add(0, 1, 3).add(1, 0, 2).build();
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (MarketMatrixExpressionMatrixWriter writer =
+        new MarketMatrixExpressionMatrixWriter(out)) {
+      writer.write(matrix);
+    }
+
+    assertEquals("%%MatrixMarket matrix coordinate integer general\n"
+        + "3 2 3\n" + "2 1 2\n" + "1 2 3\n" + "3 2 5\n", out.toString());
+
+    final CSCExpressionMatrix read;
+    try (MarketMatrixExpressionMatrixReader reader =
+        new MarketMatrixExpressionMatrixReader(
+            new ByteArrayInputStream(out.toByteArray()))) {
+      read = reader.readCSC();
+    }
+
+    assertEquals(Arrays.asList("row1", "row2", "row3"), read.getRowNames());
+    assertEquals(3, read.getNonZeroCount());
+    assertEquals(5.0, read.getValue("row3", "column2"), 0.0);
+
+    // Write only a subset of the rows
+    final ByteArrayOutputStream subsetOut = new ByteArrayOutputStream();
+    try (MarketMatrixExpressionMatrixWriter writer =
+        new MarketMatrixExpressionMatrixWriter(subsetOut)) {
+      writer.write(matrix, Collections.singletonList("r3"));
+    }
+
+    assertEquals("%%MatrixMarket matrix coordinate integer general\n"
+        + "3 2 1\n" + "3 2 5\n", subsetOut.toString());
+  }
+
+  @Test
+  public void testWriteEmptyMatrix() throws IOException {
+
+    final ExpressionMatrix matrix = new SparseExpressionMatrix();
+    matrix.addRows(ROWS);
+    matrix.addColumns(COLUMNS);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (MarketMatrixExpressionMatrixWriter writer =
+        new MarketMatrixExpressionMatrixWriter(out)) {
+      writer.write(matrix);
+    }
+
+    assertEquals("%%MatrixMarket matrix coordinate integer general\n"
+        + "3 2 0\n", out.toString());
+
+    final ByteArrayOutputStream cscOut = new ByteArrayOutputStream();
+    try (MarketMatrixExpressionMatrixWriter writer =
+        new MarketMatrixExpressionMatrixWriter(cscOut)) {
+      writer.write(new CSCExpressionMatrix.Builder(ROWS, COLUMNS).build());
+    }
+
+    assertEquals(out.toString(), cscOut.toString());
+  }
+
+}
@@ -170,6 +170,21 @@ public class FastqFormatTest {
 
   }
 
+  @Test
+  public void testGetProbability() {
+
+    for (FastqFormat format : FastqFormat.values()) {
+      for (char c = format.getCharMin(); c <= format.getCharMax(); c++) {
+        assertEquals(
+            format.convertScoreToProbability(format.getScore(c)),
+            format.getProbability(c), 0.0);
+      }
+    }
+
+    assertEquals(FASTQ_SANGER.convertScoreToProbability(200 - 33),
+        FASTQ_SANGER.getProbability((char) 200), 0.0);
+  }
+
   @Test
   public void testConvertProbabilitytoScore() {
 
@@ -0,0 +1,104 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.io.CountsWriter;
+import fr.ens.biologie.genomique.kenetre.bio.io.TSVCountsWriter;
+
+public class FeatureCountsTest {
+
+  private static final String[] IDS = {"gene1", "gene2", "gene3", "gene4"};
+  private static final long[] COUNTS = {5, 0, 12, 1};
+
+  @Test
+  public void testGetters() {
+
+    final FeatureCounts counts = new FeatureCounts(IDS, COUNTS);
+
+    assertEquals(4, counts.size());
+    assertEquals("gene3", counts.getFeatureId(2));
+    assertEquals(12, counts.getCount(2));
+    assertEquals(2, counts.getIndex("gene3"));
+    assertEquals(-1, counts.getIndex("gene5"));
+    assertEquals(5, counts.getCount("gene1"));
+    assertEquals(0, counts.getCount("gene5"));
+    assertEquals(18, counts.getTotal());
+  }
+
+  @Test
+  public void testToMap() {
+
+    final FeatureCounts counts = new FeatureCounts(IDS, COUNTS);
+
+    final Map<String, Integer> withZeros = counts.toMap(true);
+    assertEquals(Arrays.asList(IDS), new ArrayList<>(withZeros.keySet()));
+    assertEquals(0, withZeros.get("gene2").intValue());
+
+    final Map<String, Integer> withoutZeros = counts.toMap(false);
+    assertEquals(3, withoutZeros.size());
+    assertEquals(12, withoutZeros.get("gene3").intValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsortedIds() {
+
+    new FeatureCounts(new String[] {"b", "a"}, new long[2]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLength() {
+
+    new FeatureCounts(IDS, new long[2]);
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+
+    final FeatureCounts counts = new FeatureCounts(IDS, COUNTS);
+
+    final ByteArrayOutputStream vectorOut = new ByteArrayOutputStream();
+    try (CountsWriter writer = new TSVCountsWriter(vectorOut)) {
+      writer.write(counts);
+    }
+
+    final ByteArrayOutputStream mapOut = new ByteArrayOutputStream();
+    try (CountsWriter writer = new TSVCountsWriter(mapOut)) {
+      writer.write(counts.toMap(true));
+    }
+
+    assertEquals(mapOut.toString(), vectorOut.toString());
+  }
+
+}
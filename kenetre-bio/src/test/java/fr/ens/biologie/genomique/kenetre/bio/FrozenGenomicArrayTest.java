@@ -0,0 +1,136 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class FrozenGenomicArrayTest {
+
+  @Test
+  public void testGetOverlaps() {
+
+    final GenomicArray<String> ga = new GenomicArray<>();
+    ga.addEntry(new GenomicInterval("chr1", 1, 20, '+'), "a");
+    ga.addEntry(new GenomicInterval("chr1", 25, 45, '+'), "b");
+    ga.addEntry(new GenomicInterval("chr1", 10, 30, '-'), "c");
+
+    final FrozenGenomicArray<String> fga = ga.freeze();
+    final FrozenGenomicArray.Overlaps overlaps =
+        new FrozenGenomicArray.Overlaps();
+
+    assertTrue(fga.containsChromosome("chr1"));
+    assertFalse(fga.containsChromosome("chr2"));
+    assertFalse(fga.getOverlaps("chr2", 1, 10, overlaps));
+    assertEquals(0, overlaps.size());
+
+    assertEquals(3, fga.getValueCount());
+    assertEquals(ga.getFeaturesIds(), fga.getFeaturesIds());
+
+    for (int i = 0; i < fga.getValueCount(); i++) {
+      assertEquals(i, fga.getValueId(fga.getValue(i)));
+    }
+    assertEquals(-1, fga.getValueId("d"));
+
+    assertTrue(fga.getOverlaps("chr1", 15, 26, overlaps));
+    assertEquals(ga.getEntries("chr1", 15, 26), toMap(fga, "chr1", overlaps));
+
+    // After the end of the chromosome
+    assertTrue(fga.getOverlaps("chr1", 40, 60, overlaps));
+    assertEquals(ga.getEntries("chr1", 40, 60), toMap(fga, "chr1", overlaps));
+  }
+
+  @Test
+  public void testRandomGetOverlaps() {
+
+    final Random random = new Random(42);
+    final GenomicArray<String> ga = new GenomicArray<>();
+    final char[] strands = {'+', '-'};
+
+    ga.addChromosome("chr3");
+
+    for (int i = 0; i < 500; i++) {
+
+      final int start = 1 + random.nextInt(10000);
+      final int end = start + random.nextInt(500);
+      final String chromosome = "chr" + (1 + random.nextInt(2));
+
+      ga.addEntry(new GenomicInterval(chromosome, start, end,
+          strands[random.nextInt(2)]), "feature" + random.nextInt(300));
+    }
+
+    final FrozenGenomicArray<String> fga = ga.freeze();
+    final FrozenGenomicArray.Overlaps overlaps =
+        new FrozenGenomicArray.Overlaps();
+
+    assertEquals(ga.getFeaturesIds(), fga.getFeaturesIds());
+    assertEquals(ga.getChromosomesNames(), fga.getChromosomesNames());
+
+    for (int i = 0; i < 5000; i++) {
+
+      final String chromosome = "chr" + (1 + random.nextInt(3));
+      final int start = random.nextInt(11000);
+      final int end = start + random.nextInt(300);
+
+      assertTrue(fga.getOverlaps(chromosome, start, end, overlaps));
+      assertEquals(ga.getEntries(chromosome, start, end),
+          toMap(fga, chromosome, overlaps));
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static Map<GenomicInterval, Set<String>> toMap(
+      final FrozenGenomicArray<String> fga, final String chromosome,
+      final FrozenGenomicArray.Overlaps overlaps) {
+
+    final Map<GenomicInterval, Set<String>> result = new HashMap<>();
+
+    for (int i = 0; i < overlaps.size(); i++) {
+
+      final Set<String> values = new HashSet<>();
+      for (int id : overlaps.getValueIds(i)) {
+        values.add(fga.getValue(id));
+      }
+
+      result.put(new GenomicInterval(chromosome, overlaps.getStart(i),
+          overlaps.getEnd(i), overlaps.getStrand(i)), values);
+    }
+
+    return result;
+  }
+
+}
@@ -27,6 +27,7 @@ package fr.ens.biologie.genomique.kenetre.bio;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -640,4 +641,97 @@ public class IlluminaReadIdTest {
 
   }
 
+  @Test
+  public void testGetSequenceIndexStart() {
+
+    String id = "HWI-1KL110:24:AB0868ABXX:3:1101:1492:2178 1:N:0:ATCACG";
+    assertEquals(id.indexOf("ATCACG"),
+        IlluminaReadId.getSequenceIndexStart(id));
+
+    id = "NB500892:10:H3YL2AFXX:1:11101:2003:1027 1:N:0:CGATGT+TTAGGC";
+    assertEquals(id.indexOf("CGATGT"),
+        IlluminaReadId.getSequenceIndexStart(id));
+
+    id = "HWUSI-EAS100R:6:73:941:1973#ATCACG/1";
+    assertEquals(id.indexOf("ATCACG"),
+        IlluminaReadId.getSequenceIndexStart(id));
+
+    assertEquals(-1, IlluminaReadId
+        .getSequenceIndexStart("HWUSI-EAS100R:6:73:941:1973#0/1"));
+    assertEquals(-1, IlluminaReadId.getSequenceIndexStart(
+        "HWI-1KL110:24:AB0868ABXX:3:1101:1492:2178 1:N:0:0"));
+    assertEquals(-1, IlluminaReadId.getSequenceIndexStart(
+        "HWI-1KL110:24:AB0868ABXX:3:1101:1492:2178 1:N:0:2"));
+    assertEquals(-1,
+        IlluminaReadId.getSequenceIndexStart("HWUSI-EAS100R:6:73:941:1973"));
+    assertEquals(-1, IlluminaReadId.getSequenceIndexStart(null));
+
+    // The result must be the same as the result of the parser, that trims
+    // the ids
+    final String[] ids = {
+        " HWI-1KL110:24:AB0868ABXX:3:1101:1492:2178 1:N:0:ATCACG ",
+        "HWI-1KL110:24:AB0868ABXX:3:1101:1492:2178 1:N:0:",
+        "HWI-1KL110:24:AB0868ABXX:3:1101:1492:2178 1:N:0:ATCACG:1",
+        "HWI-1KL110:24:AB0868ABXX:3:1101:1492:2178 1:N:0:ATC0CG",
+        "HWUSI-EAS100R:6:73:941:1973#ATNACG/1",
+        "HWUSI-EAS100R:6:73:941:1973#AT0ACG/1",
+        "HWUSI-EAS100R:6:73:941:1973#ATCACG",
+        "HWUSI-EAS100R:6:73:941:1973#ATCACG/1 comment",
+        "SRR1577083.1 HWI-ST1160:266:D0H3RACXX:6:1315:4634:59858 1:N:0:ATCACG",
+        "HWI-1KL110:24:AB0868ABXX:3:1101:1492:99999999999 1:N:0:ATCACG"};
+
+    for (String s : ids) {
+
+      int expected = -1;
+      try {
+        final IlluminaReadId irid = new IlluminaReadId(s.trim());
+        if (irid.isSequenceIndexField()
+            && !irid.getSequenceIndex().isEmpty()
+            && !"0".equals(irid.getSequenceIndex())) {
+          expected = s.indexOf(irid.getSequenceIndex());
+        }
+      } catch (KenetreException | NumberFormatException e) {
+        // Not a valid id
+      }
+
+      assertEquals(s, expected, IlluminaReadId.getSequenceIndexStart(s));
+    }
+  }
+
+  @Test
+  public void testParseSeveralReads() throws KenetreException {
+
+    final IlluminaReadId ii = new IlluminaReadId(
+        "HWI-1KL110:24:AB0868ABXX:3:1101:1492:2178 1:N:0:ATCACG");
+    final String instrumentId = ii.getInstrumentId();
+    final String sequenceIndex = ii.getSequenceIndex();
+
+    ii.parse("HWI-1KL110:24:AB0868ABXX:4:1102:1:2 2:Y:0:ATCACG");
+    assertSame(instrumentId, ii.getInstrumentId());
+    assertSame(sequenceIndex, ii.getSequenceIndex());
+    assertEquals(4, ii.getFlowCellLane());
+    assertEquals(1102, ii.getTileNumberInFlowCellLane());
+    assertEquals(2, ii.getPairMember());
+    assertTrue(ii.isFiltered());
+
+    ii.parse("HWI-1KL110:24:AB0868ABXX:4:1102:1:2 2:N:0:ATCACG+GGA");
+    assertEquals("ATCACG+GGA", ii.getSequenceIndex());
+    assertEquals(Arrays.asList("ATCACG", "GGA"), ii.getSequenceIndexList());
+
+    // The fields are not modified if the id is invalid
+    try {
+      ii.parse("HWI-1KL110:24:AB0868ABXX:5:1102:1:2 2:N:0:1");
+      fail();
+    } catch (KenetreException e) {
+      assertEquals(4, ii.getFlowCellLane());
+    }
+
+    try {
+      ii.parse("HWI-1KL110:24:AB0868ABXX:99999999999:1:1:2 2:N:0:A");
+      fail();
+    } catch (NumberFormatException e) {
+      assertTrue(true);
+    }
+  }
+
 }
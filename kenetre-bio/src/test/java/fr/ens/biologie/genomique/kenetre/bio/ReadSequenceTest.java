@@ -39,6 +39,8 @@ import java.util.List;
 
 import org.junit.Test;
 
+import fr.ens.biologie.genomique.kenetre.util.StatUtils;
+
 public class ReadSequenceTest {
 
   @Test
@@ -205,6 +207,22 @@ public class ReadSequenceTest {
 
   }
 
+  @Test
+  public void testMeanQuality() {
+
+    assertTrue(Double.isNaN(new ReadSequence().meanQuality()));
+
+    final ReadSequence s = new ReadSequence("read1", "ATGCAT", "+5I?!+");
+    assertEquals(StatUtils.mean(s.qualityScores()), s.meanQuality(), 0.0);
+
+    s.setFastqFormat(FastqFormat.FASTQ_ILLUMINA);
+    s.setQuality("hhhB");
+    assertEquals(30.5, s.meanQuality(), 0.0);
+
+    s.setQuality("");
+    assertTrue(Double.isNaN(s.meanQuality()));
+  }
+
   @Test
   public void testSubSequenceIntInt() {
 
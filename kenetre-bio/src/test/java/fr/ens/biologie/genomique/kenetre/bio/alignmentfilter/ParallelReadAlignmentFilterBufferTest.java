@@ -0,0 +1,100 @@
+package fr.ens.biologie.genomique.kenetre.bio.alignmentfilter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+
+public class ParallelReadAlignmentFilterBufferTest {
+
+  @Test
+  public void testSameResultsAsReadAlignmentFilterBuffer() {
+
+    final List<SAMRecord> records = randomRecords(5000);
+    final List<SAMRecord> expected = new ArrayList<>();
+
+    final ReadAlignmentFilterBuffer rafb = new ReadAlignmentFilterBuffer(
+        new RemoveMultiMatchesReadAlignmentFilter());
+
+    for (SAMRecord r : records) {
+      if (!rafb.addAlignment(r)) {
+        expected.addAll(rafb.getFilteredAlignments());
+        rafb.addAlignment(r);
+      }
+    }
+    expected.addAll(rafb.getFilteredAlignments());
+
+    for (int threads : new int[] {1, 4}) {
+      for (int batchSize : new int[] {1, 7, 10000}) {
+
+        final List<ReadAlignmentFilter> filters = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+          filters.add(new RemoveMultiMatchesReadAlignmentFilter());
+        }
+
+        final List<SAMRecord> result = new ArrayList<>();
+
+        try (ParallelReadAlignmentFilterBuffer buffer =
+            new ParallelReadAlignmentFilterBuffer(filters, null, result::add,
+                batchSize)) {
+
+          for (SAMRecord r : records) {
+            buffer.addAlignment(r);
+          }
+
+          buffer.close();
+          assertEquals(expected.size(), buffer.getOutputCount());
+        }
+
+        assertEquals(expected, result);
+      }
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddAfterClose() {
+
+    final List<ReadAlignmentFilter> filters = new ArrayList<>();
+    filters.add(new RemoveMultiMatchesReadAlignmentFilter());
+
+    final ParallelReadAlignmentFilterBuffer buffer =
+        new ParallelReadAlignmentFilterBuffer(filters, null, r -> {
+        });
+    buffer.close();
+    buffer.addAlignment(randomRecords(1).get(0));
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static List<SAMRecord> randomRecords(final int readCount) {
+
+    final Random random = new Random(0);
+    final SAMFileHeader header = new SAMFileHeader();
+    final List<SAMRecord> result = new ArrayList<>();
+
+    for (int i = 0; i < readCount; i++) {
+
+      final int alignments = 1 + random.nextInt(3);
+
+      for (int j = 0; j < alignments; j++) {
+
+        final SAMRecord r = new SAMRecord(header);
+        r.setReadName("read" + i);
+        r.setReferenceName("*");
+        r.setAlignmentStart(j + 1);
+        result.add(r);
+      }
+    }
+
+    return result;
+  }
+
+}
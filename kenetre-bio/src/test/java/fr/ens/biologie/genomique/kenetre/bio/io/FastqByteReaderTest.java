@@ -0,0 +1,140 @@
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+
+public class FastqByteReaderTest {
+
+  @Test
+  public void testSameResultAsFastqReader()
+      throws IOException, BadBioEntryException {
+
+    for (int bufferSize : new int[] {1, 7, 100,
+        FastqByteReader.DEFAULT_BUFFER_SIZE}) {
+      testFile("/illumina_1_8.fastq", bufferSize);
+      testFile("/alexander_PC_20161027_R9-4_1D_template.fastq", bufferSize);
+    }
+  }
+
+  @Test
+  public void testReuseResultObject() throws IOException {
+
+    final String s = "@read1\nACGT\n+\nIIII\n@read2\nTTGG\n+read2\nJJJJ\n";
+
+    try (FastqByteReader reader = new FastqByteReader(
+        new ByteArrayInputStream(s.getBytes()), true, 5)) {
+
+      assertTrue(reader.hasNext());
+      ReadSequence read1 = reader.next();
+      assertEquals("read1", read1.getName());
+      assertEquals("ACGT", read1.getSequence());
+      assertEquals("IIII", read1.getQuality());
+
+      assertTrue(reader.hasNext());
+      ReadSequence read2 = reader.next();
+      assertSame(read1, read2);
+      assertEquals("read2", read2.getName());
+      assertEquals("TTGG", read2.getSequence());
+      assertEquals("JJJJ", read2.getQuality());
+
+      assertFalse(reader.hasNext());
+    }
+  }
+
+  @Test
+  public void testWindowsEndOfLines() throws IOException {
+
+    final String s = "@read1\r\nACGT\r\n+\r\nIIII";
+
+    try (FastqByteReader reader =
+        new FastqByteReader(new ByteArrayInputStream(s.getBytes()))) {
+
+      assertTrue(reader.hasNext());
+      ReadSequence read = reader.next();
+      assertEquals("read1", read.getName());
+      assertEquals("ACGT", read.getSequence());
+      assertEquals("IIII", read.getQuality());
+      assertFalse(reader.hasNext());
+    }
+  }
+
+  @Test
+  public void testInvalidEntry() throws IOException {
+
+    final String s = "@read1\nACGT\n+\nIIII\n@read2\nACGT\n-\nIIII\n";
+
+    try (FastqByteReader reader =
+        new FastqByteReader(new ByteArrayInputStream(s.getBytes()))) {
+
+      int count = 0;
+      for (ReadSequence read : reader) {
+        assertEquals("read1", read.getName());
+        count++;
+      }
+      assertEquals(1, count);
+
+      reader.throwException();
+      fail();
+    } catch (BadBioEntryException e) {
+      assertEquals(
+          "Invalid Fastq file. Third line of the entry don't start with '+' at line 7",
+          e.getMessage());
+      assertEquals("-", e.getEntry());
+    }
+  }
+
+  private void testFile(final String resourcePath, final int bufferSize)
+      throws IOException, BadBioEntryException {
+
+    final List<ReadSequence> expected = new ArrayList<>();
+    final List<ReadSequence> result = new ArrayList<>();
+
+    try (InputStream is = getResource(resourcePath);
+        ReadSequenceReader reader = new FastqReader(is)) {
+
+      for (ReadSequence read : reader) {
+        expected.add(read);
+      }
+      reader.throwException();
+    }
+
+    try (InputStream is = getResource(resourcePath);
+        ReadSequenceReader reader =
+            new FastqByteReader(is, false, bufferSize)) {
+
+      for (ReadSequence read : reader) {
+        result.add(read);
+      }
+      reader.throwException();
+    }
+
+    assertEquals(expected, result);
+  }
+
+  private InputStream getResource(final String resourcePath)
+      throws IOException {
+
+    InputStream result = this.getClass().getResourceAsStream(resourcePath);
+
+    if (result == null) {
+      throw new IOException("resource not found: " + resourcePath);
+    }
+
+    return result;
+  }
+
+}
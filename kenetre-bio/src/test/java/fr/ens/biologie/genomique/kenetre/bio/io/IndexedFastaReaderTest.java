@@ -0,0 +1,233 @@
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.bio.Sequence;
+
+public class IndexedFastaReaderTest {
+
+  private static final String[] NAMES = {"chr1", "chr2", "chrM"};
+  private static final int[] LENGTHS = {1000, 61, 7};
+
+  @Test
+  public void testIndex() throws IOException {
+
+    final String[] sequences = randomSequences();
+    final File fasta = createFasta(sequences, 60, "\n");
+
+    try (IndexedFastaReader reader = new IndexedFastaReader(fasta)) {
+
+      assertEquals(Arrays.asList(NAMES), reader.getSequenceNames());
+      assertTrue(reader.containsSequence("chr2"));
+      assertFalse(reader.containsSequence("chr3"));
+      assertEquals(61, reader.getSequenceLength("chr2"));
+      assertEquals(-1, reader.getSequenceLength("chr3"));
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      reader.writeIndex(out);
+
+      assertEquals("chr1\t1000\t18\t60\t61\n"
+          + "chr2\t61\t1053\t60\t61\n" + "chrM\t7\t1134\t7\t8\n",
+          out.toString());
+    } finally {
+      fasta.delete();
+    }
+  }
+
+  @Test
+  public void testSubSequences() throws IOException {
+
+    final String[] sequences = randomSequences();
+
+    for (String eol : new String[] {"\n", "\r\n"}) {
+      for (int lineLength : new int[] {1, 7, 60, 2000}) {
+
+        final File fasta = createFasta(sequences, lineLength, eol);
+
+        try (IndexedFastaReader reader = new IndexedFastaReader(fasta)) {
+
+          for (int i = 0; i < NAMES.length; i++) {
+
+            final Sequence whole = reader.getSequence(NAMES[i]);
+            assertEquals(NAMES[i], whole.getName());
+            assertEquals(sequences[i], whole.getSequence());
+
+            for (int start = 1; start <= LENGTHS[i]; start += 13) {
+              for (int end = start; end <= LENGTHS[i]; end += 17) {
+                assertEquals(sequences[i].substring(start - 1, end),
+                    reader.getSequence(NAMES[i], start, end).getSequence());
+              }
+            }
+          }
+        } finally {
+          fasta.delete();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSameResultAsFastaReader() throws IOException {
+
+    final File fasta = createFasta(randomSequences(), 50, "\n");
+
+    try (IndexedFastaReader indexedReader = new IndexedFastaReader(fasta);
+        FastaReader reader = new FastaReader(fasta)) {
+
+      for (Sequence expected : reader) {
+        assertEquals(expected.getSequence(),
+            indexedReader.getSequence(expected.getIdentifierInName())
+                .getSequence());
+      }
+      reader.throwException();
+
+    } finally {
+      fasta.delete();
+    }
+  }
+
+  @Test
+  public void testIndexFile() throws IOException {
+
+    final String[] sequences = randomSequences();
+    final File fasta = createFasta(sequences, 60, "\n");
+    final File fai = IndexedFastaReader.indexFile(fasta);
+
+    try {
+
+      assertEquals(fai, IndexedFastaReader.createIndex(fasta));
+      assertTrue(fai.isFile());
+
+      // The reader must use the existing index
+      try (IndexedFastaReader reader = new IndexedFastaReader(fasta)) {
+        assertEquals(sequences[1],
+            reader.getSequence("chr2").getSequence());
+      }
+
+      final GenomeDescription desc =
+          GenomeDescription.createGenomeDescFromFastaIndex(fai);
+
+      assertEquals(fasta.getName().substring(0,
+          fasta.getName().indexOf('.')), desc.getGenomeName());
+      assertEquals(Arrays.asList(NAMES), desc.getSequencesNames());
+      for (int i = 0; i < NAMES.length; i++) {
+        assertEquals(LENGTHS[i], desc.getSequenceLength(NAMES[i]));
+      }
+
+    } finally {
+      fasta.delete();
+      fai.delete();
+    }
+  }
+
+  @Test
+  public void testInvalidRegion() throws IOException {
+
+    final File fasta = createFasta(randomSequences(), 60, "\n");
+
+    try (IndexedFastaReader reader = new IndexedFastaReader(fasta)) {
+
+      for (long[] region : new long[][] {{0, 10}, {5, 1001}, {10, 5}}) {
+        try {
+          reader.getSequence("chr1", region[0], region[1]);
+          fail();
+        } catch (IOException e) {
+          // Expected exception
+        }
+      }
+
+      try {
+        reader.getSequence("chr3");
+        fail();
+      } catch (IOException e) {
+        // Expected exception
+      }
+
+    } finally {
+      fasta.delete();
+    }
+  }
+
+  @Test
+  public void testInvalidLineLength() throws IOException {
+
+    final File fasta = File.createTempFile("invalid-", ".fasta");
+
+    try {
+
+      try (OutputStream os = new FileOutputStream(fasta)) {
+        os.write(">chr1\nACGT\nAC\nACGT\n".getBytes(StandardCharsets.UTF_8));
+      }
+
+      try (IndexedFastaReader reader = new IndexedFastaReader(fasta)) {
+        fail();
+      } catch (IOException e) {
+        // Expected exception
+      }
+
+    } finally {
+      fasta.delete();
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static String[] randomSequences() {
+
+    final Random random = new Random(12);
+    final String[] result = new String[LENGTHS.length];
+
+    for (int i = 0; i < LENGTHS.length; i++) {
+
+      final StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < LENGTHS[i]; j++) {
+        sb.append("ATGCN".charAt(random.nextInt(5)));
+      }
+      result[i] = sb.toString();
+    }
+
+    return result;
+  }
+
+  private static File createFasta(final String[] sequences,
+      final int lineLength, final String eol) throws IOException {
+
+    final File result = File.createTempFile("genome-", ".fasta");
+
+    try (OutputStream os = new FileOutputStream(result)) {
+
+      final StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < sequences.length; i++) {
+
+        sb.append('>').append(NAMES[i]).append(" description").append(eol);
+        for (int j = 0; j < sequences[i].length(); j += lineLength) {
+          sb.append(sequences[i], j,
+              Math.min(sequences[i].length(), j + lineLength));
+          sb.append(eol);
+        }
+      }
+
+      os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    return result;
+  }
+
+}
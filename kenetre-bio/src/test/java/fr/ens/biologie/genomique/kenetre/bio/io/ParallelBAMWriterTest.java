@@ -0,0 +1,227 @@
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+
+public class ParallelBAMWriterTest {
+
+  private static final String SAM_FILE = "/mapper_results_SE.sam";
+
+  @Test
+  public void testStreamingSAMReader() throws IOException {
+
+    final List<String> expected = readRecords(getSAMStream());
+    final List<String> result = new ArrayList<>();
+
+    try (StreamingSAMReader reader = new StreamingSAMReader(getSAMStream())) {
+
+      assertEquals(22, reader.getFileHeader().getSequenceDictionary().size());
+
+      for (SAMRecord record : reader) {
+        result.add(record.getSAMString());
+      }
+
+      assertFalse(reader.hasNext());
+    }
+
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, result);
+
+    // Close the reader before the end of the stream
+    try (StreamingSAMReader reader = new StreamingSAMReader(getSAMStream())) {
+      reader.next();
+    }
+  }
+
+  @Test
+  public void testWriteBAM() throws IOException {
+
+    final List<String> expected = readRecords(getSAMStream());
+
+    for (int threads : new int[] {1, 4}) {
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      try (StreamingSAMReader reader = new StreamingSAMReader(getSAMStream());
+          ParallelBAMWriter writer =
+              new ParallelBAMWriter(out, reader.getFileHeader(), threads)) {
+
+        for (SAMRecord record : reader) {
+          writer.write(record);
+        }
+
+        assertEquals(expected.size(), writer.getRecordCount());
+      }
+
+      final byte[] bam = out.toByteArray();
+      assertEquals(expected, readRecords(new ByteArrayInputStream(bam)));
+
+      // The BAM file must end with the BGZF EOF block
+      final byte[] eof = BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK;
+      assertArrayEquals(eof,
+          Arrays.copyOfRange(bam, bam.length - eof.length, bam.length));
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testDecoderError() throws IOException {
+
+    final byte[] sam = ByteStreams.toByteArray(getSAMStream());
+    final InputStream in = new SplitInputStream(sam, firstRecordEnd(sam)) {
+
+      @Override
+      protected int readAfterSplit() {
+        throw new AssertionError("decoder error");
+      }
+    };
+
+    try (StreamingSAMReader reader = new StreamingSAMReader(in)) {
+
+      while (reader.hasNext()) {
+        reader.next();
+      }
+      fail();
+    } catch (AssertionError e) {
+      assertEquals("decoder error", e.getMessage());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testCloseBlockedDecoder() throws IOException {
+
+    final byte[] sam = ByteStreams.toByteArray(getSAMStream());
+    final CountDownLatch closed = new CountDownLatch(1);
+
+    // Like a pipe, the read is not interrupted by Thread.interrupt()
+    final InputStream in = new SplitInputStream(sam, firstRecordEnd(sam)) {
+
+      @Override
+      protected int readAfterSplit() throws IOException {
+
+        while (closed.getCount() > 0) {
+          try {
+            closed.await();
+          } catch (InterruptedException e) {
+            // Ignore interruptions
+          }
+        }
+        throw new IOException("Stream closed");
+      }
+
+      @Override
+      public void close() {
+        closed.countDown();
+      }
+    };
+
+    final StreamingSAMReader reader = new StreamingSAMReader(in);
+    reader.close();
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static InputStream getSAMStream() {
+
+    return ParallelBAMWriterTest.class.getResourceAsStream(SAM_FILE);
+  }
+
+  private static List<String> readRecords(final InputStream in)
+      throws IOException {
+
+    final List<String> result = new ArrayList<>();
+
+    try (SamReader reader = SamReaderFactory.makeDefault()
+        .validationStringency(ValidationStringency.STRICT)
+        .open(SamInputResource.of(in))) {
+
+      for (SAMRecord record : reader) {
+        result.add(record.getSAMString());
+      }
+    }
+
+    return result;
+  }
+
+  private static int firstRecordEnd(final byte[] sam) {
+
+    int pos = 0;
+    boolean header = true;
+    while (header) {
+      header = sam[pos] == '@';
+      while (sam[pos++] != '\n') {
+      }
+    }
+
+    return pos;
+  }
+
+  /**
+   * Input stream that returns data until a split position. The data after the
+   * split position is handled by readAfterSplit().
+   */
+  private abstract static class SplitInputStream extends InputStream {
+
+    private final byte[] data;
+    private final int split;
+    private int pos;
+
+    protected abstract int readAfterSplit() throws IOException;
+
+    @Override
+    public int read() throws IOException {
+
+      final byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+
+      if (this.pos == this.split) {
+        return readAfterSplit();
+      }
+
+      final int n = Math.min(len, this.split - this.pos);
+      System.arraycopy(this.data, this.pos, b, off, n);
+      this.pos += n;
+
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return 0;
+    }
+
+    SplitInputStream(final byte[] data, final int split) {
+      this.data = data;
+      this.split = split;
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.BEDEntry;
+
+public class SortedBEDWriterTest {
+
+  @Test
+  public void testInMemory() throws IOException {
+
+    final List<BEDEntry> entries = randomEntries(1000);
+
+    final StringWriter out = new StringWriter();
+    try (SortedBEDWriter writer = new SortedBEDWriter(out, 6)) {
+      for (BEDEntry e : entries) {
+        writer.write(e);
+      }
+    }
+
+    assertEquals(expected(entries, 6), out.toString());
+  }
+
+  @Test
+  public void testExternal() throws IOException {
+
+    final List<BEDEntry> entries = randomEntries(20000);
+    final File tmpDir = Files.createTempDirectory("sortedbed").toFile();
+
+    try {
+      for (int threads : new int[] {1, 4}) {
+
+        final StringWriter out = new StringWriter();
+        try (SortedBEDWriter writer = new SortedBEDWriter(out, 6)) {
+
+          writer.setTemporaryDirectory(tmpDir);
+          writer.setMaxMemory(20000);
+          writer.setThreads(threads);
+
+          for (BEDEntry e : entries) {
+            writer.write(e);
+          }
+        }
+
+        assertEquals(expected(entries, 6), out.toString());
+        assertEquals(0, tmpDir.list().length);
+      }
+    } finally {
+      tmpDir.delete();
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+
+    final StringWriter out = new StringWriter();
+    new SortedBEDWriter(out).close();
+
+    assertEquals("", out.toString());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static List<BEDEntry> randomEntries(final int count) {
+
+    final Random random = new Random(0);
+    final List<BEDEntry> result = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+
+      final BEDEntry e = new BEDEntry();
+      e.setChromosomeName("chr" + random.nextInt(25));
+      e.setStart(1 + random.nextInt(1000));
+      e.setEnd(e.getStart() + random.nextInt(10));
+      if (random.nextInt(10) > 0) {
+        e.setName("name" + random.nextInt(5));
+      }
+      e.setScore(i % 1001);
+      e.setStrand(random.nextBoolean() ? '+' : '-');
+      result.add(e);
+    }
+
+    return result;
+  }
+
+  private static String expected(final List<BEDEntry> entries,
+      final int format) {
+
+    final List<BEDEntry> sorted = new ArrayList<>(entries);
+    Collections.sort(sorted);
+
+    final StringBuilder sb = new StringBuilder();
+    for (BEDEntry e : sorted) {
+      sb.append(e.toBED(format));
+      sb.append('\n');
+    }
+
+    return sb.toString();
+  }
+
+}
@@ -46,6 +46,7 @@ public class QualityReadFilterTest {
     filter.init();
 
     assertFalse(filter.accept(null));
+    assertFalse(filter.accept(new ReadSequence("read0", "ATG", null)));
 
     ReadSequence read = new ReadSequence("read1", "ATG", "ABC");
 
@@ -0,0 +1,203 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.FastqFormat;
+import fr.ens.biologie.genomique.kenetre.bio.io.FastqByteReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.FastqWriter;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+
+public class ReadFilterPipelineTest {
+
+  private static final int READ_COUNT = 10000;
+  private static final String GROUP = "group";
+
+  @Test
+  public void testSingleEnd()
+      throws KenetreException, IOException, BadBioEntryException {
+
+    final String input = createFastq(READ_COUNT, 1);
+    final String expected = filterSequentially(input);
+
+    for (int threads : new int[] {1, 2, 4}) {
+
+      final LocalReporter reporter = new LocalReporter();
+      final ReadFilterPipeline pipeline = new ReadFilterPipeline(
+          createFilters(threads), FastqFormat.FASTQ_SANGER, reporter, GROUP);
+      pipeline.setBatchSize(100);
+
+      final ByteArrayOutputStream os = new ByteArrayOutputStream();
+      try (FastqWriter writer = new FastqWriter(os)) {
+        pipeline.filter(new FastqByteReader(toStream(input)), writer);
+      }
+
+      assertEquals(expected, os.toString());
+      assertEquals(READ_COUNT, reporter.getCounterValue(GROUP,
+          ReadFilterPipeline.INPUT_READS_COUNTER));
+      assertEquals(READ_COUNT,
+          reporter.getCounterValue(GROUP,
+              ReadFilterPipeline.ACCEPTED_READS_COUNTER)
+              + reporter.getCounterValue(GROUP,
+                  ReadFilterPipeline.REJECTED_READS_COUNTER));
+    }
+  }
+
+  @Test
+  public void testPairedEnd()
+      throws KenetreException, IOException, BadBioEntryException {
+
+    final String input1 = createFastq(READ_COUNT, 1);
+    final String input2 = createFastq(READ_COUNT, 2);
+    final String expected1 = filterSequentially(input1);
+    final String expected2 = filterSequentially(input2);
+
+    for (int threads : new int[] {1, 3}) {
+
+      final LocalReporter reporter = new LocalReporter();
+      final ReadFilterPipeline pipeline = new ReadFilterPipeline(
+          createFilters(threads), FastqFormat.FASTQ_SANGER, reporter, GROUP);
+      pipeline.setBatchSize(64);
+
+      final ByteArrayOutputStream os1 = new ByteArrayOutputStream();
+      final ByteArrayOutputStream os2 = new ByteArrayOutputStream();
+      try (FastqWriter writer1 = new FastqWriter(os1);
+          FastqWriter writer2 = new FastqWriter(os2)) {
+        pipeline.filter(new FastqByteReader(toStream(input1)),
+            new FastqByteReader(toStream(input2)), writer1, writer2);
+      }
+
+      assertEquals(expected1, os1.toString());
+      assertEquals(expected2, os2.toString());
+      assertEquals(READ_COUNT, reporter.getCounterValue(GROUP,
+          ReadFilterPipeline.INPUT_READS_COUNTER));
+    }
+  }
+
+  @Test
+  public void testPairedEndDifferentReadCount()
+      throws KenetreException, BadBioEntryException {
+
+    final ReadFilterPipeline pipeline = new ReadFilterPipeline(
+        createFilters(2), FastqFormat.FASTQ_SANGER, new LocalReporter(), GROUP);
+    pipeline.setBatchSize(64);
+
+    try (FastqWriter writer1 = new FastqWriter(new ByteArrayOutputStream());
+        FastqWriter writer2 = new FastqWriter(new ByteArrayOutputStream())) {
+
+      pipeline.filter(
+          new FastqByteReader(toStream(createFastq(READ_COUNT, 1))),
+          new FastqByteReader(toStream(createFastq(READ_COUNT - 1, 2))),
+          writer1, writer2);
+      fail();
+    } catch (IOException e) {
+      assertEquals(
+          "Unexpected end of the second read file. The two read files must have the same number of entries/lines.",
+          e.getMessage());
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static String createFastq(final int count, final int mate) {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < count; i++) {
+
+      final int length = 1 + (i * 7) % 30;
+      sb.append("@read");
+      sb.append(i);
+      sb.append('/');
+      sb.append(mate);
+      sb.append('\n');
+      sb.append("ATGC".repeat(length).substring(0, length));
+      sb.append("\n+\n");
+      sb.append("I".repeat(length));
+      sb.append('\n');
+    }
+
+    return sb.toString();
+  }
+
+  private static String filterSequentially(final String input)
+      throws KenetreException, IOException {
+
+    final ReadFilter filter = createFilters(1).get(0);
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+    try (FastqByteReader reader = new FastqByteReader(toStream(input));
+        FastqWriter writer = new FastqWriter(os)) {
+
+      reader.forEachRemaining(read -> {
+        try {
+          if (filter.accept(read)) {
+            writer.write(read);
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      });
+    }
+
+    return os.toString();
+  }
+
+  private static List<ReadFilter> createFilters(final int count)
+      throws KenetreException {
+
+    final List<ReadFilter> result = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+
+      final ReadFilter filter = new LengthReadFilter();
+      filter.setParameter("minimal.length.threshold", "15");
+      filter.init();
+      result.add(filter);
+    }
+
+    return result;
+  }
+
+  private static ByteArrayInputStream toStream(final String s) {
+
+    return new ByteArrayInputStream(s.getBytes());
+  }
+
+}
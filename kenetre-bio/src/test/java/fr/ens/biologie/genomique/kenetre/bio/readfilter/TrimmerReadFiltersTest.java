@@ -0,0 +1,295 @@
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+
+public class TrimmerReadFiltersTest {
+
+  @Test
+  public void testLeading() throws KenetreException {
+
+    final ReadFilter filter = createFilter(new LeadingReadFilter(), "34");
+
+    ReadSequence read = new ReadSequence("read1", "AGG", "ABC");
+    assertTrue(filter.accept(read));
+    assertEquals("G", read.getSequence());
+    assertEquals("C", read.getQuality());
+    assertFalse(filter.accept(null));
+
+    read = new ReadSequence("read2", "AGAGT", "ABABA");
+    assertFalse(filter.accept(read));
+    assertEquals("AGAGT", read.getSequence());
+
+    // The quality of N bases is 0
+    read = new ReadSequence("read3", "NGAGT", "CBCBA");
+    assertTrue(filter.accept(read));
+    assertEquals("AGT", read.getSequence());
+  }
+
+  @Test
+  public void testTrailing() throws KenetreException {
+
+    final ReadFilter filter = createFilter(new TrailingReadFilter(), "33");
+
+    ReadSequence read = new ReadSequence("read1", "AAGGCTT", "CABA;:9");
+    assertTrue(filter.accept(read));
+    assertEquals("AAG", read.getSequence());
+    assertEquals("CAB", read.getQuality());
+
+    read = new ReadSequence("read2", "AAN", "CCC");
+    assertTrue(filter.accept(read));
+    assertEquals("AA", read.getSequence());
+  }
+
+  @Test
+  public void testCrop() throws KenetreException {
+
+    final ReadFilter filter = createFilter(new CropReadFilter(), "5");
+
+    ReadSequence read = new ReadSequence("read1", "AGGGGGCAAA", "xwxwxxabcd");
+    assertTrue(filter.accept(read));
+    assertEquals("AGGGG", read.getSequence());
+    assertEquals("xwxwx", read.getQuality());
+
+    read = new ReadSequence("read2", "AGG", "xwx");
+    assertTrue(filter.accept(read));
+    assertEquals("AGG", read.getSequence());
+  }
+
+  @Test
+  public void testHeadCrop() throws KenetreException {
+
+    final ReadFilter filter = createFilter(new HeadCropReadFilter(), "5");
+
+    ReadSequence read = new ReadSequence("read1", "AGGGGGCAAA", "xwxwxxabcd");
+    assertTrue(filter.accept(read));
+    assertEquals("GCAAA", read.getSequence());
+    assertEquals("xabcd", read.getQuality());
+
+    assertFalse(filter.accept(new ReadSequence("read2", "AGGGG", "xxxxx")));
+  }
+
+  @Test
+  public void testSlidingWindow() throws KenetreException {
+
+    ReadFilter filter = createFilter(new SlidingWindowReadFilter(), "4:29");
+    ReadSequence read = new ReadSequence("read1", "AGGT", "AA;;");
+    assertTrue(filter.accept(read));
+    assertEquals("AG", read.getSequence());
+    assertEquals("AA", read.getQuality());
+
+    filter = createFilter(new SlidingWindowReadFilter(), "6:29");
+    read = new ReadSequence("read2", "ATCTGGT", "A;;AA;;");
+    assertTrue(filter.accept(read));
+    assertEquals("ATCTG", read.getSequence());
+
+    filter = createFilter(new SlidingWindowReadFilter(), "9:27.3");
+    read = new ReadSequence("read3", "ATATCTGGT", ";;A;;AA;;");
+    assertTrue(filter.accept(read));
+    assertEquals("ATATCTG", read.getSequence());
+
+    filter = createFilter(new SlidingWindowReadFilter(), "9:27");
+    read = new ReadSequence("read4", "ATATCTGGT", "AA;;;;;;;");
+    assertTrue(filter.accept(read));
+    assertEquals("AT", read.getSequence());
+
+    read = new ReadSequence("read5", "ATATCTGGT", ";;;;;;;AA");
+    assertTrue(filter.accept(read));
+    assertEquals("ATATCTGGT", read.getSequence());
+
+    assertFalse(filter.accept(new ReadSequence("read6", "ATG", "III")));
+  }
+
+  @Test(expected = KenetreException.class)
+  public void testInvalidArguments() throws KenetreException {
+
+    createFilter(new SlidingWindowReadFilter(), "4");
+  }
+
+  @Test
+  public void testSameResultsAsTrimmomatic() throws KenetreException {
+
+    final Random random = new Random(7);
+
+    for (int i = 0; i < 2000; i++) {
+
+      final ReadSequence read = randomRead(random);
+      final String leading = "" + random.nextInt(40);
+      final String trailing = "" + random.nextInt(40);
+      final String crop = "" + random.nextInt(60);
+      final String headCrop = "" + random.nextInt(20);
+      final String slidingWindow =
+          (1 + random.nextInt(10)) + ":" + random.nextInt(40);
+
+      assertSameResult(read, createFilter(new LeadingReadFilter(), leading),
+          createFilter(new LeadingTrimmerReadFilter(), leading));
+      assertSameResult(read, createFilter(new TrailingReadFilter(), trailing),
+          createFilter(new TrailingTrimmerReadFilter(), trailing));
+      assertSameResult(read, createFilter(new CropReadFilter(), crop),
+          createFilter(new CropTrimmerReadFilter(), crop));
+      assertSameResult(read, createFilter(new HeadCropReadFilter(), headCrop),
+          createFilter(new HeadCropTrimmerReadFilter(), headCrop));
+      assertSameResult(read,
+          createFilter(new SlidingWindowReadFilter(), slidingWindow),
+          createFilter(new SlidingWindowTrimmerReadFilter(), slidingWindow));
+
+      // Chain of trimmers
+      assertSameResult(read,
+          new MultiReadFilter(Arrays.asList(
+              createFilter(new HeadCropReadFilter(), headCrop),
+              createFilter(new LeadingReadFilter(), leading),
+              createFilter(new SlidingWindowReadFilter(), slidingWindow),
+              createFilter(new TrailingReadFilter(), trailing),
+              createFilter(new CropReadFilter(), crop))),
+          new MultiReadFilter(Arrays.asList(
+              createFilter(new HeadCropTrimmerReadFilter(), headCrop),
+              createFilter(new LeadingTrimmerReadFilter(), leading),
+              createFilter(new SlidingWindowTrimmerReadFilter(),
+                  slidingWindow),
+              createFilter(new TrailingTrimmerReadFilter(), trailing),
+              createFilter(new CropTrimmerReadFilter(), crop))));
+    }
+  }
+
+  @Test
+  public void testChain() throws KenetreException {
+
+    final List<ReadFilter> filters =
+        Arrays.asList(createFilter(new HeadCropReadFilter(), "2"),
+            createFilter(new TrailingReadFilter(), "33"),
+            createFilter(new CropReadFilter(), "3"));
+
+    final Random random = new Random(3);
+
+    for (int i = 0; i < 1000; i++) {
+
+      final ReadSequence read = randomRead(random);
+      final ReadSequence original = copy(read);
+      final ReadSequence expected = copy(read);
+
+      boolean expectedResult = true;
+      for (ReadFilter f : filters) {
+        if (!f.accept(expected)) {
+          expectedResult = false;
+          break;
+        }
+      }
+
+      assertEquals(expectedResult, new MultiReadFilter(filters).accept(read));
+      assertEquals(expectedResult ? expected : original, read);
+
+      // Paired-end
+      final ReadSequence read1 = randomRead(random);
+      final ReadSequence read2 = randomRead(random);
+      final ReadSequence original1 = copy(read1);
+      final ReadSequence original2 = copy(read2);
+      final ReadSequence expected1 = copy(read1);
+      final ReadSequence expected2 = copy(read2);
+
+      expectedResult = true;
+      for (ReadFilter f : filters) {
+        if (!f.accept(expected1, expected2)) {
+          expectedResult = false;
+          break;
+        }
+      }
+
+      assertEquals(expectedResult,
+          new MultiReadFilter(filters).accept(read1, read2));
+      assertEquals(expectedResult ? expected1 : original1, read1);
+      assertEquals(expectedResult ? expected2 : original2, read2);
+    }
+  }
+
+  @Test
+  public void testRejectedReadNotModified() throws KenetreException {
+
+    final MultiReadFilter filter =
+        new MultiReadFilter(Arrays.asList(
+            createFilter(new HeadCropReadFilter(), "2"),
+            createFilter(new TrailingReadFilter(), "33"),
+            createFilter(new CropReadFilter(), "3")));
+
+    // The trailing trimmer removes all the bases after the head crop
+    ReadSequence read = new ReadSequence("read1", "AGGTC", "II###");
+    assertFalse(filter.accept(read));
+    assertEquals("AGGTC", read.getSequence());
+    assertEquals("II###", read.getQuality());
+
+    final ReadSequence read1 = new ReadSequence("read1", "AGGTCA", "IIIIII");
+    final ReadSequence read2 = new ReadSequence("read2", "AGGTC", "II###");
+    assertFalse(filter.accept(read1, read2));
+    assertEquals("AGGTCA", read1.getSequence());
+    assertEquals("AGGTC", read2.getSequence());
+    assertEquals("II###", read2.getQuality());
+
+    // Accepted reads are trimmed
+    read = new ReadSequence("read3", "AGGTCA", "IIIII#");
+    assertTrue(filter.accept(read));
+    assertEquals("GTC", read.getSequence());
+    assertEquals("III", read.getQuality());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static ReadFilter createFilter(final ReadFilter filter,
+      final String arguments) throws KenetreException {
+
+    filter.setParameter("arguments", arguments);
+    filter.init();
+
+    return filter;
+  }
+
+  private static ReadSequence copy(final ReadSequence read) {
+
+    final ReadSequence result = new ReadSequence();
+    result.set(read);
+
+    return result;
+  }
+
+  private static ReadSequence randomRead(final Random random) {
+
+    final int length = random.nextInt(50);
+    final StringBuilder sequence = new StringBuilder();
+    final StringBuilder quality = new StringBuilder();
+
+    for (int i = 0; i < length; i++) {
+      sequence.append("ATGCN".charAt(random.nextInt(5)));
+      quality.append((char) ('!' + random.nextInt(42)));
+    }
+
+    return new ReadSequence("read", sequence.toString(), quality.toString());
+  }
+
+  private static void assertSameResult(final ReadSequence read,
+      final ReadFilter filter, final ReadFilter referenceFilter) {
+
+    final ReadSequence read1 = new ReadSequence();
+    read1.set(read);
+    final ReadSequence read2 = new ReadSequence();
+    read2.set(read);
+
+    final boolean result = filter.accept(read1);
+    assertEquals(referenceFilter.accept(read2), result);
+
+    if (result) {
+      assertEquals(read2.getSequence(), read1.getSequence());
+      assertEquals(read2.getQuality(), read1.getQuality());
+    }
+  }
+
+}
@@ -100,6 +100,19 @@ public enum CompressionType {
   public InputStream createInputStream(final InputStream is)
       throws IOException {
 
+    return createInputStream(is, 1);
+  }
+
+  /**
+   * Get the compression input stream required by a content encoding.
+   * @param is the input stream
+   * @param threads number of threads used to uncompress gzip streams
+   * @return an input stream
+   * @throws IOException if an error occurs while creating the input stream
+   */
+  public InputStream createInputStream(final InputStream is,
+      final int threads) throws IOException {
+
     if (is == null) {
       return null;
     }
@@ -107,7 +120,7 @@ public enum CompressionType {
     switch (this) {
 
     case GZIP:
-      return createGZipInputStream(is);
+      return createGZipInputStream(is, threads);
 
     case BZIP2:
       return createBZip2InputStream(is);
@@ -131,6 +144,19 @@ public enum CompressionType {
   public OutputStream createOutputStream(final OutputStream os)
       throws IOException {
 
+    return createOutputStream(os, 1);
+  }
+
+  /**
+   * Get the compression output stream required by a content encoding.
+   * @param os the output stream
+   * @param threads number of threads used to compress gzip streams
+   * @return an output stream
+   * @throws IOException if an error occurs while creating the input stream
+   */
+  public OutputStream createOutputStream(final OutputStream os,
+      final int threads) throws IOException {
+
     if (os == null) {
       return null;
     }
@@ -138,7 +164,7 @@ public enum CompressionType {
     switch (this) {
 
     case GZIP:
-      return createGZipOutputStream(os);
+      return createGZipOutputStream(os, threads);
 
     case BZIP2:
       return createBZip2OutputStream(os);
@@ -251,6 +277,26 @@ public enum CompressionType {
   public static InputStream createGZipInputStream(final InputStream is)
       throws IOException {
 
+    return createGZipInputStream(is, 1);
+  }
+
+  /**
+   * Create a GZip input stream. If the number of threads is greater than 1,
+   * the stream is uncompressed by a ParallelGZipInputStream.
+   * @param is the input stream to uncompress
+   * @param threads number of threads used to uncompress the stream
+   * @return a uncompressed input stream
+   * @throws IOException if an error occurs while creating the input stream
+   */
+  public static InputStream createGZipInputStream(final InputStream is,
+      final int threads) throws IOException {
+
+    checkThreads(threads);
+
+    if (threads > 1) {
+      return new ParallelGZipInputStream(is, threads);
+    }
+
     return new GZIPInputStream(is);
   }
 
@@ -289,6 +335,26 @@ public enum CompressionType {
   public static OutputStream createGZipOutputStream(final OutputStream os)
       throws IOException {
 
+    return createGZipOutputStream(os, 1);
+  }
+
+  /**
+   * Create a GZip output stream. If the number of threads is greater than 1,
+   * the stream is compressed by a ParallelGZipOutputStream.
+   * @param os the output stream to compress
+   * @param threads number of threads used to compress the stream
+   * @return a compressed output stream
+   * @throws IOException if an error occurs while creating the output stream
+   */
+  public static OutputStream createGZipOutputStream(final OutputStream os,
+      final int threads) throws IOException {
+
+    checkThreads(threads);
+
+    if (threads > 1) {
+      return new ParallelGZipOutputStream(os, threads);
+    }
+
     return new GZIPOutputStream(os);
   }
 
@@ -345,6 +411,17 @@ public enum CompressionType {
     return s;
   }
 
+  /**
+   * Check a number of threads.
+   * @param threads the number of threads to check
+   */
+  private static void checkThreads(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
+    }
+  }
+
   //
   // External library calling glue
   //
@@ -473,9 +550,21 @@ public enum CompressionType {
    */
   public static InputStream open(Path path) throws IOException {
 
+    return open(path, 1);
+  }
+
+  /**
+   * Create an uncompressed InputStream for a file.
+   * @param path file to read
+   * @param threads number of threads used to uncompress gzip files
+   * @return an uncompressed InputStream
+   * @throws IOException if error occurs while creating the InputStream
+   */
+  public static InputStream open(Path path, int threads) throws IOException {
+
     requireNonNull(path);
 
-    return open(path.toFile());
+    return open(path.toFile(), threads);
   }
 
   /**
@@ -486,6 +575,18 @@ public enum CompressionType {
    */
   public static InputStream open(File file) throws IOException {
 
+    return open(file, 1);
+  }
+
+  /**
+   * Create an uncompressed InputStream for a file.
+   * @param file file to read
+   * @param threads number of threads used to uncompress gzip files
+   * @return an uncompressed InputStream
+   * @throws IOException if error occurs while creating the InputStream
+   */
+  public static InputStream open(File file, int threads) throws IOException {
+
     requireNonNull(file);
 
     CompressionType ct = getCompressionTypeByFile(file);
@@ -495,7 +596,7 @@ public enum CompressionType {
           "Unable to determine compression of the file: " + file);
     }
 
-    return ct.createInputStream(new FileInputStream(file));
+    return ct.createInputStream(new FileInputStream(file), threads);
   }
 
   /**
@@ -506,9 +607,22 @@ public enum CompressionType {
    */
   public static OutputStream create(Path path) throws IOException {
 
+    return create(path, 1);
+  }
+
+  /**
+   * Create a compressed OutputStream for a file.
+   * @param path file to write
+   * @param threads number of threads used to compress gzip files
+   * @return an compressed OutputStream
+   * @throws IOException if error occurs while creating the OutputStream
+   */
+  public static OutputStream create(Path path, int threads)
+      throws IOException {
+
     requireNonNull(path);
 
-    return create(path.toFile());
+    return create(path.toFile(), threads);
   }
 
   /**
@@ -519,6 +633,19 @@ public enum CompressionType {
    */
   public static OutputStream create(File file) throws IOException {
 
+    return create(file, 1);
+  }
+
+  /**
+   * Create a compressed OutputStream for a file.
+   * @param file file to write
+   * @param threads number of threads used to compress gzip files
+   * @return an compressed OutputStream
+   * @throws IOException if error occurs while creating the OutputStream
+   */
+  public static OutputStream create(File file, int threads)
+      throws IOException {
+
     requireNonNull(file);
 
     CompressionType ct = getCompressionTypeByFile(file);
@@ -528,7 +655,7 @@ public enum CompressionType {
           "Unable to determine compression of the file: " + file);
     }
 
-    return ct.createOutputStream(new FileOutputStream(file));
+    return ct.createOutputStream(new FileOutputStream(file), threads);
   }
 
   //
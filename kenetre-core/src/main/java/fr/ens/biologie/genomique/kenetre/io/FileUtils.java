@@ -461,7 +461,8 @@ public class FileUtils {
 
   /**
    * Utility method to create fast BufferedWriter. Warning the buffer is not
-   * safe-thread. The created file use default encoding.
+   * safe-thread. The created file use default encoding. The file is compressed
+   * using one thread for each available processor.
    * @param file File to write
    * @return a BufferedWriter
    * @throws IOException if an error occurs while creating the Writer
@@ -469,6 +470,22 @@ public class FileUtils {
   public static UnSynchronizedBufferedWriter createFastBufferedGZipWriter(
       final File file) throws IOException {
 
+    return createFastBufferedGZipWriter(file,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Utility method to create fast BufferedWriter. Warning the buffer is not
+   * safe-thread. The created file use default encoding. The file is compressed
+   * by a ParallelGZipOutputStream.
+   * @param file File to write
+   * @param threads number of compression threads
+   * @return a BufferedWriter
+   * @throws IOException if an error occurs while creating the Writer
+   */
+  public static UnSynchronizedBufferedWriter createFastBufferedGZipWriter(
+      final File file, final int threads) throws IOException {
+
     if (file == null) {
       return null;
     }
@@ -484,8 +501,8 @@ public class FileUtils {
     final FileOutputStream outFile = new FileOutputStream(file);
     final FileChannel outChannel = outFile.getChannel();
 
-    final OutputStream gzos = CompressionType
-        .createGZipOutputStream(Channels.newOutputStream(outChannel));
+    final OutputStream gzos = new ParallelGZipOutputStream(
+        Channels.newOutputStream(outChannel), threads);
 
     return new UnSynchronizedBufferedWriter(
         new OutputStreamWriter(gzos, Charset.defaultCharset()));
@@ -0,0 +1,507 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.io;
+
+import static fr.ens.biologie.genomique.kenetre.io.ParallelGZipOutputStream.BLOCK_FOOTER_SIZE;
+import static fr.ens.biologie.genomique.kenetre.io.ParallelGZipOutputStream.BLOCK_HEADER_SIZE;
+import static fr.ens.biologie.genomique.kenetre.io.ParallelGZipOutputStream.MAX_BLOCK_SIZE;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * This class define an InputStream that uncompress gzip data using background
+ * threads. If the input is a BGZF file, the size of each block is known
+ * without uncompressing data, so several blocks are uncompressed ahead in
+ * parallel by a pool of threads. Otherwise, the input is uncompressed ahead by
+ * one background thread using a GZIPInputStream. If a BGZF input continues
+ * with members without the BGZF extra field (e.g. files concatenated with
+ * cat), the stream switches to this mode at the first of these members.
+ * <p>
+ * The size of the members of a plain gzip input is only known once the
+ * members have been uncompressed, so single and multi-member plain gzip
+ * inputs are always uncompressed by a single thread.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ParallelGZipInputStream extends InputStream {
+
+  private static final int READ_AHEAD_CHUNK_SIZE = 65536;
+
+  private static final byte[] END_OF_DATA = new byte[0];
+
+  private final PushbackInputStream in;
+  private final int maxPendingBlocks;
+  private final ExecutorService executor;
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+  private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+  private BlockingQueue<byte[]> readAheadQueue;
+  private volatile IOException readAheadException;
+  private boolean bgzf;
+  private boolean bgzfEnded;
+  private boolean inputEnded;
+
+  private byte[] current = new byte[0];
+  private int pos;
+  private boolean closed;
+
+  @Override
+  public int read() throws IOException {
+
+    if (!fillIfNeeded()) {
+      return -1;
+    }
+
+    return this.current[this.pos++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!fillIfNeeded()) {
+      return -1;
+    }
+
+    final int n = Math.min(len, this.current.length - this.pos);
+    System.arraycopy(this.current, this.pos, b, off, n);
+    this.pos += n;
+
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+
+    checkClosed();
+
+    return this.current.length - this.pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    this.executor.shutdownNow();
+
+    try {
+      this.in.close();
+    } finally {
+
+      // The inflaters of the running tasks are ended when released
+      synchronized (this.inflaters) {
+
+        this.closed = true;
+
+        Inflater inflater;
+        while ((inflater = this.inflaters.poll()) != null) {
+          inflater.end();
+        }
+      }
+    }
+  }
+
+  //
+  // Block handling
+  //
+
+  /**
+   * Get the next uncompressed data if the current data has been read.
+   * @return false if there is no more data to read
+   * @throws IOException if an error occurs while reading data
+   */
+  private boolean fillIfNeeded() throws IOException {
+
+    checkClosed();
+
+    while (this.pos == this.current.length) {
+
+      byte[] next = this.bgzf ? nextBlock() : nextChunk();
+
+      // The input continues with plain gzip members
+      if (next == null && this.bgzf && this.bgzfEnded) {
+        this.bgzf = false;
+        startReadAhead();
+        next = nextChunk();
+      }
+
+      if (next == null) {
+        return false;
+      }
+
+      this.current = next;
+      this.pos = 0;
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the next uncompressed BGZF block.
+   * @return an array with the uncompressed data or null if there is no more
+   *         block
+   * @throws IOException if an error occurs while reading data
+   */
+  private byte[] nextBlock() throws IOException {
+
+    submitBlocks();
+
+    final Future<byte[]> next = this.pendingBlocks.pollFirst();
+
+    if (next == null) {
+      return null;
+    }
+
+    try {
+      return next.get();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Get the next chunk of data uncompressed by the read ahead thread.
+   * @return an array with the uncompressed data or null if there is no more
+   *         data
+   * @throws IOException if an error occurs while reading data
+   */
+  private byte[] nextChunk() throws IOException {
+
+    if (this.inputEnded) {
+      return null;
+    }
+
+    final byte[] result;
+    try {
+      result = this.readAheadQueue.take();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+
+    if (result == END_OF_DATA) {
+
+      this.inputEnded = true;
+
+      if (this.readAheadException != null) {
+        throw this.readAheadException;
+      }
+
+      return null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Read the BGZF blocks and submit them to the uncompressing threads until
+   * the maximal number of pending blocks has been reached.
+   * @throws IOException if an error occurs while reading a block
+   */
+  private void submitBlocks() throws IOException {
+
+    while (!this.inputEnded
+        && !this.bgzfEnded
+        && this.pendingBlocks.size() < this.maxPendingBlocks) {
+
+      final byte[] block = readBlock();
+
+      if (block == null) {
+        if (!this.bgzfEnded) {
+          this.inputEnded = true;
+        }
+      } else {
+        this.pendingBlocks.add(this.executor.submit(() -> inflate(block)));
+      }
+    }
+  }
+
+  /**
+   * Read a raw BGZF block.
+   * @return an array with the block or null if the end of the stream has been
+   *         reached or if the next member is not a BGZF block
+   * @throws IOException if an error occurs while reading the block
+   */
+  private byte[] readBlock() throws IOException {
+
+    final byte[] header = new byte[BLOCK_HEADER_SIZE];
+    final int n = readFully(this.in, header, 0, BLOCK_HEADER_SIZE);
+
+    if (n == 0) {
+      return null;
+    }
+
+    // The next member will be read by a GZIPInputStream
+    if (n < BLOCK_HEADER_SIZE || !isBGZFHeader(header)) {
+      this.in.unread(header, 0, n);
+      this.bgzfEnded = true;
+      return null;
+    }
+
+    final int blockSize = readShort(header, 16) + 1;
+
+    if (blockSize < BLOCK_HEADER_SIZE + BLOCK_FOOTER_SIZE
+        || blockSize > MAX_BLOCK_SIZE) {
+      throw new ZipException("Invalid BGZF block size: " + blockSize);
+    }
+
+    final byte[] result = Arrays.copyOf(header, blockSize);
+    if (readFully(this.in, result, BLOCK_HEADER_SIZE,
+        blockSize - BLOCK_HEADER_SIZE) != blockSize - BLOCK_HEADER_SIZE) {
+      throw new EOFException("Unexpected end of BGZF block");
+    }
+
+    return result;
+  }
+
+  /**
+   * Uncompress a BGZF block.
+   * @param block the block to uncompress
+   * @return an array with the uncompressed data
+   * @throws IOException if the block is invalid
+   */
+  private byte[] inflate(final byte[] block) throws IOException {
+
+    final int blockSize = block.length;
+    final int crc = readInt(block, blockSize - 8);
+    final int size = readInt(block, blockSize - 4);
+
+    if (size == 0) {
+      return new byte[0];
+    }
+
+    Inflater inflater = this.inflaters.poll();
+    if (inflater == null) {
+      inflater = new Inflater(true);
+    }
+
+    final byte[] result = new byte[size];
+
+    try {
+
+      inflater.reset();
+      inflater.setInput(block, BLOCK_HEADER_SIZE,
+          blockSize - BLOCK_HEADER_SIZE - BLOCK_FOOTER_SIZE);
+
+      if (inflater.inflate(result) != size || !inflater.finished()) {
+        throw new ZipException("Invalid BGZF block uncompressed size");
+      }
+
+    } catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    } finally {
+      releaseInflater(inflater);
+    }
+
+    final CRC32 crc32 = new CRC32();
+    crc32.update(result);
+
+    if ((int) crc32.getValue() != crc) {
+      throw new ZipException("Invalid BGZF block CRC");
+    }
+
+    return result;
+  }
+
+  /**
+   * Return an inflater to the pool of inflaters or end it if the stream is
+   * closed.
+   * @param inflater the inflater to release
+   */
+  private void releaseInflater(final Inflater inflater) {
+
+    synchronized (this.inflaters) {
+
+      if (this.closed) {
+        inflater.end();
+      } else {
+        this.inflaters.add(inflater);
+      }
+    }
+  }
+
+  /**
+   * Start the uncompression of the remaining input in a background thread.
+   */
+  private void startReadAhead() {
+
+    this.readAheadQueue = new ArrayBlockingQueue<>(this.maxPendingBlocks);
+    this.executor.execute(() -> readAhead(this.in));
+  }
+
+  /**
+   * Uncompress the input in a background thread using a GZIPInputStream.
+   * @param is input stream
+   */
+  private void readAhead(final InputStream is) {
+
+    try (InputStream gzis = new GZIPInputStream(is, READ_AHEAD_CHUNK_SIZE)) {
+
+      while (true) {
+
+        final byte[] chunk = new byte[READ_AHEAD_CHUNK_SIZE];
+        final int n = readFully(gzis, chunk, 0, chunk.length);
+
+        if (n == 0) {
+          break;
+        }
+
+        this.readAheadQueue
+            .put(n == chunk.length ? chunk : Arrays.copyOf(chunk, n));
+      }
+
+    } catch (InterruptedException e) {
+      // The stream has been closed, the end of data will not be waited
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      this.readAheadException =
+          e instanceof IOException ? (IOException) e : new IOException(e);
+    } finally {
+
+      try {
+        this.readAheadQueue.put(END_OF_DATA);
+      } catch (InterruptedException e) {
+        // The stream has been closed
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private void checkClosed() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private static boolean isBGZFHeader(final byte[] b) {
+
+    return b[0] == 0x1f
+        && b[1] == (byte) 0x8b && b[2] == 0x08 && (b[3] & 0x04) != 0
+        && readShort(b, 10) == 6 && b[12] == 'B' && b[13] == 'C'
+        && readShort(b, 14) == 2;
+  }
+
+  private static int readShort(final byte[] b, final int off) {
+
+    return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+  }
+
+  private static int readInt(final byte[] b, final int off) {
+
+    return (b[off] & 0xff)
+        | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16
+        | (b[off + 3] & 0xff) << 24;
+  }
+
+  private static int readFully(final InputStream is, final byte[] b,
+      final int off, final int len) throws IOException {
+
+    int total = 0;
+
+    while (total < len) {
+
+      final int n = is.read(b, off + total, len - total);
+      if (n < 0) {
+        break;
+      }
+      total += n;
+    }
+
+    return total;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param in input stream
+   * @param threads number of uncompressing threads
+   * @throws IOException if an error occurs while reading the header of the
+   *           stream
+   */
+  public ParallelGZipInputStream(final InputStream in, final int threads)
+      throws IOException {
+
+    requireNonNull(in);
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
+    }
+
+    this.in = new PushbackInputStream(
+        new BufferedInputStream(in, MAX_BLOCK_SIZE), BLOCK_HEADER_SIZE);
+    this.maxPendingBlocks = 2 * threads;
+
+    // Check if the stream is a BGZF stream
+    final byte[] header = new byte[BLOCK_HEADER_SIZE];
+    final int n = readFully(this.in, header, 0, BLOCK_HEADER_SIZE);
+    this.in.unread(header, 0, n);
+    this.bgzf = n == BLOCK_HEADER_SIZE && isBGZFHeader(header);
+
+    this.executor = ParallelGZipOutputStream.newExecutor(
+        this.bgzf ? threads : 1, "gzip-uncompression");
+
+    if (!this.bgzf) {
+      startReadAhead();
+    }
+  }
+
+}
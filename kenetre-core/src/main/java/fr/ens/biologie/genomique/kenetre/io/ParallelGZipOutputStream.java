@@ -0,0 +1,382 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.io;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class define an OutputStream that compress data in gzip format using
+ * several threads. Data are split in blocks that are compressed independently
+ * by a pool of threads and written in order. Each block is a gzip member with
+ * the BGZF extra field, so the output is a valid multi-member gzip file that
+ * can be read by GZIPInputStream and a valid BGZF file.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ParallelGZipOutputStream extends OutputStream {
+
+  /** Maximal size of uncompressed data in a block. */
+  static final int BLOCK_DATA_SIZE = 65280;
+
+  /** Maximal size of a compressed block. */
+  static final int MAX_BLOCK_SIZE = 65536;
+
+  /** Size of the header of a block. */
+  static final int BLOCK_HEADER_SIZE = 18;
+
+  /** Size of the footer of a block. */
+  static final int BLOCK_FOOTER_SIZE = 8;
+
+  /** Empty block that mark the end of a BGZF file. */
+  static final byte[] EOF_BLOCK = {0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00,
+      0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00, 0x1b,
+      0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+
+  private final OutputStream out;
+  private final int level;
+  private final int maxPendingBlocks;
+  private final ExecutorService executor;
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+  private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+  private byte[] buffer = new byte[BLOCK_DATA_SIZE];
+  private int count;
+  private boolean closed;
+
+  @Override
+  public void write(final int b) throws IOException {
+
+    checkClosed();
+
+    this.buffer[this.count++] = (byte) b;
+
+    if (this.count == BLOCK_DATA_SIZE) {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, int off, int len) throws IOException {
+
+    checkClosed();
+
+    while (len > 0) {
+
+      final int n = Math.min(BLOCK_DATA_SIZE - this.count, len);
+      System.arraycopy(b, off, this.buffer, this.count, n);
+      this.count += n;
+      off += n;
+      len -= n;
+
+      if (this.count == BLOCK_DATA_SIZE) {
+        submitBlock();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+
+    checkClosed();
+
+    if (this.count > 0) {
+      submitBlock();
+    }
+
+    writePendingBlocks(0);
+    this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    try (OutputStream os = this.out) {
+
+      if (this.count > 0) {
+        submitBlock();
+      }
+
+      writePendingBlocks(0);
+      os.write(EOF_BLOCK);
+
+    } finally {
+
+      this.executor.shutdownNow();
+
+      // The deflaters of the running tasks are ended when released
+      synchronized (this.deflaters) {
+
+        this.closed = true;
+
+        Deflater deflater;
+        while ((deflater = this.deflaters.poll()) != null) {
+          deflater.end();
+        }
+      }
+    }
+  }
+
+  //
+  // Block handling
+  //
+
+  /**
+   * Submit the current block to the compression threads.
+   * @throws IOException if an error occurs while writing previous blocks
+   */
+  private void submitBlock() throws IOException {
+
+    final byte[] data = this.buffer;
+    final int length = this.count;
+
+    this.pendingBlocks.add(this.executor.submit(() -> compress(data, length)));
+
+    this.buffer = new byte[BLOCK_DATA_SIZE];
+    this.count = 0;
+
+    writePendingBlocks(this.maxPendingBlocks);
+  }
+
+  /**
+   * Write the compressed blocks in order until the number of pending blocks
+   * is lower or equals to a maximal value.
+   * @param maxPending maximal number of pending blocks
+   * @throws IOException if an error occurs while writing the blocks
+   */
+  private void writePendingBlocks(final int maxPending) throws IOException {
+
+    while (this.pendingBlocks.size() > maxPending) {
+
+      try {
+        this.out.write(this.pendingBlocks.removeFirst().get());
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Compress a block.
+   * @param data data to compress
+   * @param length length of the data
+   * @return an array with the compressed block
+   */
+  private byte[] compress(final byte[] data, final int length) {
+
+    Deflater deflater = this.deflaters.poll();
+    if (deflater == null) {
+      deflater = new Deflater(this.level, true);
+    }
+
+    final byte[] block = new byte[MAX_BLOCK_SIZE];
+    final int maxDataSize =
+        MAX_BLOCK_SIZE - BLOCK_HEADER_SIZE - BLOCK_FOOTER_SIZE;
+
+    int compressedSize = deflate(deflater, data, length, block, maxDataSize);
+
+    // Data that cannot be compressed are stored
+    if (compressedSize < 0) {
+      deflater.end();
+      deflater = new Deflater(Deflater.NO_COMPRESSION, true);
+      compressedSize = deflate(deflater, data, length, block, maxDataSize);
+      deflater.end();
+      deflater = new Deflater(this.level, true);
+    }
+
+    releaseDeflater(deflater);
+
+    final CRC32 crc = new CRC32();
+    crc.update(data, 0, length);
+
+    final int blockSize =
+        BLOCK_HEADER_SIZE + compressedSize + BLOCK_FOOTER_SIZE;
+
+    // Header
+    block[0] = 0x1f;
+    block[1] = (byte) 0x8b;
+    block[2] = Deflater.DEFLATED;
+    block[3] = 0x04;
+    block[9] = (byte) 0xff;
+    block[10] = 0x06;
+    block[12] = 'B';
+    block[13] = 'C';
+    block[14] = 0x02;
+    writeShort(block, 16, blockSize - 1);
+
+    // Footer
+    writeInt(block, blockSize - 8, (int) crc.getValue());
+    writeInt(block, blockSize - 4, length);
+
+    final byte[] result = new byte[blockSize];
+    System.arraycopy(block, 0, result, 0, blockSize);
+
+    return result;
+  }
+
+  /**
+   * Deflate data in a block.
+   * @param deflater deflater to use
+   * @param data data to compress
+   * @param length length of the data
+   * @param block output block
+   * @param maxSize maximal size of the compressed data
+   * @return the size of the compressed data or -1 if the compressed data are
+   *         larger than maxSize
+   */
+  private static int deflate(final Deflater deflater, final byte[] data,
+      final int length, final byte[] block, final int maxSize) {
+
+    deflater.reset();
+    deflater.setInput(data, 0, length);
+    deflater.finish();
+
+    final int size =
+        deflater.deflate(block, BLOCK_HEADER_SIZE, maxSize, Deflater.NO_FLUSH);
+
+    return deflater.finished() ? size : -1;
+  }
+
+  /**
+   * Return a deflater to the pool of deflaters or end it if the stream is
+   * closed.
+   * @param deflater the deflater to release
+   */
+  private void releaseDeflater(final Deflater deflater) {
+
+    synchronized (this.deflaters) {
+
+      if (this.closed) {
+        deflater.end();
+      } else {
+        this.deflaters.add(deflater);
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private void checkClosed() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private static void writeShort(final byte[] b, final int off,
+      final int value) {
+
+    b[off] = (byte) value;
+    b[off + 1] = (byte) (value >>> 8);
+  }
+
+  private static void writeInt(final byte[] b, final int off,
+      final int value) {
+
+    b[off] = (byte) value;
+    b[off + 1] = (byte) (value >>> 8);
+    b[off + 2] = (byte) (value >>> 16);
+    b[off + 3] = (byte) (value >>> 24);
+  }
+
+  /**
+   * Create a pool of daemon threads.
+   * @param threads number of threads
+   * @param prefix prefix of the name of the threads
+   * @return a new ExecutorService
+   */
+  static ExecutorService newExecutor(final int threads, final String prefix) {
+
+    final AtomicInteger count = new AtomicInteger();
+
+    return Executors.newFixedThreadPool(threads, r -> {
+      final Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   * @param out output stream
+   * @param threads number of compression threads
+   */
+  public ParallelGZipOutputStream(final OutputStream out, final int threads) {
+
+    this(out, threads, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Public constructor.
+   * @param out output stream
+   * @param threads number of compression threads
+   * @param level compression level
+   */
+  public ParallelGZipOutputStream(final OutputStream out, final int threads,
+      final int level) {
+
+    requireNonNull(out);
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
+    }
+
+    if (level < Deflater.DEFAULT_COMPRESSION
+        || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+
+    this.out = out;
+    this.level = level;
+    this.maxPendingBlocks = 2 * threads;
+    this.executor = newExecutor(threads, "gzip-compression");
+  }
+
+}
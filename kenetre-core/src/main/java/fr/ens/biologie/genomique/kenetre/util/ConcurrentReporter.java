@@ -0,0 +1,177 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class define a reporter that can be used by several threads without
+ * locking. Each counter is stored in a LongAdder, and the counter handles
+ * directly increment the LongAdder of their counter. Like LocalReporter,
+ * counters that have never been incremented are not reported.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ConcurrentReporter implements Reporter {
+
+  private final Map<String, Map<String, LongAdder>> map =
+      new ConcurrentHashMap<>();
+
+  @Override
+  public void incrCounter(final String counterGroup, final String counter,
+      final long amount) {
+
+    if (counterGroup == null || counter == null || amount <= 0) {
+      return;
+    }
+
+    getAdder(counterGroup, counter).add(amount);
+  }
+
+  @Override
+  public CounterHandle getCounterHandle(final String counterGroup,
+      final String counterName) {
+
+    if (counterGroup == null || counterName == null) {
+      return amount -> {
+      };
+    }
+
+    final LongAdder adder = getAdder(counterGroup, counterName);
+
+    return amount -> {
+      if (amount > 0) {
+        adder.add(amount);
+      }
+    };
+  }
+
+  @Override
+  public long getCounterValue(final String counterGroup, final String counter) {
+
+    if (counterGroup == null || counter == null) {
+      return -1;
+    }
+
+    final Map<String, LongAdder> group = this.map.get(counterGroup);
+    if (group == null) {
+      return -1;
+    }
+
+    final LongAdder adder = group.get(counter);
+    if (adder == null) {
+      return -1;
+    }
+
+    final long result = adder.sum();
+
+    return result == 0 ? -1 : result;
+  }
+
+  @Override
+  public Set<String> getCounterGroups() {
+
+    final Set<String> result = new LinkedHashSet<>();
+
+    for (Map.Entry<String, Map<String, LongAdder>> e : this.map.entrySet()) {
+      for (LongAdder adder : e.getValue().values()) {
+        if (adder.sum() > 0) {
+          result.add(e.getKey());
+          break;
+        }
+      }
+    }
+
+    return Collections.unmodifiableSet(result);
+  }
+
+  @Override
+  public Set<String> getCounterNames(final String counterGroup) {
+
+    if (counterGroup == null || !this.map.containsKey(counterGroup)) {
+      return Collections.emptySet();
+    }
+
+    final Set<String> result = new LinkedHashSet<>();
+
+    for (Map.Entry<String, LongAdder> e : this.map.get(counterGroup)
+        .entrySet()) {
+      if (e.getValue().sum() > 0) {
+        result.add(e.getKey());
+      }
+    }
+
+    return Collections.unmodifiableSet(result);
+  }
+
+  /**
+   * Clear all the counters in the reporter. The handles created before
+   * calling this method are no more linked to the reporter.
+   */
+  public void clear() {
+
+    this.map.clear();
+  }
+
+  @Override
+  public String toString() {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (String counterGroup : new TreeSet<>(getCounterGroups())) {
+      sb.append(counterGroup);
+      sb.append('\n');
+
+      for (String counterName : new TreeSet<>(
+          getCounterNames(counterGroup))) {
+        sb.append('\t');
+        sb.append(counterName);
+        sb.append('=');
+        sb.append(getCounterValue(counterGroup, counterName));
+        sb.append('\n');
+      }
+    }
+
+    return sb.toString();
+  }
+
+  //
+  // Internal methods
+  //
+
+  private LongAdder getAdder(final String counterGroup, final String counter) {
+
+    return this.map
+        .computeIfAbsent(counterGroup, k -> new ConcurrentHashMap<>())
+        .computeIfAbsent(counter, k -> new LongAdder());
+  }
+
+}
@@ -0,0 +1,374 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * This class implements the k-way merge of the sorted runs of an external
+ * merge sort. The heads of the runs are stored by the subclasses, this class
+ * only keeps a binary heap of run indexes, so primitive values can be merged
+ * without boxing. When two heads are equal, the head of the first run is
+ * selected first, so the merge is stable. The run files are deleted when the
+ * merger is closed. This class also contains the methods shared by the
+ * external sorters to save and reduce the runs.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public abstract class ExternalMerger implements Closeable {
+
+  /** Maximal number of runs merged at the same time. */
+  public static final int MAX_FAN_IN = 64;
+
+  /** Size of the buffers of the run streams. */
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  private final List<File> files;
+  private final DataInputStream[] inputs;
+  private final int[] heap;
+  private int heapSize;
+  private int current = -1;
+  private boolean started;
+
+  /**
+   * This interface define a factory of run files.
+   */
+  @FunctionalInterface
+  public interface RunFileFactory {
+
+    /**
+     * Create a new run file.
+     * @return a new empty file
+     * @throws IOException if an error occurs while creating the file
+     */
+    File createRunFile() throws IOException;
+  }
+
+  /**
+   * This interface define the merge of several runs in a new run.
+   */
+  @FunctionalInterface
+  public interface RunGroupMerger {
+
+    /**
+     * Merge runs in a new run.
+     * @param runs the runs to merge, in the order of the runs
+     * @param output the file of the new run
+     * @throws IOException if an error occurs while merging the runs
+     */
+    void merge(List<File> runs, File output) throws IOException;
+  }
+
+  //
+  // Abstract methods
+  //
+
+  /**
+   * Read the next element of a run and save it as the head of the run.
+   * @param run the index of the run
+   * @param in the input stream of the run
+   * @return false if the end of the run has been reached
+   * @throws IOException if an error occurs while reading the run
+   */
+  protected abstract boolean readHead(int run, DataInputStream in)
+      throws IOException;
+
+  /**
+   * Compare the heads of two runs.
+   * @param run1 the index of the first run
+   * @param run2 the index of the second run
+   * @return a negative integer, zero, or a positive integer as the head of the
+   *         first run is less than, equal to, or greater than the head of the
+   *         second run
+   */
+  protected abstract int compareHeads(int run1, int run2);
+
+  /**
+   * Open the input stream of a run. By default, the run is read with
+   * createRunInputStream().
+   * @param file the run file
+   * @return a new input stream
+   * @throws IOException if an error occurs while opening the run
+   */
+  protected DataInputStream openRun(final File file) throws IOException {
+
+    return createRunInputStream(file);
+  }
+
+  //
+  // Merge methods
+  //
+
+  /**
+   * Select the run with the smallest head. The head of the run selected by
+   * the previous call is first replaced by the next element of this run, so
+   * the head of the selected run can be used until the next call.
+   * @return the index of the run or -1 if all the runs have been read
+   * @throws IOException if an error occurs while reading a run
+   */
+  public final int nextRun() throws IOException {
+
+    if (!this.started) {
+      start();
+    } else if (this.current != -1) {
+
+      if (!readHead(this.current, this.inputs[this.current])) {
+        this.heap[0] = this.heap[--this.heapSize];
+      }
+      siftDown(0);
+    }
+
+    this.current = this.heapSize == 0 ? -1 : this.heap[0];
+
+    return this.current;
+  }
+
+  /**
+   * Open the runs, read their first elements and build the heap.
+   * @throws IOException if an error occurs while reading a run
+   */
+  private void start() throws IOException {
+
+    this.started = true;
+
+    try {
+      for (int i = 0; i < this.inputs.length; i++) {
+
+        this.inputs[i] = openRun(this.files.get(i));
+
+        if (readHead(i, this.inputs[i])) {
+          this.heap[this.heapSize++] = i;
+        }
+      }
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+
+    for (int i = this.heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+  }
+
+  private boolean less(final int run1, final int run2) {
+
+    final int cmp = compareHeads(run1, run2);
+
+    return cmp < 0 || (cmp == 0 && run1 < run2);
+  }
+
+  private void siftDown(final int index) {
+
+    int i = index;
+    final int run = this.heap[i];
+
+    while (true) {
+
+      int child = 2 * i + 1;
+      if (child >= this.heapSize) {
+        break;
+      }
+      if (child + 1 < this.heapSize
+          && less(this.heap[child + 1], this.heap[child])) {
+        child++;
+      }
+      if (!less(this.heap[child], run)) {
+        break;
+      }
+
+      this.heap[i] = this.heap[child];
+      i = child;
+    }
+
+    this.heap[i] = run;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    IOException exception = null;
+
+    for (int i = 0; i < this.inputs.length; i++) {
+
+      if (this.inputs[i] != null) {
+        try {
+          this.inputs[i].close();
+        } catch (IOException e) {
+          exception = e;
+        }
+        this.inputs[i] = null;
+      }
+    }
+    this.heapSize = 0;
+    this.current = -1;
+
+    for (File f : this.files) {
+      deleteRunFile(f);
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  //
+  // Run methods
+  //
+
+  /**
+   * Create a buffered output stream to write a run.
+   * @param file the run file
+   * @return a new output stream
+   * @throws IOException if an error occurs while creating the file
+   */
+  public static DataOutputStream createRunOutputStream(final File file)
+      throws IOException {
+
+    return new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+  }
+
+  /**
+   * Create a buffered input stream to read a run.
+   * @param file the run file
+   * @return a new input stream
+   * @throws IOException if an error occurs while opening the file
+   */
+  public static DataInputStream createRunInputStream(final File file)
+      throws IOException {
+
+    return new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+  }
+
+  /**
+   * Delete a run file. If the file cannot be deleted, it will be deleted at
+   * the exit of the JVM.
+   * @param file the run file
+   */
+  public static void deleteRunFile(final File file) {
+
+    if (file.exists() && !file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+
+  /**
+   * Merge the first runs of a list until the number of runs is lower or equal
+   * to MAX_FAN_IN. The merged runs are replaced by the new run at the start of
+   * the list, so the order of the runs is kept and a stable merge remains
+   * stable. The new run is added to the list before the merge, so the list
+   * always contains all the files to delete.
+   * @param runs the list of the run files
+   * @param factory the factory of the new run files
+   * @param merger the merger of the runs
+   * @throws IOException if an error occurs while merging the runs
+   */
+  public static void reduceRuns(final List<File> runs,
+      final RunFileFactory factory, final RunGroupMerger merger)
+      throws IOException {
+
+    requireNonNull(runs, "runs argument cannot be null");
+    requireNonNull(factory, "factory argument cannot be null");
+    requireNonNull(merger, "merger argument cannot be null");
+
+    while (runs.size() > MAX_FAN_IN) {
+
+      final File output = factory.createRunFile();
+      runs.add(0, output);
+
+      final List<File> group = new ArrayList<>(runs.subList(1, MAX_FAN_IN + 1));
+      merger.merge(group, output);
+
+      runs.subList(1, MAX_FAN_IN + 1).clear();
+      for (File f : group) {
+        deleteRunFile(f);
+      }
+    }
+  }
+
+  /**
+   * Wait the end of the saving of the runs until the number of pending runs is
+   * lower or equals to a maximal value.
+   * @param pendingRuns the runs being saved, in the order of their submission
+   * @param maxPending maximal number of pending runs
+   * @throws IOException if an error occurs while saving a run
+   */
+  public static void waitRuns(final Deque<Future<?>> pendingRuns,
+      final int maxPending) throws IOException {
+
+    while (pendingRuns.size() > maxPending) {
+
+      try {
+        pendingRuns.removeFirst().get();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Sort has been interrupted");
+      } catch (ExecutionException e) {
+
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param files the run files to merge
+   */
+  protected ExternalMerger(final List<File> files) {
+
+    requireNonNull(files, "files argument cannot be null");
+
+    this.files = new ArrayList<>(files);
+    this.inputs = new DataInputStream[files.size()];
+    this.heap = new int[files.size()];
+  }
+
+}
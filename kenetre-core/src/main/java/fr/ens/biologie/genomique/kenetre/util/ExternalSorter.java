@@ -0,0 +1,586 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static fr.ens.biologie.genomique.kenetre.util.ExternalMerger.BUFFER_SIZE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class implements an external merge sort of text lines in the JVM. The
+ * lines are stored in memory until the memory budget is reached, then each run
+ * is sorted by a pool of threads and saved in a binary temporary file. The
+ * sorted lines are obtained by a k-way merge of the runs that is executed in a
+ * background thread, so the sorted lines can be consumed while the merge is
+ * running. Lines are sorted in the natural order of String.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ExternalSorter implements Closeable {
+
+  /** Default memory budget in bytes. */
+  public static final long DEFAULT_MAX_MEMORY = 256L * 1024 * 1024;
+
+  private static final int MERGE_BATCH_SIZE = 1024;
+  private static final int MERGE_QUEUE_SIZE = 16;
+
+  /** Estimated memory used by a String object without its content. */
+  private static final int STRING_OVERHEAD = 64;
+
+  private final File tmpDir;
+  private final long maxRunMemory;
+  private final int threads;
+  private final boolean compressRuns;
+
+  private final List<File> runFiles = new ArrayList<>();
+  private final Deque<Future<?>> pendingRuns = new ArrayDeque<>();
+  private ExecutorService executor;
+
+  private List<String> lines = new ArrayList<>();
+  private long linesMemory;
+  private long lineCount;
+  private boolean sorted;
+  private boolean closed;
+
+  /**
+   * This interface define a reader of sorted lines.
+   */
+  public interface SortedReader extends Closeable {
+
+    /**
+     * Read the next line.
+     * @return the next line or null if there is no more lines
+     * @throws IOException if an error occurs while reading the line
+     */
+    String readLine() throws IOException;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of lines added to the sorter.
+   * @return the number of lines added to the sorter
+   */
+  public long getLineCount() {
+
+    return this.lineCount;
+  }
+
+  /**
+   * Get the number of runs saved in temporary files.
+   * @return the number of runs saved in temporary files
+   */
+  public int getRunCount() {
+
+    return this.runFiles.size();
+  }
+
+  //
+  // Sort methods
+  //
+
+  /**
+   * Add a line to sort.
+   * @param line the line to add
+   * @throws IOException if an error occurs while saving a run
+   */
+  public void add(final String line) throws IOException {
+
+    requireNonNull(line, "line argument cannot be null");
+    checkState();
+
+    this.lines.add(line);
+    this.linesMemory += STRING_OVERHEAD + line.length();
+    this.lineCount++;
+
+    if (this.linesMemory >= this.maxRunMemory) {
+      saveRun();
+    }
+  }
+
+  /**
+   * Sort the lines. Once this method has been called, no more line can be
+   * added to the sorter.
+   * @return a reader on the sorted lines
+   * @throws IOException if an error occurs while sorting the lines
+   */
+  public SortedReader sort() throws IOException {
+
+    checkState();
+    this.sorted = true;
+
+    // All the lines are in memory
+    if (this.runFiles.isEmpty()) {
+
+      final String[] array = this.lines.toArray(new String[0]);
+      this.lines = null;
+      shutdownExecutor();
+
+      if (this.threads > 1) {
+        Arrays.parallelSort(array);
+      } else {
+        Arrays.sort(array);
+      }
+
+      return new SortedReader() {
+
+        private int index;
+
+        @Override
+        public String readLine() {
+
+          if (this.index == array.length) {
+            return null;
+          }
+
+          final String result = array[this.index];
+          array[this.index++] = null;
+
+          return result;
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+
+    if (!this.lines.isEmpty()) {
+      saveRun();
+    }
+    this.lines = null;
+    ExternalMerger.waitRuns(this.pendingRuns, 0);
+    shutdownExecutor();
+
+    // Reduce the number of runs to avoid opening too many files
+    ExternalMerger.reduceRuns(this.runFiles, this::createRunFile,
+        (group, output) -> {
+
+          try (LineMerger merger = new LineMerger(group);
+              DataOutputStream out = createOutputStream(output)) {
+
+            String line;
+            while ((line = merger.next()) != null) {
+              writeLine(out, line);
+            }
+          }
+        });
+
+    return new MergeReader(new LineMerger(this.runFiles));
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.lines = null;
+
+    shutdownExecutor();
+
+    for (File f : this.runFiles) {
+      ExternalMerger.deleteRunFile(f);
+    }
+    this.runFiles.clear();
+  }
+
+  //
+  // Run methods
+  //
+
+  /**
+   * Sort the lines in memory and save them in a new run file.
+   * @throws IOException if an error occurs while saving a previous run
+   */
+  private void saveRun() throws IOException {
+
+    final String[] array = this.lines.toArray(new String[0]);
+    final File runFile = createRunFile();
+
+    this.lines = new ArrayList<>();
+    this.linesMemory = 0;
+    this.runFiles.add(runFile);
+
+    if (this.executor == null) {
+      this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+        final Thread t = new Thread(r, "ExternalSorter");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+
+    this.pendingRuns.add(this.executor.submit(() -> {
+
+      Arrays.sort(array);
+
+      try (DataOutputStream out = createOutputStream(runFile)) {
+        for (String line : array) {
+          writeLine(out, line);
+        }
+      }
+
+      return null;
+    }));
+
+    // Limit the number of runs in memory
+    ExternalMerger.waitRuns(this.pendingRuns, this.threads);
+  }
+
+  private File createRunFile() throws IOException {
+
+    return File.createTempFile("sort-", ".run", this.tmpDir);
+  }
+
+  private DataOutputStream createOutputStream(final File file)
+      throws IOException {
+
+    if (!this.compressRuns) {
+      return ExternalMerger.createRunOutputStream(file);
+    }
+
+    final OutputStream os = new FileOutputStream(file);
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    return new DataOutputStream(new BufferedOutputStream(
+        new DeflaterOutputStream(os, deflater, BUFFER_SIZE) {
+
+          @Override
+          public void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              deflater.end();
+            }
+          }
+        }, BUFFER_SIZE));
+  }
+
+  private DataInputStream createInputStream(final File file)
+      throws IOException {
+
+    if (!this.compressRuns) {
+      return ExternalMerger.createRunInputStream(file);
+    }
+
+    final InputStream is = new FileInputStream(file);
+    final Inflater inflater = new Inflater();
+
+    return new DataInputStream(new BufferedInputStream(
+        new InflaterInputStream(is, inflater, BUFFER_SIZE) {
+
+          @Override
+          public void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              inflater.end();
+            }
+          }
+        }, BUFFER_SIZE));
+  }
+
+  private static void writeLine(final DataOutputStream out, final String line)
+      throws IOException {
+
+    final byte[] bytes = line.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a line of a run.
+   * @param in the run input stream
+   * @return the line or null if the end of the run has been reached
+   * @throws IOException if an error occurs while reading the run
+   */
+  private static String readLine(final DataInputStream in)
+      throws IOException {
+
+    final int length;
+    try {
+      length = in.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+
+    return new String(bytes, UTF_8);
+  }
+
+  private void shutdownExecutor() {
+
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+  }
+
+  private void checkState() {
+
+    if (this.sorted || this.closed) {
+      throw new IllegalStateException("The lines have been already sorted");
+    }
+  }
+
+  //
+  // Merge classes
+  //
+
+  /**
+   * This class implements a k-way merge of the runs of lines.
+   */
+  private final class LineMerger extends ExternalMerger {
+
+    private final String[] heads;
+
+    /**
+     * Get the next line of the merge.
+     * @return the next line or null if all the runs have been read
+     * @throws IOException if an error occurs while reading a run
+     */
+    private String next() throws IOException {
+
+      final int run = nextRun();
+
+      return run == -1 ? null : this.heads[run];
+    }
+
+    @Override
+    protected boolean readHead(final int run, final DataInputStream in)
+        throws IOException {
+
+      this.heads[run] = readLine(in);
+
+      return this.heads[run] != null;
+    }
+
+    @Override
+    protected int compareHeads(final int run1, final int run2) {
+
+      return this.heads[run1].compareTo(this.heads[run2]);
+    }
+
+    @Override
+    protected DataInputStream openRun(final File file) throws IOException {
+
+      return createInputStream(file);
+    }
+
+    private LineMerger(final List<File> files) {
+
+      super(files);
+      this.heads = new String[files.size()];
+    }
+  }
+
+  /**
+   * This class implements a reader of the sorted lines. The merge of the runs
+   * is executed in a background thread that send batches of lines to the
+   * reader.
+   */
+  private static final class MergeReader implements SortedReader {
+
+    private static final String[] END = new String[0];
+
+    private final BlockingQueue<String[]> queue =
+        new ArrayBlockingQueue<>(MERGE_QUEUE_SIZE);
+    private final Thread thread;
+    private volatile Throwable exception;
+
+    private String[] batch;
+    private int index;
+    private boolean end;
+
+    @Override
+    public String readLine() throws IOException {
+
+      if (this.end) {
+        return null;
+      }
+
+      if (this.batch == null || this.index == this.batch.length) {
+
+        try {
+          this.batch = this.queue.take();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Sort has been interrupted");
+        }
+        this.index = 0;
+
+        if (this.batch == END) {
+          this.end = true;
+
+          final Throwable t = this.exception;
+          if (t instanceof IOException) {
+            throw (IOException) t;
+          }
+          if (t != null) {
+            throw new IOException(t);
+          }
+
+          return null;
+        }
+      }
+
+      return this.batch[this.index++];
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      this.end = true;
+      this.thread.interrupt();
+
+      try {
+        this.thread.join();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Sort has been interrupted");
+      }
+    }
+
+    private void merge(final LineMerger merger) {
+
+      try (LineMerger m = merger) {
+
+        String[] batch = new String[MERGE_BATCH_SIZE];
+        int count = 0;
+        String line;
+
+        while ((line = m.next()) != null) {
+
+          batch[count++] = line;
+
+          if (count == batch.length) {
+            this.queue.put(batch);
+            batch = new String[MERGE_BATCH_SIZE];
+            count = 0;
+          }
+        }
+
+        if (count > 0) {
+          this.queue.put(Arrays.copyOf(batch, count));
+        }
+
+      } catch (InterruptedException e) {
+        // The reader has been closed
+        return;
+      } catch (IOException | RuntimeException e) {
+        this.exception = e;
+      }
+
+      try {
+        this.queue.put(END);
+      } catch (InterruptedException e) {
+        // The reader has been closed
+      }
+    }
+
+    private MergeReader(final LineMerger merger) {
+
+      this.thread = new Thread(() -> merge(merger), "ExternalSorter-merge");
+      this.thread.setDaemon(true);
+      this.thread.start();
+    }
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   * @param tmpDir temporary directory. If null, the default temporary
+   *          directory will be used
+   */
+  public ExternalSorter(final File tmpDir) {
+
+    this(tmpDir, DEFAULT_MAX_MEMORY, 1, false);
+  }
+
+  /**
+   * Public constructor.
+   * @param tmpDir temporary directory. If null, the default temporary
+   *          directory will be used
+   * @param maxMemory memory budget in bytes for the lines stored in memory
+   * @param threads number of threads used to sort the runs
+   * @param compressRuns true if the run files must be compressed with a fast
+   *          compression level
+   */
+  public ExternalSorter(final File tmpDir, final long maxMemory,
+      final int threads, final boolean compressRuns) {
+
+    if (maxMemory < 1) {
+      throw new IllegalArgumentException(
+          "maxMemory must be greater than 0: " + maxMemory);
+    }
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "threads must be greater than 0: " + threads);
+    }
+
+    this.tmpDir = tmpDir;
+    this.threads = threads;
+    this.compressRuns = compressRuns;
+
+    // A run is filled while the other runs are sorted by the threads
+    this.maxRunMemory = Math.max(1, maxMemory / (threads + 1));
+  }
+
+}
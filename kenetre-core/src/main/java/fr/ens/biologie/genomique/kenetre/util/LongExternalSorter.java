@@ -0,0 +1,372 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class implements an external merge sort of primitive long values. The
+ * values are stored in a long array until the memory budget is reached, then
+ * the array is sorted, in parallel if requested, and saved in a binary
+ * temporary file. The sorted values are obtained by a k-way merge of the runs.
+ * No boxing is done, so this class can sort billions of values with a bounded
+ * memory footprint.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class LongExternalSorter implements Closeable {
+
+  /** Default memory budget in bytes. */
+  public static final long DEFAULT_MAX_MEMORY = 128L * 1024 * 1024;
+
+  private static final int INITIAL_CAPACITY = 8192;
+
+  private final File tmpDir;
+  private final boolean parallel;
+  private final int maxValues;
+  private final List<File> runFiles = new ArrayList<>();
+
+  private long[] values;
+  private int size;
+  private long count;
+  private boolean sorted;
+  private boolean closed;
+
+  /**
+   * This interface define a reader of sorted long values.
+   */
+  public interface SortedLongReader extends Closeable {
+
+    /**
+     * Test if there is more values to read.
+     * @return true if there is more values to read
+     * @throws IOException if an error occurs while reading the values
+     */
+    boolean hasNext() throws IOException;
+
+    /**
+     * Read the next value.
+     * @return the next value
+     * @throws IOException if an error occurs while reading the value
+     * @throws NoSuchElementException if there is no more values to read
+     */
+    long next() throws IOException;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of values added to the sorter.
+   * @return the number of values added to the sorter
+   */
+  public long getCount() {
+
+    return this.count;
+  }
+
+  /**
+   * Get the number of runs saved in temporary files.
+   * @return the number of runs saved in temporary files
+   */
+  public int getRunCount() {
+
+    return this.runFiles.size();
+  }
+
+  //
+  // Sort methods
+  //
+
+  /**
+   * Add a value to sort.
+   * @param value the value to add
+   * @throws IOException if an error occurs while saving a run
+   */
+  public void add(final long value) throws IOException {
+
+    checkState();
+
+    this.values[this.size++] = value;
+    this.count++;
+
+    if (this.size == this.values.length) {
+
+      // The array grows until the memory budget is reached
+      if (this.size < this.maxValues) {
+        this.values = Arrays.copyOf(this.values,
+            (int) Math.min(this.maxValues, 2L * this.size));
+      } else {
+        saveRun();
+      }
+    }
+  }
+
+  /**
+   * Sort the values. Once this method has been called, no more value can be
+   * added to the sorter.
+   * @return a reader on the sorted values
+   * @throws IOException if an error occurs while sorting the values
+   */
+  public SortedLongReader sort() throws IOException {
+
+    checkState();
+    this.sorted = true;
+
+    // All the values are in memory
+    if (this.runFiles.isEmpty()) {
+
+      final long[] array = this.values;
+      final int length = this.size;
+      this.values = null;
+      sortArray(array, length);
+
+      return new SortedLongReader() {
+
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+
+          return this.index < length;
+        }
+
+        @Override
+        public long next() {
+
+          if (this.index == length) {
+            throw new NoSuchElementException();
+          }
+
+          return array[this.index++];
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+
+    if (this.size > 0) {
+      saveRun();
+    }
+    this.values = null;
+
+    // Reduce the number of runs to avoid opening too many files
+    ExternalMerger.reduceRuns(this.runFiles, this::createRunFile,
+        (group, output) -> {
+
+          try (LongMerger merger = new LongMerger(group);
+              DataOutputStream out =
+                  ExternalMerger.createRunOutputStream(output)) {
+
+            while (merger.hasNext()) {
+              out.writeLong(merger.next());
+            }
+          }
+        });
+
+    return new LongMerger(this.runFiles);
+  }
+
+  @Override
+  public void close() {
+
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.values = null;
+
+    for (File f : this.runFiles) {
+      ExternalMerger.deleteRunFile(f);
+    }
+    this.runFiles.clear();
+  }
+
+  //
+  // Run methods
+  //
+
+  /**
+   * Sort the values in memory and save them in a new run file.
+   * @throws IOException if an error occurs while saving the run
+   */
+  private void saveRun() throws IOException {
+
+    sortArray(this.values, this.size);
+
+    final File runFile = createRunFile();
+    this.runFiles.add(runFile);
+
+    try (DataOutputStream out = ExternalMerger.createRunOutputStream(runFile)) {
+      for (int i = 0; i < this.size; i++) {
+        out.writeLong(this.values[i]);
+      }
+    }
+
+    this.size = 0;
+  }
+
+  private void sortArray(final long[] array, final int length) {
+
+    if (this.parallel) {
+      Arrays.parallelSort(array, 0, length);
+    } else {
+      Arrays.sort(array, 0, length);
+    }
+  }
+
+  private File createRunFile() throws IOException {
+
+    return File.createTempFile("sort-", ".longs", this.tmpDir);
+  }
+
+  private void checkState() {
+
+    if (this.sorted || this.closed) {
+      throw new IllegalStateException("The values have been already sorted");
+    }
+  }
+
+  //
+  // Merge class
+  //
+
+  /**
+   * This class implements a k-way merge of the runs of values.
+   */
+  private static final class LongMerger extends ExternalMerger
+      implements SortedLongReader {
+
+    private final long[] heads;
+    private final long[] remaining;
+    private int run = -1;
+    private boolean end;
+
+    @Override
+    public boolean hasNext() throws IOException {
+
+      if (this.run == -1 && !this.end) {
+        this.run = nextRun();
+        this.end = this.run == -1;
+      }
+
+      return !this.end;
+    }
+
+    @Override
+    public long next() throws IOException {
+
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      final long result = this.heads[this.run];
+      this.run = -1;
+
+      return result;
+    }
+
+    @Override
+    protected boolean readHead(final int run, final DataInputStream in)
+        throws IOException {
+
+      if (this.remaining[run] == 0) {
+        return false;
+      }
+
+      this.heads[run] = in.readLong();
+      this.remaining[run]--;
+
+      return true;
+    }
+
+    @Override
+    protected int compareHeads(final int run1, final int run2) {
+
+      return Long.compare(this.heads[run1], this.heads[run2]);
+    }
+
+    private LongMerger(final List<File> files) {
+
+      super(files);
+      this.heads = new long[files.size()];
+      this.remaining = new long[files.size()];
+
+      // Runs only contain longs, the length of a file gives the count
+      for (int i = 0; i < this.remaining.length; i++) {
+        this.remaining[i] = files.get(i).length() / Long.BYTES;
+      }
+    }
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   * @param tmpDir temporary directory. If null, the default temporary
+   *          directory will be used
+   */
+  public LongExternalSorter(final File tmpDir) {
+
+    this(tmpDir, DEFAULT_MAX_MEMORY, true);
+  }
+
+  /**
+   * Public constructor.
+   * @param tmpDir temporary directory. If null, the default temporary
+   *          directory will be used
+   * @param maxMemory memory budget in bytes for the values stored in memory
+   * @param parallel true if the runs must be sorted with several threads
+   */
+  public LongExternalSorter(final File tmpDir, final long maxMemory,
+      final boolean parallel) {
+
+    if (maxMemory < Long.BYTES) {
+      throw new IllegalArgumentException(
+          "maxMemory must be greater than 7: " + maxMemory);
+    }
+
+    this.tmpDir = tmpDir;
+    this.parallel = parallel;
+    this.maxValues =
+        (int) Math.min(Integer.MAX_VALUE - 8, maxMemory / Long.BYTES);
+    this.values = new long[Math.min(this.maxValues, INITIAL_CAPACITY)];
+  }
+
+}
@@ -48,7 +48,9 @@ import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
 import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
 
 /**
- * This class implements a pseudo map-reduce framework.
+ * This class implements a pseudo map-reduce framework. By default, the output
+ * of the mappers is sorted in the JVM using an {@link ExternalSorter}. The
+ * Unix sort command can still be used instead.
  * @since 1.0
  * @author Laurent Jourdren
  */
@@ -58,6 +60,11 @@ public abstract class PseudoMapReduce {
   private final List<File> listMapOutputFile = new ArrayList<>();
 
   private File sortOutputFile;
+  private long sortMaxMemory = ExternalSorter.DEFAULT_MAX_MEMORY;
+  private int sortThreads = 1;
+  private boolean sortRunsCompression;
+  private boolean unixSort;
+  private ExternalSorter sorter;
   private final LocalReporter reporter = new LocalReporter();
   private final GenericLogger logger;
 
@@ -236,6 +243,11 @@ public abstract class PseudoMapReduce {
 
     this.reporter.clear();
 
+    if (!this.unixSort) {
+      doMapWithSorter(is);
+      return;
+    }
+
     try (
         BufferedReader br =
             new BufferedReader(new InputStreamReader(is, defaultCharset()));
@@ -263,6 +275,39 @@ public abstract class PseudoMapReduce {
     }
   }
 
+  /**
+   * Execute the map phase and send the output of the mapper to the external
+   * sorter.
+   * @param is input stream for the mapper
+   * @throws IOException if an error occurs while sorting the output of the
+   *           mapper
+   */
+  private void doMapWithSorter(final InputStream is) throws IOException {
+
+    if (this.sorter == null) {
+      this.sorter = new ExternalSorter(this.tmpDir, this.sortMaxMemory,
+          this.sortThreads, this.sortRunsCompression);
+    }
+
+    try (BufferedReader br =
+        new BufferedReader(new InputStreamReader(is, defaultCharset()))) {
+
+      final List<String> results = new ArrayList<>();
+      String line;
+
+      while ((line = br.readLine()) != null) {
+
+        map(line, results, this.reporter);
+
+        for (String r : results) {
+          this.sorter.add(r);
+        }
+
+        results.clear();
+      }
+    }
+  }
+
   //
   // Sort management
   //
@@ -285,6 +330,91 @@ public abstract class PseudoMapReduce {
     return this.tmpDir;
   }
 
+  /**
+   * Set the memory budget of the sort. This setting is used by the next
+   * executions of the map phase.
+   * @param maxMemory the memory budget in bytes
+   */
+  public void setSortMaxMemory(final long maxMemory) {
+
+    if (maxMemory < 1) {
+      throw new IllegalArgumentException(
+          "The memory budget must be greater than 0: " + maxMemory);
+    }
+
+    this.sortMaxMemory = maxMemory;
+  }
+
+  /**
+   * Get the memory budget of the sort.
+   * @return the memory budget in bytes
+   */
+  public long getSortMaxMemory() {
+
+    return this.sortMaxMemory;
+  }
+
+  /**
+   * Set the number of threads used by the sort. This setting is used by the
+   * next executions of the map phase.
+   * @param threads the number of threads
+   */
+  public void setSortThreads(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads must be greater than 0: " + threads);
+    }
+
+    this.sortThreads = threads;
+  }
+
+  /**
+   * Get the number of threads used by the sort.
+   * @return the number of threads
+   */
+  public int getSortThreads() {
+
+    return this.sortThreads;
+  }
+
+  /**
+   * Enable the compression of the temporary files of the sort.
+   * @param compression true to compress the temporary files
+   */
+  public void setSortRunsCompression(final boolean compression) {
+
+    this.sortRunsCompression = compression;
+  }
+
+  /**
+   * Test if the temporary files of the sort are compressed.
+   * @return true if the temporary files of the sort are compressed
+   */
+  public boolean isSortRunsCompression() {
+
+    return this.sortRunsCompression;
+  }
+
+  /**
+   * Use the Unix sort command instead of the sort in the JVM. This setting
+   * must not be changed between the map and the reduce phases.
+   * @param unixSort true to use the Unix sort command
+   */
+  public void setUnixSort(final boolean unixSort) {
+
+    this.unixSort = unixSort;
+  }
+
+  /**
+   * Test if the Unix sort command is used instead of the sort in the JVM.
+   * @return true if the Unix sort command is used
+   */
+  public boolean isUnixSort() {
+
+    return this.unixSort;
+  }
+
   /**
    * Sort several files in sortOutputFile
    * @return true if success sort
@@ -369,13 +499,8 @@ public abstract class PseudoMapReduce {
       throw new NullPointerException("The output stream is null.");
     }
 
-    if (!sort()) {
-      throw new IOException("Unable to sort/shuffle data.");
-    }
-
     // Create reader
-    final BufferedReader br =
-        FileUtils.createBufferedReader(this.sortOutputFile);
+    final ExternalSorter.SortedReader br = sortedReader();
 
     // Create writer
     final BufferedWriter bw =
@@ -432,10 +557,68 @@ public abstract class PseudoMapReduce {
 
     br.close();
     bw.close();
-    if (!this.sortOutputFile.delete()) {
-      this.logger.warn("Can not delete sort output file: "
-          + this.sortOutputFile.getAbsolutePath());
+  }
+
+  /**
+   * Sort the output of the map phase.
+   * @return a reader on the sorted lines
+   * @throws IOException if an error occurs while sorting data
+   */
+  private ExternalSorter.SortedReader sortedReader() throws IOException {
+
+    if (!this.unixSort) {
+
+      if (this.sorter == null) {
+        this.sorter = new ExternalSorter(this.tmpDir);
+      }
+
+      final ExternalSorter sorter = this.sorter;
+      this.sorter = null;
+      final ExternalSorter.SortedReader reader = sorter.sort();
+
+      return new ExternalSorter.SortedReader() {
+
+        @Override
+        public String readLine() throws IOException {
+          return reader.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            reader.close();
+          } finally {
+            sorter.close();
+          }
+        }
+      };
+    }
+
+    if (!sort()) {
+      throw new IOException("Unable to sort/shuffle data.");
     }
+
+    final BufferedReader br =
+        FileUtils.createBufferedReader(this.sortOutputFile);
+    final File sortOutputFile = this.sortOutputFile;
+
+    return new ExternalSorter.SortedReader() {
+
+      @Override
+      public String readLine() throws IOException {
+        return br.readLine();
+      }
+
+      @Override
+      public void close() throws IOException {
+
+        br.close();
+        if (!sortOutputFile.delete()) {
+          getLogger().warn("Can not delete sort output file: "
+              + sortOutputFile.getAbsolutePath());
+        }
+      }
+    };
   }
 
   //
@@ -39,4 +39,18 @@ public interface ReporterIncrementer {
    */
   void incrCounter(String counterGroup, String counterName, long amount);
 
+  /**
+   * Get a handle on a counter. The default implementation returns a handle
+   * that calls the incrCounter() method with the group and the name of the
+   * counter.
+   * @param counterGroup group of the counter
+   * @param counterName name of the counter
+   * @return a handle on the counter
+   */
+  default CounterHandle getCounterHandle(final String counterGroup,
+      final String counterName) {
+
+    return amount -> incrCounter(counterGroup, counterName, amount);
+  }
+
 }
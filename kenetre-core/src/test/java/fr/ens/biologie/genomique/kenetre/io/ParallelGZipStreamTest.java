@@ -0,0 +1,289 @@
+package fr.ens.biologie.genomique.kenetre.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class ParallelGZipStreamTest {
+
+  @Test
+  public void testCompressAndUncompressWithGZip() throws IOException {
+
+    for (int size : new int[] {0, 1, 65280, 65281, 1000000}) {
+
+      final byte[] data = createData(size);
+      final byte[] compressed = compressParallel(data, 4);
+
+      assertArrayEquals(data, readAll(new GZIPInputStream(
+          new ByteArrayInputStream(compressed))));
+    }
+  }
+
+  @Test
+  public void testUncompressBGZF() throws IOException {
+
+    for (int size : new int[] {0, 1, 65280, 65281, 1000000}) {
+
+      final byte[] data = createData(size);
+      final byte[] compressed = compressParallel(data, 3);
+
+      assertArrayEquals(data, readAll(
+          new ParallelGZipInputStream(new ByteArrayInputStream(compressed), 3)));
+    }
+  }
+
+  @Test
+  public void testUncompressStandardGZip() throws IOException {
+
+    final byte[] data = createData(1000000);
+
+    // Single member
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream os = new GZIPOutputStream(baos)) {
+      os.write(data);
+    }
+    assertArrayEquals(data, readAll(new ParallelGZipInputStream(
+        new ByteArrayInputStream(baos.toByteArray()), 2)));
+
+    // Multi-member
+    baos = new ByteArrayOutputStream();
+    for (int i = 0; i < 3; i++) {
+      final OutputStream os = new GZIPOutputStream(baos);
+      os.write(data, i * 1000, 1000);
+      ((GZIPOutputStream) os).finish();
+    }
+    final byte[] expected = new byte[3000];
+    System.arraycopy(data, 0, expected, 0, 3000);
+    assertArrayEquals(expected, readAll(new ParallelGZipInputStream(
+        new ByteArrayInputStream(baos.toByteArray()), 2)));
+  }
+
+  @Test
+  public void testUncompressMixedBGZFAndGZip() throws IOException {
+
+    final byte[] data = createData(1000000);
+
+    // BGZF members followed by plain gzip members, like with cat
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    baos.write(compressParallel(Arrays.copyOfRange(data, 0, 300000), 2));
+    try (OutputStream os = new GZIPOutputStream(baos)) {
+      os.write(data, 300000, 400000);
+    }
+    baos.write(compressParallel(Arrays.copyOfRange(data, 700000, 1000000), 2));
+
+    assertArrayEquals(data, readAll(new ParallelGZipInputStream(
+        new ByteArrayInputStream(baos.toByteArray()), 3)));
+  }
+
+  @Test(timeout = 10000)
+  public void testReadAheadRuntimeException() throws IOException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream os = new GZIPOutputStream(baos)) {
+      os.write(createData(1000000));
+    }
+    final byte[] compressed = baos.toByteArray();
+
+    // The input fails in the read ahead thread with an unchecked exception
+    final InputStream in = new ByteArrayInputStream(compressed) {
+
+      @Override
+      public synchronized int read(final byte[] b, final int off,
+          final int len) {
+
+        if (this.pos > compressed.length / 2) {
+          throw new IllegalStateException("read error");
+        }
+        return super.read(b, off, len);
+      }
+    };
+
+    try (InputStream is = new ParallelGZipInputStream(in, 2)) {
+      readAll(is);
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testCloseOutputOnError() {
+
+    final boolean[] closed = new boolean[1];
+    final OutputStream out = new OutputStream() {
+
+      @Override
+      public void write(final int b) throws IOException {
+        throw new IOException("write error");
+      }
+
+      @Override
+      public void close() {
+        closed[0] = true;
+      }
+    };
+
+    try {
+      final OutputStream os = new ParallelGZipOutputStream(out, 2);
+      os.write(createData(1000));
+      os.close();
+      fail();
+    } catch (IOException e) {
+      assertEquals("write error", e.getMessage());
+    }
+
+    assertTrue(closed[0]);
+  }
+
+  @Test
+  public void testFastBufferedGZipWriter() throws IOException {
+
+    final File file = Files.createTempFile("writer", ".gz").toFile();
+
+    try {
+      final String data = new String(createData(200000));
+      try (Writer writer = FileUtils.createFastBufferedGZipWriter(file, 3)) {
+        writer.write(data);
+      }
+
+      // The file is written by a ParallelGZipOutputStream
+      final byte[] compressed = Files.readAllBytes(file.toPath());
+      assertEquals(0x04, compressed[3]);
+      assertEquals('B', compressed[12]);
+      assertEquals('C', compressed[13]);
+
+      assertArrayEquals(data.getBytes(), readAll(
+          new GZIPInputStream(new ByteArrayInputStream(compressed))));
+
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testInvalidInput() {
+
+    try {
+      readAll(new ParallelGZipInputStream(
+          new ByteArrayInputStream("not a gzip file".getBytes()), 2));
+      fail();
+    } catch (IOException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testCompressionTypeThreadCount() throws IOException {
+
+    final byte[] data = createData(100000);
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream os = CompressionType.GZIP.createOutputStream(baos, 2)) {
+      assertTrue(os instanceof ParallelGZipOutputStream);
+      os.write(data);
+    }
+
+    final InputStream is = CompressionType.GZIP
+        .createInputStream(new ByteArrayInputStream(baos.toByteArray()), 2);
+    assertTrue(is instanceof ParallelGZipInputStream);
+    assertArrayEquals(data, readAll(is));
+
+    // The default streams do not use several threads
+    try (OutputStream os = CompressionType.GZIP.createOutputStream(baos)) {
+      assertFalse(os instanceof ParallelGZipOutputStream);
+    }
+    assertFalse(CompressionType.GZIP.createInputStream(new ByteArrayInputStream(
+        baos.toByteArray())) instanceof ParallelGZipInputStream);
+  }
+
+  @Test
+  public void testThreadNames() throws IOException, InterruptedException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream os = new ParallelGZipOutputStream(baos, 3)) {
+
+      // Use all the threads of the pool
+      os.write(createData(1000000));
+      os.flush();
+
+      // The threads of the pools of other streams may still be alive
+      final Set<String> names = new HashSet<>();
+      for (Thread t : Thread.getAllStackTraces().keySet()) {
+        if (t.getName().startsWith("gzip-compression")) {
+          assertTrue(t.getName().matches("gzip-compression-[1-3]"));
+          names.add(t.getName());
+        }
+      }
+
+      assertEquals(new HashSet<>(Arrays.asList("gzip-compression-1",
+          "gzip-compression-2", "gzip-compression-3")), names);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] createData(final int size) {
+
+    final Random random = new Random(size);
+    final byte[] result = new byte[size];
+    final byte[] alphabet = "ACGTN\n".getBytes();
+
+    for (int i = 0; i < size; i++) {
+      result[i] = alphabet[random.nextInt(alphabet.length)];
+    }
+
+    return result;
+  }
+
+  private static byte[] compressParallel(final byte[] data, final int threads)
+      throws IOException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    try (OutputStream os = new ParallelGZipOutputStream(baos, threads)) {
+
+      // Write the data in small chunks
+      for (int i = 0; i < data.length; i += 1000) {
+        os.write(data, i, Math.min(1000, data.length - i));
+      }
+    }
+
+    return baos.toByteArray();
+  }
+
+  private static byte[] readAll(final InputStream is) throws IOException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    try (InputStream in = is) {
+      final byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        baos.write(buffer, 0, n);
+      }
+    }
+
+    return baos.toByteArray();
+  }
+
+}
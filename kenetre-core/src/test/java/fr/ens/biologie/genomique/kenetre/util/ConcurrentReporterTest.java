@@ -0,0 +1,100 @@
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ConcurrentReporterTest {
+
+  @Test
+  public void testIncrCounter() {
+
+    final ConcurrentReporter reporter = new ConcurrentReporter();
+
+    reporter.incrCounter("group1", "counter1", 2);
+    reporter.incrCounter("group1", "counter1", 3);
+    reporter.incrCounter("group1", "counter2", 0);
+    reporter.incrCounter(null, "counter2", 1);
+
+    assertEquals(5, reporter.getCounterValue("group1", "counter1"));
+    assertEquals(-1, reporter.getCounterValue("group1", "counter2"));
+    assertEquals(-1, reporter.getCounterValue("group2", "counter1"));
+    assertEquals(Collections.singleton("group1"), reporter.getCounterGroups());
+    assertEquals(Collections.singleton("counter1"),
+        reporter.getCounterNames("group1"));
+    assertEquals("group1\n\tcounter1=5\n", reporter.toString());
+
+    reporter.clear();
+    assertTrue(reporter.getCounterGroups().isEmpty());
+  }
+
+  @Test
+  public void testCounterHandle() {
+
+    final ConcurrentReporter reporter = new ConcurrentReporter();
+    final CounterHandle handle =
+        reporter.getCounterHandle("group1", "counter1");
+
+    // Unused handles do not create counters
+    reporter.getCounterHandle("group1", "counter2");
+    assertTrue(reporter.getCounterGroups().isEmpty());
+
+    handle.increment();
+    handle.increment(4);
+    handle.increment(-1);
+    reporter.incrCounter("group1", "counter1", 1);
+
+    assertEquals(6, reporter.getCounterValue("group1", "counter1"));
+    assertEquals(Collections.singleton("counter1"),
+        reporter.getCounterNames("group1"));
+  }
+
+  @Test
+  public void testDefaultCounterHandle() {
+
+    final LocalReporter reporter = new LocalReporter();
+    final CounterHandle handle =
+        reporter.getCounterHandle("group1", "counter1");
+
+    handle.increment();
+    handle.increment(2);
+
+    assertEquals(3, reporter.getCounterValue("group1", "counter1"));
+  }
+
+  @Test
+  public void testThreads() throws InterruptedException {
+
+    final ConcurrentReporter reporter = new ConcurrentReporter();
+    final List<Thread> threads = new ArrayList<>();
+
+    for (int i = 0; i < 8; i++) {
+
+      final Thread t = new Thread(() -> {
+
+        final CounterHandle handle =
+            reporter.getCounterHandle("group", "handle");
+
+        for (int j = 0; j < 10000; j++) {
+          handle.increment();
+          reporter.incrCounter("group", "direct", 2);
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(80000, reporter.getCounterValue("group", "handle"));
+    assertEquals(160000, reporter.getCounterValue("group", "direct"));
+  }
+
+}
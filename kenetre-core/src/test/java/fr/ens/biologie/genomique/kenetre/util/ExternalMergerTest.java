@@ -0,0 +1,182 @@
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ExternalMergerTest {
+
+  @Test
+  public void testStableMerge() throws IOException {
+
+    final File tmpDir = Files.createTempDirectory("merge").toFile();
+
+    try {
+
+      // Each record contains a key and the index of its run
+      final List<File> runs = new ArrayList<>();
+      runs.add(createRun(tmpDir, new int[][] {{1, 0}, {2, 0}, {2, 0}}));
+      runs.add(createRun(tmpDir, new int[][] {}));
+      runs.add(createRun(tmpDir, new int[][] {{0, 2}, {2, 2}, {3, 2}}));
+      runs.add(createRun(tmpDir, new int[][] {{1, 3}, {2, 3}}));
+
+      final List<String> result = new ArrayList<>();
+      try (RecordMerger merger = new RecordMerger(runs)) {
+
+        int run;
+        while ((run = merger.nextRun()) != -1) {
+          result.add(merger.keys[run] + ":" + merger.origins[run]);
+        }
+        assertEquals(-1, merger.nextRun());
+      }
+
+      assertEquals(
+          "[0:2, 1:0, 1:3, 2:0, 2:0, 2:2, 2:3, 3:2]", result.toString());
+
+      // The runs are deleted by the merger
+      assertEquals(0, tmpDir.list().length);
+
+    } finally {
+      tmpDir.delete();
+    }
+  }
+
+  @Test
+  public void testReduceRuns() throws IOException {
+
+    final File tmpDir = Files.createTempDirectory("merge").toFile();
+
+    try {
+
+      // All the records have the same key, only the order of the runs counts
+      final int runCount = 3 * ExternalMerger.MAX_FAN_IN;
+      final List<File> runs = new ArrayList<>();
+      for (int i = 0; i < runCount; i++) {
+        runs.add(createRun(tmpDir, new int[][] {{0, i}}));
+      }
+
+      ExternalMerger.reduceRuns(runs,
+          () -> File.createTempFile("run-", ".tmp", tmpDir),
+          (group, output) -> {
+
+            try (RecordMerger merger = new RecordMerger(group);
+                DataOutputStream out =
+                    ExternalMerger.createRunOutputStream(output)) {
+
+              int run;
+              while ((run = merger.nextRun()) != -1) {
+                out.writeInt(merger.keys[run]);
+                out.writeInt(merger.origins[run]);
+              }
+            }
+          });
+
+      assertTrue(runs.size() <= ExternalMerger.MAX_FAN_IN);
+      assertEquals(runs.size(), tmpDir.list().length);
+
+      final List<Integer> origins = new ArrayList<>();
+      try (RecordMerger merger = new RecordMerger(runs)) {
+
+        int run;
+        while ((run = merger.nextRun()) != -1) {
+          origins.add(merger.origins[run]);
+        }
+      }
+
+      final List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < runCount; i++) {
+        expected.add(i);
+      }
+      assertEquals(expected, origins);
+      assertEquals(0, tmpDir.list().length);
+
+    } finally {
+      tmpDir.delete();
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+
+    try (RecordMerger merger =
+        new RecordMerger(Collections.<File> emptyList())) {
+      assertEquals(-1, merger.nextRun());
+    }
+  }
+
+  @Test
+  public void testDeleteRunFile() throws IOException {
+
+    final File file = File.createTempFile("run-", ".tmp");
+    ExternalMerger.deleteRunFile(file);
+    assertFalse(file.exists());
+
+    // Deleting a missing file does nothing
+    ExternalMerger.deleteRunFile(file);
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static final class RecordMerger extends ExternalMerger {
+
+    private final int[] keys;
+    private final int[] origins;
+
+    @Override
+    protected boolean readHead(final int run, final DataInputStream in)
+        throws IOException {
+
+      try {
+        this.keys[run] = in.readInt();
+      } catch (EOFException e) {
+        return false;
+      }
+      this.origins[run] = in.readInt();
+
+      return true;
+    }
+
+    @Override
+    protected int compareHeads(final int run1, final int run2) {
+
+      return Integer.compare(this.keys[run1], this.keys[run2]);
+    }
+
+    private RecordMerger(final List<File> files) {
+
+      super(files);
+      this.keys = new int[files.size()];
+      this.origins = new int[files.size()];
+    }
+  }
+
+  private static File createRun(final File dir, final int[][] records)
+      throws IOException {
+
+    final File result = File.createTempFile("run-", ".tmp", dir);
+
+    try (DataOutputStream out = ExternalMerger.createRunOutputStream(result)) {
+      for (int[] r : records) {
+        out.writeInt(r[0]);
+        out.writeInt(r[1]);
+      }
+    }
+
+    return result;
+  }
+
+}
@@ -0,0 +1,176 @@
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ExternalSorterTest {
+
+  @Test
+  public void testInMemory() throws IOException {
+
+    final List<String> lines = randomLines(1000);
+
+    try (ExternalSorter sorter = new ExternalSorter(null)) {
+
+      for (String line : lines) {
+        sorter.add(line);
+      }
+
+      assertEquals(lines.size(), sorter.getLineCount());
+      assertSorted(lines, sorter.sort());
+      assertEquals(0, sorter.getRunCount());
+    }
+  }
+
+  @Test
+  public void testExternal() throws IOException {
+
+    final List<String> lines = randomLines(20000);
+    final File tmpDir = Files.createTempDirectory("sort").toFile();
+
+    try {
+      for (int threads : new int[] {1, 4}) {
+        for (boolean compression : new boolean[] {false, true}) {
+
+          try (ExternalSorter sorter =
+              new ExternalSorter(tmpDir, 10000, threads, compression)) {
+
+            for (String line : lines) {
+              sorter.add(line);
+            }
+
+            assertTrue(sorter.getRunCount() > 64);
+            assertSorted(lines, sorter.sort());
+          }
+
+          assertEquals(0, tmpDir.list().length);
+        }
+      }
+    } finally {
+      tmpDir.delete();
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+
+    try (ExternalSorter sorter = new ExternalSorter(null)) {
+      assertNull(sorter.sort().readLine());
+    }
+  }
+
+  @Test
+  public void testAddAfterSort() throws IOException {
+
+    try (ExternalSorter sorter = new ExternalSorter(null)) {
+
+      sorter.sort();
+      sorter.add("a");
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testPseudoMapReduce() throws IOException {
+
+    final String text = "b a c\na b\n\nc c a\n";
+    final String expected = "a\t3\nb\t2\nc\t3";
+
+    for (boolean unixSort : new boolean[] {false, true}) {
+
+      final PseudoMapReduce pmr = new PseudoMapReduce() {
+
+        @Override
+        public void map(final String value, final List<String> output,
+            final Reporter reporter) {
+
+          for (String word : value.split(" ")) {
+            if (!word.isEmpty()) {
+              output.add(word + "\t1");
+            }
+          }
+        }
+
+        @Override
+        public void reduce(final String key, final Iterator<String> values,
+            final List<String> output, final Reporter reporter) {
+
+          int count = 0;
+          while (values.hasNext()) {
+            count += Integer.parseInt(values.next());
+          }
+          output.add(key + '\t' + count);
+        }
+      };
+
+      pmr.setUnixSort(unixSort);
+      pmr.setSortMaxMemory(100);
+      pmr.doMap(new ByteArrayInputStream(text.getBytes()));
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      pmr.doReduce(out);
+
+      assertEquals(expected, out.toString());
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static List<String> randomLines(final int count) {
+
+    final Random random = new Random(0);
+    final List<String> result = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+
+      final StringBuilder sb = new StringBuilder();
+      final int length = random.nextInt(20);
+      for (int j = 0; j < length; j++) {
+        sb.append((char) ('a' + random.nextInt(4)));
+      }
+      if (i % 100 == 0) {
+        sb.append('é');
+      }
+      result.add(sb.toString());
+    }
+
+    return result;
+  }
+
+  private static void assertSorted(final List<String> lines,
+      final ExternalSorter.SortedReader reader) throws IOException {
+
+    final List<String> expected = new ArrayList<>(lines);
+    Collections.sort(expected);
+
+    final List<String> result = new ArrayList<>();
+    try (ExternalSorter.SortedReader r = reader) {
+      String line;
+      while ((line = r.readLine()) != null) {
+        result.add(line);
+      }
+    }
+
+    assertEquals(expected, result);
+  }
+
+}
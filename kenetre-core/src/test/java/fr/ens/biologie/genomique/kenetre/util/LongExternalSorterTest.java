@@ -0,0 +1,119 @@
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongExternalSorterTest {
+
+  @Test
+  public void testInMemory() throws IOException {
+
+    final long[] values = randomValues(10000);
+
+    try (LongExternalSorter sorter = new LongExternalSorter(null)) {
+
+      for (long v : values) {
+        sorter.add(v);
+      }
+
+      assertEquals(values.length, sorter.getCount());
+      assertSorted(values, sorter.sort());
+      assertEquals(0, sorter.getRunCount());
+    }
+  }
+
+  @Test
+  public void testExternal() throws IOException {
+
+    final long[] values = randomValues(50000);
+    final File tmpDir = Files.createTempDirectory("sort").toFile();
+
+    try {
+      for (boolean parallel : new boolean[] {false, true}) {
+
+        try (LongExternalSorter sorter =
+            new LongExternalSorter(tmpDir, 100 * Long.BYTES, parallel)) {
+
+          for (long v : values) {
+            sorter.add(v);
+          }
+
+          assertTrue(sorter.getRunCount() > 64);
+          assertSorted(values, sorter.sort());
+        }
+
+        assertEquals(0, tmpDir.list().length);
+      }
+    } finally {
+      tmpDir.delete();
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+
+    try (LongExternalSorter sorter = new LongExternalSorter(null)) {
+      assertFalse(sorter.sort().hasNext());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddAfterSort() throws IOException {
+
+    try (LongExternalSorter sorter = new LongExternalSorter(null)) {
+
+      sorter.sort();
+      sorter.add(1);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static long[] randomValues(final int count) {
+
+    final Random random = new Random(0);
+    final long[] result = new long[count];
+
+    for (int i = 0; i < count; i++) {
+
+      // Add duplicates and extreme values
+      result[i] = i % 10 == 0 ? random.nextInt(100) : random.nextLong();
+    }
+    result[0] = Long.MIN_VALUE;
+    result[1] = Long.MAX_VALUE;
+
+    return result;
+  }
+
+  private static void assertSorted(final long[] values,
+      final LongExternalSorter.SortedLongReader reader) throws IOException {
+
+    final long[] expected = values.clone();
+    Arrays.sort(expected);
+
+    final long[] result = new long[values.length];
+    int count = 0;
+
+    try (LongExternalSorter.SortedLongReader r = reader) {
+      while (r.hasNext()) {
+        result[count++] = r.next();
+      }
+    }
+
+    assertEquals(expected.length, count);
+    assertArrayEquals(expected, result);
+  }
+
+}
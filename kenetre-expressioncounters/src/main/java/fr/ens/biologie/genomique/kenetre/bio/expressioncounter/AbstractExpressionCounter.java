@@ -34,6 +34,7 @@ import java.util.Iterator;
 import java.util.Map;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.FeatureCounts;
 import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
 import fr.ens.biologie.genomique.kenetre.bio.io.GFFReader;
 import fr.ens.biologie.genomique.kenetre.bio.io.GTFReader;
@@ -134,6 +135,19 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
     }
   }
 
+  /**
+   * Test if SAM records must be processed in the order of the iteration. This
+   * is the case when the modified SAM records are saved while iterating.
+   * @param samRecords SAM entries
+   * @return true if the SAM records must be processed in the order of the
+   *         iteration
+   */
+  protected static boolean requiresSequentialProcessing(
+      final Iterable<SAMRecord> samRecords) {
+
+    return samRecords instanceof IteratorWriter;
+  }
+
   /**
    * Set a common parameter of the counter.
    * @param key name of the parameter to set
@@ -197,17 +211,43 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
       final ReporterIncrementer reporter, final String counterGroup)
       throws KenetreException {
 
+    return countFeatures(inputSam, reporter, counterGroup).toMap(false);
+  }
+
+  @Override
+  public Map<String, Integer> count(final InputStream inputSam,
+      final OutputStream outputSam, final File temporaryDirectory,
+      final ReporterIncrementer reporter, final String counterGroup)
+      throws KenetreException {
+
+    return countFeatures(inputSam, outputSam, temporaryDirectory, reporter,
+        counterGroup).toMap(false);
+  }
+
+  @Override
+  public Map<String, Integer> count(final Iterable<SAMRecord> samRecords,
+      final ReporterIncrementer reporter, final String counterGroup)
+      throws KenetreException {
+
+    return countFeatures(samRecords, reporter, counterGroup).toMap(false);
+  }
+
+  @Override
+  public FeatureCounts countFeatures(final InputStream inputSam,
+      final ReporterIncrementer reporter, final String counterGroup)
+      throws KenetreException {
+
     if (inputSam == null) {
       throw new NullPointerException("the inputSam argument is null");
     }
 
-    return count(
+    return countFeatures(
         SamReaderFactory.makeDefault().open(SamInputResource.of(inputSam)),
         reporter, counterGroup);
   }
 
   @Override
-  public Map<String, Integer> count(final InputStream inputSam,
+  public FeatureCounts countFeatures(final InputStream inputSam,
       final OutputStream outputSam, final File temporaryDirectory,
       final ReporterIncrementer reporter, final String counterGroup)
       throws KenetreException {
@@ -234,7 +274,8 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
             .setMaxRecordsInRam(this.maxRecordsInRam)
             .makeSAMWriter(reader.getFileHeader(), false, outputSam);
 
-    return count(new IteratorWriter(writer, reader), reporter, counterGroup);
+    return countFeatures(new IteratorWriter(writer, reader), reporter,
+        counterGroup);
   }
 
 }
@@ -31,6 +31,7 @@ import java.io.OutputStream;
 import java.util.Map;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.FeatureCounts;
 import fr.ens.biologie.genomique.kenetre.bio.GFFEntry;
 import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
 import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
@@ -154,6 +155,44 @@ public interface ExpressionCounter {
       ReporterIncrementer reporter, String counterGroup)
       throws KenetreException;
 
+  /**
+   * Count the the features.
+   * @param inputSam SAM file as an InputStream
+   * @param reporter the reporter
+   * @param counterGroup the counter group of the reporter
+   * @return a vector with the counts of all the features
+   * @throws KenetreException if an error occurs while counting
+   */
+  FeatureCounts countFeatures(InputStream inputSam,
+      ReporterIncrementer reporter, String counterGroup)
+      throws KenetreException;
+
+  /**
+   * Count the the features.
+   * @param inputSam SAM file as an InputStream
+   * @param outputSam SAM file as an OutputStream
+   * @param temporaryDirectory temporary directory
+   * @param reporter the reporter
+   * @param counterGroup the counter group of the reporter
+   * @return a vector with the counts of all the features
+   * @throws KenetreException if an error occurs while counting
+   */
+  FeatureCounts countFeatures(InputStream inputSam, OutputStream outputSam,
+      File temporaryDirectory, ReporterIncrementer reporter,
+      String counterGroup) throws KenetreException;
+
+  /**
+   * Count the the features.
+   * @param samRecords SAM entries
+   * @param reporter the reporter
+   * @param counterGroup the counter group of the reporter
+   * @return a vector with the counts of all the features
+   * @throws KenetreException if an error occurs while counting
+   */
+  FeatureCounts countFeatures(Iterable<SAMRecord> samRecords,
+      ReporterIncrementer reporter, String counterGroup)
+      throws KenetreException;
+
   /**
    * Add missing zero count features.
    * @param counts the counts
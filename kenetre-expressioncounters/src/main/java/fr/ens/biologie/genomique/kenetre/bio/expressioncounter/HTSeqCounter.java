@@ -26,21 +26,35 @@ package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
 
 import static fr.ens.biologie.genomique.kenetre.util.StringUtils.join;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Splitter;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.FeatureCounts;
+import fr.ens.biologie.genomique.kenetre.bio.FrozenGenomicArray;
 import fr.ens.biologie.genomique.kenetre.bio.GFFEntry;
 import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
 import fr.ens.biologie.genomique.kenetre.bio.GenomicArray;
 import fr.ens.biologie.genomique.kenetre.bio.GenomicInterval;
+import fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqUtils.OverlapBuffer;
 import fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqUtils.UnknownChromosomeException;
 import fr.ens.biologie.genomique.kenetre.util.GuavaCompatibility;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
@@ -80,9 +94,19 @@ public class HTSeqCounter extends AbstractExpressionCounter
   public static final String REMOVE_NON_ASSIGNED_FEATURES_SAM_TAGS_PARAMETER_NAME =
       "remove.non.assigned.sam.tags";
   public static final String SAM_TAG_TO_USE_PARAMETER_NAME = "sam.tag.to.use";
+  public static final String THREADS_PARAMETER_NAME = "threads";
+  public static final String MATE_BUFFER_SIZE_PARAMETER_NAME =
+      "mate.buffer.size";
+  public static final String TEMPORARY_DIRECTORY_PARAMETER_NAME = "tmp.dir";
 
   public static final String SAM_TAG_DEFAULT = "XF";
 
+  /** Number of SAM records processed by a thread at once. */
+  private static final int BATCH_SIZE = 4096;
+
+  /** Default size of the mate buffer in megabytes. */
+  private static final int DEFAULT_MATE_BUFFER_SIZE = 256;
+
   private String genomicType = "exon";
   private String attributeId = "PARENT";
   private boolean splitAttributeValues = false;
@@ -96,8 +120,14 @@ public class HTSeqCounter extends AbstractExpressionCounter
   private boolean removeNonAssignedFeatureSamTags = false;
 
   private String samTag = SAM_TAG_DEFAULT;
-
-  private final GenomicArray<String> features = new GenomicArray<>();
+  private int threads = 1;
+  private int mateBufferSize = DEFAULT_MATE_BUFFER_SIZE;
+  private File temporaryDirectory =
+      new File(System.getProperty("java.io.tmpdir"));
+
+  private FrozenGenomicArray<String> features;
+  private String[] featureIds;
+  private int[] featureIndexes;
   private boolean initialized;
 
   /**
@@ -153,6 +183,19 @@ public class HTSeqCounter extends AbstractExpressionCounter
               + this.missingMate);
     }
 
+    private void add(final InternalCounters counters) {
+
+      this.input += counters.input;
+      this.empty += counters.empty;
+      this.ambiguous += counters.ambiguous;
+      this.notAligned += counters.notAligned;
+      this.lowQual += counters.lowQual;
+      this.secondaryAlignments += counters.secondaryAlignments;
+      this.supplementaryAlignments += counters.supplementaryAlignments;
+      this.nonUnique += counters.nonUnique;
+      this.missingMate += counters.missingMate;
+    }
+
     private InternalCounters(final ReporterIncrementer reporter,
         final String counterGroup) {
 
@@ -162,6 +205,59 @@ public class HTSeqCounter extends AbstractExpressionCounter
 
   }
 
+  /**
+   * This class contains the state of the counting of a sequence of SAM
+   * records. Each counting thread has its own context.
+   */
+  private static class CountingContext {
+
+    private SAMRecord sam1;
+    private SAMRecord sam2;
+    private final List<GenomicInterval> ivSeq = new ArrayList<>();
+    private final OverlapBuffer overlapBuffer = new OverlapBuffer();
+    private final int[] counts;
+    private final InternalCounters counters;
+
+    private CountingContext(final int featureCount,
+        final InternalCounters counters) {
+
+      this.counts = new int[featureCount];
+      this.counters = counters;
+    }
+  }
+
+  /**
+   * This class define a batch of SAM records to count in a thread. The first
+   * record of a batch always reset the intervals of the previous records, so
+   * only the pairing state is needed to count the batch independently of the
+   * previous batches.
+   */
+  private static class Batch {
+
+    private final SAMRecord sam1;
+    private final SAMRecord sam2;
+    private final List<SAMRecord> records = new ArrayList<>(BATCH_SIZE);
+
+    private Batch(final SAMRecord sam1, final SAMRecord sam2) {
+
+      this.sam1 = sam1;
+      this.sam2 = sam2;
+    }
+  }
+
+  /**
+   * This interface define a handler of SAM records.
+   */
+  private interface SAMRecordHandler {
+
+    /**
+     * Handle a SAM record.
+     * @param samRecord the SAM record
+     * @throws KenetreException if an error occurs while handling the record
+     */
+    void handle(SAMRecord samRecord) throws KenetreException;
+  }
+
   @Override
   public String getName() {
 
@@ -243,6 +339,36 @@ public class HTSeqCounter extends AbstractExpressionCounter
       this.removeNonAssignedFeatureSamTags = Boolean.parseBoolean(value);
       break;
 
+    case THREADS_PARAMETER_NAME:
+      final int threadCount;
+      try {
+        threadCount = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new KenetreException("Invalid thread count: " + value);
+      }
+      if (threadCount < 1) {
+        throw new KenetreException("Invalid thread count: " + value);
+      }
+      this.threads = threadCount;
+      break;
+
+    case MATE_BUFFER_SIZE_PARAMETER_NAME:
+      final int bufferSize;
+      try {
+        bufferSize = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new KenetreException("Invalid mate buffer size: " + value);
+      }
+      if (bufferSize < 1) {
+        throw new KenetreException("Invalid mate buffer size: " + value);
+      }
+      this.mateBufferSize = bufferSize;
+      break;
+
+    case TEMPORARY_DIRECTORY_PARAMETER_NAME:
+      this.temporaryDirectory = new File(value);
+      break;
+
     case SAM_TAG_TO_USE_PARAMETER_NAME:
       this.samTag = value.toUpperCase().trim();
       if (this.samTag.length() != 2
@@ -297,7 +423,8 @@ public class HTSeqCounter extends AbstractExpressionCounter
     // Check configuration
     checkConfiguration();
 
-    this.features.addChromosomes(desc);
+    final GenomicArray<String> features = new GenomicArray<>();
+    features.addChromosomes(desc);
 
     final Splitter splitter = Splitter.on(',').omitEmptyStrings().trimResults();
 
@@ -337,23 +464,35 @@ public class HTSeqCounter extends AbstractExpressionCounter
 
         // Split parent if needed
         for (String f : featureIds) {
-          this.features.addEntry(
+          features.addEntry(
               new GenomicInterval(gff, this.stranded.isSaveStrandInfo()), f);
         }
       }
     }
 
-    if (this.features.getFeaturesIds().size() == 0) {
+    // Use an immutable copy of the features optimized for overlap queries
+    this.features = features.freeze();
+
+    if (this.features.getValueCount() == 0) {
       throw new KenetreException(
           "Warning: No features of type '" + this.genomicType + "' found.\n");
     }
 
+    // Index of the features in the count vectors, sorted by identifier
+    this.featureIds =
+        this.features.getFeaturesIds().toArray(new String[0]);
+    this.featureIndexes = new int[this.features.getValueCount()];
+    for (int i = 0; i < this.featureIndexes.length; i++) {
+      this.featureIndexes[i] =
+          Arrays.binarySearch(this.featureIds, this.features.getValue(i));
+    }
+
     // The counter is now initialized
     this.initialized = true;
   }
 
   @Override
-  public Map<String, Integer> count(final Iterable<SAMRecord> samRecords,
+  public FeatureCounts countFeatures(final Iterable<SAMRecord> samRecords,
       final ReporterIncrementer reporter, final String counterGroup)
       throws KenetreException {
 
@@ -369,71 +508,355 @@ public class HTSeqCounter extends AbstractExpressionCounter
       throw new IllegalStateException("the counter has not been initialized");
     }
 
-    SAMRecord sam1 = null, sam2 = null;
-    final Map<String, Integer> counts = new HashMap<>();
-    final List<GenomicInterval> ivSeq = new ArrayList<>();
     final InternalCounters internalCounters =
         new InternalCounters(reporter, counterGroup);
+    final int[] counts;
+
+    if (this.threads > 1 && !requiresSequentialProcessing(samRecords)) {
+      counts = countMultiThreaded(samRecords, internalCounters);
+    } else {
+
+      final CountingContext context =
+          new CountingContext(this.features.getValueCount(), internalCounters);
+
+      // Read the SAM file
+      processRecords(samRecords, r -> count(r, context), internalCounters);
+
+      counts = context.counts;
+    }
+
+    // Set the counters in the reporter
+    internalCounters.fillReporter(this);
 
-    // Read the SAM file
-    for (final SAMRecord samRecord : samRecords) {
+    // Sort the counts by feature identifier
+    final long[] result = new long[this.featureIds.length];
+    for (int i = 0; i < counts.length; i++) {
+      result[this.featureIndexes[i]] = counts[i];
+    }
+
+    return new FeatureCounts(this.featureIds, result);
+  }
 
-      internalCounters.input++;
+  /**
+   * Send SAM records to a handler. Paired-end SAM records sorted by coordinate
+   * are paired using a mate buffer before being sent to the handler, the mates
+   * of a pair being always sent consecutively.
+   * @param samRecords SAM entries
+   * @param handler the handler
+   * @param internalCounters the counters
+   * @throws KenetreException if an error occurs while counting
+   */
+  private void processRecords(final Iterable<SAMRecord> samRecords,
+      final SAMRecordHandler handler, final InternalCounters internalCounters)
+      throws KenetreException {
 
-      // single-end mode
-      if (!samRecord.getReadPairedFlag()) {
+    MateBuffer mateBuffer = null;
 
-        sam1 = samRecord;
+    try {
 
-        if (!processSingleEnd(sam1, ivSeq, internalCounters)) {
-          continue;
+      for (final SAMRecord samRecord : samRecords) {
+
+        if (samRecord.getReadPairedFlag()
+            && samRecord.getHeader().getSortOrder() == SortOrder.coordinate) {
+
+          if (mateBuffer == null) {
+
+            if (requiresSequentialProcessing(samRecords)) {
+              throw new KenetreException(
+                  "The counter does not support SAM output for SAM data sorted by coordinate in paired-end mode");
+            }
+
+            mateBuffer = new MateBuffer(this.mateBufferSize * 1024L * 1024L,
+                this.temporaryDirectory, new MateBuffer.Handler() {
+
+                  @Override
+                  public void pair(final SAMRecord first,
+                      final SAMRecord second) throws KenetreException {
+                    handler.handle(first);
+                    handler.handle(second);
+                  }
+
+                  @Override
+                  public void orphan(final SAMRecord record) {
+                    internalCounters.input++;
+                    internalCounters.missingMate++;
+                  }
+                });
+          }
+
+          mateBuffer.add(samRecord);
+        } else {
+          handler.handle(samRecord);
         }
       }
 
-      // paired-end mode
-      else {
+      if (mateBuffer != null) {
+        mateBuffer.finish();
+      }
 
-        if (samRecord.getHeader().getSortOrder() == SortOrder.coordinate) {
-          throw new KenetreException(
-              "The counter does not support SAM data sorted by coordinate in paired-end mode");
+    } catch (IOException e) {
+      throw new KenetreException(
+          "Error while pairing mates: " + e.getMessage(), e);
+    } finally {
+
+      if (mateBuffer != null) {
+        try {
+          mateBuffer.close();
+        } catch (IOException e) {
+          getLogger().warn("Unable to remove mate buffer temporary files: "
+              + e.getMessage());
         }
+      }
+    }
+  }
+
+  /**
+   * Count SAM records using several threads. SAM records are split in batches
+   * that are counted in parallel. The batches are only split at positions
+   * where the counting does not depend of the previous SAM records, except the
+   * pairing state. Each thread has its own counts that are merged at the end.
+   * @param samRecords SAM entries
+   * @param internalCounters the counters
+   * @return an array with the counts
+   * @throws KenetreException if an error occurs while counting
+   */
+  private int[] countMultiThreaded(final Iterable<SAMRecord> samRecords,
+      final InternalCounters internalCounters) throws KenetreException {
 
-        if (sam1 != null && sam2 != null) {
-          sam1 = null;
-          sam2 = null;
-          ivSeq.clear();
+    final int featureCount = this.features.getValueCount();
+    final BatchProducer producer =
+        new BatchProducer(featureCount, internalCounters);
+
+    try {
+
+      processRecords(samRecords, producer, internalCounters);
+      producer.finish();
+
+    } finally {
+      producer.executor.shutdownNow();
+    }
+
+    // Merge the counts of the threads
+    final int[] result = new int[featureCount];
+    for (CountingContext context : producer.contexts) {
+
+      for (int i = 0; i < featureCount; i++) {
+        result[i] += context.counts[i];
+      }
+      internalCounters.add(context.counters);
+    }
+
+    return result;
+  }
+
+  /**
+   * This class split the SAM records in batches and submit them to the
+   * counting threads.
+   */
+  private final class BatchProducer implements SAMRecordHandler {
+
+    private final int featureCount;
+    private final InternalCounters internalCounters;
+    private final Queue<CountingContext> contexts =
+        new ConcurrentLinkedQueue<>();
+    private final Deque<Future<?>> pendingBatches = new ArrayDeque<>();
+    private final ExecutorService executor;
+
+    // Pairing state after the last record, like in the count loop
+    private SAMRecord sam1;
+    private SAMRecord sam2;
+    private Batch batch = new Batch(null, null);
+
+    @Override
+    public void handle(final SAMRecord samRecord) throws KenetreException {
+
+      final boolean paired = samRecord.getReadPairedFlag();
+
+      // A paired record after a pair or a single-end record without
+      // previous mate reset the intervals and do not update the SAM records
+      // of the previous batch
+      if (this.batch.records.size() >= BATCH_SIZE
+          && (paired ? this.sam1 != null && this.sam2 != null
+              : this.sam2 == null)) {
+
+        submitBatch(this.batch);
+        this.batch = new Batch(this.sam1, this.sam2);
+      }
+
+      this.batch.records.add(samRecord);
+
+      if (!paired) {
+        this.sam1 = samRecord;
+      } else {
+
+        if (this.sam1 != null && this.sam2 != null) {
+          this.sam1 = null;
+          this.sam2 = null;
         }
 
         if (samRecord.getFirstOfPairFlag()) {
-          sam1 = samRecord;
+          this.sam1 = samRecord;
         } else {
-          sam2 = samRecord;
+          this.sam2 = samRecord;
         }
 
-        if (sam1 == null || sam2 == null) {
-          continue;
+        if (this.sam1 != null
+            && this.sam2 != null
+            && !this.sam1.getReadName().equals(this.sam2.getReadName())) {
+          this.sam1 = this.sam2;
+          this.sam2 = null;
         }
+      }
+    }
 
-        if (!sam1.getReadName().equals(sam2.getReadName())) {
-          sam1 = sam2;
-          sam2 = null;
-          internalCounters.missingMate++;
-          continue;
+    /**
+     * Submit the last batch and wait the end of the counting.
+     * @throws KenetreException if an error occurs while counting
+     */
+    private void finish() throws KenetreException {
+
+      if (!this.batch.records.isEmpty()) {
+        submitBatch(this.batch);
+      }
+
+      waitBatches(this.pendingBatches, 0);
+    }
+
+    /**
+     * Submit a batch of SAM records to the counting threads.
+     * @param batch the batch to submit
+     * @throws KenetreException if an error occurs while counting a previous
+     *           batch
+     */
+    private void submitBatch(final Batch batch) throws KenetreException {
+
+      this.pendingBatches.add(this.executor.submit(() -> {
+
+        CountingContext context = this.contexts.poll();
+        if (context == null) {
+          context = new CountingContext(this.featureCount,
+              new InternalCounters(this.internalCounters.reporter,
+                  this.internalCounters.counterGroup));
         }
 
-        if (!pairedEnd(sam1, sam2, ivSeq, internalCounters)) {
-          continue;
+        try {
+          context.sam1 = batch.sam1;
+          context.sam2 = batch.sam2;
+          context.ivSeq.clear();
+
+          for (SAMRecord samRecord : batch.records) {
+            count(samRecord, context);
+          }
+        } finally {
+          this.contexts.add(context);
         }
+
+        return null;
+      }));
+
+      waitBatches(this.pendingBatches, 2 * threads);
+    }
+
+    private BatchProducer(final int featureCount,
+        final InternalCounters internalCounters) {
+
+      this.featureCount = featureCount;
+      this.internalCounters = internalCounters;
+      this.executor = Executors.newFixedThreadPool(threads, r -> {
+        final Thread t = new Thread(r, COUNTER_NAME);
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  /**
+   * Wait the end of the counting of the batches until the number of pending
+   * batches is lower or equals to a maximal value.
+   * @param pendingBatches the pending batches
+   * @param maxPending maximal number of pending batches
+   * @throws KenetreException if an error occurs while counting a batch
+   */
+  private static void waitBatches(final Deque<Future<?>> pendingBatches,
+      final int maxPending) throws KenetreException {
+
+    while (pendingBatches.size() > maxPending) {
+
+      try {
+        pendingBatches.removeFirst().get();
+      } catch (InterruptedException e) {
+        throw new KenetreException("Counting has been interrupted", e);
+      } catch (ExecutionException e) {
+
+        if (e.getCause() instanceof KenetreException) {
+          throw (KenetreException) e.getCause();
+        }
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new KenetreException(e.getCause());
       }
+    }
+  }
+
+  /**
+   * Count a SAM record.
+   * @param samRecord the SAM record
+   * @param context the counting context
+   * @throws KenetreException if an error occurs while counting
+   */
+  private void count(final SAMRecord samRecord, final CountingContext context)
+      throws KenetreException {
 
-      // Update counts
-      updateCounts(sam1, sam2, ivSeq, counts, internalCounters);
+    final InternalCounters internalCounters = context.counters;
+    final List<GenomicInterval> ivSeq = context.ivSeq;
+
+    internalCounters.input++;
+
+    // single-end mode
+    if (!samRecord.getReadPairedFlag()) {
+
+      context.sam1 = samRecord;
+
+      if (!processSingleEnd(context.sam1, ivSeq, internalCounters)) {
+        return;
+      }
     }
 
-    // Set the counters in the reporter
-    internalCounters.fillReporter(this);
+    // paired-end mode
+    else {
+
+      if (context.sam1 != null && context.sam2 != null) {
+        context.sam1 = null;
+        context.sam2 = null;
+        ivSeq.clear();
+      }
 
-    return counts;
+      if (samRecord.getFirstOfPairFlag()) {
+        context.sam1 = samRecord;
+      } else {
+        context.sam2 = samRecord;
+      }
+
+      if (context.sam1 == null || context.sam2 == null) {
+        return;
+      }
+
+      if (!context.sam1.getReadName().equals(context.sam2.getReadName())) {
+        context.sam1 = context.sam2;
+        context.sam2 = null;
+        internalCounters.missingMate++;
+        return;
+      }
+
+      if (!pairedEnd(context.sam1, context.sam2, ivSeq, internalCounters)) {
+        return;
+      }
+    }
+
+    // Update counts
+    updateCounts(context.sam1, context.sam2, ivSeq, context.overlapBuffer,
+        context.counts, internalCounters);
   }
 
   //
@@ -566,39 +989,45 @@ public class HTSeqCounter extends AbstractExpressionCounter
   /**
    * Update the counts.
    * @param ivSeq the genomic intervals
+   * @param overlapBuffer the buffer for the overlapped features
    * @param counts the counts
    * @param internalCounters the counters
    * @throws EoulsanException if an error occurs while counting
    */
   private void updateCounts(final SAMRecord samRecord1,
       final SAMRecord samRecord2, final List<GenomicInterval> ivSeq,
-      final Map<String, Integer> counts,
+      final OverlapBuffer overlapBuffer, final int[] counts,
       final InternalCounters internalCounters) throws KenetreException {
 
     try {
-      Set<String> fs = HTSeqUtils.featuresOverlapped(ivSeq, this.features,
-          this.overlapMode, this.stranded);
+      HTSeqUtils.featuresOverlapped(ivSeq, this.features, this.overlapMode,
+          this.stranded, overlapBuffer);
 
-      switch (fs.size()) {
+      switch (overlapBuffer.size()) {
       case 0:
         internalCounters.empty++;
         assignment(samRecord1, samRecord2, "__no_feature");
         break;
 
       case 1:
-        String id = fs.iterator().next();
-        increment(counts, id);
-        assignment(samRecord1, samRecord2, id);
+        final int id = overlapBuffer.getId(0);
+        counts[id]++;
+        assignment(samRecord1, samRecord2, this.features.getValue(id));
         break;
 
       default:
 
+        final Set<String> fs = new HashSet<>();
+        for (int i = 0; i < overlapBuffer.size(); i++) {
+          fs.add(this.features.getValue(overlapBuffer.getId(i)));
+        }
+
         internalCounters.ambiguous++;
         assignment(samRecord1, samRecord2, fs);
 
         if (!this.removeAmbiguousCases) {
-          for (String id2 : fs) {
-            increment(counts, id2);
+          for (int i = 0; i < overlapBuffer.size(); i++) {
+            counts[overlapBuffer.getId(i)]++;
           }
         }
         break;
@@ -609,21 +1038,6 @@ public class HTSeqCounter extends AbstractExpressionCounter
     }
   }
 
-  /**
-   * Increment a count.
-   * @param counts the counts
-   * @param key the feature to increment
-   */
-  private static void increment(final Map<String, Integer> counts,
-      final String key) {
-
-    if (!counts.containsKey(key)) {
-      counts.put(key, 1);
-    } else {
-      counts.put(key, counts.get(key) + 1);
-    }
-  }
-
   /**
    * Assign a feature to SAM entries.
    * @param samRecord1 first entry
@@ -673,7 +1087,7 @@ public class HTSeqCounter extends AbstractExpressionCounter
       throw new IllegalStateException("the counter has not been initialized");
     }
 
-    for (String feature : this.features.getFeaturesIds()) {
+    for (String feature : this.featureIds) {
 
       if (!counts.containsKey(feature)) {
         counts.put(feature, 0);
@@ -693,7 +1107,10 @@ public class HTSeqCounter extends AbstractExpressionCounter
         + ", removeSecondaryAlignments=" + this.removeSecondaryAlignments
         + ", removeSupplementaryAlignments="
         + this.removeSupplementaryAlignments + " minAverageQuality="
-        + this.minimalQuality + ", initialized=" + this.initialized + "}";
+        + this.minimalQuality + ", threads=" + this.threads + ", mateBufferSize="
+        + this.mateBufferSize + ", temporaryDirectory="
+        + this.temporaryDirectory + ", initialized="
+        + this.initialized + "}";
   }
 
 }
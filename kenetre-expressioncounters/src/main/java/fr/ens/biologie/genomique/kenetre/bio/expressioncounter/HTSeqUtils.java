@@ -33,6 +33,7 @@ import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.StrandUsag
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -43,6 +44,7 @@ import com.google.common.base.Splitter;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.FrozenGenomicArray;
 import fr.ens.biologie.genomique.kenetre.bio.GFFEntry;
 import fr.ens.biologie.genomique.kenetre.bio.GenomicArray;
 import fr.ens.biologie.genomique.kenetre.bio.GenomicInterval;
@@ -62,6 +64,8 @@ import htsjdk.samtools.SAMRecord;
  */
 public class HTSeqUtils {
 
+  private static final int[] EMPTY_IDS = new int[0];
+
   /**
    * This class define a unknown chromosome exception.
    */
@@ -74,6 +78,114 @@ public class HTSeqUtils {
     }
   }
 
+  /**
+   * This class define a reusable buffer for the identifiers of the features
+   * that overlap genomic intervals. Identifiers are the value identifiers of
+   * a FrozenGenomicArray.
+   */
+  public static final class OverlapBuffer {
+
+    private final FrozenGenomicArray.Overlaps overlaps =
+        new FrozenGenomicArray.Overlaps();
+    private int[] ids = new int[16];
+    private int size;
+    private boolean initialized;
+    private int[] marks = new int[0];
+    private int mark;
+
+    /**
+     * Get the number of features in the buffer.
+     * @return the number of features in the buffer
+     */
+    public int size() {
+
+      return this.size;
+    }
+
+    /**
+     * Get the identifier of a feature in the buffer.
+     * @param index index of the feature in the buffer
+     * @return the identifier of the feature
+     */
+    public int getId(final int index) {
+
+      if (index < 0 || index >= this.size) {
+        throw new IndexOutOfBoundsException("Invalid index: " + index);
+      }
+
+      return this.ids[index];
+    }
+
+    /**
+     * Clear the buffer.
+     * @param valueCount number of values of the FrozenGenomicArray
+     */
+    private void clear(final int valueCount) {
+
+      this.size = 0;
+      this.initialized = false;
+
+      if (this.marks.length < valueCount) {
+        this.marks = new int[valueCount];
+        this.mark = 0;
+      }
+
+      // Reset marks on overflow
+      if (++this.mark == Integer.MAX_VALUE) {
+        Arrays.fill(this.marks, 0);
+        this.mark = 1;
+      }
+    }
+
+    /**
+     * Add identifiers to the buffer if they are not already in the buffer.
+     * @param values identifiers to add
+     */
+    private void addAll(final int[] values) {
+
+      for (int id : values) {
+
+        if (this.marks[id] != this.mark) {
+          this.marks[id] = this.mark;
+          add(id);
+        }
+      }
+    }
+
+    /**
+     * Intersect the content of the buffer with identifiers. The first call
+     * after clear() copy the identifiers.
+     * @param values sorted identifiers
+     */
+    private void retainAll(final int[] values) {
+
+      if (!this.initialized) {
+        this.initialized = true;
+        for (int id : values) {
+          add(id);
+        }
+        return;
+      }
+
+      int count = 0;
+      for (int i = 0; i < this.size; i++) {
+        if (Arrays.binarySearch(values, this.ids[i]) >= 0) {
+          this.ids[count++] = this.ids[i];
+        }
+      }
+      this.size = count;
+    }
+
+    private void add(final int id) {
+
+      if (this.size == this.ids.length) {
+        this.ids = Arrays.copyOf(this.ids, this.size * 2);
+      }
+
+      this.ids[this.size++] = id;
+    }
+  }
+
   public static void storeAnnotation(final GenomicArray<String> features,
       final InputStream annotationIs, final boolean gtfFormat,
       final String featureType, final StrandUsage stranded,
@@ -355,6 +467,110 @@ public class HTSeqUtils {
     return fs;
   }
 
+  /**
+   * Determine features that overlap genomic intervals using a
+   * FrozenGenomicArray.
+   * @param ivList the list of genomic intervals
+   * @param features the features
+   * @param mode the overlap mode
+   * @param stranded the stranded mode
+   * @return the set of features that overlap genomic intervals according to the
+   *         overlap mode
+   * @throws KenetreException if an error occurs while getting overlapped
+   *           features
+   */
+  public static Set<String> featuresOverlapped(
+      final List<GenomicInterval> ivList,
+      final FrozenGenomicArray<String> features, final OverlapMode mode,
+      final StrandUsage stranded) throws KenetreException {
+
+    final OverlapBuffer buffer = new OverlapBuffer();
+    featuresOverlapped(ivList, features, mode, stranded, buffer);
+
+    if (buffer.size() == 0) {
+      return Collections.emptySet();
+    }
+
+    final Set<String> result = new HashSet<>();
+    for (int i = 0; i < buffer.size(); i++) {
+      result.add(features.getValue(buffer.getId(i)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Determine features that overlap genomic intervals using a
+   * FrozenGenomicArray. This method gives the same result as the method that
+   * use a GenomicArray but does not allocate objects when the buffer is
+   * reused.
+   * @param ivList the list of genomic intervals
+   * @param features the features
+   * @param mode the overlap mode
+   * @param stranded the stranded mode
+   * @param result the buffer where to store the identifiers of the features
+   *          that overlap genomic intervals according to the overlap mode
+   * @throws KenetreException if an error occurs while getting overlapped
+   *           features
+   */
+  public static void featuresOverlapped(final List<GenomicInterval> ivList,
+      final FrozenGenomicArray<String> features, final OverlapMode mode,
+      final StrandUsage stranded, final OverlapBuffer result)
+      throws KenetreException {
+
+    if (mode != UNION
+        && mode != INTERSECTION_NONEMPTY && mode != INTERSECTION_STRICT) {
+      throw new KenetreException("Error : illegal overlap mode.");
+    }
+
+    result.clear(features.getValueCount());
+
+    final FrozenGenomicArray.Overlaps overlaps = result.overlaps;
+    final boolean filterStrand = stranded == YES || stranded == REVERSE;
+
+    for (int i = 0, n = ivList.size(); i < n; i++) {
+
+      final GenomicInterval iv = ivList.get(i);
+      final String chr = iv.getChromosome();
+
+      // Get features that overlap the current interval of the read
+      if (!features.getOverlaps(chr, iv.getStart(), iv.getEnd(), overlaps)) {
+
+        if (mode == UNION) {
+          throw new UnknownChromosomeException(chr);
+        }
+        throw new KenetreException("Unknown chromosome: " + chr);
+      }
+
+      boolean found = false;
+
+      for (int j = 0; j < overlaps.size(); j++) {
+
+        // Filter intervals if necessary
+        if (filterStrand && overlaps.getStrand(j) != iv.getStrand()) {
+          continue;
+        }
+
+        found = true;
+        final int[] ids = overlaps.getValueIds(j);
+
+        if (mode == UNION) {
+          result.addAll(ids);
+        } else if (ids.length > 0 || mode == INTERSECTION_STRICT) {
+          result.retainAll(ids);
+        }
+      }
+
+      // If no interval has been found, the interval is empty (HTSeq
+      // compatibility)
+      if (!found && mode == INTERSECTION_STRICT) {
+        result.retainAll(EMPTY_IDS);
+      }
+    }
+
+    overlaps.clear();
+  }
+
   /**
    * Filter the output of GenomicArray.getEntries() by keeping only features on
    * a strand
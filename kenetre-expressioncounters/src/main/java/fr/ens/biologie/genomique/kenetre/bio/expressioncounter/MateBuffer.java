@@ -0,0 +1,386 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMLineParser;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * This class allow to pair the mates of paired-end alignments that are not
+ * consecutive, like in SAM data sorted by coordinate. Alignments waiting for
+ * their mate are kept in memory until the estimated memory used by the buffer
+ * exceeds a maximal size. Then the buffered alignments are spilled to a
+ * temporary file. Spilled alignments are paired at the end of the input,
+ * after having been partitioned by read name in files small enough to be
+ * paired in memory.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+final class MateBuffer implements Closeable {
+
+  /** Estimated memory used by a buffered alignment without its strings. */
+  private static final int RECORD_OVERHEAD = 512;
+
+  /** Maximal number of partitions of the spilled alignments. */
+  private static final int MAX_PARTITIONS = 64;
+
+  private final long maxMemory;
+  private final File temporaryDirectory;
+  private final Handler handler;
+
+  private final Map<String, SAMRecord> buffer = new LinkedHashMap<>();
+  private long memory;
+
+  private SAMFileHeader header;
+  private File spillFile;
+  private Writer spillWriter;
+  private long spilledMemory;
+  private final List<File> tempFiles = new ArrayList<>();
+
+  /**
+   * This interface define the handler of the alignments processed by the
+   * buffer.
+   */
+  interface Handler {
+
+    /**
+     * Handle the two mates of a paired-end alignment.
+     * @param first first mate
+     * @param second second mate
+     * @throws KenetreException if an error occurs while handling alignments
+     */
+    void pair(SAMRecord first, SAMRecord second) throws KenetreException;
+
+    /**
+     * Handle an alignment without mate in the input.
+     * @param record the alignment
+     * @throws KenetreException if an error occurs while handling alignment
+     */
+    void orphan(SAMRecord record) throws KenetreException;
+  }
+
+  /**
+   * Add an alignment to the buffer. If the mate of the alignment is in the
+   * buffer, the two mates are sent to the handler.
+   * @param record the alignment to add
+   * @throws IOException if an error occurs while spilling the buffer
+   * @throws KenetreException if an error occurs while handling alignments
+   */
+  public void add(final SAMRecord record)
+      throws IOException, KenetreException {
+
+    requireNonNull(record, "record argument cannot be null");
+
+    if (this.header == null) {
+      this.header = record.getHeader();
+    }
+
+    if (!pair(this.buffer, record)) {
+
+      this.memory += estimateMemory(record);
+
+      if (this.memory > this.maxMemory) {
+        spill();
+      }
+    }
+  }
+
+  /**
+   * Pair the remaining alignments. Alignments without mate are sent to the
+   * orphan() method of the handler.
+   * @throws IOException if an error occurs while reading spilled alignments
+   * @throws KenetreException if an error occurs while handling alignments
+   */
+  public void finish() throws IOException, KenetreException {
+
+    if (this.spillWriter == null) {
+      processOrphans(this.buffer);
+      return;
+    }
+
+    spill();
+    this.spillWriter.close();
+    this.spillWriter = null;
+
+    // Partition the spilled alignments by read name
+    final int partitionCount = (int) Math.min(MAX_PARTITIONS,
+        2 * (this.spilledMemory / this.maxMemory + 1));
+    final File[] partitions = new File[partitionCount];
+    final Writer[] writers = new Writer[partitionCount];
+
+    try {
+      for (int i = 0; i < partitionCount; i++) {
+        partitions[i] = createTempFile();
+        writers[i] = newWriter(partitions[i]);
+      }
+
+      try (BufferedReader reader = newReader(this.spillFile)) {
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+
+          final int tab = line.indexOf('\t');
+          final String readName = tab == -1 ? line : line.substring(0, tab);
+          final Writer writer = writers[Math.floorMod(readName.hashCode(),
+              partitionCount)];
+          writer.write(line);
+          writer.write('\n');
+        }
+      }
+    } finally {
+      for (Writer writer : writers) {
+        if (writer != null) {
+          writer.close();
+        }
+      }
+    }
+
+    deleteTempFile(this.spillFile);
+
+    // Pair the alignments of each partition
+    final SAMLineParser parser = new SAMLineParser(this.header);
+
+    for (File partition : partitions) {
+
+      final Map<String, SAMRecord> partitionBuffer = new LinkedHashMap<>();
+
+      try (BufferedReader reader = newReader(partition)) {
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+          pair(partitionBuffer, parser.parseLine(line));
+        }
+      }
+
+      deleteTempFile(partition);
+      processOrphans(partitionBuffer);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    try {
+      if (this.spillWriter != null) {
+        this.spillWriter.close();
+        this.spillWriter = null;
+      }
+    } finally {
+
+      for (File f : new ArrayList<>(this.tempFiles)) {
+        deleteTempFile(f);
+      }
+      this.buffer.clear();
+    }
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Pair an alignment with the alignments of a buffer.
+   * @param buffer the buffer
+   * @param record the alignment
+   * @return true if the mate of the alignment has been found
+   * @throws KenetreException if an error occurs while handling alignments
+   */
+  private boolean pair(final Map<String, SAMRecord> buffer,
+      final SAMRecord record) throws KenetreException {
+
+    final SAMRecord mate = buffer.remove(key(record, false));
+
+    if (mate == null) {
+
+      // An alignment with the same key is an orphan
+      final SAMRecord previous = buffer.put(key(record, true), record);
+      if (previous != null) {
+        if (buffer == this.buffer) {
+          this.memory -= estimateMemory(previous);
+        }
+        this.handler.orphan(previous);
+      }
+
+      return false;
+    }
+
+    if (buffer == this.buffer) {
+      this.memory -= estimateMemory(mate);
+    }
+
+    if (record.getFirstOfPairFlag()) {
+      this.handler.pair(record, mate);
+    } else {
+      this.handler.pair(mate, record);
+    }
+
+    return true;
+  }
+
+  /**
+   * Send the alignments of a buffer to the orphan() method of the handler.
+   * @param buffer the buffer
+   * @throws KenetreException if an error occurs while handling alignments
+   */
+  private void processOrphans(final Map<String, SAMRecord> buffer)
+      throws KenetreException {
+
+    for (SAMRecord record : buffer.values()) {
+      this.handler.orphan(record);
+    }
+
+    buffer.clear();
+  }
+
+  /**
+   * Spill the content of the buffer in the temporary file.
+   * @throws IOException if an error occurs while writing the file
+   */
+  private void spill() throws IOException {
+
+    if (this.spillWriter == null) {
+      this.spillFile = createTempFile();
+      this.spillWriter = newWriter(this.spillFile);
+    }
+
+    for (SAMRecord record : this.buffer.values()) {
+
+      final String line = record.getSAMString();
+      this.spillWriter.write(line);
+      if (!line.endsWith("\n")) {
+        this.spillWriter.write('\n');
+      }
+    }
+
+    this.spilledMemory += this.memory;
+    this.memory = 0;
+    this.buffer.clear();
+  }
+
+  /**
+   * Create the key of an alignment.
+   * @param record the alignment
+   * @param mate true to get the key of the mate of the alignment
+   * @return a string with the key
+   */
+  private static String key(final SAMRecord record, final boolean mate) {
+
+    final boolean first = record.getFirstOfPairFlag() != mate;
+
+    return record.getReadName()
+        + '\t' + (first ? '1' : '2') + '\t'
+        + (mate ? record.getMateReferenceName() : record.getReferenceName())
+        + '\t'
+        + (mate ? record.getMateAlignmentStart() : record.getAlignmentStart());
+  }
+
+  /**
+   * Estimate the memory used by a buffered alignment.
+   * @param record the alignment
+   * @return the estimated memory used by the alignment in bytes
+   */
+  private static long estimateMemory(final SAMRecord record) {
+
+    return RECORD_OVERHEAD
+        + 4L * record.getReadName().length() + 2L * record.getReadLength();
+  }
+
+  private File createTempFile() throws IOException {
+
+    final File result =
+        File.createTempFile("mates-", ".sam.tmp", this.temporaryDirectory);
+    this.tempFiles.add(result);
+
+    return result;
+  }
+
+  private void deleteTempFile(final File file) {
+
+    file.delete();
+    this.tempFiles.remove(file);
+  }
+
+  private static Writer newWriter(final File file) throws IOException {
+
+    return new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+  }
+
+  private static BufferedReader newReader(final File file)
+      throws IOException {
+
+    return new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), UTF_8));
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param maxMemory maximal estimated memory used by the buffered alignments
+   *          in bytes
+   * @param temporaryDirectory temporary directory for the spilled alignments
+   * @param handler the handler of the paired and orphan alignments
+   */
+  MateBuffer(final long maxMemory, final File temporaryDirectory,
+      final Handler handler) {
+
+    requireNonNull(temporaryDirectory,
+        "temporaryDirectory argument cannot be null");
+    requireNonNull(handler, "handler argument cannot be null");
+
+    if (maxMemory < 1) {
+      throw new IllegalArgumentException(
+          "Invalid maximal memory size: " + maxMemory);
+    }
+
+    this.maxMemory = maxMemory;
+    this.temporaryDirectory = temporaryDirectory;
+    this.handler = handler;
+  }
+
+}
@@ -34,6 +34,7 @@ import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCount
 import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.SAM_TAG_DEFAULT;
 import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.SAM_TAG_TO_USE_PARAMETER_NAME;
 import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.STRANDED_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.THREADS_PARAMETER_NAME;
 import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.OverlapMode.INTERSECTION_NONEMPTY;
 import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.OverlapMode.INTERSECTION_STRICT;
 import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.OverlapMode.UNION;
@@ -58,6 +59,7 @@ import org.junit.Test;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.FeatureCounts;
 import fr.ens.biologie.genomique.kenetre.bio.GFFEntry;
 import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
 import fr.ens.biologie.genomique.kenetre.bio.expressioncounter.ExpressionCounterCounter;
@@ -307,6 +309,68 @@ public class HTSeqCountTest {
         "/yeast_RNASeq_excerpt_withNH_counts_ignore_secondary.tsv");
   }
 
+  @Test
+  public void testCountMultiThreaded()
+      throws KenetreException, IOException, BadBioEntryException {
+
+    // htseq-count -m intersection-nonempty --nonunique none
+    HTSeqCounter counter = new HTSeqCounter();
+    counter.setParameter(OVERLAP_MODE_PARAMETER_NAME,
+        INTERSECTION_NONEMPTY.getName());
+    counter.setParameter(GENOMIC_TYPE_PARAMETER_NAME, "exon");
+    counter.setParameter(ATTRIBUTE_ID_PARAMETER_NAME, "gene_id");
+    counter.setParameter(STRANDED_PARAMETER_NAME, YES.getName());
+    counter.setParameter(THREADS_PARAMETER_NAME, "4");
+
+    compareCounts(counter, "/yeast_RNASeq_excerpt_withNH_counts.tsv");
+  }
+
+  @Test
+  public void testCountWithNHUnionMultiThreaded()
+      throws KenetreException, IOException, BadBioEntryException {
+
+    // htseq-count -m union --nonunique none
+    HTSeqCounter counter = new HTSeqCounter();
+    counter.setParameter(OVERLAP_MODE_PARAMETER_NAME, UNION.getName());
+    counter.setParameter(GENOMIC_TYPE_PARAMETER_NAME, "exon");
+    counter.setParameter(ATTRIBUTE_ID_PARAMETER_NAME, "gene_id");
+    counter.setParameter(STRANDED_PARAMETER_NAME, YES.getName());
+    counter.setParameter(THREADS_PARAMETER_NAME, "3");
+
+    compareCounts(counter, "/yeast_RNASeq_excerpt_withNH_counts_union.tsv");
+  }
+
+  @Test
+  public void testCountFeatures()
+      throws KenetreException, IOException, BadBioEntryException {
+
+    // htseq-count -m union --nonunique none
+    HTSeqCounter counter = new HTSeqCounter();
+    counter.setParameter(OVERLAP_MODE_PARAMETER_NAME, UNION.getName());
+    counter.setParameter(GENOMIC_TYPE_PARAMETER_NAME, "exon");
+    counter.setParameter(ATTRIBUTE_ID_PARAMETER_NAME, "gene_id");
+    counter.setParameter(STRANDED_PARAMETER_NAME, YES.getName());
+
+    try (GTFReader reader =
+        new GTFReader(this.getClass().getResourceAsStream(GTF_RESSOURCE))) {
+      counter.init(this.genomeDescription, reader);
+    }
+
+    LocalReporter reporter = new LocalReporter();
+    FeatureCounts counts = null;
+    try (InputStream in = this.getClass().getResourceAsStream(SAM_RESSOURCE)) {
+      counts = counter.countFeatures(in, reporter, COUNTER_GROUP);
+    }
+
+    for (int i = 1; i < counts.size(); i++) {
+      assertTrue(
+          counts.getFeatureId(i - 1).compareTo(counts.getFeatureId(i)) < 0);
+    }
+
+    compareCounts(counts.toMap(true), reporter, HTSEQ_RESSOURCE_DIR
+        + "/yeast_RNASeq_excerpt_withNH_counts_union.tsv");
+  }
+
   @Test
   public void testCountSamOutput()
       throws KenetreException, IOException, BadBioEntryException {
@@ -24,18 +24,21 @@
 
 package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.FrozenGenomicArray;
 import fr.ens.biologie.genomique.kenetre.bio.GenomicArray;
 import fr.ens.biologie.genomique.kenetre.bio.GenomicInterval;
 import fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqUtils;
@@ -171,4 +174,54 @@ public class HTSeqUtilsTest {
     assertFalse(results.contains("b"));
   }
 
+  @Test
+  public void testFeaturesOverlappedFrozen() throws KenetreException {
+
+    final Random random = new Random(7);
+    final char[] strands = {'+', '-'};
+
+    // annotation
+    final GenomicArray<String> annot = new GenomicArray<>();
+    for (int i = 0; i < 300; i++) {
+
+      final int start = 1 + random.nextInt(5000);
+      final int end = start + random.nextInt(400);
+
+      annot.addEntry(new GenomicInterval("chr1", start, end,
+          strands[random.nextInt(2)]), "feature" + random.nextInt(100));
+    }
+
+    final FrozenGenomicArray<String> frozenAnnot = annot.freeze();
+    final HTSeqUtils.OverlapBuffer buffer = new HTSeqUtils.OverlapBuffer();
+    final List<GenomicInterval> ivSeq = new ArrayList<>();
+
+    for (int i = 0; i < 2000; i++) {
+
+      // intervals of a SAM alignment
+      ivSeq.clear();
+      final char strand = strands[random.nextInt(2)];
+      int pos = 1 + random.nextInt(5500);
+      for (int j = random.nextInt(3); j >= 0; j--) {
+        final int length = 1 + random.nextInt(100);
+        ivSeq.add(new GenomicInterval("chr1", pos, pos + length - 1, strand));
+        pos += length + random.nextInt(200);
+      }
+
+      for (OverlapMode mode : OverlapMode.values()) {
+        for (StrandUsage stranded : StrandUsage.values()) {
+
+          final Set<String> expected =
+              HTSeqUtils.featuresOverlapped(ivSeq, annot, mode, stranded);
+
+          assertEquals(expected, HTSeqUtils.featuresOverlapped(ivSeq,
+              frozenAnnot, mode, stranded));
+
+          HTSeqUtils.featuresOverlapped(ivSeq, frozenAnnot, mode, stranded,
+              buffer);
+          assertEquals(expected.size(), buffer.size());
+        }
+      }
+    }
+  }
+
 }
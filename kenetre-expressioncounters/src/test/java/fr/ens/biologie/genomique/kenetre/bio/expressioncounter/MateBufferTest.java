@@ -0,0 +1,169 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+
+public class MateBufferTest {
+
+  private static final int PAIR_COUNT = 1000;
+  private static final int ORPHAN_COUNT = 10;
+
+  /**
+   * Handler that keep the names of the paired and orphan alignments.
+   */
+  private static class TestHandler implements MateBuffer.Handler {
+
+    private final Set<String> pairs = new HashSet<>();
+    private final Set<String> orphans = new HashSet<>();
+
+    @Override
+    public void pair(final SAMRecord first, final SAMRecord second) {
+
+      assertTrue(first.getFirstOfPairFlag());
+      assertFalse(second.getFirstOfPairFlag());
+      assertEquals(first.getReadName(), second.getReadName());
+      assertEquals(first.getAlignmentStart(), second.getMateAlignmentStart());
+      assertEquals(second.getAlignmentStart(), first.getMateAlignmentStart());
+      assertTrue(this.pairs.add(first.getReadName()));
+    }
+
+    @Override
+    public void orphan(final SAMRecord record) {
+
+      assertTrue(this.orphans.add(record.getReadName()));
+    }
+  }
+
+  @Test
+  public void testInMemory() throws IOException, KenetreException {
+
+    testBuffer(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testSpill() throws IOException, KenetreException {
+
+    // Spill the buffer after each addition
+    testBuffer(1);
+    testBuffer(10000);
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static void testBuffer(final long maxMemory)
+      throws IOException, KenetreException {
+
+    final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+    final TestHandler handler = new TestHandler();
+
+    try (MateBuffer buffer = new MateBuffer(maxMemory, tmpDir, handler)) {
+
+      for (SAMRecord record : createRecords()) {
+        buffer.add(record);
+      }
+      buffer.finish();
+    }
+
+    assertEquals(PAIR_COUNT, handler.pairs.size());
+    assertEquals(ORPHAN_COUNT, handler.orphans.size());
+
+    for (int i = 0; i < ORPHAN_COUNT; i++) {
+      assertTrue(handler.orphans.contains("orphan" + i));
+    }
+  }
+
+  private static List<SAMRecord> createRecords() {
+
+    final SAMFileHeader header = new SAMFileHeader();
+    header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+    header.addSequence(new SAMSequenceRecord("chr1", 100000));
+
+    final Random random = new Random(42);
+    final List<SAMRecord> result = new ArrayList<>();
+
+    for (int i = 0; i < PAIR_COUNT; i++) {
+
+      final int start1 = 1 + random.nextInt(90000);
+      final int start2 = start1 + random.nextInt(1000);
+
+      result.add(createRecord(header, "read" + i, true, start1, start2));
+      result.add(createRecord(header, "read" + i, false, start2, start1));
+    }
+
+    for (int i = 0; i < ORPHAN_COUNT; i++) {
+
+      final int start = 1 + random.nextInt(90000);
+      result.add(createRecord(header, "orphan" + i, random.nextBoolean(),
+          start, start + 100));
+    }
+
+    result.sort(Comparator.comparingInt(SAMRecord::getAlignmentStart));
+
+    return result;
+  }
+
+  private static SAMRecord createRecord(final SAMFileHeader header,
+      final String name, final boolean first, final int start,
+      final int mateStart) {
+
+    final SAMRecord result = new SAMRecord(header);
+    result.setReadName(name);
+    result.setReadPairedFlag(true);
+    result.setFirstOfPairFlag(first);
+    result.setSecondOfPairFlag(!first);
+    result.setReferenceName("chr1");
+    result.setAlignmentStart(start);
+    result.setMateReferenceName("chr1");
+    result.setMateAlignmentStart(mateStart);
+    result.setMappingQuality(60);
+    result.setCigarString("10M");
+    result.setReadString("ACGTACGTAC");
+    result.setBaseQualityString("IIIIIIIIII");
+
+    return result;
+  }
+
+}
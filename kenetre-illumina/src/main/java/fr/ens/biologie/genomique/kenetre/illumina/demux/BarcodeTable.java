@@ -0,0 +1,734 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.demux;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.IlluminaReadId;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.Sample;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.SampleSheet;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.TableSection;
+
+/**
+ * This class define a precomputed lookup table that associate the barcodes of
+ * the reads to the samples of a lane. All the variants of the indexes of the
+ * samples with up to the allowed number of mismatches are stored in an open
+ * addressing hash table, so the lookup of a read costs only the encoding of
+ * its barcode and one or two probes in the tables. Like bcl2fastq, the
+ * creation of the table fails if two samples can match the same barcode.
+ * This class is thread-safe once created.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class BarcodeTable {
+
+  /** Maximal length of an index. */
+  public static final int MAX_INDEX_LENGTH = 21;
+
+  /** Value returned by the lookup methods for undetermined reads. */
+  public static final int UNDETERMINED = -1;
+
+  private static final int BITS_PER_BASE = 3;
+  private static final int BASE_MASK = (1 << BITS_PER_BASE) - 1;
+  private static final int BASE_COUNT = 5;
+
+  private final List<Sample> samples;
+  private final int index1Length;
+  private final int index2Length;
+  private final int index1Mismatches;
+  private final int index2Mismatches;
+  private final long[] index1Codes;
+  private final long[] index2Codes;
+  private final IndexTable index1Table;
+  private final IndexTable index2Table;
+
+  /**
+   * This class define an open addressing hash table that associate the code
+   * of a barcode to a list of samples.
+   */
+  private static final class IndexTable {
+
+    private final long[] keys;
+    private final int[] values;
+    private final int[] candidates;
+    private final int mask;
+
+    /**
+     * Get the candidates of a barcode.
+     * @param code code of the barcode
+     * @return the value of the barcode in the table: the index of the sample
+     *         if there is only one candidate, the opposite of the position of
+     *         the list of the candidates minus one if there is several
+     *         candidates or UNDETERMINED if the barcode is not in the table
+     */
+    private int get(final long code) {
+
+      int pos = hash(code) & this.mask;
+
+      long key;
+      while ((key = this.keys[pos]) != 0) {
+
+        if (key == code) {
+          return this.values[pos];
+        }
+        pos = (pos + 1) & this.mask;
+      }
+
+      return UNDETERMINED;
+    }
+
+    /**
+     * Test if a value of the table contains a sample.
+     * @param value value of the table
+     * @param sampleIndex the index of the sample
+     * @return true if the value contains the sample
+     */
+    private boolean contains(final int value, final int sampleIndex) {
+
+      if (value >= 0) {
+        return value == sampleIndex;
+      }
+
+      final int start = -value;
+      final int end = start + this.candidates[start - 1];
+
+      for (int i = start; i < end; i++) {
+        if (this.candidates[i] == sampleIndex) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param map map with the candidate samples of the barcodes
+     */
+    private IndexTable(final Map<Long, List<Integer>> map) {
+
+      int capacity = 16;
+      while (capacity < 2 * map.size()) {
+        capacity <<= 1;
+      }
+
+      this.keys = new long[capacity];
+      this.values = new int[capacity];
+      this.mask = capacity - 1;
+
+      int candidateCount = 0;
+      for (List<Integer> list : map.values()) {
+        if (list.size() > 1) {
+          candidateCount += list.size() + 1;
+        }
+      }
+      this.candidates = new int[candidateCount + 1];
+
+      int offset = 1;
+      for (Map.Entry<Long, List<Integer>> e : map.entrySet()) {
+
+        final long code = e.getKey();
+        final List<Integer> list = e.getValue();
+        final int value;
+
+        if (list.size() == 1) {
+          value = list.get(0);
+        } else {
+
+          // The list is stored after its length
+          this.candidates[offset] = list.size();
+          value = -(offset + 1);
+          for (int sampleIndex : list) {
+            this.candidates[++offset] = sampleIndex;
+          }
+          offset++;
+        }
+
+        int pos = hash(code) & this.mask;
+        while (this.keys[pos] != 0) {
+          pos = (pos + 1) & this.mask;
+        }
+        this.keys[pos] = code;
+        this.values[pos] = value;
+      }
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the samples of the table.
+   * @return an unmodifiable list with the samples of the table
+   */
+  public List<Sample> getSamples() {
+
+    return this.samples;
+  }
+
+  /**
+   * Get the number of samples in the table.
+   * @return the number of samples in the table
+   */
+  public int getSampleCount() {
+
+    return this.samples.size();
+  }
+
+  /**
+   * Get the length of the first index.
+   * @return the length of the first index
+   */
+  public int getIndex1Length() {
+
+    return this.index1Length;
+  }
+
+  /**
+   * Get the length of the second index.
+   * @return the length of the second index or 0 if the samples are not dual
+   *         indexed
+   */
+  public int getIndex2Length() {
+
+    return this.index2Length;
+  }
+
+  /**
+   * Test if the samples are dual indexed.
+   * @return true if the samples are dual indexed
+   */
+  public boolean isDualIndexed() {
+
+    return this.index2Length > 0;
+  }
+
+  /**
+   * Get the number of allowed mismatches in the first index.
+   * @return the number of allowed mismatches in the first index
+   */
+  public int getIndex1Mismatches() {
+
+    return this.index1Mismatches;
+  }
+
+  /**
+   * Get the number of allowed mismatches in the second index.
+   * @return the number of allowed mismatches in the second index
+   */
+  public int getIndex2Mismatches() {
+
+    return this.index2Mismatches;
+  }
+
+  //
+  // Lookup methods
+  //
+
+  /**
+   * Get the sample of a read from its barcodes.
+   * @param index1 sequence that contains the first index
+   * @param start1 position of the first index in the sequence
+   * @param index2 sequence that contains the second index, ignored if the
+   *          samples are not dual indexed
+   * @param start2 position of the second index in the sequence
+   * @return the index of the sample in the table or UNDETERMINED if the read
+   *         does not match any sample
+   */
+  public int lookup(final CharSequence index1, final int start1,
+      final CharSequence index2, final int start2) {
+
+    final int value1 = this.index1Table.get(
+        encode(index1, start1, index1.length(), this.index1Length));
+    if (value1 == UNDETERMINED || !isDualIndexed()) {
+      return value1;
+    }
+
+    final int value2 = this.index2Table.get(
+        encode(index2, start2, index2.length(), this.index2Length));
+    if (value2 == UNDETERMINED) {
+      return UNDETERMINED;
+    }
+
+    // At most one sample is a candidate for both indexes
+    if (value2 >= 0) {
+      return this.index1Table.contains(value1, value2) ? value2 : UNDETERMINED;
+    }
+    if (value1 >= 0) {
+      return this.index2Table.contains(value2, value1) ? value1 : UNDETERMINED;
+    }
+
+    final int[] candidates = this.index1Table.candidates;
+    final int start = -value1;
+    final int end = start + candidates[start - 1];
+    for (int i = start; i < end; i++) {
+      if (this.index2Table.contains(value2, candidates[i])) {
+        return candidates[i];
+      }
+    }
+
+    return UNDETERMINED;
+  }
+
+  /**
+   * Get the sample of a read from the sequence index field of its Illumina
+   * id. The id is not fully parsed and no object is created.
+   * @param readId the id of the read
+   * @return the index of the sample in the table or UNDETERMINED if the read
+   *         does not match any sample or if its id does not contain a
+   *         sequence index
+   */
+  public int lookupReadId(final String readId) {
+
+    final int start1 = IlluminaReadId.getSequenceIndexStart(readId);
+    if (start1 == -1) {
+      return UNDETERMINED;
+    }
+
+    final int end1 = indexEnd(readId, start1);
+    if (end1 - start1 < this.index1Length) {
+      return UNDETERMINED;
+    }
+
+    if (!isDualIndexed()) {
+      return lookup(readId, start1, null, 0);
+    }
+
+    // The second index follows the '+' character
+    if (end1 == readId.length() || readId.charAt(end1) != '+') {
+      return UNDETERMINED;
+    }
+
+    final int start2 = end1 + 1;
+    if (indexEnd(readId, start2) - start2 < this.index2Length) {
+      return UNDETERMINED;
+    }
+
+    return lookup(readId, start1, readId, start2);
+  }
+
+  /**
+   * Test if the barcodes of a read match exactly the indexes of a sample.
+   * @param sampleIndex the index of the sample in the table
+   * @param index1 sequence that contains the first index
+   * @param start1 position of the first index in the sequence
+   * @param index2 sequence that contains the second index, ignored if the
+   *          samples are not dual indexed
+   * @param start2 position of the second index in the sequence
+   * @return true if the barcodes match exactly the indexes of the sample
+   */
+  public boolean isPerfectMatch(final int sampleIndex,
+      final CharSequence index1, final int start1, final CharSequence index2,
+      final int start2) {
+
+    if (encode(index1, start1, index1.length(),
+        this.index1Length) != this.index1Codes[sampleIndex]) {
+      return false;
+    }
+
+    return !isDualIndexed()
+        || encode(index2, start2, index2.length(),
+            this.index2Length) == this.index2Codes[sampleIndex];
+  }
+
+  /**
+   * Test if the barcodes in the id of a read match exactly the indexes of a
+   * sample.
+   * @param sampleIndex the index of the sample in the table
+   * @param readId the id of the read
+   * @return true if the barcodes match exactly the indexes of the sample
+   */
+  public boolean isPerfectMatch(final int sampleIndex, final String readId) {
+
+    final int start1 = IlluminaReadId.getSequenceIndexStart(readId);
+    if (start1 == -1) {
+      return false;
+    }
+
+    return isPerfectMatch(sampleIndex, readId, start1, readId,
+        indexEnd(readId, start1) + 1);
+  }
+
+  //
+  // Encoding methods
+  //
+
+  /**
+   * Encode a barcode in a long. Each base use 3 bits, the code of a valid
+   * barcode is never 0.
+   * @param s sequence that contains the barcode
+   * @param start position of the barcode in the sequence
+   * @param end end of the sequence
+   * @param length length of the barcode
+   * @return the code of the barcode or 0 if the barcode is too short or
+   *         contains an invalid character
+   */
+  private static long encode(final CharSequence s, final int start,
+      final int end, final int length) {
+
+    if (start < 0 || end - start < length) {
+      return 0;
+    }
+
+    long result = 0;
+
+    for (int i = start, n = start + length; i < n; i++) {
+
+      final int code = baseCode(s.charAt(i));
+      if (code == 0) {
+        return 0;
+      }
+      result = result << BITS_PER_BASE | code;
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the code of a base.
+   * @param c the base
+   * @return the code of the base or 0 if the character is not a valid base
+   */
+  private static int baseCode(final char c) {
+
+    switch (c) {
+
+    case 'A':
+    case 'a':
+      return 1;
+
+    case 'C':
+    case 'c':
+      return 2;
+
+    case 'G':
+    case 'g':
+      return 3;
+
+    case 'T':
+    case 't':
+      return 4;
+
+    case 'N':
+    case 'n':
+      return 5;
+
+    default:
+      return 0;
+    }
+  }
+
+  /**
+   * Get the end of an index in a read id.
+   * @param readId the read id
+   * @param start the start of the index
+   * @return the position of the first character after the index
+   */
+  private static int indexEnd(final String readId, final int start) {
+
+    int i = start;
+    final int len = readId.length();
+    while (i < len && baseCode(readId.charAt(i)) != 0) {
+      i++;
+    }
+
+    return i;
+  }
+
+  /**
+   * Compute the hash of a code.
+   * @param code the code
+   * @return the hash of the code
+   */
+  private static int hash(final long code) {
+
+    final long h = code * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ h >>> 32);
+  }
+
+  //
+  // Table creation
+  //
+
+  /**
+   * Add all the variants of an index to a map.
+   * @param map the map
+   * @param code the code of the index
+   * @param length the length of the index
+   * @param from first position that can be modified
+   * @param mismatches number of remaining mismatches
+   * @param sampleIndex the index of the sample
+   */
+  private static void addVariants(final Map<Long, List<Integer>> map,
+      final long code, final int length, final int from, final int mismatches,
+      final int sampleIndex) {
+
+    final List<Integer> list =
+        map.computeIfAbsent(code, k -> new ArrayList<>(1));
+    if (!list.contains(sampleIndex)) {
+      list.add(sampleIndex);
+    }
+
+    if (mismatches == 0) {
+      return;
+    }
+
+    for (int i = from; i < length; i++) {
+
+      final int shift = (length - 1 - i) * BITS_PER_BASE;
+      final long base = code >>> shift & BASE_MASK;
+
+      for (int b = 1; b <= BASE_COUNT; b++) {
+        if (b != base) {
+          addVariants(map, code & ~((long) BASE_MASK << shift)
+              | (long) b << shift, length, i + 1, mismatches - 1,
+              sampleIndex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute the Hamming distance between two codes.
+   * @param code1 first code
+   * @param code2 second code
+   * @param length length of the barcodes
+   * @return the Hamming distance between the two codes
+   */
+  private static int distance(final long code1, final long code2,
+      final int length) {
+
+    int result = 0;
+    for (int i = 0; i < length; i++) {
+      if ((code1 >>> i * BITS_PER_BASE & BASE_MASK) != (code2 >>> i
+          * BITS_PER_BASE & BASE_MASK)) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the index of a sample.
+   * @param sample the sample
+   * @param index the index
+   * @param length expected length of the index
+   * @return the code of the index
+   * @throws KenetreException if the index is invalid
+   */
+  private static long indexCode(final Sample sample, final String index,
+      final int length) throws KenetreException {
+
+    final String s = index.trim();
+
+    if (s.length() != length) {
+      throw new KenetreException("All the samples of a lane must have indexes "
+          + "of the same length: " + sample.getSampleId() + " (" + s + ").");
+    }
+
+    final long result = encode(s, 0, s.length(), length);
+    if (result == 0) {
+      throw new KenetreException("Invalid index found: " + s + ".");
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the samples to demultiplex from a samplesheet.
+   * @param samplesheet the samplesheet
+   * @param lane the lane of the samples, if lower than 1 all the samples of
+   *          the samplesheet are returned
+   * @return a list with the samples
+   * @throws KenetreException if the samplesheet has no demultiplexing section
+   */
+  private static List<Sample> demuxSamples(final SampleSheet samplesheet,
+      final int lane) throws KenetreException {
+
+    requireNonNull(samplesheet, "samplesheet argument cannot be null");
+
+    if (!samplesheet
+        .containsTableSection(SampleSheet.BCL2FASTQ_DEMUX_TABLE_NAME)
+        && !samplesheet
+            .containsTableSection(SampleSheet.BCLCONVERT_DEMUX_TABLE_NAME)) {
+      throw new KenetreException("No samples found in the samplesheet.");
+    }
+
+    final TableSection section = samplesheet.getDemuxSection();
+
+    return lane < 1 ? section.getSamples() : section.getSampleInLane(lane);
+  }
+
+  /**
+   * Check the number of mismatches.
+   * @param mismatches number of mismatches
+   * @return the number of mismatches
+   */
+  private static int checkMismatches(final int mismatches) {
+
+    if (mismatches < 0 || mismatches > 2) {
+      throw new IllegalArgumentException(
+          "Invalid number of mismatches: " + mismatches);
+    }
+
+    return mismatches;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   * @param samplesheet the samplesheet
+   * @param lane the lane of the samples, if lower than 1 all the samples of
+   *          the samplesheet are used
+   * @param index1Mismatches number of allowed mismatches in the first index
+   * @param index2Mismatches number of allowed mismatches in the second index
+   * @throws KenetreException if the samples have invalid indexes or if two
+   *           samples can match the same barcode
+   */
+  public BarcodeTable(final SampleSheet samplesheet, final int lane,
+      final int index1Mismatches, final int index2Mismatches)
+      throws KenetreException {
+
+    this(demuxSamples(samplesheet, lane), index1Mismatches,
+        index2Mismatches);
+  }
+
+  /**
+   * Public constructor.
+   * @param samples the samples of the lane
+   * @param index1Mismatches number of allowed mismatches in the first index
+   * @param index2Mismatches number of allowed mismatches in the second index
+   * @throws KenetreException if the samples have invalid indexes or if two
+   *           samples can match the same barcode
+   */
+  public BarcodeTable(final List<Sample> samples, final int index1Mismatches,
+      final int index2Mismatches) throws KenetreException {
+
+    requireNonNull(samples, "samples argument cannot be null");
+
+    if (samples.isEmpty()) {
+      throw new KenetreException("No samples found in the samplesheet.");
+    }
+
+    this.samples = Collections.unmodifiableList(new ArrayList<>(samples));
+    this.index1Mismatches = checkMismatches(index1Mismatches);
+    this.index2Mismatches = checkMismatches(index2Mismatches);
+
+    final Sample first = samples.get(0);
+    if (!first.isIndexed()) {
+      throw new KenetreException(
+          "Sample without index: " + first.getSampleId() + ".");
+    }
+
+    this.index1Length = first.getIndex1().trim().length();
+    this.index2Length =
+        first.isDualIndexed() ? first.getIndex2().trim().length() : 0;
+
+    if (this.index1Length > MAX_INDEX_LENGTH
+        || this.index2Length > MAX_INDEX_LENGTH) {
+      throw new KenetreException("Index too long for sample "
+          + first.getSampleId() + ", the maximal length is: "
+          + MAX_INDEX_LENGTH + ".");
+    }
+
+    final int count = samples.size();
+    this.index1Codes = new long[count];
+    this.index2Codes = new long[count];
+
+    for (int i = 0; i < count; i++) {
+
+      final Sample sample = samples.get(i);
+
+      if (!sample.isIndexed()) {
+        throw new KenetreException(
+            "Sample without index: " + sample.getSampleId() + ".");
+      }
+
+      if (sample.isDualIndexed() != isDualIndexed()) {
+        throw new KenetreException(
+            "Found a lane with single and dual indexed samples: "
+                + sample.getSampleId() + ".");
+      }
+
+      this.index1Codes[i] =
+          indexCode(sample, sample.getIndex1(), this.index1Length);
+      if (isDualIndexed()) {
+        this.index2Codes[i] =
+            indexCode(sample, sample.getIndex2(), this.index2Length);
+      }
+    }
+
+    // Two samples collide if a barcode can be at the allowed distance of both
+    for (int i = 0; i < count; i++) {
+      for (int j = i + 1; j < count; j++) {
+
+        if (distance(this.index1Codes[i], this.index1Codes[j],
+            this.index1Length) <= 2 * index1Mismatches
+            && (!isDualIndexed()
+                || distance(this.index2Codes[i], this.index2Codes[j],
+                    this.index2Length) <= 2 * index2Mismatches)) {
+
+          throw new KenetreException("Barcode collision between samples "
+              + samples.get(i).getSampleId() + " and "
+              + samples.get(j).getSampleId()
+              + ", reduce the number of allowed mismatches.");
+        }
+      }
+    }
+
+    // Compute the variants of the indexes
+    final Map<Long, List<Integer>> map1 = new LinkedHashMap<>();
+    final Map<Long, List<Integer>> map2 = new LinkedHashMap<>();
+
+    for (int i = 0; i < count; i++) {
+
+      addVariants(map1, this.index1Codes[i], this.index1Length, 0,
+          index1Mismatches, i);
+      if (isDualIndexed()) {
+        addVariants(map2, this.index2Codes[i], this.index2Length, 0,
+            index2Mismatches, i);
+      }
+    }
+
+    this.index1Table = new IndexTable(map1);
+    this.index2Table = isDualIndexed() ? new IndexTable(map2) : null;
+  }
+
+}
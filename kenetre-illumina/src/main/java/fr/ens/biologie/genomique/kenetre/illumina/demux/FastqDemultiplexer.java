@@ -0,0 +1,1087 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.demux;
+
+import static fr.ens.biologie.genomique.kenetre.illumina.demux.BarcodeTable.UNDETERMINED;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.bio.io.FastqByteReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.ReadSequenceReader;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.Sample;
+import fr.ens.biologie.genomique.kenetre.io.CompressionType;
+import fr.ens.biologie.genomique.kenetre.util.Reporter;
+
+/**
+ * This class allow to demultiplex FASTQ files using several threads. The
+ * sample of each read is found using a BarcodeTable, from the sequence index
+ * of the read id or from the first bases of the reads for inline barcodes.
+ * <p>
+ * The pipeline contains one reader thread for each input file, several worker
+ * threads and one writer thread. The reads are processed by batches: each
+ * worker dispatches the reads of a batch and encodes them in one chunk per
+ * sample. The writer thread appends the chunks to the output files in the
+ * order of the input reads, so the first and the second reads of the pairs
+ * are always written in the same order. The queues between the stages are
+ * bounded to limit the memory used by the demultiplexing.
+ * <p>
+ * Like pigz, each compressed output file is a single GZip member: the workers
+ * compress the chunks in parallel as raw deflate blocks ended by a sync flush,
+ * using the last 32 KiB of the previous data of the sample as dictionary, and
+ * the writer adds the GZip header and trailer. The dictionary only requires
+ * the previous batch to be dispatched, not compressed, so the compression of
+ * the batches is not serialized and the compression ratio is close to the
+ * ratio of a single threaded compression.
+ * <p>
+ * The readers used with this class must not reuse their ReadSequence objects.
+ * This class is not thread-safe.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class FastqDemultiplexer {
+
+  /** Default number of reads in a batch. */
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+
+  /** Name of the undetermined reads files. */
+  public static final String UNDETERMINED_NAME = "Undetermined";
+
+  /** Input reads counter name. */
+  public static final String INPUT_READS_COUNTER = "input reads";
+
+  /** Undetermined reads counter name. */
+  public static final String UNDETERMINED_READS_COUNTER = "undetermined reads";
+
+  /** Suffix of the sample reads counter names. */
+  public static final String SAMPLE_READS_COUNTER_SUFFIX = " reads";
+
+  /** Suffix of the sample perfect index reads counter names. */
+  public static final String SAMPLE_PERFECT_READS_COUNTER_SUFFIX =
+      " perfect index reads";
+
+  private static final int INITIAL_CHUNK_SIZE = 1024;
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  private static final byte[] GZIP_HEADER =
+      {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+  private static final byte[] FINAL_DEFLATE_BLOCK = {3, 0};
+
+  private static final ReadSequence[] END_OF_INPUT = new ReadSequence[0];
+  private static final Batch END_OF_BATCHES = new Batch(null, null);
+
+  private final BarcodeTable table;
+  private final File outputDirectory;
+  private final Reporter reporter;
+  private final String counterGroup;
+  private int threadCount = Runtime.getRuntime().availableProcessors();
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private boolean inlineBarcodes;
+  private boolean compressOutput = true;
+
+  // Pipeline state
+  private final List<Thread> threads = new ArrayList<>();
+  private BlockingQueue<ReadSequence[]> inputQueue1;
+  private BlockingQueue<ReadSequence[]> inputQueue2;
+  private BlockingQueue<Batch> outputQueue;
+  private final Object batchLock = new Object();
+  private Batch lastBatch;
+  private boolean inputEnded;
+  private volatile Throwable exception;
+
+  /**
+   * This class define a batch of reads.
+   */
+  private static final class Batch {
+
+    private final ReadSequence[] reads1;
+    private final ReadSequence[] reads2;
+    private Batch previous;
+    private byte[][] chunks1;
+    private byte[][] chunks2;
+    private byte[][] deflated1;
+    private byte[][] deflated2;
+    private byte[][] dictionaries1;
+    private byte[][] dictionaries2;
+    private final CountDownLatch dispatched = new CountDownLatch(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private Batch(final ReadSequence[] reads1, final ReadSequence[] reads2) {
+
+      this.reads1 = reads1;
+      this.reads2 = reads2;
+    }
+  }
+
+  /**
+   * This class define a growable buffer for the FASTQ entries of a sample.
+   */
+  private static final class Chunk {
+
+    private byte[] data = new byte[INITIAL_CHUNK_SIZE];
+    private int length;
+
+    /**
+     * Append a read in FASTQ format.
+     * @param read the read to append
+     * @throws BadBioEntryException if the read contains non-ASCII characters
+     */
+    private void append(final ReadSequence read) throws BadBioEntryException {
+
+      final String name = read.getName();
+      final String sequence = read.getSequence();
+      final String quality = read.getQuality();
+      final int start = this.length;
+
+      ensureCapacity(name.length() + sequence.length() + quality.length() + 6);
+
+      this.data[this.length++] = '@';
+      int chars = append(name);
+      this.data[this.length++] = '\n';
+      chars |= append(sequence);
+      this.data[this.length++] = '\n';
+      this.data[this.length++] = '+';
+      this.data[this.length++] = '\n';
+      chars |= append(quality);
+      this.data[this.length++] = '\n';
+
+      // Narrowing non-ASCII characters to bytes would corrupt the read
+      if (chars > 0x7f) {
+        this.length = start;
+        throw new BadBioEntryException(
+            "Invalid non-ASCII character in FASTQ entry", name);
+      }
+    }
+
+    /**
+     * Append an ASCII string.
+     * @param s the string
+     * @return the bitwise OR of the characters of the string
+     */
+    private int append(final String s) {
+
+      final byte[] data = this.data;
+      int pos = this.length;
+      int chars = 0;
+
+      for (int i = 0, n = s.length(); i < n; i++) {
+        final char c = s.charAt(i);
+        chars |= c;
+        data[pos++] = (byte) c;
+      }
+
+      this.length = pos;
+
+      return chars;
+    }
+
+    /**
+     * Ensure that the buffer can store more bytes.
+     * @param count the number of bytes to add
+     */
+    private void ensureCapacity(final int count) {
+
+      final int required = this.length + count;
+
+      if (required > this.data.length) {
+        this.data =
+            Arrays.copyOf(this.data, Math.max(required, 2 * this.data.length));
+      }
+    }
+
+    /**
+     * Get the content of the chunk and clear the chunk.
+     * @return the content of the chunk or null if the chunk is empty
+     */
+    private byte[] flush() {
+
+      if (this.length == 0) {
+        return null;
+      }
+
+      final byte[] result = Arrays.copyOf(this.data, this.length);
+      this.length = 0;
+
+      return result;
+    }
+  }
+
+  /**
+   * This class define an output file. If the file is compressed, the whole
+   * file is a single GZip member.
+   */
+  private static final class Output implements Closeable {
+
+    private final OutputStream out;
+    private final CRC32 crc;
+    private long size;
+
+    /**
+     * Write the content of a chunk.
+     * @param chunk the uncompressed content of the chunk
+     * @param deflated the compressed content of the chunk
+     * @throws IOException if an error occurs while writing the chunk
+     */
+    private void write(final byte[] chunk, final byte[] deflated)
+        throws IOException {
+
+      if (this.crc == null) {
+        this.out.write(chunk);
+      } else {
+        this.crc.update(chunk);
+        this.size += chunk.length;
+        this.out.write(deflated);
+      }
+    }
+
+    /**
+     * Write the end of the GZip member if the file is compressed.
+     * @throws IOException if an error occurs while writing data
+     */
+    private void finish() throws IOException {
+
+      if (this.crc == null) {
+        return;
+      }
+
+      this.out.write(FINAL_DEFLATE_BLOCK);
+      writeInt((int) this.crc.getValue());
+      writeInt((int) this.size);
+    }
+
+    /**
+     * Write an integer in little endian order.
+     * @param value the value to write
+     * @throws IOException if an error occurs while writing data
+     */
+    private void writeInt(final int value) throws IOException {
+
+      this.out.write(value);
+      this.out.write(value >>> 8);
+      this.out.write(value >>> 16);
+      this.out.write(value >>> 24);
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      this.out.close();
+    }
+
+    /**
+     * Constructor.
+     * @param file the output file
+     * @param compress true if the output file must be compressed
+     * @throws IOException if an error occurs while creating the file
+     */
+    private Output(final File file, final boolean compress)
+        throws IOException {
+
+      this.out = new BufferedOutputStream(new FileOutputStream(file));
+      this.crc = compress ? new CRC32() : null;
+
+      if (compress) {
+        this.out.write(GZIP_HEADER);
+      }
+    }
+  }
+
+  /**
+   * This class define the counters of a worker.
+   */
+  private static final class Counters {
+
+    private long inputReads;
+    private final long[] reads;
+    private final long[] perfectReads;
+
+    private Counters(final int sampleCount) {
+
+      this.reads = new long[sampleCount + 1];
+      this.perfectReads = new long[sampleCount];
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the barcode table.
+   * @return the barcode table
+   */
+  public BarcodeTable getBarcodeTable() {
+
+    return this.table;
+  }
+
+  /**
+   * Get the output file of a sample.
+   * @param sampleIndex the index of the sample in the barcode table or
+   *          UNDETERMINED for the undetermined reads
+   * @param read the number of the read (1 or 2)
+   * @return a File object
+   */
+  public File getOutputFile(final int sampleIndex, final int read) {
+
+    final int lane = this.table.getSamples().get(0).getLane();
+    final String name = sampleIndex == UNDETERMINED
+        ? UNDETERMINED_NAME
+        : this.table.getSamples().get(sampleIndex).getDemultiplexingName();
+
+    return new File(this.outputDirectory, name
+        + "_S" + (sampleIndex + 1)
+        + (lane > 0 ? String.format("_L%03d", lane) : "") + "_R" + read
+        + "_001.fastq" + (this.compressOutput ? ".gz" : ""));
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Set the number of worker threads.
+   * @param threadCount the number of worker threads
+   */
+  public void setThreads(final int threadCount) {
+
+    if (threadCount < 1) {
+      throw new IllegalArgumentException(
+          "Invalid thread count: " + threadCount);
+    }
+
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Set the number of reads in a batch.
+   * @param batchSize the number of reads in a batch
+   */
+  public void setBatchSize(final int batchSize) {
+
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+    }
+
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Set if the barcodes are the first bases of the reads instead of the
+   * sequence index of the read ids. The first index is at the start of the
+   * first read, the second index at the start of the second read or after the
+   * first index in single-end mode. The barcodes are removed from the reads.
+   * @param inlineBarcodes true if the barcodes are inline
+   */
+  public void setInlineBarcodes(final boolean inlineBarcodes) {
+
+    this.inlineBarcodes = inlineBarcodes;
+  }
+
+  /**
+   * Set if the output files must be compressed in GZip format.
+   * @param compressOutput true if the output files must be compressed
+   */
+  public void setCompressOutput(final boolean compressOutput) {
+
+    this.compressOutput = compressOutput;
+  }
+
+  //
+  // Demultiplexing methods
+  //
+
+  /**
+   * Demultiplex a single-end FASTQ file.
+   * @param fastqFile the FASTQ file
+   * @throws IOException if an error occurs while reading or writing data
+   * @throws BadBioEntryException if an input entry is invalid
+   */
+  public void demultiplex(final File fastqFile)
+      throws IOException, BadBioEntryException {
+
+    requireNonNull(fastqFile, "fastqFile argument cannot be null");
+
+    try (ReadSequenceReader reader =
+        new FastqByteReader(CompressionType.open(fastqFile))) {
+      run(reader, null);
+    }
+  }
+
+  /**
+   * Demultiplex paired-end FASTQ files.
+   * @param fastqFile1 the FASTQ file of the first reads
+   * @param fastqFile2 the FASTQ file of the second reads
+   * @throws IOException if an error occurs while reading or writing data or if
+   *           the two input files do not have the same number of reads
+   * @throws BadBioEntryException if an input entry is invalid
+   */
+  public void demultiplex(final File fastqFile1, final File fastqFile2)
+      throws IOException, BadBioEntryException {
+
+    requireNonNull(fastqFile1, "fastqFile1 argument cannot be null");
+    requireNonNull(fastqFile2, "fastqFile2 argument cannot be null");
+
+    try (
+        ReadSequenceReader reader1 =
+            new FastqByteReader(CompressionType.open(fastqFile1));
+        ReadSequenceReader reader2 =
+            new FastqByteReader(CompressionType.open(fastqFile2))) {
+      run(reader1, reader2);
+    }
+  }
+
+  /**
+   * Demultiplex reads.
+   * @param reader1 reader for the first reads
+   * @param reader2 reader for the second reads, null in single-end mode
+   * @throws IOException if an error occurs while reading or writing data or if
+   *           the two inputs do not have the same number of reads
+   * @throws BadBioEntryException if an input entry is invalid
+   */
+  public void demultiplex(final ReadSequenceReader reader1,
+      final ReadSequenceReader reader2)
+      throws IOException, BadBioEntryException {
+
+    requireNonNull(reader1, "reader1 argument cannot be null");
+
+    run(reader1, reader2);
+  }
+
+  /**
+   * Run the pipeline.
+   * @param reader1 reader for the first reads
+   * @param reader2 reader for the second reads, null in single-end mode
+   * @throws IOException if an error occurs while reading or writing data
+   * @throws BadBioEntryException if an input entry is invalid
+   */
+  private void run(final ReadSequenceReader reader1,
+      final ReadSequenceReader reader2)
+      throws IOException, BadBioEntryException {
+
+    final int workerCount = this.threadCount;
+    final int queueCapacity = 2 * workerCount;
+
+    this.threads.clear();
+    this.lastBatch = null;
+    this.inputEnded = false;
+    this.exception = null;
+    this.inputQueue1 = new ArrayBlockingQueue<>(queueCapacity);
+    this.inputQueue2 =
+        reader2 == null ? null : new ArrayBlockingQueue<>(queueCapacity);
+    this.outputQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+    // Create the reader threads
+    createThread("reader-1", () -> read(reader1, this.inputQueue1));
+    if (reader2 != null) {
+      createThread("reader-2", () -> read(reader2, this.inputQueue2));
+    }
+
+    // Create the worker threads
+    final List<Counters> counters = new ArrayList<>();
+    for (int i = 0; i < workerCount; i++) {
+
+      final Counters workerCounters =
+          new Counters(this.table.getSampleCount());
+      counters.add(workerCounters);
+      createThread("worker-" + (i + 1), () -> work(workerCounters));
+    }
+
+    // Create the writer thread
+    createThread("writer", () -> write(reader2 != null));
+
+    // Start the threads
+    for (Thread t : this.threads) {
+      t.start();
+    }
+
+    // Wait the end of the threads
+    for (Thread t : this.threads) {
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        setException(e);
+      }
+    }
+
+    // Merge worker counters
+    updateReporter(counters);
+
+    // Throw the exception if exists
+    final Throwable e = this.exception;
+    if (e instanceof IOException) {
+      throw (IOException) e;
+    }
+    if (e instanceof BadBioEntryException) {
+      throw (BadBioEntryException) e;
+    }
+    if (e instanceof InterruptedException) {
+      throw new IOException(e);
+    }
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    }
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+  }
+
+  /**
+   * Add the counters of the workers to the reporter.
+   * @param counters the counters of the workers
+   */
+  private void updateReporter(final List<Counters> counters) {
+
+    final String group = this.counterGroup;
+    final List<Sample> samples = this.table.getSamples();
+    final int sampleCount = samples.size();
+
+    for (Counters c : counters) {
+
+      this.reporter.incrCounter(group, INPUT_READS_COUNTER, c.inputReads);
+      this.reporter.incrCounter(group, UNDETERMINED_READS_COUNTER,
+          c.reads[sampleCount]);
+
+      for (int i = 0; i < sampleCount; i++) {
+
+        final String sampleId = samples.get(i).getSampleId();
+        this.reporter.incrCounter(group,
+            sampleId + SAMPLE_READS_COUNTER_SUFFIX, c.reads[i]);
+        this.reporter.incrCounter(group,
+            sampleId + SAMPLE_PERFECT_READS_COUNTER_SUFFIX, c.perfectReads[i]);
+      }
+    }
+  }
+
+  //
+  // Pipeline stages
+  //
+
+  /**
+   * Reader stage.
+   * @param reader the reader
+   * @param queue the output queue of the stage
+   * @throws Exception if an error occurs while reading data
+   */
+  private void read(final ReadSequenceReader reader,
+      final BlockingQueue<ReadSequence[]> queue) throws Exception {
+
+    final int size = this.batchSize;
+    ReadSequence[] reads = new ReadSequence[size];
+    int count = 0;
+
+    for (ReadSequence read : reader) {
+
+      reads[count++] = read;
+
+      if (count == size) {
+        queue.put(reads);
+        reads = new ReadSequence[size];
+        count = 0;
+      }
+    }
+    reader.throwException();
+
+    if (count > 0) {
+      queue.put(Arrays.copyOf(reads, count));
+    }
+    queue.put(END_OF_INPUT);
+  }
+
+  /**
+   * Worker stage.
+   * @param counters the counters of the worker
+   * @throws Exception if an error occurs while demultiplexing data
+   */
+  private void work(final Counters counters) throws Exception {
+
+    final int sampleCount = this.table.getSampleCount();
+    final boolean compress = this.compressOutput;
+
+    // The last chunk is for the undetermined reads
+    final Chunk[] chunks1 = new Chunk[sampleCount + 1];
+    final Chunk[] chunks2 = new Chunk[sampleCount + 1];
+    for (int i = 0; i <= sampleCount; i++) {
+      chunks1[i] = new Chunk();
+      chunks2[i] = new Chunk();
+    }
+
+    final Deflater deflater =
+        compress ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+
+    try {
+      Batch batch;
+
+      while ((batch = nextBatch()) != null) {
+        process(batch, chunks1, chunks2, deflater, counters);
+      }
+
+    } finally {
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * Process a batch of reads.
+   * @param batch the batch to process
+   * @param chunks1 the chunks of the first reads
+   * @param chunks2 the chunks of the second reads
+   * @param deflater the deflater, null if the output is not compressed
+   * @param counters the counters of the worker
+   * @throws Exception if an error occurs while demultiplexing data
+   */
+  private void process(final Batch batch, final Chunk[] chunks1,
+      final Chunk[] chunks2, final Deflater deflater, final Counters counters)
+      throws Exception {
+
+    final BarcodeTable table = this.table;
+    final int sampleCount = table.getSampleCount();
+    final int length1 = table.getIndex1Length();
+    final int length2 = table.getIndex2Length();
+    final boolean inline = this.inlineBarcodes;
+
+    final ReadSequence[] reads1 = batch.reads1;
+    final ReadSequence[] reads2 = batch.reads2;
+
+    for (int i = 0; i < reads1.length; i++) {
+
+      final ReadSequence read1 = reads1[i];
+      final ReadSequence read2 = reads2 == null ? null : reads2[i];
+      int sampleIndex;
+      boolean perfect;
+
+      if (inline) {
+
+        final String seq1 = read1.getSequence();
+        final String seq2 = read2 == null ? seq1 : read2.getSequence();
+        final int start2 = read2 == null ? length1 : 0;
+
+        sampleIndex = table.lookup(seq1, 0, seq2, start2);
+        perfect = sampleIndex != UNDETERMINED
+            && table.isPerfectMatch(sampleIndex, seq1, 0, seq2, start2);
+
+        // Remove the barcodes from the reads
+        if (read2 == null) {
+          trim(read1, length1 + length2);
+        } else {
+          trim(read1, length1);
+          trim(read2, length2);
+        }
+
+      } else {
+
+        final String id = read1.getName();
+        sampleIndex = table.lookupReadId(id);
+        perfect = sampleIndex != UNDETERMINED
+            && table.isPerfectMatch(sampleIndex, id);
+      }
+
+      if (sampleIndex == UNDETERMINED) {
+        sampleIndex = sampleCount;
+      } else if (perfect) {
+        counters.perfectReads[sampleIndex]++;
+      }
+      counters.reads[sampleIndex]++;
+
+      chunks1[sampleIndex].append(read1);
+      if (read2 != null) {
+        chunks2[sampleIndex].append(read2);
+      }
+    }
+
+    counters.inputReads += reads1.length;
+
+    batch.chunks1 = flush(chunks1);
+    batch.chunks2 = reads2 == null ? null : flush(chunks2);
+
+    if (deflater != null) {
+
+      // The dictionaries of the batch are the end of the data of the previous
+      // batches, they are available once the previous batch is dispatched
+      final Batch previous = batch.previous;
+      batch.previous = null;
+
+      byte[][] dictionaries1 = null;
+      byte[][] dictionaries2 = null;
+      if (previous != null) {
+        previous.dispatched.await();
+        dictionaries1 = previous.dictionaries1;
+        dictionaries2 = previous.dictionaries2;
+      }
+
+      batch.dictionaries1 = dictionaries(dictionaries1, batch.chunks1);
+      batch.dictionaries2 = dictionaries(dictionaries2, batch.chunks2);
+      batch.dispatched.countDown();
+
+      batch.deflated1 = deflate(deflater, dictionaries1, batch.chunks1);
+      batch.deflated2 = deflate(deflater, dictionaries2, batch.chunks2);
+    }
+
+    batch.done.countDown();
+  }
+
+  /**
+   * Get the content of chunks and clear the chunks.
+   * @param chunks the chunks
+   * @return an array with the content of the chunks
+   */
+  private static byte[][] flush(final Chunk[] chunks) {
+
+    final byte[][] result = new byte[chunks.length][];
+
+    for (int i = 0; i < chunks.length; i++) {
+      result[i] = chunks[i].flush();
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the compression dictionaries after the chunks of a batch.
+   * @param previous the dictionaries before the chunks, can be null
+   * @param chunks the chunks of the batch, can be null
+   * @return the last DICTIONARY_SIZE bytes of the data of each sample
+   */
+  private static byte[][] dictionaries(final byte[][] previous,
+      final byte[][] chunks) {
+
+    if (chunks == null) {
+      return null;
+    }
+
+    final byte[][] result = new byte[chunks.length][];
+
+    for (int i = 0; i < chunks.length; i++) {
+
+      final byte[] dictionary = previous == null ? null : previous[i];
+      final byte[] chunk = chunks[i];
+
+      if (chunk == null) {
+        result[i] = dictionary;
+      } else if (dictionary == null || chunk.length >= DICTIONARY_SIZE) {
+        result[i] = Arrays.copyOfRange(chunk,
+            Math.max(0, chunk.length - DICTIONARY_SIZE), chunk.length);
+      } else {
+        final int keep =
+            Math.min(dictionary.length, DICTIONARY_SIZE - chunk.length);
+        result[i] = new byte[keep + chunk.length];
+        System.arraycopy(dictionary, dictionary.length - keep, result[i], 0,
+            keep);
+        System.arraycopy(chunk, 0, result[i], keep, chunk.length);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Compress the chunks of a batch as raw deflate data ended by a sync flush.
+   * @param deflater the deflater to use
+   * @param dictionaries the compression dictionaries, can be null
+   * @param chunks the chunks to compress, can be null
+   * @return an array with the compressed chunks
+   */
+  private static byte[][] deflate(final Deflater deflater,
+      final byte[][] dictionaries, final byte[][] chunks) {
+
+    if (chunks == null) {
+      return null;
+    }
+
+    final byte[][] result = new byte[chunks.length][];
+
+    for (int i = 0; i < chunks.length; i++) {
+
+      final byte[] chunk = chunks[i];
+      if (chunk == null) {
+        continue;
+      }
+
+      deflater.reset();
+      if (dictionaries != null && dictionaries[i] != null) {
+        deflater.setDictionary(dictionaries[i]);
+      }
+      deflater.setInput(chunk);
+
+      // The flush is complete when the output buffer is not full
+      byte[] buffer = new byte[chunk.length / 3 + 64];
+      int length = 0;
+      while ((length += deflater.deflate(buffer, length,
+          buffer.length - length, Deflater.SYNC_FLUSH)) == buffer.length) {
+        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+      }
+
+      result[i] = Arrays.copyOf(buffer, length);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the next batch to process. The batch is also added to the output
+   * queue to keep the order of the reads.
+   * @return the next batch to process or null if there is no more batch
+   * @throws Exception if an error occurs while getting the batch
+   */
+  private Batch nextBatch() throws Exception {
+
+    synchronized (this.batchLock) {
+
+      if (this.inputEnded) {
+        return null;
+      }
+
+      final ReadSequence[] reads1 = this.inputQueue1.take();
+      final ReadSequence[] reads2 =
+          this.inputQueue2 == null ? null : this.inputQueue2.take();
+
+      if (reads2 != null && reads1.length != reads2.length) {
+        throw new IOException("Unexpected end of the "
+            + (reads1.length < reads2.length ? "first" : "second")
+            + " read file. The two read files must have the same number "
+            + "of entries/lines.");
+      }
+
+      if (reads1 == END_OF_INPUT) {
+        this.inputEnded = true;
+        this.outputQueue.put(END_OF_BATCHES);
+        return null;
+      }
+
+      final Batch result = new Batch(reads1, reads2);
+      result.previous = this.lastBatch;
+      this.lastBatch = result;
+      this.outputQueue.put(result);
+
+      return result;
+    }
+  }
+
+  /**
+   * Writer stage.
+   * @param pairedEnd true if the reads are paired-end
+   * @throws Exception if an error occurs while writing data
+   */
+  private void write(final boolean pairedEnd) throws Exception {
+
+    final int count = this.table.getSampleCount() + 1;
+    final boolean compress = this.compressOutput;
+    final Output[] outputs1 = new Output[count];
+    final Output[] outputs2 = new Output[count];
+
+    try {
+
+      // Create the output files, the undetermined reads are the last output
+      for (int i = 0; i < count; i++) {
+        final int sampleIndex = i == count - 1 ? UNDETERMINED : i;
+        outputs1[i] = new Output(getOutputFile(sampleIndex, 1), compress);
+        if (pairedEnd) {
+          outputs2[i] = new Output(getOutputFile(sampleIndex, 2), compress);
+        }
+      }
+
+      Batch batch;
+
+      while ((batch = this.outputQueue.take()) != END_OF_BATCHES) {
+
+        // Wait the end of the processing of the batch
+        batch.done.await();
+
+        writeChunks(batch.chunks1, batch.deflated1, outputs1);
+        if (pairedEnd) {
+          writeChunks(batch.chunks2, batch.deflated2, outputs2);
+        }
+      }
+
+      for (int i = 0; i < count; i++) {
+        outputs1[i].finish();
+        if (pairedEnd) {
+          outputs2[i].finish();
+        }
+      }
+
+    } finally {
+      closeAll(outputs1);
+      closeAll(outputs2);
+    }
+  }
+
+  /**
+   * Write the chunks of a batch.
+   * @param chunks the uncompressed chunks
+   * @param deflated the compressed chunks, null if the output is not
+   *          compressed
+   * @param outputs the outputs
+   * @throws IOException if an error occurs while writing the chunks
+   */
+  private static void writeChunks(final byte[][] chunks,
+      final byte[][] deflated, final Output[] outputs) throws IOException {
+
+    for (int i = 0; i < chunks.length; i++) {
+
+      if (chunks[i] != null) {
+        outputs[i].write(chunks[i], deflated == null ? null : deflated[i]);
+      }
+    }
+  }
+
+  /**
+   * Close outputs.
+   * @param outputs the outputs
+   * @throws IOException if an error occurs while closing the outputs
+   */
+  private static void closeAll(final Output[] outputs) throws IOException {
+
+    IOException exception = null;
+
+    for (Output os : outputs) {
+
+      if (os == null) {
+        continue;
+      }
+
+      try {
+        os.close();
+      } catch (IOException e) {
+        if (exception == null) {
+          exception = e;
+        }
+      }
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Remove the first bases of a read.
+   * @param read the read
+   * @param length the number of bases to remove
+   */
+  private static void trim(final ReadSequence read, final int length) {
+
+    final String sequence = read.getSequence();
+    final int start = Math.min(length, sequence.length());
+
+    read.setSequence(sequence.substring(start));
+    read.setQuality(read.getQuality().substring(start));
+  }
+
+  //
+  // Thread management
+  //
+
+  /**
+   * Interface for the code of the stages of the pipeline.
+   */
+  private interface Stage {
+
+    void run() throws Exception;
+  }
+
+  /**
+   * Create a thread of the pipeline.
+   * @param name name of the thread
+   * @param stage code of the thread
+   */
+  private void createThread(final String name, final Stage stage) {
+
+    final Thread t = new Thread(() -> {
+      try {
+        stage.run();
+      } catch (InterruptedException e) {
+        // The pipeline has been stopped
+      } catch (Throwable e) {
+        setException(e);
+      }
+    }, "fastq-demultiplexer-" + name);
+
+    this.threads.add(t);
+  }
+
+  /**
+   * Save the first exception thrown by a thread of the pipeline and stop all
+   * the threads of the pipeline.
+   * @param e exception to save
+   */
+  private void setException(final Throwable e) {
+
+    synchronized (this.threads) {
+
+      if (this.exception != null) {
+        return;
+      }
+      this.exception = e;
+    }
+
+    for (Thread t : this.threads) {
+      t.interrupt();
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param table the barcode table of the samples to demultiplex
+   * @param outputDirectory the output directory
+   * @param reporter reporter to use
+   * @param counterGroup counter group for the reporter
+   */
+  public FastqDemultiplexer(final BarcodeTable table,
+      final File outputDirectory, final Reporter reporter,
+      final String counterGroup) {
+
+    requireNonNull(table, "table argument cannot be null");
+    requireNonNull(outputDirectory, "outputDirectory argument cannot be null");
+    requireNonNull(reporter, "reporter argument cannot be null");
+    requireNonNull(counterGroup, "counterGroup argument cannot be null");
+
+    this.table = table;
+    this.outputDirectory = outputDirectory;
+    this.reporter = reporter;
+    this.counterGroup = counterGroup;
+  }
+
+}
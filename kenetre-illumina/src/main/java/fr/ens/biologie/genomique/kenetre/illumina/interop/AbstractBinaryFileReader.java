@@ -44,6 +44,7 @@ import fr.ens.biologie.genomique.kenetre.KenetreException;
 abstract class AbstractBinaryFileReader<M> {
 
   private final File dirInterOpPath;
+  private int version = -1;
 
   // 2 bytes: 1 for file version number and 1 for length for each record
   private static final int HEADER_SIZE = 2;
@@ -90,6 +91,52 @@ abstract class AbstractBinaryFileReader<M> {
 
     final List<M> collection = new ArrayList<>();
 
+    final ByteBuffer buf = mapRecords();
+
+    // Build collection of illumina metrics
+    readRecords(buf, this.version, collection);
+
+    return collection;
+  }
+
+  /**
+   * Decode all the complete records of a buffer, from its position to its
+   * limit.
+   * @param buf the buffer with the records
+   * @param version version of the format of the file
+   * @param collection list of illumina metrics
+   * @return the number of bytes of the decoded records
+   */
+  int readRecords(final ByteBuffer buf, final int version,
+      final List<M> collection) {
+
+    final int recordSize = getExpectedRecordSize(version);
+
+    // Records are read directly from the buffer without any copy
+    final ByteBuffer recordBuf = buf.duplicate();
+    recordBuf.order(ByteOrder.LITTLE_ENDIAN);
+
+    final int start = buf.position();
+    int pos = start;
+    while (buf.limit() - pos >= recordSize) {
+
+      recordBuf.limit(pos + recordSize);
+      recordBuf.position(pos);
+
+      readMetricRecord(collection, recordBuf, version);
+      pos += recordSize;
+    }
+
+    return pos - start;
+  }
+
+  /**
+   * Map the metrics file in memory and read its header.
+   * @return a little endian buffer positioned on the first record
+   * @throws KenetreException if an error occurs while reading the header
+   */
+  ByteBuffer mapRecords() throws KenetreException {
+
     final ByteBuffer buf;
     final byte[] header = new byte[HEADER_SIZE];
 
@@ -148,22 +195,18 @@ abstract class AbstractBinaryFileReader<M> {
       // checkRecordSize(recordSize);
     }
 
-    final int recordSize = getExpectedRecordSize(version);
-    final byte[] element = new byte[recordSize];
-    final ByteBuffer recordBuf = ByteBuffer.wrap(element);
-    recordBuf.order(ByteOrder.LITTLE_ENDIAN);
+    this.version = version;
 
-    // Build collection of illumina metrics
-    while (buf.limit() - buf.position() >= recordSize) {
-      recordBuf.position(0);
-      buf.get(element);
-      recordBuf.position(0);
-
-      // collection.add(new IlluminaMetrics(recordBuf));
-      readMetricRecord(collection, recordBuf, version);
-    }
+    return buf;
+  }
 
-    return collection;
+  /**
+   * Get the version of the format of the last mapped file.
+   * @return the version of the format of the file or -1 if no file has been
+   *         mapped
+   */
+  int getFileVersion() {
+    return this.version;
   }
 
   /**
@@ -0,0 +1,341 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BinaryOperator;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+
+/**
+ * This class define a columnar view of the records of an InterOp file. The
+ * fields of the records are stored in primitive arrays decoded directly from
+ * the mapped file, so no object is created for each record. The aggregations
+ * are computed for each lane in parallel.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public abstract class AbstractMetricColumns {
+
+  private final int version;
+  private final int size;
+  private final int[] lanes;
+  private final long[] tiles;
+
+  /**
+   * This interface define an aggregation of the records of a lane.
+   * @param <R> type of the result of the aggregation
+   */
+  interface LaneAggregator<R> {
+
+    /**
+     * Aggregate the records of a lane.
+     * @param lane the lane number
+     * @param rows the indexes of the records of the lane
+     * @return the result of the aggregation
+     */
+    R aggregate(int lane, int[] rows);
+  }
+
+  /**
+   * This class define an accumulator for the mean of values. NaN values are
+   * ignored.
+   */
+  static final class Mean {
+
+    private double sum;
+    private long count;
+
+    /**
+     * Add a value.
+     * @param value value to add
+     */
+    void add(final double value) {
+
+      if (!Double.isNaN(value)) {
+        this.sum += value;
+        this.count++;
+      }
+    }
+
+    /**
+     * Get the mean of the values.
+     * @return the mean of the values or NaN if there is no value
+     */
+    double mean() {
+      return this.count == 0 ? Double.NaN : this.sum / this.count;
+    }
+
+    /**
+     * Merge two accumulators.
+     * @param m1 first accumulator
+     * @param m2 second accumulator
+     * @return a new accumulator with the values of the two accumulators
+     */
+    static Mean merge(final Mean m1, final Mean m2) {
+
+      final Mean result = new Mean();
+      result.sum = m1.sum + m2.sum;
+      result.count = m1.count + m2.count;
+
+      return result;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the version of the format of the file.
+   * @return the version of the format of the file
+   */
+  public int getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Get the number of records.
+   * @return the number of records
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Get the lane number of a record.
+   * @param index index of the record
+   * @return the lane number of the record
+   */
+  public int getLaneNumber(final int index) {
+    return this.lanes[checkIndex(index)];
+  }
+
+  /**
+   * Get the tile number of a record.
+   * @param index index of the record
+   * @return the tile number of the record
+   */
+  public long getTileNumber(final int index) {
+    return this.tiles[checkIndex(index)];
+  }
+
+  /**
+   * Get the lane numbers of the records.
+   * @return a sorted array with the lane numbers
+   */
+  public int[] getLaneNumbers() {
+
+    return Arrays.stream(this.lanes, 0, this.size).distinct().sorted()
+        .toArray();
+  }
+
+  //
+  // Aggregation methods
+  //
+
+  /**
+   * Aggregate the records of each lane. The lanes are processed in parallel.
+   * @param aggregator the aggregator
+   * @param <R> type of the result of the aggregation
+   * @return a sorted map with the result of the aggregation for each lane
+   * @throws KenetreException if an error occurs while aggregating the records
+   */
+  <R> Map<Integer, R> aggregateByLane(final LaneAggregator<R> aggregator)
+      throws KenetreException {
+
+    final int[] laneNumbers = getLaneNumbers();
+    final int[][] rows = rowsByLane(laneNumbers);
+    final Map<Integer, R> result = new TreeMap<>();
+
+    if (laneNumbers.length < 2) {
+
+      for (int i = 0; i < laneNumbers.length; i++) {
+        result.put(laneNumbers[i],
+            aggregator.aggregate(laneNumbers[i], rows[i]));
+      }
+      return result;
+    }
+
+    final int threads = Math.min(laneNumbers.length,
+        Runtime.getRuntime().availableProcessors());
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threads, r -> {
+          final Thread t = new Thread(r, "InterOpAggregation");
+          t.setDaemon(true);
+          return t;
+        });
+
+    try {
+
+      final List<Future<R>> futures = new ArrayList<>();
+      for (int i = 0; i < laneNumbers.length; i++) {
+
+        final int lane = laneNumbers[i];
+        final int[] laneRows = rows[i];
+        futures.add(
+            executor.submit(() -> aggregator.aggregate(lane, laneRows)));
+      }
+
+      for (int i = 0; i < laneNumbers.length; i++) {
+        result.put(laneNumbers[i], futures.get(i).get());
+      }
+
+    } catch (InterruptedException e) {
+      throw new KenetreException("Aggregation has been interrupted");
+    } catch (ExecutionException e) {
+      throw new KenetreException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the indexes of the records of each lane.
+   * @param laneNumbers the sorted lane numbers
+   * @return an array with the indexes of the records for each lane
+   */
+  private int[][] rowsByLane(final int[] laneNumbers) {
+
+    final int[] counts = new int[laneNumbers.length];
+    for (int i = 0; i < this.size; i++) {
+      counts[Arrays.binarySearch(laneNumbers, this.lanes[i])]++;
+    }
+
+    final int[][] result = new int[laneNumbers.length][];
+    for (int i = 0; i < laneNumbers.length; i++) {
+      result[i] = new int[counts[i]];
+    }
+
+    Arrays.fill(counts, 0);
+    for (int i = 0; i < this.size; i++) {
+      final int laneIndex = Arrays.binarySearch(laneNumbers, this.lanes[i]);
+      result[laneIndex][counts[laneIndex]++] = i;
+    }
+
+    return result;
+  }
+
+  /**
+   * Merge the maps computed for each lane.
+   * @param maps the maps to merge
+   * @param merger the function that merge two values
+   * @param <V> type of the values of the maps
+   * @return a sorted map with the merged values
+   */
+  static <V> Map<Integer, V> merge(final Iterable<Map<Integer, V>> maps,
+      final BinaryOperator<V> merger) {
+
+    final Map<Integer, V> result = new TreeMap<>();
+
+    for (Map<Integer, V> map : maps) {
+      for (Map.Entry<Integer, V> e : map.entrySet()) {
+        result.merge(e.getKey(), e.getValue(), merger);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the means of a map of accumulators.
+   * @param map the map of accumulators
+   * @return a sorted map with the means
+   */
+  static Map<Integer, Double> means(final Map<Integer, Mean> map) {
+
+    final Map<Integer, Double> result = new TreeMap<>();
+    for (Map.Entry<Integer, Mean> e : map.entrySet()) {
+      result.put(e.getKey(), e.getValue().mean());
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the number of the read of a cycle.
+   * @param cycle the cycle number
+   * @param readCycleCounts the number of cycles of each read
+   * @return the number of the read or -1 if the cycle is not in a read
+   */
+  static int readNumber(final int cycle, final int[] readCycleCounts) {
+
+    int lastCycle = 0;
+    for (int i = 0; i < readCycleCounts.length; i++) {
+
+      lastCycle += readCycleCounts[i];
+      if (cycle <= lastCycle) {
+        return i + 1;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Check the index of a record.
+   * @param index index of the record
+   * @return the index of the record
+   */
+  int checkIndex(final int index) {
+
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", size: " + this.size);
+    }
+
+    return index;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param version version of the format of the file
+   * @param size number of records
+   * @param lanes lane numbers of the records
+   * @param tiles tile numbers of the records
+   */
+  AbstractMetricColumns(final int version, final int size, final int[] lanes,
+      final long[] tiles) {
+
+    this.version = version;
+    this.size = size;
+    this.lanes = lanes;
+    this.tiles = tiles;
+  }
+
+}
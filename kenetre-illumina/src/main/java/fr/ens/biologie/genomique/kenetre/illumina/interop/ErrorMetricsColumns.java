@@ -0,0 +1,159 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+
+/**
+ * This class define a columnar view of the records of an ErrorMetricsOut.bin
+ * file.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ErrorMetricsColumns extends AbstractMetricColumns {
+
+  private final int[] cycles;
+  private final float[] errorRates;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the cycle number of a record.
+   * @param index index of the record
+   * @return the cycle number of the record
+   */
+  public int getCycleNumber(final int index) {
+    return this.cycles[checkIndex(index)];
+  }
+
+  /**
+   * Get the error rate of a record.
+   * @param index index of the record
+   * @return the error rate of the record
+   */
+  public float getErrorRate(final int index) {
+    return this.errorRates[checkIndex(index)];
+  }
+
+  //
+  // Aggregation methods
+  //
+
+  /**
+   * Get the mean error rate of each lane.
+   * @return a sorted map with the mean error rate of each lane
+   * @throws KenetreException if an error occurs while computing the error rates
+   */
+  public Map<Integer, Double> errorRateByLane() throws KenetreException {
+
+    return means(aggregateByLane((lane, rows) -> {
+
+      final Mean result = new Mean();
+      for (int row : rows) {
+        result.add(this.errorRates[row]);
+      }
+
+      return result;
+    }));
+  }
+
+  /**
+   * Get the mean error rate of each cycle for all the lanes.
+   * @return a sorted map with the mean error rate of each cycle
+   * @throws KenetreException if an error occurs while computing the error rates
+   */
+  public Map<Integer, Double> errorRateByCycle() throws KenetreException {
+
+    return errorRateBy(row -> this.cycles[row]);
+  }
+
+  /**
+   * Get the mean error rate of each read for all the lanes.
+   * @param readCycleCounts the number of cycles of each read
+   * @return a sorted map with the mean error rate of each read
+   * @throws KenetreException if an error occurs while computing the error rates
+   */
+  public Map<Integer, Double> errorRateByRead(final int... readCycleCounts)
+      throws KenetreException {
+
+    requireNonNull(readCycleCounts, "readCycleCounts argument cannot be null");
+
+    return errorRateBy(row -> readNumber(this.cycles[row], readCycleCounts));
+  }
+
+  /**
+   * Get the mean error rate for a key computed from each record. The records
+   * with a negative key are ignored.
+   * @param key function that compute the key of a record
+   * @return a sorted map with the mean error rate of each key
+   * @throws KenetreException if an error occurs while computing the error rates
+   */
+  private Map<Integer, Double> errorRateBy(final IntUnaryOperator key)
+      throws KenetreException {
+
+    return means(merge(aggregateByLane((lane, rows) -> {
+
+      final Map<Integer, Mean> result = new HashMap<>();
+      for (int row : rows) {
+
+        final int k = key.applyAsInt(row);
+        if (k >= 0) {
+          result.computeIfAbsent(k, x -> new Mean()).add(this.errorRates[row]);
+        }
+      }
+
+      return result;
+    }).values(), Mean::merge));
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param version version of the format of the file
+   * @param size number of records
+   * @param lanes lane numbers of the records
+   * @param tiles tile numbers of the records
+   * @param cycles cycle numbers of the records
+   * @param errorRates error rates of the records
+   */
+  ErrorMetricsColumns(final int version, final int size, final int[] lanes,
+      final long[] tiles, final int[] cycles, final float[] errorRates) {
+
+    super(version, size, lanes, tiles);
+    this.cycles = cycles;
+    this.errorRates = errorRates;
+  }
+
+}
@@ -94,6 +94,9 @@ public class ErrorMetricsReader extends AbstractBinaryFileReader<ErrorMetric> {
 
     if (version == 6) {
 
+      // The header is read again each time the file is mapped
+      this.adapterSequences.clear();
+
       int numAdapter = uShortToInt(bb);
       int adapterBaseCount = uShortToInt(bb);
 
@@ -110,6 +113,43 @@ public class ErrorMetricsReader extends AbstractBinaryFileReader<ErrorMetric> {
     }
   }
 
+  /**
+   * Read the metrics in a columnar view. The records are decoded directly from
+   * the mapped file without creating an ErrorMetric object for each record.
+   * @return a columnar view of the metrics
+   * @throws KenetreException if an error occurs while reading metrics
+   */
+  public ErrorMetricsColumns readColumns() throws KenetreException {
+
+    final ByteBuffer buf = mapRecords();
+    final int version = getFileVersion();
+    final int recordSize = getExpectedRecordSize(version);
+    final int start = buf.position();
+    final int size = (buf.limit() - start) / recordSize;
+
+    final int tileSize = version > 3 ? 4 : 2;
+    final int[] lanes = new int[size];
+    final long[] tiles = new long[size];
+    final int[] cycles = new int[size];
+    final float[] errorRates = new float[size];
+
+    int pos = start;
+    for (int i = 0; i < size; i++) {
+
+      lanes[i] = Short.toUnsignedInt(buf.getShort(pos));
+      tiles[i] = tileSize == 4
+          ? Integer.toUnsignedLong(buf.getInt(pos + 2))
+          : Short.toUnsignedInt(buf.getShort(pos + 2));
+      cycles[i] = Short.toUnsignedInt(buf.getShort(pos + 2 + tileSize));
+      errorRates[i] = buf.getFloat(pos + 4 + tileSize);
+
+      pos += recordSize;
+    }
+
+    return new ErrorMetricsColumns(version, size, lanes, tiles, cycles,
+        errorRates);
+  }
+
   @Override
   protected void readMetricRecord(final List<ErrorMetric> collection,
       final ByteBuffer bb, final int version) {
@@ -132,9 +172,24 @@ public class ErrorMetricsReader extends AbstractBinaryFileReader<ErrorMetric> {
   public ErrorMetricsReader(final File dirPath)
       throws FileNotFoundException, KenetreException {
 
+    this(dirPath, true);
+  }
+
+  /**
+   * Constructor.
+   * @param dirPath path of the directory while the binary is located
+   * @param checkFile true if the existence of the binary must be checked
+   * @throws KenetreException it occurs if size record or version aren't the
+   *           same that expected
+   * @throws FileNotFoundException if the binary cannot be found
+   */
+  ErrorMetricsReader(final File dirPath, final boolean checkFile)
+      throws FileNotFoundException, KenetreException {
+
     super(dirPath);
 
-    if (!new File(getDirPathInterOP(), ERROR_METRICS_FILE).exists()) {
+    if (checkFile
+        && !new File(getDirPathInterOP(), ERROR_METRICS_FILE).exists()) {
       throw new FileNotFoundException();
     }
   }
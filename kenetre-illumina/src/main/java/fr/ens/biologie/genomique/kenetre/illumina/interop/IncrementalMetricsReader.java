@@ -0,0 +1,285 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+
+/**
+ * This class define an incremental reader of a binary InterOp file that is
+ * still written by a sequencer. The reader remembers the header of the file
+ * and the offset of the last decoded record, so each call only decodes the
+ * records appended since the previous call. If the header of the file changes
+ * or if the file is truncated, the whole file is read again.
+ * @param <M> type of the metrics
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class IncrementalMetricsReader<M> {
+
+  private final AbstractBinaryFileReader<M> reader;
+
+  private byte[] header;
+  private int version = -1;
+  private int recordSize;
+  private long offset;
+  private long recordCount;
+  private boolean reset;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the offset in the file of the next record to read.
+   * @return the offset in the file of the next record to read
+   */
+  public long getOffset() {
+    return this.offset;
+  }
+
+  /**
+   * Get the number of records read since the start of the file.
+   * @return the number of records read since the start of the file
+   */
+  public long getRecordCount() {
+    return this.recordCount;
+  }
+
+  /**
+   * Get the version of the format of the file.
+   * @return the version of the format of the file or -1 if the file has not
+   *         been read yet
+   */
+  public int getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Test if the file has been read again from its start during the last call
+   * of readNewMetrics(). In this case the metrics previously returned must be
+   * discarded.
+   * @return true if the file has been read again from its start
+   */
+  public boolean isReset() {
+    return this.reset;
+  }
+
+  //
+  // Read methods
+  //
+
+  /**
+   * Read the metrics appended to the file since the last call of this method.
+   * Incomplete records at the end of the file are read by the next call.
+   * @return a list with the new metrics
+   * @throws KenetreException if an error occurs while reading the file
+   */
+  public List<M> readNewMetrics() throws KenetreException {
+
+    this.reset = false;
+
+    final File file = this.reader.getMetricsFile();
+    if (!file.isFile()) {
+      return Collections.emptyList();
+    }
+
+    try (FileChannel channel =
+        FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+      final long fileSize = channel.size();
+
+      if (this.header == null
+          || fileSize < this.offset || !isSameHeader(channel)) {
+        readHeader(channel);
+      }
+
+      final long recordCount = (fileSize - this.offset) / this.recordSize;
+      if (recordCount == 0) {
+        return Collections.emptyList();
+      }
+
+      // Only map the new records
+      final ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+          this.offset, recordCount * this.recordSize);
+      buf.order(ByteOrder.LITTLE_ENDIAN);
+
+      final List<M> result = new ArrayList<>();
+      this.offset += this.reader.readRecords(buf, this.version, result);
+      this.recordCount += recordCount;
+
+      return result;
+
+    } catch (IOException e) {
+      throw new KenetreException(e);
+    }
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Read the header of the file and restart the reading from the first
+   * record.
+   * @param channel channel of the file
+   * @throws KenetreException if the header is invalid
+   * @throws IOException if an error occurs while reading the header
+   */
+  private void readHeader(final FileChannel channel)
+      throws KenetreException, IOException {
+
+    // The reader parse the header and keep the optional flags of the header
+    final int headerSize = this.reader.mapRecords().position();
+
+    final byte[] header = readBytes(channel, headerSize);
+    if (header == null) {
+      throw new KenetreException(
+          "The header of the file has changed while reading it: "
+              + this.reader.getMetricsFile());
+    }
+
+    // The first read of the file is not a reset
+    this.reset = this.header != null;
+    this.header = header;
+    this.version = this.reader.getFileVersion();
+    this.recordSize = this.reader.getExpectedRecordSize(this.version);
+    this.offset = headerSize;
+    this.recordCount = 0;
+  }
+
+  /**
+   * Test if the header of the file is the same as the header of the previous
+   * call.
+   * @param channel channel of the file
+   * @return true if the header has not changed
+   * @throws IOException if an error occurs while reading the header
+   */
+  private boolean isSameHeader(final FileChannel channel) throws IOException {
+
+    return Arrays.equals(this.header,
+        readBytes(channel, this.header.length));
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Read the first bytes of a file.
+   * @param channel channel of the file
+   * @param length number of bytes to read
+   * @return an array with the bytes or null if the file is too short
+   * @throws IOException if an error occurs while reading the file
+   */
+  private static byte[] readBytes(final FileChannel channel, final int length)
+      throws IOException {
+
+    final ByteBuffer buf = ByteBuffer.allocate(length);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, buf.position()) < 0) {
+        return null;
+      }
+    }
+
+    return buf.array();
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Create an incremental reader for the QMetricsOut.bin file.
+   * @param dirPath path to the interop directory of the run
+   * @return a new IncrementalMetricsReader object
+   * @throws KenetreException if the path does not exists
+   */
+  public static IncrementalMetricsReader<QMetric> newQMetricsReader(
+      final File dirPath) throws KenetreException {
+
+    return new IncrementalMetricsReader<>(new QMetricsReader(dirPath));
+  }
+
+  /**
+   * Create an incremental reader for the ErrorMetricsOut.bin file. Unlike
+   * ErrorMetricsReader, the file does not need to exist yet.
+   * @param dirPath path to the interop directory of the run
+   * @return a new IncrementalMetricsReader object
+   * @throws KenetreException if the path does not exists
+   */
+  public static IncrementalMetricsReader<ErrorMetric> newErrorMetricsReader(
+      final File dirPath) throws KenetreException {
+
+    try {
+      return new IncrementalMetricsReader<>(
+          new ErrorMetricsReader(dirPath, false));
+    } catch (FileNotFoundException e) {
+      // Never happens as the existence of the file is not checked
+      throw new KenetreException(e);
+    }
+  }
+
+  /**
+   * Create an incremental reader for the ExtractionMetricsOut.bin file.
+   * @param dirPath path to the interop directory of the run
+   * @return a new IncrementalMetricsReader object
+   * @throws KenetreException if the path does not exists
+   */
+  public static IncrementalMetricsReader<ExtractionMetric>
+      newExtractionMetricsReader(final File dirPath) throws KenetreException {
+
+    return new IncrementalMetricsReader<>(
+        new ExtractionMetricsReader(dirPath));
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param reader the reader of the metrics file
+   */
+  IncrementalMetricsReader(final AbstractBinaryFileReader<M> reader) {
+
+    requireNonNull(reader, "reader argument cannot be null");
+
+    this.reader = reader;
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+import static fr.ens.biologie.genomique.kenetre.illumina.interop.AbstractMetricColumns.means;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.AbstractMetricColumns.Mean;
+
+/**
+ * This class define a monitor of the InterOp directory of a running
+ * sequencer. Each call of update() only decodes the records appended to the
+ * QMetricsOut.bin, ErrorMetricsOut.bin and ExtractionMetricsOut.bin files
+ * since the previous call, and updates running aggregates per lane and per
+ * cycle. The cost of an update is proportional to the new data and not to the
+ * length of the run.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class InterOpMonitor {
+
+  private final IncrementalMetricsReader<QMetric> qualityReader;
+  private final IncrementalMetricsReader<ErrorMetric> errorReader;
+  private final IncrementalMetricsReader<ExtractionMetric> extractionReader;
+
+  private final Map<Integer, QualityStats> qualityByLane = new TreeMap<>();
+  private final Map<Integer, QualityStats> qualityByCycle = new TreeMap<>();
+  private final Map<Integer, Mean> errorRateByLane = new TreeMap<>();
+  private final Map<Integer, Mean> errorRateByCycle = new TreeMap<>();
+  private final Map<Integer, Mean> intensityByLane = new TreeMap<>();
+  private final Map<Integer, Mean> intensityByCycle = new TreeMap<>();
+  private int lastExtractedCycle;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the quality statistics of each lane.
+   * @return a sorted map with the quality statistics of each lane
+   */
+  public Map<Integer, QualityStats> getQualityStatsByLane() {
+    return Collections.unmodifiableMap(this.qualityByLane);
+  }
+
+  /**
+   * Get the quality statistics of each cycle.
+   * @return a sorted map with the quality statistics of each cycle
+   */
+  public Map<Integer, QualityStats> getQualityStatsByCycle() {
+    return Collections.unmodifiableMap(this.qualityByCycle);
+  }
+
+  /**
+   * Get the mean error rate of each lane.
+   * @return a sorted map with the mean error rate of each lane
+   */
+  public Map<Integer, Double> getErrorRateByLane() {
+    return means(this.errorRateByLane);
+  }
+
+  /**
+   * Get the mean error rate of each cycle.
+   * @return a sorted map with the mean error rate of each cycle
+   */
+  public Map<Integer, Double> getErrorRateByCycle() {
+    return means(this.errorRateByCycle);
+  }
+
+  /**
+   * Get the mean intensity of each lane.
+   * @return a sorted map with the mean intensity of each lane
+   */
+  public Map<Integer, Double> getIntensityByLane() {
+    return means(this.intensityByLane);
+  }
+
+  /**
+   * Get the mean intensity of each cycle.
+   * @return a sorted map with the mean intensity of each cycle
+   */
+  public Map<Integer, Double> getIntensityByCycle() {
+    return means(this.intensityByCycle);
+  }
+
+  /**
+   * Get the last cycle found in the extraction metrics.
+   * @return the last cycle found in the extraction metrics or 0 if no
+   *         extraction metrics has been read
+   */
+  public int getLastExtractedCycle() {
+    return this.lastExtractedCycle;
+  }
+
+  //
+  // Update method
+  //
+
+  /**
+   * Read the new records of the InterOp files and update the aggregates.
+   * @return the number of new records
+   * @throws KenetreException if an error occurs while reading the files
+   */
+  public int update() throws KenetreException {
+
+    int result = 0;
+
+    // Quality metrics
+    for (QMetric m : newMetrics(this.qualityReader, this.qualityByLane,
+        this.qualityByCycle)) {
+
+      final QualityStats lane = this.qualityByLane
+          .computeIfAbsent(m.getLaneNumber(), k -> new QualityStats());
+      final QualityStats cycle = this.qualityByCycle
+          .computeIfAbsent(m.getCycleNumber(), k -> new QualityStats());
+
+      final long[] scores = m.getClustersScore();
+      for (int i = 0; i < scores.length; i++) {
+        if (scores[i] != 0) {
+          lane.add(i + 1, scores[i]);
+          cycle.add(i + 1, scores[i]);
+        }
+      }
+      result++;
+    }
+
+    // Error metrics
+    for (ErrorMetric m : newMetrics(this.errorReader, this.errorRateByLane,
+        this.errorRateByCycle)) {
+
+      add(this.errorRateByLane, m.getLaneNumber(), m.getErrorRate());
+      add(this.errorRateByCycle, m.getCycleNumber(), m.getErrorRate());
+      result++;
+    }
+
+    // Extraction metrics
+    final Iterable<ExtractionMetric> extractionMetrics = newMetrics(
+        this.extractionReader, this.intensityByLane, this.intensityByCycle);
+    if (this.intensityByCycle.isEmpty()) {
+      this.lastExtractedCycle = 0;
+    }
+    for (ExtractionMetric m : extractionMetrics) {
+
+      add(this.intensityByLane, m.getLaneNumber(), m.getAverageIntensities());
+      add(this.intensityByCycle, m.getCycleNumber(),
+          m.getAverageIntensities());
+      this.lastExtractedCycle =
+          Math.max(this.lastExtractedCycle, m.getCycleNumber());
+      result++;
+    }
+
+    return result;
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Read the new records of a file. The aggregates of the file are cleared if
+   * the file has been read again from its start.
+   * @param reader the incremental reader of the file
+   * @param byLane the aggregates per lane of the file
+   * @param byCycle the aggregates per cycle of the file
+   * @param <M> type of the metrics
+   * @return the new records
+   * @throws KenetreException if an error occurs while reading the file
+   */
+  private static <M> Iterable<M> newMetrics(
+      final IncrementalMetricsReader<M> reader, final Map<Integer, ?> byLane,
+      final Map<Integer, ?> byCycle) throws KenetreException {
+
+    final Iterable<M> result = reader.readNewMetrics();
+
+    if (reader.isReset()) {
+      byLane.clear();
+      byCycle.clear();
+    }
+
+    return result;
+  }
+
+  private static void add(final Map<Integer, Mean> map, final int key,
+      final double value) {
+
+    map.computeIfAbsent(key, k -> new Mean()).add(value);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param dirPath path to the InterOp directory of the run
+   * @throws KenetreException if the path does not exists
+   */
+  public InterOpMonitor(final File dirPath) throws KenetreException {
+
+    this.qualityReader = IncrementalMetricsReader.newQMetricsReader(dirPath);
+    this.errorReader = IncrementalMetricsReader.newErrorMetricsReader(dirPath);
+    this.extractionReader =
+        IncrementalMetricsReader.newExtractionMetricsReader(dirPath);
+  }
+
+}
@@ -0,0 +1,200 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+
+/**
+ * This class define a columnar view of the records of a QMetricsOut.bin file.
+ * The histogram of the quality scores of each record only contains the bins
+ * of the file, so binned files use far less memory than with QMetric objects.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class QMetricsColumns extends AbstractMetricColumns {
+
+  private final int[] cycles;
+  private final int[] binScores;
+  private final int[] counts;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the cycle number of a record.
+   * @param index index of the record
+   * @return the cycle number of the record
+   */
+  public int getCycleNumber(final int index) {
+    return this.cycles[checkIndex(index)];
+  }
+
+  /**
+   * Get the number of bins of the quality score histograms.
+   * @return the number of bins of the quality score histograms
+   */
+  public int getBinCount() {
+    return this.binScores.length;
+  }
+
+  /**
+   * Get the quality score of a bin.
+   * @param bin index of the bin
+   * @return the quality score of the bin
+   */
+  public int getBinScore(final int bin) {
+    return this.binScores[bin];
+  }
+
+  /**
+   * Get the number of clusters of a bin for a record.
+   * @param index index of the record
+   * @param bin index of the bin
+   * @return the number of clusters of the bin
+   */
+  public long getClusterCount(final int index, final int bin) {
+
+    if (bin < 0 || bin >= this.binScores.length) {
+      throw new IndexOutOfBoundsException("Bin: " + bin);
+    }
+
+    return Integer.toUnsignedLong(
+        this.counts[checkIndex(index) * this.binScores.length + bin]);
+  }
+
+  //
+  // Aggregation methods
+  //
+
+  /**
+   * Get the quality statistics of each lane.
+   * @return a sorted map with the quality statistics of each lane
+   * @throws KenetreException if an error occurs while computing the statistics
+   */
+  public Map<Integer, QualityStats> statsByLane() throws KenetreException {
+
+    return aggregateByLane((lane, rows) -> {
+
+      final QualityStats result = new QualityStats();
+      for (int row : rows) {
+        addRow(result, row);
+      }
+
+      return result;
+    });
+  }
+
+  /**
+   * Get the quality statistics of each cycle for all the lanes.
+   * @return a sorted map with the quality statistics of each cycle
+   * @throws KenetreException if an error occurs while computing the statistics
+   */
+  public Map<Integer, QualityStats> statsByCycle() throws KenetreException {
+
+    return statsBy(row -> this.cycles[row]);
+  }
+
+  /**
+   * Get the quality statistics of each read for all the lanes.
+   * @param readCycleCounts the number of cycles of each read
+   * @return a sorted map with the quality statistics of each read
+   * @throws KenetreException if an error occurs while computing the statistics
+   */
+  public Map<Integer, QualityStats> statsByRead(final int... readCycleCounts)
+      throws KenetreException {
+
+    requireNonNull(readCycleCounts, "readCycleCounts argument cannot be null");
+
+    return statsBy(row -> readNumber(this.cycles[row], readCycleCounts));
+  }
+
+  /**
+   * Get the quality statistics for a key computed from each record. The
+   * records with a negative key are ignored.
+   * @param key function that compute the key of a record
+   * @return a sorted map with the quality statistics of each key
+   * @throws KenetreException if an error occurs while computing the statistics
+   */
+  private Map<Integer, QualityStats> statsBy(final IntUnaryOperator key)
+      throws KenetreException {
+
+    return merge(aggregateByLane((lane, rows) -> {
+
+      final Map<Integer, QualityStats> result = new HashMap<>();
+      for (int row : rows) {
+
+        final int k = key.applyAsInt(row);
+        if (k >= 0) {
+          addRow(result.computeIfAbsent(k, x -> new QualityStats()), row);
+        }
+      }
+
+      return result;
+    }).values(), QualityStats::merge);
+  }
+
+  private void addRow(final QualityStats stats, final int row) {
+
+    final int binCount = this.binScores.length;
+    final int offset = row * binCount;
+
+    for (int i = 0; i < binCount; i++) {
+      stats.add(this.binScores[i],
+          Integer.toUnsignedLong(this.counts[offset + i]));
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param version version of the format of the file
+   * @param size number of records
+   * @param lanes lane numbers of the records
+   * @param tiles tile numbers of the records
+   * @param cycles cycle numbers of the records
+   * @param binScores quality score of each bin
+   * @param counts number of clusters of each bin for each record, as unsigned
+   *          integers
+   */
+  QMetricsColumns(final int version, final int size, final int[] lanes,
+      final long[] tiles, final int[] cycles, final int[] binScores,
+      final int[] counts) {
+
+    super(version, size, lanes, tiles);
+    this.cycles = cycles;
+    this.binScores = binScores;
+    this.counts = counts;
+  }
+
+}
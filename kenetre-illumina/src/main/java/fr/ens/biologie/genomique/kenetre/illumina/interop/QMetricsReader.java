@@ -105,6 +105,57 @@ public class QMetricsReader extends AbstractBinaryFileReader<QMetric> {
     }
   }
 
+  /**
+   * Read the metrics in a columnar view. The records are decoded directly from
+   * the mapped file without creating a QMetric object for each record.
+   * @return a columnar view of the metrics
+   * @throws KenetreException if an error occurs while reading metrics
+   */
+  public QMetricsColumns readColumns() throws KenetreException {
+
+    final ByteBuffer buf = mapRecords();
+    final int version = getFileVersion();
+    final int recordSize = getExpectedRecordSize(version);
+    final int start = buf.position();
+    final int size = (buf.limit() - start) / recordSize;
+
+    // Only the bins are stored for binned files of version 6 and 7
+    final boolean binned =
+        (version == 6 || version == 7) && this.qualityScoreBinNumber > 0;
+    final int binCount = binned ? this.qualityScoreBinNumber : 50;
+    final int[] binScores = new int[binCount];
+    for (int i = 0; i < binCount; i++) {
+      binScores[i] = binned ? this.remappedScoreQuality[i] : i + 1;
+    }
+
+    final int tileSize = version == 7 ? 4 : 2;
+    final int[] lanes = new int[size];
+    final long[] tiles = new long[size];
+    final int[] cycles = new int[size];
+    final int[] counts = new int[Math.multiplyExact(size, binCount)];
+
+    int pos = start;
+    for (int i = 0; i < size; i++) {
+
+      lanes[i] = Short.toUnsignedInt(buf.getShort(pos));
+      tiles[i] = tileSize == 4
+          ? Integer.toUnsignedLong(buf.getInt(pos + 2))
+          : Short.toUnsignedInt(buf.getShort(pos + 2));
+      cycles[i] = Short.toUnsignedInt(buf.getShort(pos + 2 + tileSize));
+
+      final int countsPos = pos + 4 + tileSize;
+      final int offset = i * binCount;
+      for (int j = 0; j < binCount; j++) {
+        counts[offset + j] = buf.getInt(countsPos + 4 * j);
+      }
+
+      pos += recordSize;
+    }
+
+    return new QMetricsColumns(version, size, lanes, tiles, cycles, binScores,
+        counts);
+  }
+
   @Override
   protected void readOptionalFlag(ByteBuffer bb, int version) {
 
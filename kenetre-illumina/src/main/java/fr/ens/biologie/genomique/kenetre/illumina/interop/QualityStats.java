@@ -0,0 +1,127 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+/**
+ * This class define quality statistics computed from the histograms of the
+ * quality scores of QMetricsOut.bin file.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public final class QualityStats {
+
+  private long baseCount;
+  private long q30BaseCount;
+  private long qualitySum;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of bases.
+   * @return the number of bases
+   */
+  public long getBaseCount() {
+    return this.baseCount;
+  }
+
+  /**
+   * Get the number of bases with a quality score greater or equals to 30.
+   * @return the number of bases with a quality score greater or equals to 30
+   */
+  public long getQ30BaseCount() {
+    return this.q30BaseCount;
+  }
+
+  /**
+   * Get the percent of bases with a quality score greater or equals to 30.
+   * @return the percent of bases with a quality score greater or equals to 30
+   *         or NaN if there is no base
+   */
+  public double getQ30Percent() {
+
+    if (this.baseCount == 0) {
+      return Double.NaN;
+    }
+
+    return 100.0 * this.q30BaseCount / this.baseCount;
+  }
+
+  /**
+   * Get the mean quality score.
+   * @return the mean quality score or NaN if there is no base
+   */
+  public double getMeanQuality() {
+
+    if (this.baseCount == 0) {
+      return Double.NaN;
+    }
+
+    return (double) this.qualitySum / this.baseCount;
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Add bases to the statistics.
+   * @param score quality score of the bases
+   * @param count number of bases
+   */
+  void add(final int score, final long count) {
+
+    this.baseCount += count;
+    this.qualitySum += score * count;
+    if (score >= 30) {
+      this.q30BaseCount += count;
+    }
+  }
+
+  /**
+   * Merge two statistics.
+   * @param s1 first statistics
+   * @param s2 second statistics
+   * @return a new object with the merged statistics
+   */
+  static QualityStats merge(final QualityStats s1, final QualityStats s2) {
+
+    final QualityStats result = new QualityStats();
+    result.baseCount = s1.baseCount + s2.baseCount;
+    result.q30BaseCount = s1.q30BaseCount + s2.q30BaseCount;
+    result.qualitySum = s1.qualitySum + s2.qualitySum;
+
+    return result;
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{baseCount=" + this.baseCount + ", q30BaseCount="
+        + this.q30BaseCount + ", meanQuality=" + getMeanQuality() + "}";
+  }
+
+}
@@ -18,10 +18,10 @@ import java.util.List;
 @SuppressWarnings("unused")
 public class TileMetric extends Metric {
 
-  private static final int CLUSTER_DENSITY = 100;
-  private static final int CLUSTER_DENSITY_PF = 101;
-  private static final int CLUSTER_COUNT = 102;
-  private static final int CLUSTER_COUNT_PF = 103;
+  static final int CLUSTER_DENSITY = 100;
+  static final int CLUSTER_DENSITY_PF = 101;
+  static final int CLUSTER_COUNT = 102;
+  static final int CLUSTER_COUNT_PF = 103;
   private static final int PHASING = 200;
 
   private static final int PREFPHASING = 201;
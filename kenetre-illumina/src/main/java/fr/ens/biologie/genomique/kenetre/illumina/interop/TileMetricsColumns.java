@@ -0,0 +1,186 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later 
+ * and CeCILL. This should be distributed with the code. If you 
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+import java.util.Map;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+
+/**
+ * This class define a columnar view of the tiles of a TileMetricsOut.bin file.
+ * Unlike the other columnar views, there is one row per tile as the file
+ * contains several records for each tile.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class TileMetricsColumns extends AbstractMetricColumns {
+
+  private final float[] clusterCounts;
+  private final float[] clusterCountsPF;
+  private final float[] clusterDensities;
+  private final float[] clusterDensitiesPF;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the cluster count of a tile.
+   * @param index index of the tile
+   * @return the cluster count of the tile
+   */
+  public float getClusterCount(final int index) {
+    return this.clusterCounts[checkIndex(index)];
+  }
+
+  /**
+   * Get the cluster count PF of a tile.
+   * @param index index of the tile
+   * @return the cluster count PF of the tile
+   */
+  public float getClusterCountPF(final int index) {
+    return this.clusterCountsPF[checkIndex(index)];
+  }
+
+  /**
+   * Get the cluster density of a tile.
+   * @param index index of the tile
+   * @return the cluster density of the tile
+   */
+  public float getClusterDensity(final int index) {
+    return this.clusterDensities[checkIndex(index)];
+  }
+
+  /**
+   * Get the cluster density PF of a tile.
+   * @param index index of the tile
+   * @return the cluster density PF of the tile
+   */
+  public float getClusterDensityPF(final int index) {
+    return this.clusterDensitiesPF[checkIndex(index)];
+  }
+
+  //
+  // Aggregation methods
+  //
+
+  /**
+   * Get the mean cluster density of the tiles of each lane.
+   * @return a sorted map with the mean cluster density of each lane
+   * @throws KenetreException if an error occurs while computing the densities
+   */
+  public Map<Integer, Double> clusterDensityByLane() throws KenetreException {
+
+    return meanByLane(this.clusterDensities);
+  }
+
+  /**
+   * Get the mean cluster density PF of the tiles of each lane.
+   * @return a sorted map with the mean cluster density PF of each lane
+   * @throws KenetreException if an error occurs while computing the densities
+   */
+  public Map<Integer, Double> clusterDensityPFByLane()
+      throws KenetreException {
+
+    return meanByLane(this.clusterDensitiesPF);
+  }
+
+  /**
+   * Get the number of clusters of each lane.
+   * @return a sorted map with the number of clusters of each lane
+   * @throws KenetreException if an error occurs while computing the counts
+   */
+  public Map<Integer, Long> clusterCountByLane() throws KenetreException {
+
+    return sumByLane(this.clusterCounts);
+  }
+
+  /**
+   * Get the number of clusters PF of each lane.
+   * @return a sorted map with the number of clusters PF of each lane
+   * @throws KenetreException if an error occurs while computing the counts
+   */
+  public Map<Integer, Long> clusterCountPFByLane() throws KenetreException {
+
+    return sumByLane(this.clusterCountsPF);
+  }
+
+  private Map<Integer, Double> meanByLane(final float[] values)
+      throws KenetreException {
+
+    return means(aggregateByLane((lane, rows) -> {
+
+      final Mean result = new Mean();
+      for (int row : rows) {
+        result.add(values[row]);
+      }
+
+      return result;
+    }));
+  }
+
+  private Map<Integer, Long> sumByLane(final float[] values)
+      throws KenetreException {
+
+    return aggregateByLane((lane, rows) -> {
+
+      double result = 0;
+      for (int row : rows) {
+        if (!Float.isNaN(values[row])) {
+          result += values[row];
+        }
+      }
+
+      return Math.round(result);
+    });
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param version version of the format of the file
+   * @param size number of tiles
+   * @param lanes lane numbers of the tiles
+   * @param tiles tile numbers of the tiles
+   * @param clusterCounts cluster counts of the tiles
+   * @param clusterCountsPF cluster counts PF of the tiles
+   * @param clusterDensities cluster densities of the tiles
+   * @param clusterDensitiesPF cluster densities PF of the tiles
+   */
+  TileMetricsColumns(final int version, final int size, final int[] lanes,
+      final long[] tiles, final float[] clusterCounts,
+      final float[] clusterCountsPF, final float[] clusterDensities,
+      final float[] clusterDensitiesPF) {
+
+    super(version, size, lanes, tiles);
+    this.clusterCounts = clusterCounts;
+    this.clusterCountsPF = clusterCountsPF;
+    this.clusterDensities = clusterDensities;
+    this.clusterDensitiesPF = clusterDensitiesPF;
+  }
+
+}
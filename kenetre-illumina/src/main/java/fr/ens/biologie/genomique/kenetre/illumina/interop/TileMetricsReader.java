@@ -86,6 +86,100 @@ public class TileMetricsReader extends AbstractBinaryFileReader<TileMetric> {
     }
   }
 
+  /**
+   * Read the metrics in a columnar view. The records are decoded directly from
+   * the mapped file without creating a TileMetric object for each tile.
+   * @return a columnar view of the metrics
+   * @throws KenetreException if an error occurs while reading metrics
+   */
+  public TileMetricsColumns readColumns() throws KenetreException {
+
+    final ByteBuffer buf = mapRecords();
+    final int version = getFileVersion();
+    final int recordSize = getExpectedRecordSize(version);
+    final int start = buf.position();
+    final int count = (buf.limit() - start) / recordSize;
+
+    final Map<Long, Integer> rows = new HashMap<>();
+    int capacity = 1024;
+    int[] lanes = new int[capacity];
+    long[] tiles = new long[capacity];
+    float[] clusterCounts = new float[capacity];
+    float[] clusterCountsPF = new float[capacity];
+    float[] densities = new float[capacity];
+    float[] densitiesPF = new float[capacity];
+
+    int pos = start;
+    for (int i = 0; i < count; i++, pos += recordSize) {
+
+      final int lane = Short.toUnsignedInt(buf.getShort(pos));
+      final long tile = version == 2
+          ? Short.toUnsignedInt(buf.getShort(pos + 2))
+          : Integer.toUnsignedLong(buf.getInt(pos + 2));
+
+      // Get the row of the tile
+      Integer row = rows.get((long) lane << 32 | tile);
+      if (row == null) {
+
+        row = rows.size();
+        rows.put((long) lane << 32 | tile, row);
+
+        if (row == capacity) {
+          capacity *= 2;
+          lanes = Arrays.copyOf(lanes, capacity);
+          tiles = Arrays.copyOf(tiles, capacity);
+          clusterCounts = Arrays.copyOf(clusterCounts, capacity);
+          clusterCountsPF = Arrays.copyOf(clusterCountsPF, capacity);
+          densities = Arrays.copyOf(densities, capacity);
+          densitiesPF = Arrays.copyOf(densitiesPF, capacity);
+        }
+
+        lanes[row] = lane;
+        tiles[row] = tile;
+      }
+
+      if (version == 2) {
+
+        final float value = buf.getFloat(pos + 6);
+
+        switch (Short.toUnsignedInt(buf.getShort(pos + 4))) {
+
+        case TileMetric.CLUSTER_DENSITY:
+          densities[row] = value;
+          break;
+        case TileMetric.CLUSTER_DENSITY_PF:
+          densitiesPF[row] = value;
+          break;
+        case TileMetric.CLUSTER_COUNT:
+          clusterCounts[row] = value;
+          break;
+        case TileMetric.CLUSTER_COUNT_PF:
+          clusterCountsPF[row] = value;
+          break;
+
+        default:
+          break;
+        }
+
+      } else if (Byte.toUnsignedInt(buf.get(pos + 6)) == 't') {
+
+        clusterCounts[row] = buf.getFloat(pos + 7);
+        clusterCountsPF[row] = buf.getFloat(pos + 11);
+
+        if (this.density == 0 || Float.isNaN(this.density)) {
+          densities[row] = Float.NaN;
+          densitiesPF[row] = Float.NaN;
+        } else {
+          densities[row] = clusterCounts[row] / this.density;
+          densitiesPF[row] = clusterCountsPF[row] / this.density;
+        }
+      }
+    }
+
+    return new TileMetricsColumns(version, rows.size(), lanes, tiles,
+        clusterCounts, clusterCountsPF, densities, densitiesPF);
+  }
+
   @Override
   protected void readMetricRecord(List<TileMetric> collection, ByteBuffer bb,
       int version) {
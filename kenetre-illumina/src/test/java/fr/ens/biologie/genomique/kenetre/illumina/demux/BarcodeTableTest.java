@@ -0,0 +1,184 @@
+package fr.ens.biologie.genomique.kenetre.illumina.demux;
+
+import static fr.ens.biologie.genomique.kenetre.illumina.demux.BarcodeTable.UNDETERMINED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.Sample;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.SampleSheet;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.TableSection;
+
+public class BarcodeTableTest {
+
+  @Test
+  public void testTwoMismatches() throws KenetreException {
+
+    // The indexes are at a distance of 5
+    final BarcodeTable table = new BarcodeTable(
+        createSampleSheet("AAAAAAAA", null, "AAACCCCC", null), 1, 2, 0);
+
+    assertFalse(table.isDualIndexed());
+    assertEquals(2, table.getIndex1Mismatches());
+    assertEquals(0, lookup(table, "AAAAAAAA"));
+    assertEquals(1, lookup(table, "AAACCCCC"));
+
+    // One and two mismatches
+    assertEquals(0, lookup(table, "AAAAAAAC"));
+    assertEquals(0, lookup(table, "AAAAAACC"));
+    assertEquals(0, lookup(table, "NNAAAAAA"));
+    assertEquals(1, lookup(table, "AAAAACCC"));
+    assertEquals(1, lookup(table, "TAACCCCG"));
+
+    // Three mismatches
+    assertEquals(UNDETERMINED, lookup(table, "AAAAAGGG"));
+    assertEquals(UNDETERMINED, lookup(table, "NNNAAAAA"));
+    assertEquals(UNDETERMINED, lookup(table, "GGGGGGGG"));
+  }
+
+  @Test
+  public void testTwoMismatchesCollision() throws KenetreException {
+
+    // The indexes are at a distance of 4, a barcode can be at a distance of 2
+    // of both indexes
+    assertCollision(createSampleSheet("AAAAAAAA", null, "AAAACCCC", null), 2,
+        0);
+
+    // With one mismatch there is no collision
+    final BarcodeTable table = new BarcodeTable(
+        createSampleSheet("AAAAAAAA", null, "AAAACCCC", null), 1, 1, 0);
+    assertEquals(UNDETERMINED, lookup(table, "AAAAAACC"));
+    assertEquals(1, lookup(table, "AAAACCCA"));
+  }
+
+  @Test
+  public void testDualIndexCollision() throws KenetreException {
+
+    // Same first index, second indexes at a distance of 2
+    assertCollision(createSampleSheet("AAAAAAAA", "CCCCCC", "AAAAAAAA",
+        "CCCCGG"), 1, 1);
+
+    // First indexes at a distance of 2 and second indexes at a distance of 2
+    assertCollision(createSampleSheet("AAAAAAAA", "CCCCCC", "AAAAAAGG",
+        "CCCCGG"), 1, 1);
+
+    // Same indexes without mismatches
+    assertCollision(createSampleSheet("AAAAAAAA", "CCCCCC", "AAAAAAAA",
+        "CCCCCC"), 0, 0);
+
+    // Same first index, second indexes at a distance of 3
+    BarcodeTable table = new BarcodeTable(
+        createSampleSheet("AAAAAAAA", "CCCCCC", "AAAAAAAA", "CCCGGG"), 1, 1,
+        1);
+
+    assertTrue(table.isDualIndexed());
+    assertEquals(0, lookup(table, "AAAAAAAT+CCCCCA"));
+    assertEquals(1, lookup(table, "AAAAAAAT+CCCGGT"));
+    assertEquals(UNDETERMINED, lookup(table, "AAAAAAAT+CCCCGA"));
+    assertEquals(UNDETERMINED, lookup(table, "AAAAAATT+CCCGGG"));
+
+    // First indexes at a distance of 2, the second index is used to select
+    // the sample
+    table = new BarcodeTable(
+        createSampleSheet("AAAAAAAA", "CCCCCC", "AAAAAAGG", "GGGGGG"), 1, 1,
+        1);
+
+    assertEquals(0, lookup(table, "AAAAAAAG+CCCCCC"));
+    assertEquals(1, lookup(table, "AAAAAAAG+GGGGGG"));
+    assertEquals(1, lookup(table, "AAAAAAAG+GGGGGA"));
+    assertEquals(UNDETERMINED, lookup(table, "AAAAAAAG+CCCGGG"));
+
+    // Without mismatches only the perfect matches are found
+    table = new BarcodeTable(
+        createSampleSheet("AAAAAAAA", "CCCCCC", "AAAAAAAA", "CCCCCG"), 1, 0,
+        0);
+
+    assertEquals(0, lookup(table, "AAAAAAAA+CCCCCC"));
+    assertEquals(1, lookup(table, "AAAAAAAA+CCCCCG"));
+    assertEquals(UNDETERMINED, lookup(table, "AAAAAAAA+CCCCCA"));
+    assertEquals(UNDETERMINED, lookup(table, "AAAAAAAT+CCCCCC"));
+  }
+
+  @Test
+  public void testLookupReadId() throws KenetreException {
+
+    final BarcodeTable table = new BarcodeTable(
+        createSampleSheet("AAAAAAAA", null, "AAACCCCC", null), 1, 1, 0);
+
+    assertEquals(0,
+        table.lookupReadId("HWUSI-EAS100R:6:73:941:1973#AAAAAAAA/1"));
+    assertEquals(1,
+        table.lookupReadId("HWUSI-EAS100R:6:73:941:1973#AAACCCCA/1"));
+    assertEquals(UNDETERMINED,
+        table.lookupReadId("HWUSI-EAS100R:6:73:941:1973#0/1"));
+
+    // Not valid Illumina ids
+    assertEquals(UNDETERMINED,
+        table.lookupReadId("HWUSI-EAS100R:6:73:941:1973#AAAAAAAN/1"));
+    assertEquals(UNDETERMINED,
+        table.lookupReadId("M1:1:FC:1:1:1:1 1:N:0:AAAAAAAA:1"));
+    assertEquals(UNDETERMINED, table.lookupReadId("M1:1:FC:1:1:1:1"));
+  }
+
+  @Test
+  public void testInvalidMismatches() throws KenetreException {
+
+    try {
+      new BarcodeTable(createSampleSheet("AAAAAAAA", null, "CCCCCCCC", null),
+          1, 3, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected exception
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static void assertCollision(final SampleSheet samplesheet,
+      final int index1Mismatches, final int index2Mismatches) {
+
+    try {
+      new BarcodeTable(samplesheet, 1, index1Mismatches, index2Mismatches);
+      fail();
+    } catch (KenetreException e) {
+      assertTrue(e.getMessage().startsWith("Barcode collision"));
+    }
+  }
+
+  private static SampleSheet createSampleSheet(final String index1a,
+      final String index2a, final String index1b, final String index2b) {
+
+    final SampleSheet result = new SampleSheet();
+    final TableSection section =
+        result.addTableSection(SampleSheet.BCL2FASTQ_DEMUX_TABLE_NAME);
+
+    addSample(section, "Sample1", index1a, index2a);
+    addSample(section, "Sample2", index1b, index2b);
+
+    return result;
+  }
+
+  private static void addSample(final TableSection section, final String id,
+      final String index1, final String index2) {
+
+    final Sample sample = section.addSample();
+    sample.setLane(1);
+    sample.setSampleId(id);
+    sample.setIndex1(index1);
+    if (index2 != null) {
+      sample.setIndex2(index2);
+    }
+  }
+
+  private static int lookup(final BarcodeTable table, final String barcode) {
+
+    return table.lookupReadId("M1:1:FC:1:1:1:1 1:N:0:" + barcode);
+  }
+
+}
@@ -0,0 +1,423 @@
+package fr.ens.biologie.genomique.kenetre.illumina.demux;
+
+import static fr.ens.biologie.genomique.kenetre.illumina.demux.BarcodeTable.UNDETERMINED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.Sample;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.SampleSheet;
+import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.TableSection;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+
+public class FastqDemultiplexerTest {
+
+  private static final String GROUP = "demux";
+
+  @Test
+  public void testLookup() throws KenetreException {
+
+    final BarcodeTable table = new BarcodeTable(
+        createSampleSheet("ACGTACGT", "TTGGCCAA", "CATGCATG", "GGAACCTT"), 1,
+        1, 1);
+
+    assertTrue(table.isDualIndexed());
+    assertEquals(0, lookup(table, "ACGTACGT+TTGGCCAA"));
+    assertEquals(1, lookup(table, "CATGCATG+GGAACCTT"));
+
+    // One mismatch in each index
+    assertEquals(0, lookup(table, "ACGTACGA+TTGGCCAN"));
+    assertEquals(1, lookup(table, "CATGNATG+GGAACGTT"));
+
+    // Two mismatches in an index
+    assertEquals(UNDETERMINED, lookup(table, "ACGTACAA+TTGGCCAA"));
+    assertEquals(UNDETERMINED, lookup(table, "ACGTACGT+CATGCATG"));
+
+    // Longer barcodes and missing index
+    assertEquals(0, lookup(table, "ACGTACGTAC+TTGGCCAAGG"));
+    assertEquals(UNDETERMINED, lookup(table, "ACGTACGT"));
+    assertEquals(UNDETERMINED, table.lookupReadId("M1:1:FC:1:1:1:1 1:N:0:1"));
+
+    final String id = "M1:1:FC:1:1:1:1 1:N:0:ACGTACGT+TTGGCCAA";
+    assertTrue(table.isPerfectMatch(0, id));
+    assertFalse(table.isPerfectMatch(0, id.replace("CCAA", "CCAT")));
+  }
+
+  @Test(expected = KenetreException.class)
+  public void testCollision() throws KenetreException {
+
+    // The first indexes are at a distance of 2
+    new BarcodeTable(createSampleSheet("ACGTACGT", null, "ACGTACCA", null), 1,
+        1, 1);
+  }
+
+  @Test
+  public void testNoCollisionWithoutMismatches() throws KenetreException {
+
+    final BarcodeTable table = new BarcodeTable(
+        createSampleSheet("ACGTACGT", null, "ACGTACCA", null), 1, 0, 0);
+
+    assertEquals(0, lookup(table, "ACGTACGT"));
+    assertEquals(UNDETERMINED, lookup(table, "ACGTACGA"));
+  }
+
+  @Test
+  public void testDemultiplex()
+      throws KenetreException, IOException, BadBioEntryException {
+
+    final SampleSheet samplesheet =
+        createSampleSheet("ACGTACGT", "TTGGCCAA", "CATGCATG", "GGAACCTT");
+    final File dir = Files.createTempDirectory("demux").toFile();
+
+    try {
+      final File fastq1 = new File(dir, "input_R1.fastq");
+      final File fastq2 = new File(dir, "input_R2.fastq");
+      final String[] barcodes = {"ACGTACGT+TTGGCCAA", "CATGCATG+GGAACCTT",
+          "ACGTACGA+TTGGCCAA", "AAAAAAAA+CCCCCCCC"};
+
+      final StringBuilder[] expected1 = new StringBuilder[3];
+      final StringBuilder[] expected2 = new StringBuilder[3];
+      for (int i = 0; i < 3; i++) {
+        expected1[i] = new StringBuilder();
+        expected2[i] = new StringBuilder();
+      }
+
+      try (Writer w1 = Files.newBufferedWriter(fastq1.toPath());
+          Writer w2 = Files.newBufferedWriter(fastq2.toPath())) {
+
+        for (int i = 0; i < 1000; i++) {
+
+          final int b = i % barcodes.length;
+          final int sample = b == 3 ? 2 : b == 2 ? 0 : b;
+          final String read1 = entry(i, 1, barcodes[b]);
+          final String read2 = entry(i, 2, barcodes[b]);
+          w1.write(read1);
+          w2.write(read2);
+          expected1[sample].append(read1);
+          expected2[sample].append(read2);
+        }
+      }
+
+      final LocalReporter reporter = new LocalReporter();
+      final FastqDemultiplexer demux = new FastqDemultiplexer(
+          new BarcodeTable(samplesheet, 1, 1, 1), dir, reporter, GROUP);
+      demux.setThreads(3);
+      demux.setBatchSize(7);
+      demux.demultiplex(fastq1, fastq2);
+
+      for (int i = 0; i < 3; i++) {
+
+        final int sampleIndex = i == 2 ? UNDETERMINED : i;
+        assertEquals(expected1[i].toString(),
+            readGZip(demux.getOutputFile(sampleIndex, 1)));
+        assertEquals(expected2[i].toString(),
+            readGZip(demux.getOutputFile(sampleIndex, 2)));
+      }
+
+      assertEquals("Sample1_S1_L001_R1_001.fastq.gz",
+          demux.getOutputFile(0, 1).getName());
+      assertEquals("Undetermined_S0_L001_R2_001.fastq.gz",
+          demux.getOutputFile(UNDETERMINED, 2).getName());
+
+      assertEquals(1000,
+          reporter.getCounterValue(GROUP,
+              FastqDemultiplexer.INPUT_READS_COUNTER));
+      assertEquals(250,
+          reporter.getCounterValue(GROUP,
+              FastqDemultiplexer.UNDETERMINED_READS_COUNTER));
+      assertEquals(500, reporter.getCounterValue(GROUP, "Sample1 reads"));
+      assertEquals(250,
+          reporter.getCounterValue(GROUP, "Sample1 perfect index reads"));
+      assertEquals(250, reporter.getCounterValue(GROUP, "Sample2 reads"));
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testInlineBarcodes()
+      throws KenetreException, IOException, BadBioEntryException {
+
+    final SampleSheet samplesheet =
+        createSampleSheet("ACGTAC", null, "CATGCA", null);
+    final File dir = Files.createTempDirectory("demux").toFile();
+
+    try {
+      final File fastq = new File(dir, "input.fastq");
+
+      try (OutputStream os = new java.io.FileOutputStream(fastq)) {
+        os.write(("@r1\nACGTACGGGG\n+\nABCDEFGHIJ\n"
+            + "@r2\nCATGCTTTTT\n+\nABCDEFGHIJ\n"
+            + "@r3\nGGGGGGAAAA\n+\nABCDEFGHIJ\n")
+                .getBytes(StandardCharsets.US_ASCII));
+      }
+
+      final FastqDemultiplexer demux = new FastqDemultiplexer(
+          new BarcodeTable(samplesheet, 0, 1, 0), dir, new LocalReporter(),
+          GROUP);
+      demux.setInlineBarcodes(true);
+      demux.setCompressOutput(false);
+      demux.demultiplex(fastq);
+
+      assertEquals("@r1\nGGGG\n+\nGHIJ\n",
+          read(new FileInputStream(demux.getOutputFile(0, 1))));
+      assertEquals("@r2\nTTTT\n+\nGHIJ\n",
+          read(new FileInputStream(demux.getOutputFile(1, 1))));
+      assertEquals("@r3\nAAAA\n+\nGHIJ\n",
+          read(new FileInputStream(demux.getOutputFile(UNDETERMINED, 1))));
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testCompression() throws KenetreException, IOException,
+      BadBioEntryException, DataFormatException {
+
+    final SampleSheet samplesheet =
+        createSampleSheet("ACGTACGT", null, "CATGCATG", null);
+    final File dir = Files.createTempDirectory("demux").toFile();
+
+    try {
+      final File fastq = new File(dir, "input.fastq");
+      final String[] barcodes = {"ACGTACGT", "CATGCATG", "AAAAAAAA"};
+      final Random random = new Random(0);
+      final StringBuilder[] expected = new StringBuilder[3];
+      for (int i = 0; i < 3; i++) {
+        expected[i] = new StringBuilder();
+      }
+
+      try (Writer w = Files.newBufferedWriter(fastq.toPath())) {
+
+        for (int i = 0; i < 20000; i++) {
+
+          final int b = random.nextInt(barcodes.length);
+          final String read = "@M1:1:FC:1:1:" + i + ":1 1:N:0:" + barcodes[b]
+              + '\n' + random(random, "ACGT", 100) + "\n+\n"
+              + random(random, "FFFF:,", 100) + '\n';
+          w.write(read);
+          expected[b].append(read);
+        }
+      }
+
+      final FastqDemultiplexer demux = new FastqDemultiplexer(
+          new BarcodeTable(samplesheet, 1, 1, 0), dir, new LocalReporter(),
+          GROUP);
+      demux.setThreads(4);
+      demux.setBatchSize(1000);
+      demux.demultiplex(fastq);
+
+      for (int i = 0; i < 3; i++) {
+
+        final File file = demux.getOutputFile(i == 2 ? UNDETERMINED : i, 1);
+        final byte[] data = Files.readAllBytes(file.toPath());
+        final byte[] content =
+            expected[i].toString().getBytes(StandardCharsets.US_ASCII);
+
+        // The output file must be a single GZip member
+        assertEquals(1, gzipMemberCount(data));
+        assertEquals(expected[i].toString(), readGZip(file));
+
+        // The compression ratio must be close to a single threaded compression
+        final ByteArrayOutputStream reference = new ByteArrayOutputStream();
+        try (OutputStream os = new GZIPOutputStream(reference)) {
+          os.write(content);
+        }
+        assertTrue(data.length < 1.02 * reference.size());
+      }
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testEmptyOutput()
+      throws KenetreException, IOException, BadBioEntryException {
+
+    final SampleSheet samplesheet =
+        createSampleSheet("ACGTACGT", null, "CATGCATG", null);
+    final File dir = Files.createTempDirectory("demux").toFile();
+
+    try {
+      final File fastq = new File(dir, "input.fastq");
+
+      try (Writer w = Files.newBufferedWriter(fastq.toPath())) {
+        w.write(entry(0, 1, "ACGTACGT"));
+      }
+
+      final FastqDemultiplexer demux = new FastqDemultiplexer(
+          new BarcodeTable(samplesheet, 1, 1, 0), dir, new LocalReporter(),
+          GROUP);
+      demux.demultiplex(fastq);
+
+      assertEquals(entry(0, 1, "ACGTACGT"),
+          readGZip(demux.getOutputFile(0, 1)));
+      assertEquals("", readGZip(demux.getOutputFile(1, 1)));
+      assertEquals("", readGZip(demux.getOutputFile(UNDETERMINED, 1)));
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testNonASCIIReadName() throws KenetreException, IOException {
+
+    final SampleSheet samplesheet =
+        createSampleSheet("ACGTAC", null, "CATGCA", null);
+    final File dir = Files.createTempDirectory("demux").toFile();
+
+    try {
+      final File fastq = new File(dir, "input.fastq");
+
+      try (OutputStream os = new java.io.FileOutputStream(fastq)) {
+        os.write(("@r1\nACGTACGGGG\n+\nABCDEFGHIJ\n"
+            + "@r\u00e92\nCATGCTTTTT\n+\nABCDEFGHIJ\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+      }
+
+      final FastqDemultiplexer demux = new FastqDemultiplexer(
+          new BarcodeTable(samplesheet, 0, 1, 0), dir, new LocalReporter(),
+          GROUP);
+      demux.setInlineBarcodes(true);
+
+      try {
+        demux.demultiplex(fastq);
+        fail("BadBioEntryException expected");
+      } catch (BadBioEntryException e) {
+        assertEquals("r\u00e92", e.getEntry());
+      }
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static SampleSheet createSampleSheet(final String index1a,
+      final String index2a, final String index1b, final String index2b) {
+
+    final SampleSheet result = new SampleSheet();
+    final TableSection section =
+        result.addTableSection(SampleSheet.BCL2FASTQ_DEMUX_TABLE_NAME);
+
+    addSample(section, "Sample1", index1a, index2a);
+    addSample(section, "Sample2", index1b, index2b);
+
+    return result;
+  }
+
+  private static void addSample(final TableSection section, final String id,
+      final String index1, final String index2) {
+
+    final Sample sample = section.addSample();
+    sample.setLane(1);
+    sample.setSampleId(id);
+    sample.setIndex1(index1);
+    if (index2 != null) {
+      sample.setIndex2(index2);
+    }
+  }
+
+  private static int lookup(final BarcodeTable table, final String barcode) {
+
+    return table.lookupReadId("M1:1:FC:1:1:1:1 1:N:0:" + barcode);
+  }
+
+  private static String entry(final int i, final int read,
+      final String barcode) {
+
+    return "@M1:1:FC:1:1:" + i + ":1 " + read + ":N:0:" + barcode + '\n'
+        + "ACGT".substring(i % 4) + "\n+\n" + "IIII".substring(i % 4) + '\n';
+  }
+
+  private static String random(final Random random, final String alphabet,
+      final int length) {
+
+    final StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+
+    return sb.toString();
+  }
+
+  private static int gzipMemberCount(final byte[] data)
+      throws DataFormatException {
+
+    int count = 0;
+    int offset = 0;
+
+    while (offset < data.length) {
+
+      // Skip the 10 bytes header without optional fields
+      assertEquals(0x1f, data[offset] & 0xff);
+      assertEquals(0x8b, data[offset + 1] & 0xff);
+      assertEquals(0, data[offset + 3]);
+
+      final Inflater inflater = new Inflater(true);
+      inflater.setInput(data, offset + 10, data.length - offset - 10);
+      final byte[] buffer = new byte[65536];
+      while (!inflater.finished()) {
+        inflater.inflate(buffer);
+      }
+
+      // Skip the 8 bytes trailer
+      offset = data.length - inflater.getRemaining() + 8;
+      inflater.end();
+      count++;
+    }
+
+    return count;
+  }
+
+  private static String readGZip(final File file) throws IOException {
+
+    return read(new GZIPInputStream(new FileInputStream(file)));
+  }
+
+  private static String read(final InputStream is) throws IOException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (InputStream in = is) {
+      in.transferTo(baos);
+    }
+
+    return baos.toString(StandardCharsets.US_ASCII.name());
+  }
+
+  private static void deleteDirectory(final File dir) {
+
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+}
@@ -0,0 +1,177 @@
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+
+public class IncrementalMetricsReaderTest {
+
+  private static final String RUN = "NextSeq2000_SR100";
+
+  @Test
+  public void testReadNewMetrics()
+      throws URISyntaxException, KenetreException, IOException {
+
+    final byte[] data = readResource(ErrorMetricsReader.ERROR_METRICS_FILE);
+    final File dir = Files.createTempDirectory("interop").toFile();
+    final File file = new File(dir, ErrorMetricsReader.ERROR_METRICS_FILE);
+
+    try {
+
+      final IncrementalMetricsReader<ErrorMetric> reader =
+          IncrementalMetricsReader.newErrorMetricsReader(dir);
+
+      // The file does not exist yet
+      assertTrue(reader.readNewMetrics().isEmpty());
+
+      // Write the file in several parts, records may be incomplete
+      final List<String> result = new ArrayList<>();
+      int written = 0;
+      for (int end : new int[] {data.length / 3, data.length / 3 + 7,
+          data.length - 1, data.length}) {
+
+        write(file, data, written, end, true);
+        written = end;
+
+        final long offset = reader.getOffset();
+        for (ErrorMetric m : reader.readNewMetrics()) {
+          result.add(m.toCSV());
+        }
+        assertFalse(reader.isReset());
+        assertTrue(reader.getOffset() >= offset);
+        assertTrue(reader.getOffset() <= written);
+      }
+
+      assertEquals(data.length, reader.getOffset());
+      assertEquals(toCSV(new ErrorMetricsReader(dir).readMetrics()), result);
+      assertTrue(reader.readNewMetrics().isEmpty());
+
+      // A truncated file is read again from its start
+      write(file, data, 0, data.length / 2, false);
+      final List<ErrorMetric> metrics = reader.readNewMetrics();
+      assertTrue(reader.isReset());
+      assertEquals(reader.getRecordCount(), metrics.size());
+
+    } finally {
+      file.delete();
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testMonitor()
+      throws URISyntaxException, KenetreException, IOException {
+
+    final File dir = Files.createTempDirectory("interop").toFile();
+    final String[] filenames = {QMetricsReader.QUALITY_METRICS_FILE,
+        ErrorMetricsReader.ERROR_METRICS_FILE,
+        ExtractionMetricsReader.EXTRACTION_METRICS_FILE};
+
+    try {
+
+      final InterOpMonitor monitor = new InterOpMonitor(dir);
+      assertEquals(0, monitor.update());
+
+      // Copy half of the files, then the remaining data
+      for (String filename : filenames) {
+        final byte[] data = readResource(filename);
+        write(new File(dir, filename), data, 0, data.length / 2, false);
+      }
+      final int firstCount = monitor.update();
+      assertTrue(firstCount > 0);
+
+      for (String filename : filenames) {
+        final byte[] data = readResource(filename);
+        write(new File(dir, filename), data, data.length / 2, data.length,
+            true);
+      }
+      final int secondCount = monitor.update();
+
+      final QMetricsColumns quality = new QMetricsReader(dir).readColumns();
+      final ErrorMetricsColumns errors =
+          new ErrorMetricsReader(dir).readColumns();
+      final int extractionCount =
+          new ExtractionMetricsReader(dir).readMetrics().size();
+
+      assertEquals(quality.size() + errors.size() + extractionCount,
+          firstCount + secondCount);
+
+      final Map<Integer, QualityStats> expected = quality.statsByLane();
+      assertEquals(expected.keySet(), monitor.getQualityStatsByLane().keySet());
+      for (Map.Entry<Integer, QualityStats> e : expected.entrySet()) {
+        final QualityStats s = monitor.getQualityStatsByLane().get(e.getKey());
+        assertEquals(e.getValue().getBaseCount(), s.getBaseCount());
+        assertEquals(e.getValue().getQ30BaseCount(), s.getQ30BaseCount());
+      }
+
+      final Map<Integer, Double> expectedErrors = errors.errorRateByCycle();
+      assertEquals(expectedErrors.keySet(),
+          monitor.getErrorRateByCycle().keySet());
+      for (Map.Entry<Integer, Double> e : expectedErrors.entrySet()) {
+        assertEquals(e.getValue(),
+            monitor.getErrorRateByCycle().get(e.getKey()), 1e-6);
+      }
+
+      assertTrue(monitor.getLastExtractedCycle() > 0);
+      assertEquals(0, monitor.update());
+
+    } finally {
+      for (String filename : filenames) {
+        new File(dir, filename).delete();
+      }
+      dir.delete();
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] readResource(final String filename)
+      throws URISyntaxException, IOException {
+
+    final URL url = IncrementalMetricsReaderTest.class.getClassLoader()
+        .getResource("interop/" + RUN + "/InterOp/" + filename);
+
+    if (url == null) {
+      throw new IllegalArgumentException("file not found: " + filename);
+    }
+
+    return Files.readAllBytes(new File(url.toURI()).toPath());
+  }
+
+  private static void write(final File file, final byte[] data,
+      final int from, final int to, final boolean append) throws IOException {
+
+    try (OutputStream out = new FileOutputStream(file, append)) {
+      out.write(Arrays.copyOfRange(data, from, to));
+    }
+  }
+
+  private static List<String> toCSV(final List<? extends Metric> metrics) {
+
+    final List<String> result = new ArrayList<>();
+    for (Metric m : metrics) {
+      result.add(m.toCSV());
+    }
+
+    return result;
+  }
+
+}
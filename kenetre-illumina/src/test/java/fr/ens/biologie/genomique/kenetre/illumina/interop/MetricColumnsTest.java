@@ -0,0 +1,169 @@
+package fr.ens.biologie.genomique.kenetre.illumina.interop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+
+public class MetricColumnsTest {
+
+  private static final String[] RUNS = {"HiSeq1500_PE100", "HiSeq1500_SR50",
+      "NextSeq500_SR75", "NextSeq500_10X", "NextSeq2000_SR100",
+      "NextSeq2000_PE150"};
+
+  @Test
+  public void testQMetrics()
+      throws URISyntaxException, KenetreException, IOException {
+
+    for (String run : RUNS) {
+
+      final File dir = interOpDir(run);
+      if (!new File(dir, QMetricsReader.QUALITY_METRICS_FILE).exists()) {
+        continue;
+      }
+
+      final QMetricsReader reader = new QMetricsReader(dir);
+      final QMetricsColumns columns = reader.readColumns();
+
+      // Compute expected values from the QMetric objects
+      final Map<Integer, QualityStats> expectedByLane = new TreeMap<>();
+      final Map<Integer, QualityStats> expectedByRead = new TreeMap<>();
+      int index = 0;
+      for (QMetric m : reader.readMetrics()) {
+
+        assertEquals(m.getLaneNumber(), columns.getLaneNumber(index));
+        assertEquals(m.getTileNumber(), columns.getTileNumber(index));
+        assertEquals(m.getCycleNumber(), columns.getCycleNumber(index));
+        index++;
+
+        final QualityStats lane = expectedByLane
+            .computeIfAbsent(m.getLaneNumber(), k -> new QualityStats());
+        final QualityStats read = expectedByRead.computeIfAbsent(
+            m.getCycleNumber() <= 10 ? 1 : 2, k -> new QualityStats());
+
+        final long[] scores = m.getClustersScore();
+        for (int i = 0; i < scores.length; i++) {
+          lane.add(i + 1, scores[i]);
+          read.add(i + 1, scores[i]);
+        }
+      }
+
+      assertEquals(index, columns.size());
+      assertTrue(columns.size() > 0);
+      assertStats(expectedByLane, columns.statsByLane());
+      assertStats(expectedByRead, columns.statsByRead(10, 100000));
+    }
+  }
+
+  @Test
+  public void testErrorMetrics()
+      throws URISyntaxException, KenetreException, IOException {
+
+    for (String run : RUNS) {
+
+      final File dir = interOpDir(run);
+      final ErrorMetricsReader reader = new ErrorMetricsReader(dir);
+      final ErrorMetricsColumns columns = reader.readColumns();
+
+      final Map<Integer, double[]> expected = new TreeMap<>();
+      int index = 0;
+      for (ErrorMetric m : reader.readMetrics()) {
+
+        assertEquals(m.getCycleNumber(), columns.getCycleNumber(index));
+        assertEquals(m.getErrorRate(), columns.getErrorRate(index), 0.0);
+        index++;
+
+        if (!Float.isNaN(m.getErrorRate())) {
+          final double[] sum = expected.computeIfAbsent(m.getCycleNumber(),
+              k -> new double[2]);
+          sum[0] += m.getErrorRate();
+          sum[1]++;
+        }
+      }
+
+      assertEquals(index, columns.size());
+
+      final Map<Integer, Double> result = columns.errorRateByCycle();
+      for (Map.Entry<Integer, double[]> e : expected.entrySet()) {
+        assertEquals(e.getValue()[0] / e.getValue()[1],
+            result.get(e.getKey()), 1e-6);
+      }
+    }
+  }
+
+  @Test
+  public void testTileMetrics()
+      throws URISyntaxException, KenetreException, IOException {
+
+    for (String run : RUNS) {
+
+      final TileMetricsReader reader = new TileMetricsReader(interOpDir(run));
+      final TileMetricsColumns columns = reader.readColumns();
+
+      final Map<Integer, Double> expectedCounts = new TreeMap<>();
+      int index = 0;
+      for (TileMetric m : reader.readMetrics()) {
+
+        assertEquals(m.getLaneNumber(), columns.getLaneNumber(index));
+        assertEquals(m.getTileNumber(), columns.getTileNumber(index));
+        assertEquals(m.getClusterDensity(), columns.getClusterDensity(index),
+            0.0);
+        assertEquals(m.getClusterCountPF(), columns.getClusterCountPF(index),
+            0.0);
+        index++;
+
+        expectedCounts.merge(m.getLaneNumber(), (double) m.getClusterCount(),
+            Double::sum);
+      }
+
+      assertEquals(index, columns.size());
+
+      final Map<Integer, Long> counts = columns.clusterCountByLane();
+      assertEquals(expectedCounts.keySet(), counts.keySet());
+      for (Map.Entry<Integer, Double> e : expectedCounts.entrySet()) {
+        assertEquals(Math.round(e.getValue()),
+            counts.get(e.getKey()).longValue());
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static File interOpDir(final String run) throws URISyntaxException {
+
+    final URL url = MetricColumnsTest.class.getClassLoader()
+        .getResource("interop/" + run + "/InterOp");
+
+    if (url == null) {
+      throw new IllegalArgumentException("directory not found: " + run);
+    }
+
+    return new File(url.toURI());
+  }
+
+  private static void assertStats(final Map<Integer, QualityStats> expected,
+      final Map<Integer, QualityStats> result) {
+
+    assertEquals(expected.keySet(), result.keySet());
+
+    for (Map.Entry<Integer, QualityStats> e : expected.entrySet()) {
+
+      final QualityStats s = result.get(e.getKey());
+      assertEquals(e.getValue().getBaseCount(), s.getBaseCount());
+      assertEquals(e.getValue().getQ30BaseCount(), s.getQ30BaseCount());
+      assertEquals(e.getValue().getMeanQuality(), s.getMeanQuality(), 1e-9);
+    }
+  }
+
+}
@@ -1,12 +1,16 @@
 package fr.ens.biologie.genomique.eoulsan.util;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 
@@ -30,6 +34,19 @@ public class EnhancedBloomFilter implements Serializable {
   private final int expectedNumberOfElements;
   private final double falsePositiveProbability;
 
+  /**
+   * Funnel used to put the strings in the Bloom filters.
+   */
+  private enum StringFunnel implements Funnel<String> {
+
+    INSTANCE;
+
+    @Override
+    public void funnel(final String from, final PrimitiveSink into) {
+      into.putString(from, StandardCharsets.UTF_8);
+    }
+  }
+
   public void put(final String element) {
     this.bf.put(element);
     this.addedNumberOfElements++;
@@ -85,6 +102,47 @@ public class EnhancedBloomFilter implements Serializable {
 
   }
 
+  /**
+   * Write the Bloom filter in a compact binary format. Unlike Java
+   * serialization, this format does not depend of the Guava classes.
+   * @param out output stream
+   * @throws IOException if an error occurs while writing the Bloom filter
+   */
+  public void writeTo(final OutputStream out) throws IOException {
+
+    final DataOutputStream dos = new DataOutputStream(out);
+    dos.writeInt(this.addedNumberOfElements);
+    dos.writeInt(this.expectedNumberOfElements);
+    dos.writeDouble(this.falsePositiveProbability);
+    dos.flush();
+
+    this.bf.writeTo(out);
+  }
+
+  /**
+   * Read a Bloom filter written by the writeTo() method.
+   * @param in input stream
+   * @return a new EnhancedBloomFilter object
+   * @throws IOException if an error occurs while reading the Bloom filter
+   */
+  public static EnhancedBloomFilter readFrom(final InputStream in)
+      throws IOException {
+
+    final DataInputStream dis = new DataInputStream(in);
+    final int addedNumberOfElements = dis.readInt();
+    final int expectedNumberOfElements = dis.readInt();
+    final double falsePositiveProbability = dis.readDouble();
+
+    try {
+      return new EnhancedBloomFilter(
+          BloomFilter.readFrom(in, StringFunnel.INSTANCE),
+          addedNumberOfElements, expectedNumberOfElements,
+          falsePositiveProbability);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid Bloom filter data", e);
+    }
+  }
+
   /**
    * Compare parameters used to create bloom filter
    * @param that bloom filter to compare
@@ -178,16 +236,8 @@ public class EnhancedBloomFilter implements Serializable {
     this.expectedNumberOfElements = expectedNumberOfElements;
     this.falsePositiveProbability = falsePositiveProbability;
 
-    this.bf = BloomFilter.create(new Funnel<String>() {
-
-      private static final long serialVersionUID = 1L;
-
-      @Override
-      public void funnel(final String from, final PrimitiveSink into) {
-        into.putString(from, StandardCharsets.UTF_8);
-      }
-
-    }, expectedNumberOfElements, falsePositiveProbability);
+    this.bf = BloomFilter.create(StringFunnel.INSTANCE,
+        expectedNumberOfElements, falsePositiveProbability);
 
   }
 
@@ -128,6 +128,16 @@ public class IT {
   @Test
   public final void launchTest() throws Exception {
 
+    // The suite may execute the test in parallel with other tests
+    this.itSuite.executeTest(this);
+  }
+
+  /**
+   * Execute the test.
+   * @throws Exception if an error occurs while execute script or comparison
+   */
+  void execute() throws Exception {
+
     // Notify the suite of the beginning of the current test
     this.itSuite.notifyStartTest();
 
@@ -158,6 +168,11 @@ public class IT {
           this.fileToComparePatterns, this.excludeToComparePatterns,
           this.checkLengthFilePatterns, this.checkExistenceFilePatterns,
           this.checkAbsenceFilePatterns, this.fileToRemovePatterns);
+      this.itOutput.setExactComparison(Boolean.parseBoolean(
+          this.testConf.getProperty(ITFactory.EXACT_COMPARISON_CONF_KEY)));
+      this.itOutput.setFingerprintCache(this.itSuite.getFingerprintCache());
+      this.itOutput
+          .setTemporaryDirectory(new File(this.outputTestDirectory, "tmp"));
 
       if (this.generateExpectedDirectoryTestData) {
         this.itResult.asGeneratedData();
@@ -810,6 +825,54 @@ public class IT {
     return this.itOutput;
   }
 
+  /**
+   * Get the number of CPUs required by the test.
+   * @return the number of CPUs required by the test
+   */
+  public int getRequiredCpus() {
+
+    final String value = getProperty(ITFactory.TEST_CPUS_CONF_KEY);
+
+    if (value == null) {
+      return 1;
+    }
+
+    try {
+
+      return Math.max(1, Integer.parseInt(value.trim()));
+
+    } catch (NumberFormatException e) {
+      getLogger().severe("Number of CPUs set in configuration invalid "
+          + value + ". Use default value 1");
+
+      return 1;
+    }
+  }
+
+  /**
+   * Get the memory required by the test.
+   * @return the memory required by the test in MiB
+   */
+  public long getRequiredMemory() {
+
+    final String value = getProperty(ITFactory.TEST_MEMORY_CONF_KEY);
+
+    if (value == null) {
+      return 0;
+    }
+
+    try {
+
+      return Math.max(0, Long.parseLong(value.trim()));
+
+    } catch (NumberFormatException e) {
+      getLogger().severe("Memory set in configuration invalid "
+          + value + ". Use default value 0");
+
+      return 0;
+    }
+  }
+
   public int getDurationMaxInMinutes() {
     final String value = getProperty(ITFactory.RUNTIME_IT_MAXIMUM_KEY);
 
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Properties;
@@ -128,6 +129,11 @@ public class ITCommandExecutor {
       final Process p = Runtime.getRuntime().exec(cmdLine,
           this.environmentVariables, this.outputTestDirectory);
 
+      // Survey the memory used by the process and its children
+      final ProcessMemoryMonitor memoryMonitor =
+          new ProcessMemoryMonitor(p.toHandle());
+      memoryMonitor.start();
+
       // Save stdout
       if (stdoutFile != null) {
         new CopyProcessOutput(p.getInputStream(), stdoutFile, "stdout").start();
@@ -139,7 +145,11 @@ public class ITCommandExecutor {
       }
 
       // Wait the end of the process
-      exitValue = p.waitFor();
+      try {
+        exitValue = p.waitFor();
+      } finally {
+        cmdResult.setPeakMemory(memoryMonitor.stopMonitoring());
+      }
 
       cmdResult.setExitValue(exitValue);
 
@@ -220,6 +230,113 @@ public class ITCommandExecutor {
 
   }
 
+  /**
+   * This internal class survey the resident set size of a process and of its
+   * children. The memory usage is read in the /proc filesystem, so the peak
+   * memory is only available on Linux.
+   */
+  private static final class ProcessMemoryMonitor extends Thread {
+
+    private static final long POLLING_INTERVAL = 500;
+    private static final String RSS_FIELD = "VmRSS:";
+
+    private final ProcessHandle process;
+    private volatile long peakMemory = -1;
+
+    @Override
+    public void run() {
+
+      while (!isInterrupted()) {
+
+        final long memory = currentMemory();
+        if (memory > this.peakMemory) {
+          this.peakMemory = memory;
+        }
+
+        try {
+          Thread.sleep(POLLING_INTERVAL);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Stop the monitoring.
+     * @return the peak resident set size in bytes or -1 if unknown
+     */
+    long stopMonitoring() {
+
+      interrupt();
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      return this.peakMemory;
+    }
+
+    /**
+     * Get the current resident set size of the process and its children.
+     * @return the resident set size in bytes or -1 if unknown
+     */
+    private long currentMemory() {
+
+      long result = rss(this.process.pid());
+
+      if (result == -1) {
+        return -1;
+      }
+
+      for (ProcessHandle child : (Iterable<ProcessHandle>) this.process
+          .descendants()::iterator) {
+
+        final long rss = rss(child.pid());
+        if (rss > 0) {
+          result += rss;
+        }
+      }
+
+      return result;
+    }
+
+    /**
+     * Get the resident set size of a process.
+     * @param pid pid of the process
+     * @return the resident set size in bytes or -1 if unknown
+     */
+    private static long rss(final long pid) {
+
+      try {
+        for (String line : Files
+            .readAllLines(Paths.get("/proc", Long.toString(pid), "status"))) {
+
+          if (line.startsWith(RSS_FIELD)) {
+
+            // The value is in kB
+            final String value =
+                line.substring(RSS_FIELD.length()).trim().split(" ")[0];
+            return Long.parseLong(value) * 1024;
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        // The process has ended or /proc is not available
+      }
+
+      return -1;
+    }
+
+    ProcessMemoryMonitor(final ProcessHandle process) {
+
+      requireNonNull(process, "process argument cannot be null");
+
+      this.process = process;
+      setDaemon(true);
+      setName("ITCommandExecutor-memory");
+    }
+  }
+
   /**
    * This internal class allow to save Process outputs.
    * @author Laurent Jourdren
@@ -48,6 +48,7 @@ public class ITCommandResult {
   private Throwable exception;
   private int exitValue = -1;
   private long duration = -1;
+  private long peakMemory = -1;
   private final long durationMaxToInterruptProcess;
 
   @SuppressWarnings("unused")
@@ -85,6 +86,12 @@ public class ITCommandResult {
     this.message.append(
         this.duration == -1 ? "none" : toTimeHumanReadable(this.duration));
 
+    if (this.peakMemory != -1) {
+      this.message.append("\n\tPeak RSS: ");
+      this.message.append(this.peakMemory / (1024 * 1024));
+      this.message.append(" MiB");
+    }
+
     this.message.append("\n\tMessage: exit value ");
     this.message.append(this.exitValue);
 
@@ -174,6 +181,31 @@ public class ITCommandResult {
     this.duration = duration;
   }
 
+  /**
+   * Get the duration.
+   * @return the duration in milliseconds or -1 if the command has not been
+   *         executed
+   */
+  public long getDuration() {
+    return this.duration;
+  }
+
+  /**
+   * Get the peak resident set size of the process and its children.
+   * @return the peak resident set size in bytes or -1 if unknown
+   */
+  public long getPeakMemory() {
+    return this.peakMemory;
+  }
+
+  /**
+   * Set the peak resident set size of the process and its children.
+   * @param peakMemory the peak resident set size in bytes
+   */
+  public void setPeakMemory(final long peakMemory) {
+    this.peakMemory = peakMemory;
+  }
+
   /**
    * Get the exception.
    * @return the exception
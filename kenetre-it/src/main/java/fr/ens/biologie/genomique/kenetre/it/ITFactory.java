@@ -113,6 +113,21 @@ public class ITFactory {
 
   static final String RUNTIME_IT_MAXIMUM_KEY = "runtime.test.maximum";
 
+  // Compare exactly the content of the files instead of using Bloom filters
+  static final String EXACT_COMPARISON_CONF_KEY = "exact.comparison";
+
+  // Directory of the cache of the fingerprints of the expected files
+  static final String FINGERPRINT_CACHE_DIRECTORY_CONF_KEY =
+      "fingerprint.cache.directory";
+
+  // Resources shared between the tests executed in parallel, memory in MiB
+  static final String PARALLEL_TESTS_CPUS_CONF_KEY = "parallel.tests.cpus";
+  static final String PARALLEL_TESTS_MEMORY_CONF_KEY = "parallel.tests.memory";
+
+  // Resources required by a test, memory in MiB
+  static final String TEST_CPUS_CONF_KEY = "test.cpus";
+  static final String TEST_MEMORY_CONF_KEY = "test.memory";
+
   static final String PRETREATMENT_GLOBAL_SCRIPT_KEY = "pre.global.script";
   static final String POSTTREATMENT_GLOBAL_SCRIPT_KEY = "post.global.script";
 
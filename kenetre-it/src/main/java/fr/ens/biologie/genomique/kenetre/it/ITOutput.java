@@ -47,10 +47,12 @@ import com.google.common.collect.Lists;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.it.ITOutputComparisonResult.StatusComparison;
+import fr.ens.biologie.genomique.kenetre.it.comparator.AbstractComparatorWithBloomFilter;
 import fr.ens.biologie.genomique.kenetre.it.comparator.BAMComparator;
 import fr.ens.biologie.genomique.kenetre.it.comparator.BinaryComparator;
 import fr.ens.biologie.genomique.kenetre.it.comparator.Comparator;
 import fr.ens.biologie.genomique.kenetre.it.comparator.FastqComparator;
+import fr.ens.biologie.genomique.kenetre.it.comparator.FingerprintCache;
 import fr.ens.biologie.genomique.kenetre.it.comparator.LogComparator;
 import fr.ens.biologie.genomique.kenetre.it.comparator.SAMComparator;
 import fr.ens.biologie.genomique.kenetre.it.comparator.TextComparator;
@@ -98,6 +100,10 @@ public class ITOutput {
 
   private final File directory;
 
+  private boolean exactComparison;
+  private FingerprintCache fingerprintCache;
+  private File temporaryDirectory;
+
   /**
    * Move all files matching to a pattern in the destination directory, then
    * clean directory. If no pattern defined, moving all files.
@@ -363,7 +369,9 @@ public class ITOutput {
       final File fileTested) throws IOException {
 
     // Comparison two files with same filename
-    final FilesComparator fc = new FilesComparator(fileExpected, fileTested);
+    final FilesComparator fc =
+        new FilesComparator(fileExpected, fileTested, this.exactComparison,
+            this.fingerprintCache, this.temporaryDirectory);
     // Compare files with comparator
     final boolean res = fc.compare();
 
@@ -692,6 +700,31 @@ public class ITOutput {
     return this.filesToRemove.size();
   }
 
+  /**
+   * Set if the content of the files must be compared exactly instead of using
+   * Bloom filters.
+   * @param exactComparison true to enable the exact comparison
+   */
+  public void setExactComparison(final boolean exactComparison) {
+    this.exactComparison = exactComparison;
+  }
+
+  /**
+   * Set the cache for the fingerprints of the expected files.
+   * @param fingerprintCache the fingerprint cache, can be null
+   */
+  public void setFingerprintCache(final FingerprintCache fingerprintCache) {
+    this.fingerprintCache = fingerprintCache;
+  }
+
+  /**
+   * Set the temporary directory used by the exact comparison.
+   * @param temporaryDirectory the temporary directory, can be null
+   */
+  public void setTemporaryDirectory(final File temporaryDirectory) {
+    this.temporaryDirectory = temporaryDirectory;
+  }
+
   //
   // Constructor
   //
@@ -830,8 +863,13 @@ public class ITOutput {
      * Public constructor, initialization collection of comparators.
      * @param fileA first file
      * @param fileB second file
+     * @param exactComparison true if the comparators must use exact comparison
+     * @param fingerprintCache the fingerprint cache, can be null
+     * @param temporaryDirectory the temporary directory, can be null
      */
-    FilesComparator(final File fileA, final File fileB) {
+    FilesComparator(final File fileA, final File fileB,
+        final boolean exactComparison, final FingerprintCache fingerprintCache,
+        final File temporaryDirectory) {
 
       this.fileA = fileA;
       this.fileB = fileB;
@@ -847,6 +885,16 @@ public class ITOutput {
       this.comparators.add(new TextComparator(USE_SERIALIZATION_FILE));
       this.comparators.add(new LogComparator());
 
+      for (Comparator c : this.comparators) {
+        if (c instanceof AbstractComparatorWithBloomFilter) {
+          final AbstractComparatorWithBloomFilter bc =
+              (AbstractComparatorWithBloomFilter) c;
+          bc.setExactComparison(exactComparison);
+          bc.setFingerprintCache(fingerprintCache);
+          bc.setTemporaryDirectory(temporaryDirectory);
+        }
+      }
+
       this.comparator = findComparator(this.fileA.getName());
 
     }
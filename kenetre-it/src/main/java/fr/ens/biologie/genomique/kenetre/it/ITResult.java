@@ -64,6 +64,8 @@ public class ITResult {
   // True if demand generate data and expected directory already exist
   private boolean nothingToDo = false;
 
+  private long duration = -1;
+
   //
   // Write reports
   //
@@ -73,6 +75,7 @@ public class ITResult {
    */
   public void createReportFile(final long duration) {
 
+    this.duration = duration;
     final String durationIT = toTimeHumanReadable(duration);
 
     // End test
@@ -288,6 +291,14 @@ public class ITResult {
     report.append("\n\nTest duration: ");
     report.append(duration);
 
+    // Add peak memory of the commands
+    final long peakMemory = getPeakMemory();
+    if (peakMemory != -1) {
+      report.append("\nTest peak RSS: ");
+      report.append(peakMemory / (1024 * 1024));
+      report.append(" MiB");
+    }
+
     // Return text
     return report.toString();
   }
@@ -435,6 +446,38 @@ public class ITResult {
     return this.generatedData;
   }
 
+  /**
+   * Get the integration test of the result.
+   * @return the integration test
+   */
+  IT getIT() {
+    return this.it;
+  }
+
+  /**
+   * Get the wall-clock duration of the test.
+   * @return the duration of the test in milliseconds or -1 if the test has not
+   *         ended
+   */
+  public long getDuration() {
+    return this.duration;
+  }
+
+  /**
+   * Get the peak resident set size of the commands of the test.
+   * @return the peak resident set size in bytes or -1 if unknown
+   */
+  public long getPeakMemory() {
+
+    long result = -1;
+
+    for (ITCommandResult r : this.commandsResults) {
+      result = Math.max(result, r.getPeakMemory());
+    }
+
+    return result;
+  }
+
   /**
    * Checks if is success.
    * @return true, if is success
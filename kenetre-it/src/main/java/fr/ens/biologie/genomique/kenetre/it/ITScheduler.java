@@ -0,0 +1,240 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+package fr.ens.biologie.genomique.kenetre.it;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class define a resource-aware scheduler for integration tests. A test
+ * can only start when the CPUs and the memory it requires are available.
+ * Tests that fit in the free resources can start before an older waiting
+ * test, but only with the resources that remain once the older test has been
+ * served, so large tests are never starved by small ones.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class ITScheduler {
+
+  private final int totalCpus;
+  private final long totalMemory;
+
+  private int freeCpus;
+  private long freeMemory;
+
+  private final Deque<Request> waiting = new ArrayDeque<>();
+
+  /**
+   * This class define the resources required by a test.
+   */
+  private static final class Request {
+
+    private final int cpus;
+    private final long memory;
+
+    private Request(final int cpus, final long memory) {
+      this.cpus = cpus;
+      this.memory = memory;
+    }
+  }
+
+  /**
+   * This class define the resources allocated to a test.
+   */
+  public final class Allocation implements AutoCloseable {
+
+    private final int cpus;
+    private final long memory;
+    private boolean released;
+
+    /**
+     * Get the number of allocated CPUs.
+     * @return the number of allocated CPUs
+     */
+    public int getCpus() {
+      return this.cpus;
+    }
+
+    /**
+     * Get the allocated memory in MiB.
+     * @return the allocated memory in MiB
+     */
+    public long getMemory() {
+      return this.memory;
+    }
+
+    @Override
+    public void close() {
+
+      synchronized (ITScheduler.this) {
+
+        if (this.released) {
+          return;
+        }
+        this.released = true;
+
+        ITScheduler.this.freeCpus += this.cpus;
+        ITScheduler.this.freeMemory += this.memory;
+        ITScheduler.this.notifyAll();
+      }
+    }
+
+    private Allocation(final int cpus, final long memory) {
+      this.cpus = cpus;
+      this.memory = memory;
+    }
+  }
+
+  //
+  // Scheduling methods
+  //
+
+  /**
+   * Wait until the resources required by a test are available and allocate
+   * them. The requirements larger than the resources of the scheduler are
+   * reduced to the resources of the scheduler.
+   * @param cpus number of CPUs required
+   * @param memory memory required in MiB
+   * @return the allocation, that must be closed at the end of the test
+   * @throws InterruptedException if the thread has been interrupted while
+   *           waiting the resources
+   */
+  public synchronized Allocation acquire(final int cpus, final long memory)
+      throws InterruptedException {
+
+    if (cpus < 1) {
+      throw new IllegalArgumentException(
+          "cpus must be greater than 0: " + cpus);
+    }
+
+    if (memory < 0) {
+      throw new IllegalArgumentException(
+          "memory cannot be lower than 0: " + memory);
+    }
+
+    final Request request = new Request(Math.min(cpus, this.totalCpus),
+        Math.min(memory, this.totalMemory));
+    this.waiting.add(request);
+
+    try {
+
+      while (!canStart(request)) {
+        wait();
+      }
+
+    } finally {
+      this.waiting.remove(request);
+      notifyAll();
+    }
+
+    this.freeCpus -= request.cpus;
+    this.freeMemory -= request.memory;
+
+    return new Allocation(request.cpus, request.memory);
+  }
+
+  /**
+   * Test if a request can start now.
+   * @param request the request
+   * @return true if the request can start
+   */
+  private boolean canStart(final Request request) {
+
+    final Request head = this.waiting.peekFirst();
+
+    // The oldest request only needs the free resources
+    if (head == request) {
+      return request.cpus <= this.freeCpus
+          && request.memory <= this.freeMemory;
+    }
+
+    // The other requests cannot use the resources of the oldest request
+    return request.cpus <= this.freeCpus - head.cpus
+        && request.memory <= this.freeMemory - head.memory;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of CPUs managed by the scheduler.
+   * @return the number of CPUs managed by the scheduler
+   */
+  public int getTotalCpus() {
+    return this.totalCpus;
+  }
+
+  /**
+   * Get the memory managed by the scheduler in MiB.
+   * @return the memory managed by the scheduler in MiB
+   */
+  public long getTotalMemory() {
+    return this.totalMemory;
+  }
+
+  /**
+   * Get the number of free CPUs.
+   * @return the number of free CPUs
+   */
+  public synchronized int getFreeCpus() {
+    return this.freeCpus;
+  }
+
+  /**
+   * Get the free memory in MiB.
+   * @return the free memory in MiB
+   */
+  public synchronized long getFreeMemory() {
+    return this.freeMemory;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param cpus number of CPUs to share between the tests
+   * @param memory memory to share between the tests in MiB
+   */
+  public ITScheduler(final int cpus, final long memory) {
+
+    if (cpus < 1) {
+      throw new IllegalArgumentException(
+          "cpus must be greater than 0: " + cpus);
+    }
+
+    if (memory < 0) {
+      throw new IllegalArgumentException(
+          "memory cannot be lower than 0: " + memory);
+    }
+
+    this.totalCpus = cpus;
+    this.totalMemory = memory;
+    this.freeCpus = cpus;
+    this.freeMemory = memory;
+  }
+
+}
@@ -34,6 +34,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Formatter;
 import java.util.HashMap;
@@ -41,13 +42,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Stopwatch;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.KenetreRuntimeException;
+import fr.ens.biologie.genomique.kenetre.it.comparator.FingerprintCache;
 import fr.ens.biologie.genomique.kenetre.util.process.ProcessUtils;
 
 /**
@@ -62,6 +69,7 @@ public class ITSuite {
   private static final String SUCCEEDED_LINK_NAME = "succeeded";
   private static final String FAILED_LINK_NAME = "failed";
   private static final String LATEST_LINK_NAME = "latest";
+  private static final String RESOURCES_FILENAME = "tests_resources.tsv";
 
   private static final Formatter DATE_FORMATTER = new Formatter()
       .format(IT.DEFAULT_LOCALE, "%1$tY%1$tm%1$td_%1$tH%1$tM%1$tS", new Date());
@@ -82,6 +90,7 @@ public class ITSuite {
   private int failCount = 0;
   private int successCount = 0;
   private int testRunningCount = 0;
+  private int testFinishedCount = 0;
   private int testSkippingCount = 0;
   private boolean isFirstTest = true;
   private final String loggerPath;
@@ -91,6 +100,13 @@ public class ITSuite {
   private final boolean generateNewExpectedDirectoryTests;
   private final String actionType;
 
+  // Parallel execution of the tests
+  private final ITScheduler scheduler;
+  private Map<IT, Future<?>> parallelTests;
+  private final Map<String, String> testsResources = new TreeMap<>();
+
+  private final FingerprintCache fingerprintCache;
+
   //
   // Singleton methods
   //
@@ -176,7 +192,7 @@ public class ITSuite {
   /**
    * Update counter of tests running. If it is the first, create symbolics link.
    */
-  public void notifyStartTest() {
+  public synchronized void notifyStartTest() {
 
     if (this.isFirstTest) {
       createSymbolicLinkToTest();
@@ -192,7 +208,7 @@ public class ITSuite {
    * and close logger.
    * @param itResult the it result
    */
-  public void notifyEndTest(final ITResult itResult) {
+  public synchronized void notifyEndTest(final ITResult itResult) {
 
     if (itResult.isNothingToDo()) {
       this.testSkippingCount++;
@@ -206,14 +222,110 @@ public class ITSuite {
       }
     }
 
+    // Save the resources used by the test
+    final IT it = itResult.getIT();
+    this.testsResources.put(it.getTestName(),
+        it.getTestName() + '\t' + (itResult.isNothingToDo()
+            ? "SKIPPED" : itResult.isSuccess() ? "SUCCESS" : "FAIL")
+            + '\t' + it.getRequiredCpus() + '\t' + it.getRequiredMemory()
+            + '\t' + itResult.getDuration() + '\t'
+            + itResult.getPeakMemory());
+
     // For latest
-    if (this.testRunningCount == this.testsCount) {
+    this.testFinishedCount++;
+    if (this.testFinishedCount == this.testsCount) {
       createSymbolicLinkToTest();
       endLogger();
     }
 
   }
 
+  /**
+   * Execute a test. If the parallel execution of the tests is enabled, all the
+   * tests are submitted to the scheduler on the first call of this method and
+   * this method waits the end of the test.
+   * @param it the test to execute
+   * @throws Exception if an error occurs while executing the test
+   */
+  public void executeTest(final IT it) throws Exception {
+
+    if (this.scheduler == null) {
+      it.execute();
+      return;
+    }
+
+    final Future<?> future;
+
+    synchronized (this) {
+
+      if (this.parallelTests == null) {
+        this.parallelTests = submitTests();
+      }
+      future = this.parallelTests.get(it);
+    }
+
+    if (future == null) {
+      throw new KenetreException(
+          "Unknown integration test: " + it.getTestName());
+    }
+
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+
+      final Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Submit all the tests to the scheduler. The tests that requires the more
+   * resources are submitted first to pack the tests on the CPUs of the
+   * machine.
+   * @return a map with the future of each test
+   */
+  private Map<IT, Future<?>> submitTests() {
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(this.scheduler.getTotalCpus(), r -> {
+          final Thread t = new Thread(r, "ITSuite");
+          t.setDaemon(true);
+          return t;
+        });
+
+    final List<IT> tests = new ArrayList<>(this.testsInstance);
+    tests.sort(Comparator.comparingInt(IT::getRequiredCpus)
+        .thenComparingLong(IT::getRequiredMemory).reversed());
+
+    getLogger().config("Execute tests in parallel on "
+        + this.scheduler.getTotalCpus() + " CPUs"
+        + (this.scheduler.getTotalMemory() == Long.MAX_VALUE
+            ? "" : " and " + this.scheduler.getTotalMemory() + " MiB"));
+
+    final Map<IT, Future<?>> result = new HashMap<>();
+
+    for (IT it : tests) {
+      result.put(it, executor.submit(() -> {
+
+        try (ITScheduler.Allocation allocation = this.scheduler
+            .acquire(it.getRequiredCpus(), it.getRequiredMemory())) {
+          it.execute();
+        }
+
+        return null;
+      }));
+    }
+    executor.shutdown();
+
+    return result;
+  }
+
   /**
    * Execute command line shell to obtain the version name of application to
    * test. If fail, it return UNKNOWN.
@@ -457,6 +569,66 @@ public class ITSuite {
         + (this.failCount == 0 ? "All tests are OK." : ""));
 
     this.globalTimer.stop();
+
+    writeResourcesFile();
+  }
+
+  /**
+   * Write the wall-clock duration and the peak memory of each test in a
+   * tabulated file in the output tests directory.
+   */
+  private void writeResourcesFile() {
+
+    final List<String> lines = new ArrayList<>();
+    lines.add("test\tstatus\tcpus\tmemory.mib\tduration.ms\tpeak.rss.bytes");
+    lines.addAll(this.testsResources.values());
+
+    final File file = new File(this.outputTestsDirectory, RESOURCES_FILENAME);
+    try {
+      Files.write(file.toPath(), lines);
+    } catch (IOException e) {
+      getLogger().warning("Unable to write resources file: " + file);
+    }
+  }
+
+  /**
+   * Create the scheduler for the parallel execution of the tests.
+   * @param conf the globals configuration
+   * @return a scheduler or null if the tests must be executed sequentially
+   * @throws KenetreException if the configuration of the scheduler is invalid
+   */
+  private static ITScheduler createScheduler(final Properties conf)
+      throws KenetreException {
+
+    final String cpusValue =
+        conf.getProperty(ITFactory.PARALLEL_TESTS_CPUS_CONF_KEY);
+    final String memoryValue =
+        conf.getProperty(ITFactory.PARALLEL_TESTS_MEMORY_CONF_KEY);
+
+    if (cpusValue == null) {
+      return null;
+    }
+
+    try {
+
+      final int cpus = "auto".equals(cpusValue.trim())
+          ? Runtime.getRuntime().availableProcessors()
+          : Integer.parseInt(cpusValue.trim());
+
+      if (cpus < 2) {
+        return null;
+      }
+
+      final long memory = memoryValue == null
+          ? Long.MAX_VALUE : Long.parseLong(memoryValue.trim());
+
+      return new ITScheduler(cpus, memory);
+
+    } catch (IllegalArgumentException e) {
+      throw new KenetreException(
+          "Invalid configuration of the parallel execution of the tests: "
+              + e.getMessage());
+    }
   }
 
   //
@@ -539,6 +711,14 @@ public class ITSuite {
     return this.testsCount;
   }
 
+  /**
+   * Gets the cache of the fingerprints of the expected files.
+   * @return the fingerprint cache or null if not defined
+   */
+  public FingerprintCache getFingerprintCache() {
+    return this.fingerprintCache;
+  }
+
   /**
    * Gets the output test directory path.
    * @return the output test directory path
@@ -621,6 +801,15 @@ public class ITSuite {
     setDebugModeEnabled(
         Boolean.getBoolean(ITFactory.IT_DEBUG_ENABLE_SYSTEM_KEY));
 
+    // Initialize the scheduler for the parallel execution of the tests
+    this.scheduler = createScheduler(this.globalsConf);
+
+    // Initialize the cache of the fingerprints of the expected files
+    final String cacheDirectory = this.globalsConf
+        .getProperty(ITFactory.FINGERPRINT_CACHE_DIRECTORY_CONF_KEY);
+    this.fingerprintCache = cacheDirectory == null
+        ? null : new FingerprintCache(new File(cacheDirectory.trim()));
+
   }
 
 }
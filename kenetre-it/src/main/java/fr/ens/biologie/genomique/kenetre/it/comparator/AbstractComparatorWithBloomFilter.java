@@ -24,20 +24,34 @@
 package fr.ens.biologie.genomique.kenetre.it.comparator;
 
 import static fr.ens.biologie.genomique.kenetre.io.CompressionType.getCompressionTypeByFilename;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 import fr.ens.biologie.genomique.eoulsan.util.EnhancedBloomFilter;
 import fr.ens.biologie.genomique.kenetre.io.CompressionType;
+import fr.ens.biologie.genomique.kenetre.util.ExternalMerger;
+import fr.ens.biologie.genomique.kenetre.util.LongExternalSorter;
+import fr.ens.biologie.genomique.kenetre.util.LongExternalSorter.SortedLongReader;
 
 /**
  * This abstract class define methods to compare files with use BloomFilter.
+ * In exact mode, the Bloom filter is not used: the 64 bits hashes of the
+ * elements of the two files are sorted with an external sort and then merged
+ * to check that the two files contains the same multiset of elements.
  * @since 2.0
  * @author Sandrine Perrin
  */
@@ -52,6 +66,39 @@ public abstract class AbstractComparatorWithBloomFilter
   private int expectedNumberOfElements = 30000000;
   private boolean useSerializeFile = false;
 
+  /** Default maximal number of differences reported in exact mode. */
+  public static final int DEFAULT_MAX_REPORTED_DIFFERENCES = 10;
+
+  // Memory budget of each of the two sorters used in exact mode
+  private static final long EXACT_SORT_MAX_MEMORY = 64L * 1024 * 1024;
+
+  // Maximal number of differing hashes loaded in memory to report the
+  // differences
+  private static final int REPORT_SLICE_SIZE = 1024 * 1024;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private boolean exactComparison;
+  private int maxReportedDifferences = DEFAULT_MAX_REPORTED_DIFFERENCES;
+  private File tmpDir;
+  private FingerprintCache fingerprintCache;
+
+  protected int numberElementsCompared;
+
+  /**
+   * This interface define a handler of the elements of a file.
+   */
+  @FunctionalInterface
+  protected interface ElementHandler {
+
+    /**
+     * Handle an element.
+     * @param element the element
+     * @throws IOException if an error occurs while handling the element
+     */
+    void handle(String element) throws IOException;
+  }
+
   @Override
   public boolean compareFiles(final File fileA, final File fileB)
       throws IOException {
@@ -66,6 +113,10 @@ public abstract class AbstractComparatorWithBloomFilter
       return true;
     }
 
+    if (this.exactComparison) {
+      return compareFilesExactly(fileA, fileB);
+    }
+
     try (InputStream isB = new FileInputStream(fileB)) {
 
       return compareFiles(getBloomFilter(fileA),
@@ -77,6 +128,11 @@ public abstract class AbstractComparatorWithBloomFilter
   @Override
   public boolean compareFiles(final InputStream isA, final InputStream isB)
       throws IOException {
+
+    if (this.exactComparison) {
+      return compareStreamsExactly(isA, isB);
+    }
+
     return compareFiles(buildBloomFilter(isA), isB);
   }
 
@@ -102,21 +158,27 @@ public abstract class AbstractComparatorWithBloomFilter
   }
 
   /**
-   * In case Serialization is asked, check if the file.ser exists: true retrieve
-   * the bloom filter else create the filter and file.Ser corresponding.
+   * In case a fingerprint cache is used, retrieve the Bloom filter from the
+   * cache if it exists, else create the filter and save it in the cache.
    * @param file source to create bloom filter
    * @return bloomFilter completed with the file
    * @throws IOException if an error occurs while creating the Bloom filter
-   *           object from the serialized file
    */
   public EnhancedBloomFilter getBloomFilter(final File file)
       throws IOException {
 
-    final File bloomFilterSer = new File(file.getAbsolutePath() + ".ser");
+    final FingerprintCache cache = getFingerprintCache(file);
+    final String configuration = getFingerprintConfiguration()
+        + ";bloom:" + getExpectedNumberOfElements() + ','
+        + getFalsePositiveProbability();
+
+    if (cache != null) {
 
-    if (this.useSerializeFile && bloomFilterSer.exists()) {
-      // Retrieve marshalling bloom filter
-      return EnhancedBloomFilter.deserializationBloomFilter(bloomFilterSer);
+      final EnhancedBloomFilter result =
+          cache.loadBloomFilter(file, configuration);
+      if (result != null) {
+        return result;
+      }
     }
 
     final CompressionType zType =
@@ -127,10 +189,9 @@ public abstract class AbstractComparatorWithBloomFilter
       final EnhancedBloomFilter bloomFilter =
           buildBloomFilter(zType.createInputStream(is));
 
-      // If need serialize bloomFilter in file only for file
-      if (isCreateSerializeFile(file, zType)) {
-        EnhancedBloomFilter.serializationBloomFilter(bloomFilterSer,
-            bloomFilter);
+      // Save the Bloom filter only for large files
+      if (cache != null && isCreateSerializeFile(file, zType)) {
+        cache.saveBloomFilter(file, configuration, bloomFilter);
       }
 
       return bloomFilter;
@@ -162,6 +223,378 @@ public abstract class AbstractComparatorWithBloomFilter
     return filter;
   }
 
+  /**
+   * Read the elements to compare of a file. By default, the elements are the
+   * lines of the file.
+   * @param is the input stream to read
+   * @param handler the handler of the elements
+   * @throws IOException if an error occurs while reading the file
+   */
+  protected void readElements(final InputStream is,
+      final ElementHandler handler) throws IOException {
+
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(is, Charset.defaultCharset()))) {
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        handler.handle(line);
+      }
+    }
+  }
+
+  /**
+   * Get the configuration of the comparator that changes the elements read
+   * from the files. This configuration is a part of the key of the
+   * fingerprints in the cache.
+   * @return the configuration of the comparator
+   */
+  protected String getFingerprintConfiguration() {
+    return getName();
+  }
+
+  /**
+   * Get the fingerprint cache to use for a file.
+   * @param file the file
+   * @return a fingerprint cache or null if no cache must be used
+   */
+  private FingerprintCache getFingerprintCache(final File file) {
+
+    if (this.fingerprintCache != null) {
+      return this.fingerprintCache;
+    }
+
+    // Save the fingerprints next to the file
+    if (this.useSerializeFile && file.getAbsoluteFile().getParentFile()
+        .canWrite()) {
+      return new FingerprintCache(file.getAbsoluteFile().getParentFile());
+    }
+
+    return null;
+  }
+
+  //
+  // Exact comparison methods
+  //
+
+  /**
+   * Compare exactly two files. If the files are not equal, the differing
+   * elements with the lowest element numbers of each file are reported.
+   * @param fileA the first file, used like reference
+   * @param fileB the second file
+   * @return true if the files contains the same elements
+   * @throws IOException if an error occurs while comparing the files
+   */
+  private boolean compareFilesExactly(final File fileA, final File fileB)
+      throws IOException {
+
+    final FingerprintCache cache = getFingerprintCache(fileA);
+    final String configuration = getFingerprintConfiguration();
+    final File differences =
+        File.createTempFile("differences-", ".hashes", this.tmpDir);
+
+    try {
+
+      final boolean result;
+
+      try (LongExternalSorter sorterA = createSorter();
+          LongExternalSorter sorterB = createSorter()) {
+
+        // The hashes of the expected file can be retrieved from the cache
+        SortedLongReader readerA =
+            cache == null ? null : cache.loadHashes(fileA, configuration);
+
+        if (readerA == null) {
+
+          try (InputStream is = openFile(fileA)) {
+            readerA = sortHashes(is, sorterA);
+          }
+
+          if (cache != null && isCreateSerializeFile(fileA,
+              getCompressionTypeByFilename(fileA.getAbsolutePath()))) {
+            readerA = cache.saveHashes(fileA, configuration, readerA);
+          }
+        }
+
+        final SortedLongReader readerB;
+        try (InputStream is = openFile(fileB)) {
+          readerB = sortHashes(is, sorterB);
+        } catch (IOException | RuntimeException e) {
+          readerA.close();
+          throw e;
+        }
+
+        try (DataOutputStream out =
+            ExternalMerger.createRunOutputStream(differences)) {
+          result = compareHashes(readerA, readerB, out);
+        }
+      }
+
+      if (result) {
+        return true;
+      }
+
+      // Read again the files to report the differing elements
+      reportDifferences(fileA, differences, true);
+      reportDifferences(fileB, differences, false);
+
+      return false;
+
+    } finally {
+      ExternalMerger.deleteRunFile(differences);
+    }
+  }
+
+  /**
+   * Compare exactly two streams. As the streams cannot be read twice, only
+   * the number of differing elements is reported.
+   * @param isA the first stream, used like reference
+   * @param isB the second stream
+   * @return true if the streams contains the same elements
+   * @throws IOException if an error occurs while comparing the streams
+   */
+  private boolean compareStreamsExactly(final InputStream isA,
+      final InputStream isB) throws IOException {
+
+    try (InputStream a = isA; InputStream b = isB;
+        LongExternalSorter sorterA = createSorter();
+        LongExternalSorter sorterB = createSorter()) {
+
+      final SortedLongReader readerA = sortHashes(a, sorterA);
+      final SortedLongReader readerB = sortHashes(b, sorterB);
+
+      return compareHashes(readerA, readerB, null);
+    }
+  }
+
+  /**
+   * Sort the hashes of the elements of a stream.
+   * @param is the stream
+   * @param sorter the sorter to use
+   * @return a reader on the sorted hashes
+   * @throws IOException if an error occurs while reading the stream
+   */
+  private SortedLongReader sortHashes(final InputStream is,
+      final LongExternalSorter sorter) throws IOException {
+
+    readElements(is, e -> sorter.add(hash(e)));
+
+    return sorter.sort();
+  }
+
+  /**
+   * Compare the multisets of the sorted hashes of the elements of two
+   * streams. The readers are closed by this method.
+   * @param sortedA the sorted hashes of the first stream
+   * @param sortedB the sorted hashes of the second stream
+   * @param differences if not null, the stream where the differing hashes
+   *          are written in the order of the hashes. Each hash is followed by
+   *          the difference between its number of occurrences in the first
+   *          stream and in the second stream
+   * @return true if the multisets are equal
+   * @throws IOException if an error occurs while reading the streams
+   */
+  private boolean compareHashes(final SortedLongReader sortedA,
+      final SortedLongReader sortedB, final DataOutputStream differences)
+      throws IOException {
+
+    long countA = 0;
+    long countB = 0;
+    long onlyInA = 0;
+    long onlyInB = 0;
+
+    try (SortedLongReader readerA = sortedA;
+        SortedLongReader readerB = sortedB) {
+
+      boolean hasA = readerA.hasNext();
+      boolean hasB = readerB.hasNext();
+      long a = hasA ? readerA.next() : 0;
+      long b = hasB ? readerB.next() : 0;
+
+      while (hasA || hasB) {
+
+        // Count the occurrences of the smallest hash in the two streams
+        final long hash = hasA && (!hasB || a <= b) ? a : b;
+        long inA = 0;
+        long inB = 0;
+
+        while (hasA && a == hash) {
+          inA++;
+          hasA = readerA.hasNext();
+          a = hasA ? readerA.next() : 0;
+        }
+
+        while (hasB && b == hash) {
+          inB++;
+          hasB = readerB.hasNext();
+          b = hasB ? readerB.next() : 0;
+        }
+
+        countA += inA;
+        countB += inB;
+
+        if (inA != inB) {
+
+          if (inA > inB) {
+            onlyInA += inA - inB;
+          } else {
+            onlyInB += inB - inA;
+          }
+
+          if (differences != null) {
+            differences.writeLong(hash);
+            differences.writeLong(inA - inB);
+          }
+        }
+      }
+    }
+
+    this.numberElementsCompared = (int) countB;
+
+    if (onlyInA == 0 && onlyInB == 0) {
+      return true;
+    }
+
+    setCauseFailComparison(onlyInA
+        + " elements only in expected file (" + countA + " elements), "
+        + onlyInB + " elements only in tested file (" + countB
+        + " elements)");
+
+    return false;
+  }
+
+  /**
+   * Report the elements of a file that are in the differences. Only the
+   * elements with the lowest element numbers are reported. To limit the
+   * memory used, the differing hashes are loaded by slices and the file is
+   * read once for each slice.
+   * @param file the file
+   * @param differences the file with the differing hashes
+   * @param expected true if the file is the expected file
+   * @throws IOException if an error occurs while reading the files
+   */
+  private void reportDifferences(final File file, final File differences,
+      final boolean expected) throws IOException {
+
+    if (this.maxReportedDifferences == 0) {
+      return;
+    }
+
+    // Messages of the reported elements sorted by element number
+    final TreeMap<Long, String> reported = new TreeMap<>();
+    long remaining = differences.length() / (2 * Long.BYTES);
+    final int capacity = (int) Math.min(REPORT_SLICE_SIZE, remaining);
+    final long[] hashes = new long[capacity];
+    final long[] counts = new long[capacity];
+
+    try (DataInputStream in =
+        ExternalMerger.createRunInputStream(differences)) {
+
+      while (remaining > 0) {
+
+        // Load the hashes of the elements of the file of a slice, the hashes
+        // are already sorted
+        final int n = (int) Math.min(capacity, remaining);
+        int size = 0;
+
+        for (int i = 0; i < n; i++) {
+
+          final long hash = in.readLong();
+          final long delta = in.readLong();
+
+          if (expected ? delta > 0 : delta < 0) {
+            hashes[size] = hash;
+            counts[size++] = Math.abs(delta);
+          }
+        }
+        remaining -= n;
+
+        if (size > 0) {
+          findDifferences(file, hashes, counts, size, expected, reported);
+        }
+      }
+    }
+
+    for (String message : reported.values()) {
+      setCauseFailComparison(message);
+    }
+  }
+
+  /**
+   * Find the first elements of a file whose hashes are in a slice of the
+   * differences.
+   * @param file the file
+   * @param hashes the sorted differing hashes of the slice
+   * @param counts the number of differing occurrences of the hashes
+   * @param size the number of hashes in the slice
+   * @param expected true if the file is the expected file
+   * @param reported the messages of the elements to report, sorted by
+   *          element number. The map never contains more than the maximal
+   *          number of reported differences
+   * @throws IOException if an error occurs while reading the file
+   */
+  private void findDifferences(final File file, final long[] hashes,
+      final long[] counts, final int size, final boolean expected,
+      final TreeMap<Long, String> reported) throws IOException {
+
+    final int max = this.maxReportedDifferences;
+    final long[] elementNumber = new long[1];
+
+    try (InputStream is = openFile(file)) {
+
+      readElements(is, e -> {
+
+        final long number = ++elementNumber[0];
+
+        // No element of the slice can be reported anymore
+        if (reported.size() == max && number > reported.lastKey()) {
+          return;
+        }
+
+        final int i = Arrays.binarySearch(hashes, 0, size, hash(e));
+        if (i < 0 || counts[i] == 0) {
+          return;
+        }
+
+        // Only the first occurrence of an element is reported
+        final long count = counts[i];
+        counts[i] = 0;
+
+        reported.put(number, (expected
+            ? "only in expected file" : "only in tested file")
+            + " at element " + number
+            + (count > 1 ? " (" + count + " times)" : "") + ": " + e);
+
+        if (reported.size() > max) {
+          reported.pollLastEntry();
+        }
+      });
+    }
+  }
+
+  private LongExternalSorter createSorter() {
+
+    return new LongExternalSorter(this.tmpDir, EXACT_SORT_MAX_MEMORY, true);
+  }
+
+  private static InputStream openFile(final File file) throws IOException {
+
+    return getCompressionTypeByFilename(file.getAbsolutePath())
+        .createInputStream(new FileInputStream(file));
+  }
+
+  /**
+   * Compute the hash of an element. A 64 bits hash is enough as a false
+   * equality requires that the differing elements of the two files collide
+   * together.
+   * @param element the element
+   * @return the hash of the element
+   */
+  private static long hash(final String element) {
+
+    return HASH_FUNCTION.hashString(element, UTF_8).asLong();
+  }
+
   @Override
   public String toString() {
 
@@ -174,8 +607,8 @@ public abstract class AbstractComparatorWithBloomFilter
   }
 
   /**
-   * Define if serialization bloomfilter file is necessary according parameter
-   * useSerializeFile and size file.
+   * Define if saving the fingerprint of a file in the cache is useful
+   * according the size of the file.
    * @param file file source for build bloomfilter
    * @param zType compression type of file
    * @return true if creating serialization file is necessary
@@ -183,11 +616,6 @@ public abstract class AbstractComparatorWithBloomFilter
   private boolean isCreateSerializeFile(final File file,
       final CompressionType zType) {
 
-    // No serialize file require
-    if (!this.useSerializeFile) {
-      return false;
-    }
-
     // Compressed file and serialize require
     if (zType != CompressionType.NONE) {
       return true;
@@ -203,6 +631,64 @@ public abstract class AbstractComparatorWithBloomFilter
   // Getters & setters
   //
 
+  @Override
+  public int getNumberElementsCompared() {
+    return this.numberElementsCompared;
+  }
+
+  /**
+   * Test if the exact comparison mode is enabled.
+   * @return true if the exact comparison mode is enabled
+   */
+  public boolean isExactComparison() {
+    return this.exactComparison;
+  }
+
+  /**
+   * Enable the exact comparison mode. In this mode, the hashes of the
+   * elements of the two files are sorted and merged instead of using a Bloom
+   * filter.
+   * @param exactComparison true to enable the exact comparison mode
+   */
+  public void setExactComparison(final boolean exactComparison) {
+    this.exactComparison = exactComparison;
+  }
+
+  /**
+   * Set the maximal number of differing elements of each file reported in
+   * exact mode. The differing elements with the lowest element numbers are
+   * reported.
+   * @param maxReportedDifferences the maximal number of differing elements
+   */
+  public void setMaxReportedDifferences(final int maxReportedDifferences) {
+
+    if (maxReportedDifferences < 0) {
+      throw new IllegalArgumentException(
+          "maxReportedDifferences cannot be lower than 0: "
+              + maxReportedDifferences);
+    }
+
+    this.maxReportedDifferences = maxReportedDifferences;
+  }
+
+  /**
+   * Set the temporary directory used by the exact comparison mode.
+   * @param tmpDir the temporary directory. If null, the default temporary
+   *          directory will be used
+   */
+  public void setTemporaryDirectory(final File tmpDir) {
+    this.tmpDir = tmpDir;
+  }
+
+  /**
+   * Set the fingerprint cache. If no cache is set and the serialization is
+   * enabled, the fingerprints are saved in the directory of the files.
+   * @param fingerprintCache the fingerprint cache, can be null
+   */
+  public void setFingerprintCache(final FingerprintCache fingerprintCache) {
+    this.fingerprintCache = fingerprintCache;
+  }
+
   public boolean isUseSerializeFile() {
     return this.useSerializeFile;
   }
@@ -235,8 +721,8 @@ public abstract class AbstractComparatorWithBloomFilter
 
   /**
    * Public constructor
-   * @param useSerializeFile true if it needed to save BloomFilter in file with
-   *          extension '.ser'
+   * @param useSerializeFile true if it needed to save the fingerprints of the
+   *          large files in the directory of the files
    */
   public AbstractComparatorWithBloomFilter(final boolean useSerializeFile) {
     this.useSerializeFile = useSerializeFile;
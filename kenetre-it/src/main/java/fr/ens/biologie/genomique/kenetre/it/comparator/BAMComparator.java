@@ -29,6 +29,7 @@ import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 import com.google.common.collect.Sets;
 
@@ -50,8 +51,6 @@ public class BAMComparator extends AbstractComparatorWithBloomFilter {
 
   final Set<String> tagsToNotCompare;
 
-  private int numberElementsCompared;
-
   @Override
   public boolean compareFiles(final EnhancedBloomFilter filter,
       final InputStream in) throws IOException {
@@ -140,6 +139,26 @@ public class BAMComparator extends AbstractComparatorWithBloomFilter {
     return filter;
   }
 
+  @Override
+  protected void readElements(final InputStream is,
+      final ElementHandler handler) throws IOException {
+
+    try (final SamReader bamReader =
+        SamReaderFactory.makeDefault().open(SamInputResource.of(is))) {
+
+      for (SAMRecord r : bamReader) {
+        handler.handle(r.getSAMString());
+      }
+    }
+  }
+
+  @Override
+  protected String getFingerprintConfiguration() {
+
+    return super.getFingerprintConfiguration()
+        + ";skip:" + new TreeSet<>(this.tagsToNotCompare);
+  }
+
   //
   // Other methods
   //
@@ -170,19 +189,14 @@ public class BAMComparator extends AbstractComparatorWithBloomFilter {
     return EXTENSIONS;
   }
 
-  @Override
-  public int getNumberElementsCompared() {
-    return this.numberElementsCompared;
-  }
-
   //
   // Constructor
   //
 
   /**
    * Public constructor
-   * @param useSerializeFile true if it needed to save BloomFilter in file with
-   *          extension '.ser'
+   * @param useSerializeFile true if it needed to save the fingerprints of the
+   *          large files in the directory of the files
    */
   public BAMComparator(final boolean useSerializeFile) {
     super(useSerializeFile);
@@ -192,8 +206,8 @@ public class BAMComparator extends AbstractComparatorWithBloomFilter {
 
   /**
    * Public constructor, specify all headers tags not used to compare.
-   * @param useSerializeFile true if it needed to save BloomFilter in file with
-   *          extension '.ser'
+   * @param useSerializeFile true if it needed to save the fingerprints of the
+   *          large files in the directory of the files
    * @param headersTags all headers tags
    */
   public BAMComparator(final boolean useSerializeFile,
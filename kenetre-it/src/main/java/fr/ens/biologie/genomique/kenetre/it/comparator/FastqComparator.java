@@ -46,8 +46,6 @@ public class FastqComparator extends AbstractComparatorWithBloomFilter {
   private static final Collection<String> EXTENSIONS =
       Sets.newHashSet(".fastq", ".fq");
 
-  private int numberElementsCompared;
-
   @Override
   public boolean compareFiles(final EnhancedBloomFilter filter,
       final InputStream is) throws IOException {
@@ -103,6 +101,24 @@ public class FastqComparator extends AbstractComparatorWithBloomFilter {
     return filter;
   }
 
+  @Override
+  protected void readElements(final InputStream is,
+      final ElementHandler handler) throws IOException {
+
+    final FastqReader fastqReader = new FastqReader(is);
+
+    for (ReadSequence read : fastqReader) {
+      handler.handle(read.toFastQ() + '\n');
+    }
+    fastqReader.close();
+
+    try {
+      fastqReader.throwException();
+    } catch (BadBioEntryException e) {
+      throw new IOException("Fail BadBioEntry exception: " + e.getMessage());
+    }
+  }
+
   //
   // Getter and setters
   //
@@ -117,19 +133,14 @@ public class FastqComparator extends AbstractComparatorWithBloomFilter {
     return COMPARATOR_NAME;
   }
 
-  @Override
-  public int getNumberElementsCompared() {
-    return this.numberElementsCompared;
-  }
-
   //
   // Constructor
   //
 
   /**
    * Public constructor
-   * @param useSerializeFile true if it needed to save BloomFilter in file with
-   *          extension '.ser'
+   * @param useSerializeFile true if it needed to save the fingerprints of the
+   *          large files in the directory of the files
    */
   public FastqComparator(final boolean useSerializeFile) {
     super(useSerializeFile);
@@ -0,0 +1,613 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+package fr.ens.biologie.genomique.kenetre.it.comparator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import fr.ens.biologie.genomique.eoulsan.util.EnhancedBloomFilter;
+import fr.ens.biologie.genomique.kenetre.util.LongExternalSorter.SortedLongReader;
+
+/**
+ * This class define a persistent cache for the fingerprints (Bloom filters or
+ * sorted element hashes) of the expected files of the integration tests. Each
+ * fingerprint is saved in a binary file of the cache directory. The file
+ * starts with a header that contains the path, the size, the modification
+ * time and a hash of the content of the source file, followed by the
+ * fingerprint and a CRC32 checksum. The cache files are memory mapped when
+ * they are loaded, and a cache file is ignored if it is corrupted or if the
+ * source file has changed.
+ * @since 0.36
+ * @author Laurent Jourdren
+ */
+public class FingerprintCache {
+
+  private static final int MAGIC = 0x4B465031;
+  private static final byte BLOOM_FILTER_KIND = 1;
+  private static final byte HASHES_KIND = 2;
+
+  private static final String EXTENSION = ".fp";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Size of the start and of the end of the file used for the content hash
+  private static final int CONTENT_SAMPLE_SIZE = 1024 * 1024;
+
+  // Maximal number of bytes of a mapped segment, multiple of 8
+  private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE & ~7L;
+
+  private final File directory;
+
+  //
+  // Bloom filter methods
+  //
+
+  /**
+   * Load a Bloom filter from the cache.
+   * @param file the source file of the Bloom filter
+   * @param configuration the configuration of the comparator
+   * @return a Bloom filter or null if the Bloom filter is not in the cache
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public EnhancedBloomFilter loadBloomFilter(final File file,
+      final String configuration) throws IOException {
+
+    final Entry entry = openEntry(file, BLOOM_FILTER_KIND, configuration);
+    if (entry == null || entry.segments.size() != 1) {
+      return null;
+    }
+
+    try {
+      return EnhancedBloomFilter
+          .readFrom(new ByteBufferInputStream(entry.segments.get(0)));
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Save a Bloom filter in the cache.
+   * @param file the source file of the Bloom filter
+   * @param configuration the configuration of the comparator
+   * @param filter the Bloom filter to save
+   * @throws IOException if an error occurs while saving the Bloom filter
+   */
+  public void saveBloomFilter(final File file, final String configuration,
+      final EnhancedBloomFilter filter) throws IOException {
+
+    requireNonNull(filter, "filter argument cannot be null");
+
+    try (EntryWriter writer =
+        new EntryWriter(file, BLOOM_FILTER_KIND, configuration)) {
+      filter.writeTo(writer.out);
+      writer.commit();
+    }
+  }
+
+  //
+  // Hashes methods
+  //
+
+  /**
+   * Load the sorted hashes of the elements of a file from the cache.
+   * @param file the source file of the hashes
+   * @param configuration the configuration of the comparator
+   * @return a reader on the sorted hashes or null if the hashes are not in
+   *         the cache
+   * @throws IOException if an error occurs while reading the source file
+   */
+  public SortedLongReader loadHashes(final File file,
+      final String configuration) throws IOException {
+
+    final Entry entry = openEntry(file, HASHES_KIND, configuration);
+    if (entry == null) {
+      return null;
+    }
+
+    return new SortedLongReader() {
+
+      private int segment;
+      private LongBuffer buffer = entry.segments.isEmpty()
+          ? LongBuffer.allocate(0) : entry.segments.get(0).asLongBuffer();
+
+      @Override
+      public boolean hasNext() {
+
+        while (!this.buffer.hasRemaining()
+            && this.segment + 1 < entry.segments.size()) {
+          this.buffer = entry.segments.get(++this.segment).asLongBuffer();
+        }
+
+        return this.buffer.hasRemaining();
+      }
+
+      @Override
+      public long next() {
+
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        return this.buffer.get();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  /**
+   * Save the sorted hashes of the elements of a file in the cache while they
+   * are read. The hashes are saved once all the hashes have been read and the
+   * returned reader has been closed.
+   * @param file the source file of the hashes
+   * @param configuration the configuration of the comparator
+   * @param reader the reader on the sorted hashes
+   * @return a reader on the sorted hashes
+   * @throws IOException if an error occurs while creating the cache file
+   */
+  public SortedLongReader saveHashes(final File file,
+      final String configuration, final SortedLongReader reader)
+      throws IOException {
+
+    requireNonNull(reader, "reader argument cannot be null");
+
+    final EntryWriter writer =
+        new EntryWriter(file, HASHES_KIND, configuration);
+    final DataOutputStream out = new DataOutputStream(writer.out);
+
+    return new SortedLongReader() {
+
+      @Override
+      public boolean hasNext() throws IOException {
+        return reader.hasNext();
+      }
+
+      @Override
+      public long next() throws IOException {
+
+        final long result = reader.next();
+        out.writeLong(result);
+
+        return result;
+      }
+
+      @Override
+      public void close() throws IOException {
+
+        try (EntryWriter w = writer) {
+
+          // Only complete lists of hashes are saved
+          if (!reader.hasNext()) {
+            out.flush();
+            w.commit();
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    };
+  }
+
+  //
+  // Cache file methods
+  //
+
+  /**
+   * Get the cache file of a source file.
+   * @param file the source file
+   * @param kind the kind of fingerprint
+   * @param configuration the configuration of the comparator
+   * @return the cache file
+   * @throws IOException if an error occurs while getting the canonical path of
+   *           the source file
+   */
+  private File cacheFile(final File file, final byte kind,
+      final String configuration) throws IOException {
+
+    final String key = Hashing.murmur3_128().newHasher()
+        .putString(file.getCanonicalPath(), UTF_8).putByte(kind)
+        .putString(configuration, UTF_8).hash().toString();
+
+    return new File(this.directory, file.getName() + '.' + key + EXTENSION);
+  }
+
+  /**
+   * Write the header of a cache file.
+   * @param out output stream
+   * @param file the source file
+   * @param kind the kind of fingerprint
+   * @param configuration the configuration of the comparator
+   * @throws IOException if an error occurs while writing the header
+   */
+  private static void writeHeader(final DataOutputStream out, final File file,
+      final byte kind, final String configuration) throws IOException {
+
+    out.writeInt(MAGIC);
+    out.writeByte(kind);
+    out.writeUTF(file.getCanonicalPath());
+    out.writeLong(file.length());
+    out.writeLong(file.lastModified());
+    out.writeLong(contentHash(file));
+    out.writeUTF(configuration);
+    out.flush();
+  }
+
+  /**
+   * Check the header of a cache file.
+   * @param in input stream
+   * @param file the source file
+   * @param kind the kind of fingerprint
+   * @param configuration the configuration of the comparator
+   * @return true if the header match with the source file
+   * @throws IOException if an error occurs while reading the header
+   */
+  private static boolean checkHeader(final DataInputStream in,
+      final File file, final byte kind, final String configuration)
+      throws IOException {
+
+    // The content hash is only computed if the other fields are valid
+    return in.readInt() == MAGIC
+        && in.readByte() == kind
+        && file.getCanonicalPath().equals(in.readUTF())
+        && in.readLong() == file.length()
+        && in.readLong() == file.lastModified()
+        && in.readLong() == contentHash(file)
+        && configuration.equals(in.readUTF());
+  }
+
+  /**
+   * Open a cache file.
+   * @param file the source file
+   * @param kind the kind of fingerprint
+   * @param configuration the configuration of the comparator
+   * @return an entry with the mapped segments of the data of the cache file or
+   *         null if the cache file does not exist or is invalid
+   * @throws IOException if an error occurs while reading the source file
+   */
+  private Entry openEntry(final File file, final byte kind,
+      final String configuration) throws IOException {
+
+    requireNonNull(file, "file argument cannot be null");
+    requireNonNull(configuration, "configuration argument cannot be null");
+
+    final File cacheFile = cacheFile(file, kind, configuration);
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+        FileChannel channel = raf.getChannel()) {
+
+      final long size = channel.size();
+      if (size < Long.BYTES) {
+        return null;
+      }
+
+      // Map the cache file, the mappings remain valid after closing the file
+      final List<MappedByteBuffer> mapped = new ArrayList<>();
+      for (long pos = 0; pos < size; pos += MAX_SEGMENT_SIZE) {
+        mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+            Math.min(MAX_SEGMENT_SIZE, size - pos)));
+      }
+
+      // Check the checksum of the cache file
+      final CRC32 crc = new CRC32();
+      final long dataEnd = size - Long.BYTES;
+      for (int i = 0; i < mapped.size(); i++) {
+
+        final ByteBuffer b = mapped.get(i).duplicate();
+        final long start = i * MAX_SEGMENT_SIZE;
+        b.limit((int) Math.max(0, Math.min(b.capacity(), dataEnd - start)));
+        crc.update(b);
+      }
+
+      final ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+      channel.read(trailer, dataEnd);
+      trailer.flip();
+      if (trailer.getLong() != crc.getValue()) {
+        return null;
+      }
+
+      // Check the header
+      final ByteBuffer first = mapped.get(0).duplicate();
+      final ByteBufferInputStream headerStream =
+          new ByteBufferInputStream(first);
+      if (!checkHeader(new DataInputStream(headerStream), file, kind,
+          configuration)) {
+        return null;
+      }
+
+      // Map the data, the segments start at the beginning of the data to
+      // keep the hashes aligned on the segments
+      final long dataStart = first.position();
+      final List<ByteBuffer> segments = new ArrayList<>();
+      for (long pos = dataStart; pos < dataEnd; pos += MAX_SEGMENT_SIZE) {
+        segments.add(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+            Math.min(MAX_SEGMENT_SIZE, dataEnd - pos)));
+      }
+
+      return new Entry(segments);
+
+    } catch (IOException | RuntimeException e) {
+
+      // Invalid cache file
+      return null;
+    }
+  }
+
+  /**
+   * Compute a hash of the content of a file. As the source files may be
+   * large, only the start and the end of the file are used.
+   * @param file the file
+   * @return the hash of the content of the file
+   * @throws IOException if an error occurs while reading the file
+   */
+  private static long contentHash(final File file) throws IOException {
+
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    final long size = file.length();
+    hasher.putLong(size);
+
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.READ)) {
+
+      final ByteBuffer buffer = ByteBuffer
+          .allocate((int) Math.min(2L * CONTENT_SAMPLE_SIZE, size));
+
+      if (size <= 2L * CONTENT_SAMPLE_SIZE) {
+        readFully(channel, buffer, 0);
+      } else {
+        buffer.limit(CONTENT_SAMPLE_SIZE);
+        readFully(channel, buffer, 0);
+        buffer.limit(buffer.capacity());
+        readFully(channel, buffer, size - CONTENT_SAMPLE_SIZE);
+      }
+
+      buffer.flip();
+      hasher.putBytes(buffer);
+    }
+
+    return hasher.hash().asLong();
+  }
+
+  private static void readFully(final FileChannel channel,
+      final ByteBuffer buffer, final long position) throws IOException {
+
+    long pos = position;
+    while (buffer.hasRemaining()) {
+
+      final int n = channel.read(buffer, pos);
+      if (n < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      pos += n;
+    }
+  }
+
+  //
+  // Internal classes
+  //
+
+  /**
+   * This class define the mapped data of a cache file.
+   */
+  private static final class Entry {
+
+    private final List<ByteBuffer> segments;
+
+    private Entry(final List<ByteBuffer> segments) {
+      this.segments = segments;
+    }
+  }
+
+  /**
+   * This class define a writer of cache file. The data is written in a
+   * temporary file that replaces the cache file when it is committed.
+   */
+  private final class EntryWriter implements AutoCloseable {
+
+    private final File cacheFile;
+    private final File tmpFile;
+    private final CheckedOutputStream checked;
+    private final OutputStream rawOut;
+    private final OutputStream out;
+    private boolean committed;
+
+    /**
+     * Commit the cache file.
+     * @throws IOException if an error occurs while writing the cache file
+     */
+    private void commit() throws IOException {
+
+      this.out.flush();
+
+      // Write the checksum
+      final long crc = this.checked.getChecksum().getValue();
+      new DataOutputStream(this.rawOut).writeLong(crc);
+      this.rawOut.close();
+
+      try {
+        Files.move(this.tmpFile.toPath(), this.cacheFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(this.tmpFile.toPath(), this.cacheFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+
+      this.committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      if (!this.committed) {
+        this.rawOut.close();
+        Files.deleteIfExists(this.tmpFile.toPath());
+      }
+    }
+
+    private EntryWriter(final File file, final byte kind,
+        final String configuration) throws IOException {
+
+      requireNonNull(file, "file argument cannot be null");
+      requireNonNull(configuration, "configuration argument cannot be null");
+
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException(
+            "The cache directory does not exist: " + directory);
+      }
+
+      this.cacheFile = cacheFile(file, kind, configuration);
+      this.tmpFile =
+          File.createTempFile(this.cacheFile.getName(), ".tmp", directory);
+      this.rawOut = new BufferedOutputStream(
+          new FileOutputStream(this.tmpFile), BUFFER_SIZE);
+      this.checked = new CheckedOutputStream(this.rawOut, new CRC32());
+
+      // The checksum is written without closing the underlying stream
+      this.out = new OutputStream() {
+
+        @Override
+        public void write(final int b) throws IOException {
+          checked.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+          checked.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+          checked.flush();
+        }
+      };
+
+      try {
+        writeHeader(new DataOutputStream(this.out), file, kind,
+            configuration);
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * This class define an input stream on a byte buffer.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    @Override
+    public int read() {
+
+      return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+
+      if (len == 0) {
+        return 0;
+      }
+
+      if (!this.buffer.hasRemaining()) {
+        return -1;
+      }
+
+      final int n = Math.min(len, this.buffer.remaining());
+      this.buffer.get(b, off, n);
+
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return this.buffer.remaining();
+    }
+
+    private ByteBufferInputStream(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+  }
+
+  //
+  // Getter
+  //
+
+  /**
+   * Get the cache directory.
+   * @return the cache directory
+   */
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param directory the cache directory
+   */
+  public FingerprintCache(final File directory) {
+
+    requireNonNull(directory, "directory argument cannot be null");
+
+    this.directory = directory;
+  }
+
+}
@@ -32,6 +32,7 @@ import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 import com.google.common.collect.Sets;
 
@@ -49,8 +50,6 @@ public class SAMComparator extends AbstractComparatorWithBloomFilter {
 
   final Set<String> tagsToNotCompare;
 
-  private int numberElementsCompared;
-
   @Override
   public boolean compareFiles(final EnhancedBloomFilter filter,
       final InputStream is) throws IOException {
@@ -101,6 +100,27 @@ public class SAMComparator extends AbstractComparatorWithBloomFilter {
     return true;
   }
 
+  @Override
+  protected void readElements(final InputStream is,
+      final ElementHandler handler) throws IOException {
+
+    super.readElements(is, line -> {
+
+      // Skip specified tag in header sam file
+      if (line.isEmpty() || line.charAt(0) != '@'
+          || !this.tagsToNotCompare.contains(getTag(line))) {
+        handler.handle(line);
+      }
+    });
+  }
+
+  @Override
+  protected String getFingerprintConfiguration() {
+
+    return super.getFingerprintConfiguration()
+        + ";skip:" + new TreeSet<>(this.tagsToNotCompare);
+  }
+
   //
   // Other methods
   //
@@ -131,11 +151,6 @@ public class SAMComparator extends AbstractComparatorWithBloomFilter {
     return EXTENSIONS;
   }
 
-  @Override
-  public int getNumberElementsCompared() {
-    return this.numberElementsCompared;
-  }
-
   //
   // Constructor
   //
@@ -143,8 +158,8 @@ public class SAMComparator extends AbstractComparatorWithBloomFilter {
   /**
    * Public constructor public FastqComparator(final boolean useSerializeFile) {
    * super(useSerializeFile); } /** Public constructor
-   * @param useSerializeFile true if it needed to save BloomFilter in file with
-   *          extension '.ser'
+   * @param useSerializeFile true if it needed to save the fingerprints of the
+   *          large files in the directory of the files
    */
   public SAMComparator(final boolean useSerializeFile) {
     super(useSerializeFile);
@@ -154,8 +169,8 @@ public class SAMComparator extends AbstractComparatorWithBloomFilter {
 
   /**
    * Public constructor, specify all headers tags not used to compare.
-   * @param useSerializeFile true if it needed to save BloomFilter in file with
-   *          extension '.ser'
+   * @param useSerializeFile true if it needed to save the fingerprints of the
+   *          large files in the directory of the files
    * @param headersTags all headers tags
    */
   public SAMComparator(final boolean useSerializeFile,
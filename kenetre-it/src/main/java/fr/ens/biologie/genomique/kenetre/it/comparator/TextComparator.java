@@ -45,8 +45,6 @@ public class TextComparator extends AbstractComparatorWithBloomFilter {
   private static final Collection<String> EXTENSIONS =
       Sets.newHashSet(".txt", ".tsv", ".csv", ".xml");
 
-  private int numberElementsCompared;
-
   @Override
   public boolean compareFiles(final EnhancedBloomFilter filter,
       final InputStream is) throws IOException {
@@ -93,19 +91,14 @@ public class TextComparator extends AbstractComparatorWithBloomFilter {
     return NAME_COMPARATOR;
   }
 
-  @Override
-  public int getNumberElementsCompared() {
-    return this.numberElementsCompared;
-  }
-
   //
   // Constructor
   //
 
   /**
    * Public constructor
-   * @param useSerializeFile true if it needed to save BloomFilter in file with
-   *          extension '.ser'
+   * @param useSerializeFile true if it needed to save the fingerprints of the
+   *          large files in the directory of the files
    */
   public TextComparator(final boolean useSerializeFile) {
     super(useSerializeFile);
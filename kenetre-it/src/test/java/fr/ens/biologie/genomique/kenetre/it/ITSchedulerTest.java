@@ -0,0 +1,112 @@
+package fr.ens.biologie.genomique.kenetre.it;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ITSchedulerTest {
+
+  @Test
+  public void testAllocation() throws InterruptedException {
+
+    final ITScheduler scheduler = new ITScheduler(8, 1000);
+
+    try (ITScheduler.Allocation a1 = scheduler.acquire(4, 600)) {
+
+      assertEquals(4, scheduler.getFreeCpus());
+      assertEquals(400, scheduler.getFreeMemory());
+
+      // Requirements larger than the machine are reduced
+      a1.close();
+      try (ITScheduler.Allocation a2 = scheduler.acquire(32, 5000)) {
+        assertEquals(8, a2.getCpus());
+        assertEquals(1000, a2.getMemory());
+        assertEquals(0, scheduler.getFreeCpus());
+      }
+    }
+
+    assertEquals(8, scheduler.getFreeCpus());
+    assertEquals(1000, scheduler.getFreeMemory());
+  }
+
+  @Test
+  public void testConcurrency() throws InterruptedException {
+
+    final ITScheduler scheduler = new ITScheduler(4, Long.MAX_VALUE);
+    final AtomicInteger usedCpus = new AtomicInteger();
+    final AtomicInteger maxUsedCpus = new AtomicInteger();
+    final Thread[] threads = new Thread[20];
+
+    for (int i = 0; i < threads.length; i++) {
+
+      final int cpus = 1 + i % 3;
+      threads[i] = new Thread(() -> {
+        try (ITScheduler.Allocation a = scheduler.acquire(cpus, 0)) {
+
+          maxUsedCpus.accumulateAndGet(usedCpus.addAndGet(cpus), Math::max);
+          Thread.sleep(5);
+          usedCpus.addAndGet(-cpus);
+
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      threads[i].start();
+    }
+
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertTrue(maxUsedCpus.get() <= 4);
+    assertEquals(4, scheduler.getFreeCpus());
+  }
+
+  @Test
+  public void testLargeTestIsNotStarved() throws InterruptedException {
+
+    final ITScheduler scheduler = new ITScheduler(4, Long.MAX_VALUE);
+    final ITScheduler.Allocation running = scheduler.acquire(2, 0);
+
+    // A large test waits the end of the running test
+    final CountDownLatch largeStarted = new CountDownLatch(1);
+    final Thread large = new Thread(() -> {
+      try (ITScheduler.Allocation a = scheduler.acquire(4, 0)) {
+        largeStarted.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    large.start();
+    while (large.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+
+    // A small test cannot use the CPUs reserved by the large test
+    final CountDownLatch smallStarted = new CountDownLatch(1);
+    final Thread small = new Thread(() -> {
+      try (ITScheduler.Allocation a = scheduler.acquire(1, 0)) {
+        smallStarted.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    small.start();
+
+    assertFalse(smallStarted.await(100, TimeUnit.MILLISECONDS));
+
+    running.close();
+    assertTrue(largeStarted.await(10, TimeUnit.SECONDS));
+    assertTrue(smallStarted.await(10, TimeUnit.SECONDS));
+
+    large.join();
+    small.join();
+  }
+
+}
@@ -0,0 +1,198 @@
+package fr.ens.biologie.genomique.kenetre.it.comparator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ExactComparisonTest {
+
+  @Test
+  public void testSameTextFiles() throws IOException {
+
+    final List<String> lines = lines(1000);
+    final List<String> shuffled = new ArrayList<>(lines);
+    Collections.reverse(shuffled);
+
+    final AbstractComparatorWithBloomFilter comparator = comparator();
+
+    assertTrue(comparator.compareFiles(toStream(lines), toStream(shuffled)));
+    assertEquals(1000, comparator.getNumberElementsCompared());
+  }
+
+  @Test
+  public void testDuplicateLine() throws IOException {
+
+    // A Bloom filter cannot detect that a line is duplicated in place of
+    // another line of the file
+    final List<String> linesA = lines(1000);
+    final List<String> linesB = new ArrayList<>(linesA);
+    linesB.set(10, linesB.get(20));
+
+    final File fileA = createFile(linesA);
+    final File fileB = createFile(linesB);
+
+    try {
+      final AbstractComparatorWithBloomFilter comparator = comparator();
+
+      assertFalse(comparator.compareFiles(fileA, fileB));
+
+      final String cause = comparator.getCauseFailComparison();
+      assertTrue(cause.contains("only in expected file at element 11: line10"));
+      assertTrue(cause.contains("only in tested file at element 11: line20"));
+
+    } finally {
+      fileA.delete();
+      fileB.delete();
+    }
+  }
+
+  @Test
+  public void testMaxReportedDifferences() throws IOException {
+
+    final List<String> linesA = lines(100);
+    final List<String> linesB = new ArrayList<>(linesA);
+    for (int i = 0; i < 50; i++) {
+      linesB.set(i, "other" + i);
+    }
+
+    final File fileA = createFile(linesA);
+    final File fileB = createFile(linesB);
+
+    try {
+      final AbstractComparatorWithBloomFilter comparator = comparator();
+      comparator.setMaxReportedDifferences(3);
+
+      assertFalse(comparator.compareFiles(fileA, fileB));
+
+      final String cause = comparator.getCauseFailComparison();
+      assertTrue(cause.startsWith("[50 elements only in expected file"));
+      assertEquals(7, cause.split("\n").length);
+
+      // The differences with the lowest element numbers are reported
+      for (int i = 0; i < 3; i++) {
+        assertTrue(cause.contains("[only in expected file at element "
+            + (i + 1) + ": line" + i + ']'));
+        assertTrue(cause.contains("[only in tested file at element "
+            + (i + 1) + ": other" + i + ']'));
+      }
+
+    } finally {
+      fileA.delete();
+      fileB.delete();
+    }
+  }
+
+  @Test
+  public void testReportOrder() throws IOException {
+
+    // The differences are reported in the order of the files, not in the
+    // order of their hashes
+    final List<String> linesA = lines(1000);
+    final List<String> linesB = new ArrayList<>(linesA);
+    final List<Integer> changed = new ArrayList<>();
+    for (int i = 999; i >= 0; i -= 7) {
+      linesB.set(i, "other" + i);
+      changed.add(0, i);
+    }
+
+    final File fileA = createFile(linesA);
+    final File fileB = createFile(linesB);
+    final File tmpDir = Files.createTempDirectory("exact").toFile();
+
+    try {
+      final AbstractComparatorWithBloomFilter comparator = comparator();
+      comparator.setMaxReportedDifferences(5);
+      comparator.setTemporaryDirectory(tmpDir);
+
+      assertFalse(comparator.compareFiles(fileA, fileB));
+
+      final List<String> expected = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        expected.add("[only in expected file at element "
+            + (changed.get(i) + 1) + ": line" + changed.get(i) + ']');
+      }
+      for (int i = 0; i < 5; i++) {
+        expected.add("[only in tested file at element "
+            + (changed.get(i) + 1) + ": other" + changed.get(i) + ']');
+      }
+
+      final List<String> cause = new ArrayList<>(
+          Arrays.asList(comparator.getCauseFailComparison().split("\n")));
+      cause.remove(0);
+      assertEquals(expected.toString(), cause.toString());
+
+      // The temporary files have been removed
+      assertEquals(0, tmpDir.list().length);
+
+    } finally {
+      fileA.delete();
+      fileB.delete();
+      tmpDir.delete();
+    }
+  }
+
+  @Test
+  public void testSAMHeaderTags() throws IOException {
+
+    final List<String> linesA = lines(10);
+    final List<String> linesB = new ArrayList<>(linesA);
+    linesA.add(0, "@PG\tID:mapper\tVN:1");
+    linesB.add(0, "@PG\tID:mapper\tVN:2");
+
+    final AbstractComparatorWithBloomFilter comparator =
+        new SAMComparator(false, "PG");
+    comparator.setExactComparison(true);
+
+    assertTrue(comparator.compareFiles(toStream(linesA), toStream(linesB)));
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static AbstractComparatorWithBloomFilter comparator() {
+
+    final AbstractComparatorWithBloomFilter result = new TextComparator(false);
+    result.setExactComparison(true);
+
+    return result;
+  }
+
+  private static List<String> lines(final int count) {
+
+    final List<String> result = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      result.add("line" + i);
+    }
+
+    return result;
+  }
+
+  private static InputStream toStream(final List<String> lines) {
+
+    return new ByteArrayInputStream(
+        (String.join("\n", lines) + '\n').getBytes(UTF_8));
+  }
+
+  private static File createFile(final List<String> lines) throws IOException {
+
+    final File result = File.createTempFile("exact-", ".txt");
+    Files.write(result.toPath(), lines, UTF_8);
+
+    return result;
+  }
+
+}
@@ -0,0 +1,219 @@
+package fr.ens.biologie.genomique.kenetre.it.comparator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.util.EnhancedBloomFilter;
+import fr.ens.biologie.genomique.kenetre.util.LongExternalSorter;
+import fr.ens.biologie.genomique.kenetre.util.LongExternalSorter.SortedLongReader;
+
+public class FingerprintCacheTest {
+
+  @Test
+  public void testBloomFilter() throws IOException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+    final File file = createFile(dir, "a\nb\nc\n");
+
+    try {
+      final FingerprintCache cache = new FingerprintCache(dir);
+      assertNull(cache.loadBloomFilter(file, "conf"));
+
+      final EnhancedBloomFilter filter = new EnhancedBloomFilter(1000);
+      filter.put("a");
+      filter.put("b");
+      cache.saveBloomFilter(file, "conf", filter);
+
+      final EnhancedBloomFilter loaded = cache.loadBloomFilter(file, "conf");
+      assertNotNull(loaded);
+      assertTrue(loaded.mightContain("a"));
+      assertTrue(loaded.mightContain("b"));
+      assertEquals(2, loaded.getAddedNumberOfElements());
+      assertTrue(loaded.sameConfigurationFilter(filter));
+
+      // Another configuration is another entry
+      assertNull(cache.loadBloomFilter(file, "other"));
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testHashes() throws IOException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+    final File file = createFile(dir, "a\nb\nc\n");
+
+    try {
+      final FingerprintCache cache = new FingerprintCache(dir);
+      assertNull(cache.loadHashes(file, "conf"));
+
+      final long[] values = {-5, 1, 1, 42, Long.MAX_VALUE};
+      assertEquals(toList(values),
+          readAll(cache.saveHashes(file, "conf", sortedReader(values))));
+
+      assertEquals(toList(values), readAll(cache.loadHashes(file, "conf")));
+
+      // Changing the file invalidates the entry
+      Files.write(file.toPath(), "a\nb\nd\n".getBytes(UTF_8));
+      assertNull(cache.loadHashes(file, "conf"));
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testPartialHashesAreNotSaved() throws IOException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+    final File file = createFile(dir, "a\n");
+
+    try {
+      final FingerprintCache cache = new FingerprintCache(dir);
+
+      try (SortedLongReader reader =
+          cache.saveHashes(file, "conf", sortedReader(new long[] {1, 2}))) {
+        reader.next();
+      }
+
+      assertNull(cache.loadHashes(file, "conf"));
+      assertEquals(1, dir.list().length);
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testCorruptedEntry() throws IOException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+    final File file = createFile(dir, "a\n");
+
+    try {
+      final FingerprintCache cache = new FingerprintCache(dir);
+      readAll(cache.saveHashes(file, "conf", sortedReader(new long[] {1, 2})));
+
+      File cacheFile = null;
+      for (File f : dir.listFiles()) {
+        if (!f.equals(file)) {
+          cacheFile = f;
+        }
+      }
+
+      try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw")) {
+        raf.seek(raf.length() - 12);
+        raf.write(raf.read() ^ 0xff);
+      }
+
+      assertNull(cache.loadHashes(file, "conf"));
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void testExactComparisonWithCache() throws IOException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+    final File cacheDir = new File(dir, "cache");
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append("line").append(i).append('\n');
+    }
+    final File fileA = createFile(dir, sb.toString());
+    final File fileB = createFile(dir, sb.toString());
+
+    try {
+      final TextComparator comparator = new TextComparator(false);
+      comparator.setExactComparison(true);
+      comparator.setFingerprintCache(new FingerprintCache(cacheDir));
+
+      // Only large files are saved in the cache
+      assertTrue(comparator.compareFiles(fileA, fileB));
+      assertFalse(cacheDir.exists());
+
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static File createFile(final File dir, final String content)
+      throws IOException {
+
+    final File result = File.createTempFile("file", ".txt", dir);
+    Files.write(result.toPath(), content.getBytes(UTF_8));
+
+    return result;
+  }
+
+  private static SortedLongReader sortedReader(final long[] values)
+      throws IOException {
+
+    final LongExternalSorter sorter = new LongExternalSorter(null);
+    for (long v : values) {
+      sorter.add(v);
+    }
+
+    return sorter.sort();
+  }
+
+  private static List<Long> readAll(final SortedLongReader reader)
+      throws IOException {
+
+    final List<Long> result = new ArrayList<>();
+    try (SortedLongReader r = reader) {
+      while (r.hasNext()) {
+        result.add(r.next());
+      }
+    }
+
+    return result;
+  }
+
+  private static List<Long> toList(final long[] values) {
+
+    final List<Long> result = new ArrayList<>();
+    for (long v : values) {
+      result.add(v);
+    }
+
+    return result;
+  }
+
+  private static void deleteDirectory(final File dir) {
+
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        if (f.isDirectory()) {
+          deleteDirectory(f);
+        } else {
+          f.delete();
+        }
+      }
+    }
+    dir.delete();
+  }
+
+}
@@ -259,15 +259,15 @@ public class BWAMapperProvider extends AbstractMapperProvider {
             final String quality) throws IOException {
 
           super.writeEntry(name, sequence, quality);
-          this.writer
-              .write(ReadSequence.toFastQ(name, sequence, quality) + '\n');
+          this.writer.writeEntry(name, sequence, quality);
         }
 
         @Override
         public void writeEntry1(final ReadSequence read) throws IOException {
 
           super.writeEntry1(read);
-          this.writer.write(read.toFastQ() + '\n');
+          this.writer.writeEntry(read.getName(), read.getSequence(),
+              read.getQuality());
         }
 
         @Override
@@ -428,24 +428,24 @@ public class BWAMapperProvider extends AbstractMapperProvider {
 
           super.writeEntry(name1, sequence1, quality1, name2, sequence2,
               quality2);
-          this.writer1
-              .write(ReadSequence.toFastQ(name1, sequence1, quality2) + '\n');
-          this.writer2
-              .write(ReadSequence.toFastQ(name2, sequence2, quality2) + '\n');
+          this.writer1.writeEntry(name1, sequence1, quality1);
+          this.writer2.writeEntry(name2, sequence2, quality2);
         }
 
         @Override
         public void writeEntry1(final ReadSequence read) throws IOException {
 
           super.writeEntry1(read);
-          this.writer1.write(read.toFastQ() + '\n');
+          this.writer1.writeEntry(read.getName(), read.getSequence(),
+              read.getQuality());
         }
 
         @Override
         public void writeEntry2(final ReadSequence read) throws IOException {
 
           super.writeEntry2(read);
-          this.writer2.write(read.toFastQ() + '\n');
+          this.writer2.writeEntry(read.getName(), read.getSequence(),
+              read.getQuality());
         }
 
         @Override
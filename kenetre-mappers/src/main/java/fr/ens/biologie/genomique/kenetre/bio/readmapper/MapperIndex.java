@@ -26,6 +26,7 @@ package fr.ens.biologie.genomique.kenetre.bio.readmapper;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -39,16 +40,23 @@ import fr.ens.biologie.genomique.kenetre.io.FileUtils;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
 
 /**
- * This class define a mapper index.
+ * This class define a mapper index. The index can be unpacked in a directory
+ * of the job or shared with the other jobs of the node using a
+ * MapperIndexCache. In this last case, the index must be closed at the end of
+ * the job to release the cache entry.
  * @author Laurent Jourdren
  * @since 2.0
  */
-public class MapperIndex {
+public class MapperIndex implements Closeable {
 
   private final MapperInstance mapperInstance;
   private final InputStream in;
   private final File indexDirectory;
+  private final MapperIndexCache cache;
+  private final String cacheKey;
+  private final File archiveFile;
   private final GenericLogger logger;
+  private MapperIndexCache.Entry cacheEntry;
   private boolean unzipped;
 
   //
@@ -68,9 +76,24 @@ public class MapperIndex {
    * @return the index output directory
    */
   public File getIndexDirectory() {
+
+    synchronized (this) {
+      if (this.cacheEntry != null) {
+        return this.cacheEntry.getDirectory();
+      }
+    }
+
     return this.indexDirectory;
   }
 
+  /**
+   * Test if the index is shared with other jobs using a cache.
+   * @return true if the index is shared with other jobs using a cache
+   */
+  public boolean isShared() {
+    return this.cache != null;
+  }
+
   /**
    * Get the mapper index archive input stream.
    * @return the mapper index archive input stream
@@ -130,12 +153,7 @@ public class MapperIndex {
       final ReporterIncrementer incrementer, final String counterGroup)
       throws IOException {
 
-    synchronized (this) {
-      if (!unzipped) {
-        unzipArchiveIndexFile(getInputStream(), getIndexDirectory());
-        this.unzipped = false;
-      }
-    }
+    unzipIndex();
 
     return new EntryMapping(this, fastqFormat, mapperArguments, threadNumber,
         multipleInstanceEnabled, incrementer, counterGroup, this.logger);
@@ -180,12 +198,7 @@ public class MapperIndex {
       final ReporterIncrementer incrementer, final String counterGroup)
       throws IOException {
 
-    synchronized (this) {
-      if (!unzipped) {
-        unzipArchiveIndexFile(getInputStream(), getIndexDirectory());
-        this.unzipped = false;
-      }
-    }
+    unzipIndex();
 
     return new FileMapping(this, fastqFormat, mapperArguments, threadNumber,
         multipleInstanceEnabled, incrementer, counterGroup, this.logger);
@@ -195,6 +208,27 @@ public class MapperIndex {
   // Unzip methods
   //
 
+  /**
+   * Unpack the index if not already done.
+   * @throws IOException if an error occurs while unpacking the index
+   */
+  private synchronized void unzipIndex() throws IOException {
+
+    if (this.unzipped) {
+      return;
+    }
+
+    if (this.cache != null) {
+      this.cacheEntry = this.archiveFile != null
+          ? this.cache.acquire(this.cacheKey, this.archiveFile)
+          : this.cache.acquire(this.cacheKey, getInputStream());
+    } else {
+      unzipArchiveIndexFile(getInputStream(), getIndexDirectory());
+    }
+
+    this.unzipped = true;
+  }
+
   private void unzipArchiveIndexFile(final InputStream archiveIndexFile,
       final File archiveIndexDir) throws IOException {
 
@@ -230,7 +264,27 @@ public class MapperIndex {
   }
 
   //
-  // Constructor
+  // Other methods
+  //
+
+  /**
+   * Release the index. If the index is shared using a cache, the cache entry
+   * is released and can be evicted once all the jobs that use it have
+   * released it.
+   * @throws IOException if an error occurs while releasing the index
+   */
+  @Override
+  public synchronized void close() throws IOException {
+
+    if (this.cacheEntry != null) {
+      this.cacheEntry.close();
+      this.cacheEntry = null;
+      this.unzipped = false;
+    }
+  }
+
+  //
+  // Constructors
   //
 
   /**
@@ -252,6 +306,43 @@ public class MapperIndex {
     this.mapperInstance = mapperInstance;
     this.in = archiveIndexFileInputStream;
     this.indexDirectory = indexOutputDirectory;
+    this.cache = null;
+    this.cacheKey = null;
+    this.archiveFile = null;
+    this.logger = logger;
+  }
+
+  /**
+   * Constructor for an index shared using a cache.
+   * @param mapperInstance mapper instance object
+   * @param archiveIndexFile archive index file, can be null if
+   *          archiveIndexFileInputStream is not null
+   * @param archiveIndexFileInputStream archive index file input stream, can be
+   *          null if archiveIndexFile is not null
+   * @param cache the index cache
+   * @param cacheKey key of the index in the cache
+   * @param logger the logger to use
+   */
+  MapperIndex(final MapperInstance mapperInstance, final File archiveIndexFile,
+      final InputStream archiveIndexFileInputStream,
+      final MapperIndexCache cache, final String cacheKey,
+      final GenericLogger logger) {
+
+    requireNonNull(mapperInstance, "mapperInstance cannot be null");
+    requireNonNull(cache, "cache cannot be null");
+    requireNonNull(cacheKey, "cacheKey cannot be null");
+
+    if (archiveIndexFile == null && archiveIndexFileInputStream == null) {
+      throw new NullPointerException(
+          "archiveIndexFile and archiveIndexFileInputStream cannot be null");
+    }
+
+    this.mapperInstance = mapperInstance;
+    this.in = archiveIndexFileInputStream;
+    this.indexDirectory = null;
+    this.cache = cache;
+    this.cacheKey = cacheKey;
+    this.archiveFile = archiveIndexFile;
     this.logger = logger;
   }
 }
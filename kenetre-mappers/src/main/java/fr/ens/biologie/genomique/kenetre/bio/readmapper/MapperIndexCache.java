@@ -0,0 +1,811 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.readmapper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
+import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
+
+/**
+ * This class define a node-local cache of unpacked mapper indexes. The entries
+ * of the cache are identified by a key that depends on the content of the
+ * index, like the key of the genome index storage, so all the jobs of a node
+ * that use the same index share the same unpacked copy.
+ * <p>
+ * An index is unpacked only once, in a temporary directory that is atomically
+ * renamed when the index is complete. Each job that uses an entry holds a
+ * shared file lock on a reference file until the entry is closed. The
+ * operating system releases the locks of the jobs that crash, so the
+ * references that can be locked exclusively are stale and ignored. Unlike
+ * process ids, file locks also work between containers that share the cache
+ * directory. When the size of the cache exceeds its disk budget, the least
+ * recently used entries without references are removed.
+ * <p>
+ * The cache can be used by several threads and several processes at the same
+ * time: the cache directory is protected by file locks.
+ * @author Laurent Jourdren
+ * @since 0.36
+ */
+public class MapperIndexCache {
+
+  private static final String LOCK_FILENAME = ".lock";
+  private static final String KEY_LOCK_SUFFIX = ".lock";
+  private static final String REFS_SUFFIX = ".refs";
+  private static final String SIZE_SUFFIX = ".size";
+  private static final String TMP_PREFIX = ".tmp-";
+  private static final String TRASH_PREFIX = ".trash-";
+
+  // File locks are held by the JVM, threads must also be synchronized
+  private static final Map<String, ReentrantLock> JVM_LOCKS =
+      new ConcurrentHashMap<>();
+
+  // Closing any channel on a file releases all the locks of the JVM on this
+  // file, so the references held by the JVM must never be opened again
+  private static final Set<String> JVM_REFERENCES =
+      ConcurrentHashMap.newKeySet();
+
+  private final File directory;
+  private final long maxSize;
+  private final GenericLogger logger;
+
+  /**
+   * This class define an entry of the cache used by a job. The entry must be
+   * closed when the job does not need the index anymore.
+   */
+  public final class Entry implements Closeable {
+
+    private final String key;
+    private final File directory;
+    private final File referenceFile;
+    private final FileChannel referenceChannel;
+    private boolean closed;
+
+    /**
+     * Get the key of the entry.
+     * @return the key of the entry
+     */
+    public String getKey() {
+      return this.key;
+    }
+
+    /**
+     * Get the directory of the unpacked index.
+     * @return the directory of the unpacked index
+     */
+    public File getDirectory() {
+      return this.directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      synchronized (this) {
+        if (this.closed) {
+          return;
+        }
+        this.closed = true;
+      }
+
+      release(this);
+    }
+
+    private Entry(final String key, final File directory,
+        final File referenceFile, final FileChannel referenceChannel) {
+
+      this.key = key;
+      this.directory = directory;
+      this.referenceFile = referenceFile;
+      this.referenceChannel = referenceChannel;
+    }
+  }
+
+  /**
+   * This class define the state of an entry of the cache for the eviction.
+   */
+  private static final class EntryState {
+
+    private final String key;
+    private final File directory;
+    private final long size;
+    private final long lastAccess;
+    private final boolean referenced;
+
+    private EntryState(final String key, final File directory, final long size,
+        final boolean referenced) {
+
+      this.key = key;
+      this.directory = directory;
+      this.size = size;
+      this.lastAccess = directory.lastModified();
+      this.referenced = referenced;
+    }
+  }
+
+  /**
+   * Interface for the code executed with a lock.
+   * @param <T> type of the result
+   */
+  private interface LockedAction<T> {
+
+    T run() throws IOException;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the cache directory.
+   * @return the cache directory
+   */
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * Get the maximal size of the cache.
+   * @return the maximal size of the cache in bytes
+   */
+  public long getMaxSize() {
+    return this.maxSize;
+  }
+
+  /**
+   * Get the size of the entries of the cache.
+   * @return the size of the entries of the cache in bytes
+   * @throws IOException if an error occurs while reading the cache
+   */
+  public long getSize() throws IOException {
+
+    return withLock(globalLockFile(), true, () -> {
+
+      long result = 0;
+      for (EntryState e : entryStates()) {
+        result += e.size;
+      }
+
+      return result;
+    });
+  }
+
+  //
+  // Cache methods
+  //
+
+  /**
+   * Get an entry of the cache. If the entry does not exist, the index archive
+   * is unpacked. The entry is referenced until it is closed.
+   * @param key key of the index, must be a valid file name
+   * @param archive index archive
+   * @return an Entry object
+   * @throws IOException if an error occurs while unpacking the index
+   */
+  public Entry acquire(final String key, final File archive)
+      throws IOException {
+
+    requireNonNull(archive, "archive argument cannot be null");
+
+    return acquire(key, archive, null);
+  }
+
+  /**
+   * Get an entry of the cache. If the entry does not exist, the index archive
+   * is unpacked. The entry is referenced until it is closed. As the size of
+   * the index is unknown before its unpacking, the disk budget is only
+   * enforced after the unpacking.
+   * @param key key of the index, must be a valid file name
+   * @param archive index archive input stream
+   * @return an Entry object
+   * @throws IOException if an error occurs while unpacking the index
+   */
+  public Entry acquire(final String key, final InputStream archive)
+      throws IOException {
+
+    requireNonNull(archive, "archive argument cannot be null");
+
+    return acquire(key, null, archive);
+  }
+
+  /**
+   * Get an entry of the cache.
+   * @param key key of the index
+   * @param archiveFile index archive file, can be null if archiveInputStream
+   *          is not null
+   * @param archiveInputStream index archive input stream, can be null if
+   *          archiveFile is not null
+   * @return an Entry object
+   * @throws IOException if an error occurs while unpacking the index
+   */
+  private Entry acquire(final String key, final File archiveFile,
+      final InputStream archiveInputStream) throws IOException {
+
+    checkKey(key);
+
+    final File entryDir = new File(this.directory, key);
+    final List<File> trash = new ArrayList<>();
+
+    // The key lock prevents the eviction of the entry until it is referenced
+    final Entry result = withLock(keyLockFile(key), true, () -> {
+
+      if (!entryDir.isDirectory()) {
+
+        // Make room for the index before unpacking it
+        final long expectedSize =
+            archiveFile == null ? 0 : uncompressedSize(archiveFile);
+        trash.addAll(withLock(globalLockFile(), true,
+            () -> evict(expectedSize, key)));
+
+        if (archiveFile == null) {
+          unpack(key, archiveInputStream, entryDir);
+        } else {
+          try (InputStream in = new FileInputStream(archiveFile)) {
+            unpack(key, in, entryDir);
+          }
+        }
+      } else {
+        this.logger.debug("Use cached index: " + entryDir);
+      }
+
+      return withLock(globalLockFile(), true, () -> {
+
+        final File refsDir = new File(this.directory, key + REFS_SUFFIX);
+        if (!refsDir.isDirectory() && !refsDir.mkdir()) {
+          throw new IOException(
+              "Unable to create the reference directory: " + refsDir);
+        }
+
+        final File referenceFile =
+            new File(refsDir, UUID.randomUUID().toString());
+        final FileChannel channel = lockReference(referenceFile);
+        entryDir.setLastModified(System.currentTimeMillis());
+
+        // The cache can exceed its budget if the size was unknown
+        trash.addAll(evict(0, key));
+
+        return new Entry(key, entryDir, referenceFile, channel);
+      });
+    });
+
+    deleteTrash(trash);
+
+    return result;
+  }
+
+  /**
+   * Release an entry of the cache.
+   * @param entry the entry to release
+   * @throws IOException if an error occurs while releasing the entry
+   */
+  private void release(final Entry entry) throws IOException {
+
+    final List<File> trash = withLock(globalLockFile(), true, () -> {
+
+      // Closing the channel releases the lock
+      try {
+        entry.referenceChannel.close();
+      } finally {
+        JVM_REFERENCES.remove(entry.referenceFile.getAbsolutePath());
+      }
+
+      if (!entry.referenceFile.delete()) {
+        this.logger.warn("Unable to remove the reference file of the "
+            + entry.key + " index: " + entry.referenceFile);
+      }
+      entry.directory.setLastModified(System.currentTimeMillis());
+
+      return evict(0, null);
+    });
+
+    deleteTrash(trash);
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Unpack an index in the cache.
+   * @param key key of the index
+   * @param archive archive of the index
+   * @param entryDir directory of the entry
+   * @throws IOException if an error occurs while unpacking the index
+   */
+  private void unpack(final String key, final InputStream archive,
+      final File entryDir) throws IOException {
+
+    // A previous temporary directory can only be the result of a crash
+    final File tmpDir = new File(this.directory, TMP_PREFIX + key);
+    if (tmpDir.exists()) {
+      FileUtils.recursiveDelete(tmpDir);
+    }
+
+    if (!tmpDir.mkdir()) {
+      throw new IOException(
+          "Unable to create a temporary directory for the index: " + tmpDir);
+    }
+
+    try {
+
+      this.logger.info("Unpack index " + key + " in " + entryDir);
+      FileUtils.unzip(archive, tmpDir);
+
+      Files.write(sizeFile(key).toPath(),
+          Long.toString(directorySize(tmpDir)).getBytes(UTF_8));
+
+      // The entry appears only when the index is complete
+      Files.move(tmpDir.toPath(), entryDir.toPath(),
+          StandardCopyOption.ATOMIC_MOVE);
+
+    } finally {
+
+      if (tmpDir.exists()) {
+        FileUtils.recursiveDelete(tmpDir);
+      }
+    }
+  }
+
+  /**
+   * Remove the least recently used entries without references until the size
+   * of the cache and an additional size is lower than the maximal size of the
+   * cache. The entries are renamed, they must be deleted with deleteTrash()
+   * after the release of the global lock. This method must be called with the
+   * global lock.
+   * @param additionalSize additional size
+   * @param protectedKey key of an entry that cannot be removed, can be null
+   * @return a list with the directories to delete
+   * @throws IOException if an error occurs while removing the entries
+   */
+  private List<File> evict(final long additionalSize,
+      final String protectedKey) throws IOException {
+
+    final List<File> result = new ArrayList<>();
+    removeTemporaryDirectories(protectedKey, result);
+    final List<EntryState> entries = entryStates();
+
+    long size = additionalSize;
+    for (EntryState e : entries) {
+      size += e.size;
+    }
+
+    if (size <= this.maxSize) {
+      return result;
+    }
+
+    entries.sort(Comparator.comparingLong(e -> e.lastAccess));
+
+    for (EntryState e : entries) {
+
+      if (size <= this.maxSize) {
+        break;
+      }
+
+      if (e.referenced || e.key.equals(protectedKey)) {
+        continue;
+      }
+
+      // Entries that are being acquired are locked
+      final Boolean removed = withLock(keyLockFile(e.key), false, () -> {
+
+        final File trashDir = new File(this.directory,
+            TRASH_PREFIX + e.key + "-" + UUID.randomUUID());
+        Files.move(e.directory.toPath(), trashDir.toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+        result.add(trashDir);
+        Files.deleteIfExists(sizeFile(e.key).toPath());
+        FileUtils
+            .recursiveDelete(new File(this.directory, e.key + REFS_SUFFIX));
+
+        return true;
+      });
+
+      if (removed != null) {
+        this.logger.info("Remove index " + e.key + " from the index cache");
+        size -= e.size;
+      }
+    }
+
+    if (size > this.maxSize) {
+      this.logger.warn("The size of the index cache ("
+          + size + " bytes) exceeds its budget (" + this.maxSize
+          + " bytes), all the remaining entries are in use");
+    }
+
+    return result;
+  }
+
+  /**
+   * Remove the temporary directories left by the jobs that have crashed while
+   * unpacking an index. The directories are renamed, they must be deleted
+   * with deleteTrash() after the release of the global lock. This method must
+   * be called with the global lock.
+   * @param protectedKey key of the entry locked by the current thread, can be
+   *          null
+   * @param trash list where to add the directories to delete
+   * @throws IOException if an error occurs while removing the directories
+   */
+  private void removeTemporaryDirectories(final String protectedKey,
+      final List<File> trash) throws IOException {
+
+    final File[] files = this.directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File f : files) {
+
+      final String name = f.getName();
+      if (!name.startsWith(TMP_PREFIX) || !f.isDirectory()) {
+        continue;
+      }
+
+      final String key = name.substring(TMP_PREFIX.length());
+      if (key.equals(protectedKey)) {
+        continue;
+      }
+
+      // The key lock is held while the index is unpacked
+      withLock(keyLockFile(key), false, () -> {
+
+        final File trashDir = new File(this.directory,
+            TRASH_PREFIX + key + "-" + UUID.randomUUID());
+        Files.move(f.toPath(), trashDir.toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+        trash.add(trashDir);
+        this.logger.debug("Remove temporary index cache directory: " + f);
+
+        return true;
+      });
+    }
+  }
+
+  /**
+   * Get the state of the entries of the cache. This method must be called
+   * with the global lock.
+   * @return a list with the state of the entries
+   * @throws IOException if an error occurs while reading the cache
+   */
+  private List<EntryState> entryStates() throws IOException {
+
+    final List<EntryState> result = new ArrayList<>();
+    final File[] files = this.directory.listFiles();
+
+    if (files == null) {
+      throw new IOException(
+          "Unable to list the index cache: " + this.directory);
+    }
+
+    for (File f : files) {
+
+      final String key = f.getName();
+      if (!f.isDirectory()
+          || key.startsWith(".") || key.endsWith(REFS_SUFFIX)) {
+        continue;
+      }
+
+      result.add(new EntryState(key, f, entrySize(key, f), isReferenced(key)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Test if an entry has references of living jobs. The references that are
+   * not locked by a job anymore are removed. This method must be called with
+   * the global lock.
+   * @param key key of the entry
+   * @return true if the entry is referenced
+   * @throws IOException if an error occurs while testing the references
+   */
+  private boolean isReferenced(final String key) throws IOException {
+
+    final File[] refs =
+        new File(this.directory, key + REFS_SUFFIX).listFiles();
+    if (refs == null) {
+      return false;
+    }
+
+    boolean result = false;
+
+    for (File ref : refs) {
+
+      if (JVM_REFERENCES.contains(ref.getAbsolutePath())) {
+        result = true;
+        continue;
+      }
+
+      boolean stale = false;
+
+      try (FileChannel channel = FileChannel.open(ref.toPath(),
+          StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+        // An exclusive lock is only granted if no job holds the reference
+        try (FileLock lock = channel.tryLock()) {
+          stale = lock != null;
+        }
+      } catch (OverlappingFileLockException e) {
+        // The reference is locked by the JVM
+      } catch (NoSuchFileException e) {
+        continue;
+      }
+
+      if (stale) {
+        this.logger.debug("Remove stale index cache reference: " + ref);
+        Files.deleteIfExists(ref.toPath());
+      } else {
+        result = true;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the size of an entry.
+   * @param key key of the entry
+   * @param entryDir directory of the entry
+   * @return the size of the entry in bytes
+   * @throws IOException if an error occurs while computing the size
+   */
+  private long entrySize(final String key, final File entryDir)
+      throws IOException {
+
+    final File sizeFile = sizeFile(key);
+
+    if (sizeFile.isFile()) {
+      try {
+        return Long.parseLong(
+            new String(Files.readAllBytes(sizeFile.toPath()), UTF_8).trim());
+      } catch (NumberFormatException e) {
+        // Compute the size
+      }
+    }
+
+    return directorySize(entryDir);
+  }
+
+  /**
+   * Delete the directories of removed entries.
+   * @param trash the directories to delete
+   */
+  private void deleteTrash(final List<File> trash) {
+
+    for (File dir : trash) {
+      if (!FileUtils.recursiveDelete(dir)) {
+        this.logger.warn("Unable to remove the index cache directory: " + dir);
+      }
+    }
+  }
+
+  private File globalLockFile() {
+
+    return new File(this.directory, LOCK_FILENAME);
+  }
+
+  private File keyLockFile(final String key) {
+
+    return new File(this.directory, "." + key + KEY_LOCK_SUFFIX);
+  }
+
+  private File sizeFile(final String key) {
+
+    return new File(this.directory, "." + key + SIZE_SUFFIX);
+  }
+
+  //
+  // Lock methods
+  //
+
+  /**
+   * Execute code with a lock shared by the threads and the processes.
+   * @param lockFile the lock file
+   * @param wait true if the method must wait the lock
+   * @param action the code to execute
+   * @param <T> type of the result
+   * @return the result of the code or null if wait is false and the lock is
+   *         held by another thread or process
+   * @throws IOException if an error occurs while executing the code
+   */
+  private static <T> T withLock(final File lockFile, final boolean wait,
+      final LockedAction<T> action) throws IOException {
+
+    final ReentrantLock jvmLock = JVM_LOCKS.computeIfAbsent(
+        lockFile.getAbsolutePath(), k -> new ReentrantLock());
+
+    if (wait) {
+      jvmLock.lock();
+    } else if (!jvmLock.tryLock()) {
+      return null;
+    }
+
+    try (FileChannel channel = FileChannel.open(lockFile.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+      try (FileLock lock = wait ? channel.lock() : channel.tryLock()) {
+
+        if (lock == null) {
+          return null;
+        }
+
+        return action.run();
+      }
+    } finally {
+      jvmLock.unlock();
+    }
+  }
+
+  /**
+   * Create a reference file and hold a shared lock on it. The lock is
+   * released when the returned channel is closed. This method must be called
+   * with the global lock.
+   * @param referenceFile the reference file
+   * @return the channel that holds the lock
+   * @throws IOException if an error occurs while locking the reference
+   */
+  private static FileChannel lockReference(final File referenceFile)
+      throws IOException {
+
+    final FileChannel result = FileChannel.open(referenceFile.toPath(),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+
+    try {
+      result.lock(0, Long.MAX_VALUE, true);
+      JVM_REFERENCES.add(referenceFile.getAbsolutePath());
+    } catch (IOException | RuntimeException e) {
+      result.close();
+      Files.deleteIfExists(referenceFile.toPath());
+      throw e;
+    }
+
+    return result;
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Check the key of an entry.
+   * @param key the key to check
+   */
+  private static void checkKey(final String key) {
+
+    requireNonNull(key, "key argument cannot be null");
+
+    if (key.isEmpty() || key.charAt(0) == '.') {
+      throw new IllegalArgumentException("Invalid index cache key: " + key);
+    }
+
+    for (int i = 0; i < key.length(); i++) {
+
+      final char c = key.charAt(i);
+      if (!(Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.')) {
+        throw new IllegalArgumentException("Invalid index cache key: " + key);
+      }
+    }
+
+    if (key.endsWith(REFS_SUFFIX)) {
+      throw new IllegalArgumentException("Invalid index cache key: " + key);
+    }
+  }
+
+  /**
+   * Get the uncompressed size of a ZIP archive.
+   * @param archive the archive
+   * @return the uncompressed size of the archive in bytes
+   * @throws IOException if an error occurs while reading the archive
+   */
+  private static long uncompressedSize(final File archive) throws IOException {
+
+    long result = 0;
+
+    try (ZipFile zip = new ZipFile(archive)) {
+
+      final Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        result += Math.max(0, entries.nextElement().getSize());
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the size of the files of a directory.
+   * @param dir the directory
+   * @return the size of the files of the directory in bytes
+   */
+  private static long directorySize(final File dir) {
+
+    long result = 0;
+    final File[] files = dir.listFiles();
+
+    if (files != null) {
+      for (File f : files) {
+        result += f.isDirectory() ? directorySize(f) : f.length();
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param directory the cache directory, created if not exists
+   * @param maxSize the maximal size of the cache in bytes
+   * @param logger the logger to use, can be null
+   * @throws IOException if the cache directory cannot be created
+   */
+  public MapperIndexCache(final File directory, final long maxSize,
+      final GenericLogger logger) throws IOException {
+
+    requireNonNull(directory, "directory argument cannot be null");
+
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Invalid maximal size: " + maxSize);
+    }
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException(
+          "Unable to create the index cache directory: " + directory);
+    }
+
+    this.directory = directory.getAbsoluteFile();
+    this.maxSize = maxSize;
+    this.logger = logger == null ? new DummyLogger() : logger;
+  }
+
+}
@@ -508,6 +508,51 @@ public class MapperInstance {
     return new MapperIndex(this, in, indexOutputDir, this.logger);
   }
 
+  /**
+   * Create an instance of MapperIndex that is shared with the other jobs of
+   * the node using an index cache. The returned index must be closed at the
+   * end of the job.
+   * @param archiveIndexFile archive index file
+   * @param cache the index cache
+   * @param cacheKey the key of the index in the cache, like the key of the
+   *          index in the genome index storage
+   * @return a new instance of MapperIndexArchive
+   * @throws IOException if an error occurs while installing the mapper
+   */
+  public MapperIndex newMapperIndex(final File archiveIndexFile,
+      final MapperIndexCache cache, final String cacheKey) throws IOException {
+
+    requireNonNull(archiveIndexFile, "archiveIndexFile cannot be null");
+
+    // Install the mapper
+    installMapper();
+
+    return new MapperIndex(this, archiveIndexFile, null, cache, cacheKey,
+        this.logger);
+  }
+
+  /**
+   * Create an instance of MapperIndex that is shared with the other jobs of
+   * the node using an index cache. The returned index must be closed at the
+   * end of the job.
+   * @param in archive index file input stream
+   * @param cache the index cache
+   * @param cacheKey the key of the index in the cache, like the key of the
+   *          index in the genome index storage
+   * @return a new instance of MapperIndexArchive
+   * @throws IOException if an error occurs while installing the mapper
+   */
+  public MapperIndex newMapperIndex(final InputStream in,
+      final MapperIndexCache cache, final String cacheKey) throws IOException {
+
+    requireNonNull(in, "in cannot be null");
+
+    // Install the mapper
+    installMapper();
+
+    return new MapperIndex(this, null, in, cache, cacheKey, this.logger);
+  }
+
   //
   // Constructor
   //
@@ -34,19 +34,26 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.bio.io.ParallelBAMWriter;
+import fr.ens.biologie.genomique.kenetre.bio.io.StreamingSAMReader;
 import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperExecutor.Result;
 import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+import fr.ens.biologie.genomique.kenetre.util.CounterHandle;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
+import htsjdk.samtools.SAMRecord;
 
 /**
  * This class define an abstract class that is returned by a mapper.
@@ -74,11 +81,12 @@ public abstract class MapperProcess {
   private final File temporaryDirectory;
 
   private String commandLine;
-  private ReporterIncrementer incrementer;
-  private String counterGroup;
+  private CounterHandle inputReadsCounter;
 
   private final List<File> filesToRemove = new ArrayList<>();
 
+  private BAMOutputThread bamOutputThread;
+
   //
   // Inner classes
   //
@@ -153,6 +161,59 @@ public abstract class MapperProcess {
     }
   }
 
+  /**
+   * This class allow to convert the standard output of a MapperProcess in a
+   * BAM file. The SAM records are decoded in a dedicated thread and the BGZF
+   * blocks of the BAM file are compressed by a pool of threads.
+   */
+  private final class BAMOutputThread extends Thread {
+
+    private final File outputFile;
+    private final int threads;
+    private volatile Throwable exception;
+
+    @Override
+    public void run() {
+
+      try (StreamingSAMReader reader = getSAMReader();
+          ParallelBAMWriter writer = new ParallelBAMWriter(this.outputFile,
+              reader.getFileHeader(), this.threads)) {
+
+        for (SAMRecord record : reader) {
+          writer.write(record);
+        }
+
+      } catch (Throwable e) {
+        this.exception = e;
+      }
+    }
+
+    /**
+     * Wait the end of the thread.
+     * @throws IOException if an error has occurred while writing the BAM file
+     */
+    private void waitEnd() throws IOException {
+
+      try {
+        join();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+
+      if (this.exception != null) {
+        throw new IOException(
+            "Error while writing BAM file: " + this.outputFile, this.exception);
+      }
+    }
+
+    private BAMOutputThread(final File outputFile, final int threads) {
+
+      super("BAM output thread");
+      this.outputFile = outputFile;
+      this.threads = threads;
+    }
+  }
+
   /**
    * Wrapper around an InputStream that call process.waitFor() method when the
    * stream is closed.
@@ -245,6 +306,19 @@ public abstract class MapperProcess {
      */
     void write(final String s) throws IOException;
 
+    /**
+     * Write a FASTQ entry to the pipe.
+     * @param name name of the sequence
+     * @param sequence sequence
+     * @param quality quality sequence
+     * @throws IOException if an error has occurred in writings
+     */
+    default void writeEntry(final String name, final String sequence,
+        final String quality) throws IOException {
+
+      write(ReadSequence.toFastQ(name, sequence, quality) + '\n');
+    }
+
     /**
      * Close the writer.
      */
@@ -295,48 +369,85 @@ public abstract class MapperProcess {
   }
 
   /**
-   * This class allow to do asynchronous writes in a named piped.
+   * This class allow to do asynchronous writes in a named piped. The data is
+   * directly encoded in a pool of direct buffers. The filled buffers are handed
+   * off to a thread that write them in the named pipe using a FileChannel. When
+   * all the buffers of the pool are in use, the producer blocks until the
+   * mapper has consumed data.
    */
   static class FastqWriterThread extends Thread implements FastqWriter {
 
-    // The queue can store a little more than 1,00,000 * 1000 = 100,000,000
-    // characters
-    private static final int MAX_CAPACITY = 100000;
-    private static final int MIN_LINE_SIZE = 1000;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_BUFFERS = 64;
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
 
-    private volatile boolean closed;
-    private final BlockingDeque<String> queue =
-        new LinkedBlockingDeque<>(MAX_CAPACITY);
-    private final Writer writer;
-    private Exception exception;
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> freeBuffers =
+        new ArrayBlockingQueue<>(MAX_BUFFERS);
+    private final BlockingQueue<ByteBuffer> filledBuffers =
+        new ArrayBlockingQueue<>(MAX_BUFFERS + 1);
+    private volatile Throwable exception;
+
+    // Fields only used by the producer, the current buffer is null when the
+    // producer does not own a buffer
+    private ByteBuffer buffer;
+    private int allocatedBuffers;
+    private boolean closed;
+    private int maxQueueDepth;
+    private long producerStallTime;
 
-    private int lineCount;
-    private final StringBuilder buffer = new StringBuilder();
+    // Fields only used by the writer thread
+    private long writerStallTime;
+
+    private ReporterIncrementer incrementer;
+    private String counterGroup;
+    private String counterPrefix;
 
     @Override
     public void run() {
 
       try {
-        while (!this.closed || !queue.isEmpty()) {
+        while (true) {
 
-          if (!this.queue.isEmpty()) {
+          ByteBuffer b = this.filledBuffers.poll();
 
-            while (!this.queue.isEmpty()) {
+          if (b == null) {
+            final long start = System.nanoTime();
+            b = this.filledBuffers.take();
+            this.writerStallTime += System.nanoTime() - start;
+          }
 
-              this.writer.write(queue.take());
-            }
+          if (b == END_OF_STREAM) {
+            break;
+          }
 
-          } else {
-            Thread.sleep(1000);
+          // After an error, the buffers are only recycled to not block the
+          // producer
+          if (this.exception == null) {
+            try {
+              while (b.hasRemaining()) {
+                this.channel.write(b);
+              }
+            } catch (Throwable e) {
+              this.exception = e;
+            }
           }
-        }
 
-        this.writer.close();
+          b.clear();
+          this.freeBuffers.add(b);
+        }
 
-      } catch (IOException e) {
-        this.exception = e;
       } catch (InterruptedException e) {
         this.exception = new IOException(e);
+      } finally {
+
+        try {
+          this.channel.close();
+        } catch (IOException e) {
+          if (this.exception == null) {
+            this.exception = e;
+          }
+        }
       }
     }
 
@@ -352,52 +463,212 @@ public abstract class MapperProcess {
         throw new IllegalStateException("FastqWriterThread is closed");
       }
 
-      this.buffer.append(s);
-      this.lineCount++;
+      put(s);
+    }
 
-      // We only add lines of about 1000 character in the queue
-      if (this.buffer.length() < MIN_LINE_SIZE || this.lineCount % 4 != 0) {
+    /**
+     * Write a FASTQ entry to the pipe. This method is not synchronized.
+     * @param name name of the sequence
+     * @param sequence sequence
+     * @param quality quality sequence
+     * @throws IOException if an error has occurred in writings
+     */
+    @Override
+    public void writeEntry(final String name, final String sequence,
+        final String quality) throws IOException {
+
+      if (this.closed) {
+        throw new IllegalStateException("FastqWriterThread is closed");
+      }
+
+      put('@');
+      put(name);
+      put('\n');
+      put(sequence);
+      put('\n');
+      put('+');
+      put('\n');
+      put(quality);
+      put('\n');
+    }
+
+    /**
+     * Close the writer and wait the end of the writes in the named pipe. This
+     * method is not synchronized.
+     */
+    @Override
+    public void close() throws IOException {
+
+      if (this.closed) {
         return;
       }
+      this.closed = true;
+
+      // Each buffer is queued only once, so the queue cannot be full
+      if (this.buffer != null) {
+        this.buffer.flip();
+        this.filledBuffers.add(this.buffer);
+        this.buffer = null;
+      }
+      this.filledBuffers.add(END_OF_STREAM);
+
+      try {
+        join();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
 
-      if (this.queue.remainingCapacity() == 0) {
+      incrCounters();
+      throwExceptionIfExists();
+    }
 
-        this.writer.flush();
+    /**
+     * Set the incrementer to use to report the metrics of the writer when it
+     * is closed.
+     * @param incrementer Incrementer to use
+     * @param counterGroup the counter group to use
+     * @param counterPrefix the prefix of the counter names
+     */
+    void setIncrementer(final ReporterIncrementer incrementer,
+        final String counterGroup, final String counterPrefix) {
 
-        while (this.queue.remainingCapacity() == 0) {
+      this.incrementer = incrementer;
+      this.counterGroup = counterGroup;
+      this.counterPrefix = counterPrefix;
+    }
 
-          try {
-            Thread.sleep(1000);
-          } catch (InterruptedException e) {
+    //
+    // Internal methods
+    //
+
+    /**
+     * Put a character in the current buffer.
+     * @param c character to put
+     * @throws IOException if an error has occurred in writings
+     */
+    private void put(final char c) throws IOException {
+
+      if (this.buffer == null || !this.buffer.hasRemaining()) {
+        handOff();
+      }
+
+      this.buffer.put((byte) c);
+    }
+
+    /**
+     * Put a string in the current buffer. The characters of the string are
+     * encoded in ISO-8859-1. Like with an OutputStreamWriter, the characters
+     * that cannot be encoded are replaced by '?'.
+     * @param s string to put
+     * @throws IOException if an error has occurred in writings
+     */
+    private void put(final String s) throws IOException {
+
+      final int len = s.length();
+      int i = 0;
+
+      while (i < len) {
+
+        if (this.buffer == null || !this.buffer.hasRemaining()) {
+          handOff();
+        }
+
+        final ByteBuffer b = this.buffer;
+        final int end = Math.min(len, i + b.remaining());
+
+        for (; i < end; i++) {
+
+          final char c = s.charAt(i);
+
+          if (c < 256) {
+            b.put((byte) c);
+          } else {
+
+            // A surrogate pair is a single character
+            if (Character.isHighSurrogate(c)
+                && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+              i++;
+            }
+            b.put((byte) '?');
           }
         }
       }
+    }
 
-      this.queue.add(this.buffer.toString());
-      this.buffer.setLength(0);
-      this.lineCount = 0;
+    /**
+     * Hand off the current buffer to the writer thread and get a new buffer.
+     * @throws IOException if an error has occurred in writings
+     */
+    private void handOff() throws IOException {
 
       throwExceptionIfExists();
+
+      // The producer does not own the buffer anymore, even if no new buffer
+      // can be get
+      if (this.buffer != null) {
+        this.buffer.flip();
+        this.filledBuffers.add(this.buffer);
+        this.buffer = null;
+        this.maxQueueDepth =
+            Math.max(this.maxQueueDepth, this.filledBuffers.size());
+      }
+
+      ByteBuffer b = this.freeBuffers.poll();
+
+      if (b == null) {
+
+        if (this.allocatedBuffers < MAX_BUFFERS) {
+          b = allocateBuffer();
+        } else {
+
+          final long start = System.nanoTime();
+          try {
+            // Wait a free buffer, the writer thread may have been stopped
+            while ((b = this.freeBuffers.poll(1, TimeUnit.SECONDS)) == null) {
+              if (!isAlive()) {
+                throwExceptionIfExists();
+                throw new IOException("FastqWriterThread has been stopped");
+              }
+            }
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+          this.producerStallTime += System.nanoTime() - start;
+        }
+      }
+
+      this.buffer = b;
     }
 
     /**
-     * Asynchronous close. This method is not synchronized. A call to write()
-     * just after close() may to lead to lose data.
+     * Allocate a new buffer.
+     * @return a new buffer
      */
-    @Override
-    public void close() throws IOException {
+    private ByteBuffer allocateBuffer() {
 
-      this.queue.add(buffer.toString());
-      this.buffer.setLength(0);
-      this.closed = true;
+      this.allocatedBuffers++;
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
 
-      try {
-        join();
-      } catch (InterruptedException e) {
-        throw new IOException(e);
+    /**
+     * Report the metrics of the writer.
+     */
+    private void incrCounters() {
+
+      if (this.incrementer == null) {
+        return;
       }
 
-      throwExceptionIfExists();
+      final String prefix = "mapper " + this.counterPrefix + ' ';
+
+      this.incrementer.incrCounter(this.counterGroup,
+          prefix + "max queue depth", this.maxQueueDepth);
+      this.incrementer.incrCounter(this.counterGroup,
+          prefix + "producer stall time (ms)",
+          TimeUnit.NANOSECONDS.toMillis(this.producerStallTime));
+      this.incrementer.incrCounter(this.counterGroup,
+          prefix + "writer stall time (ms)",
+          TimeUnit.NANOSECONDS.toMillis(this.writerStallTime));
     }
 
     /**
@@ -417,26 +688,31 @@ public abstract class MapperProcess {
 
     /**
      * Constructor.
-     * @param writer the writer to use to write data
+     * @param channel the channel to use to write data
+     * @param threadName the name of the thread
      */
-    public FastqWriterThread(final Writer writer, final String threadName) {
+    public FastqWriterThread(final FileChannel channel,
+        final String threadName) {
 
       super(threadName);
 
-      this.writer = writer;
+      this.channel = channel;
+      this.buffer = allocateBuffer();
 
       // Start the thread
+      setDaemon(true);
       start();
     }
 
     /**
      * Constructor.
      * @param namedPipeFile the named pipe file
+     * @param threadName the name of the thread
      */
     public FastqWriterThread(final File namedPipeFile, final String threadName)
         throws IOException {
 
-      this(createPipeWriter(namedPipeFile), threadName);
+      this(createPipeChannel(namedPipeFile), threadName);
     }
 
   }
@@ -516,8 +792,8 @@ public abstract class MapperProcess {
    */
   protected void inputReadsIncr() {
 
-    if (this.incrementer != null) {
-      this.incrementer.incrCounter(this.counterGroup, "mapper input reads", 1);
+    if (this.inputReadsCounter != null) {
+      this.inputReadsCounter.increment();
     }
   }
 
@@ -545,8 +821,19 @@ public abstract class MapperProcess {
       throw new NullPointerException("The counterGroup is null");
     }
 
-    this.incrementer = incrementer;
-    this.counterGroup = counterGroup;
+    this.inputReadsCounter = incrementer == null
+        ? null
+        : incrementer.getCounterHandle(counterGroup, "mapper input reads");
+
+    if (this.writer1 instanceof FastqWriterThread) {
+      ((FastqWriterThread) this.writer1).setIncrementer(incrementer,
+          counterGroup, "fastq1 pipe");
+    }
+
+    if (this.writer2 instanceof FastqWriterThread) {
+      ((FastqWriterThread) this.writer2).setIncrementer(incrementer,
+          counterGroup, "fastq2 pipe");
+    }
   }
 
   //
@@ -580,6 +867,39 @@ public abstract class MapperProcess {
     tout.start();
   }
 
+  /**
+   * Get a reader on the SAM records produced by the mapper. The records are
+   * decoded in a dedicated thread.
+   * @return a StreamingSAMReader object
+   */
+  public StreamingSAMReader getSAMReader() {
+
+    return new StreamingSAMReader(getStout());
+  }
+
+  /**
+   * Convert the output stream from the mapper to a BAM file using a thread.
+   * The waitFor() method waits the end of the writing of the BAM file.
+   * @param outputFile output BAM file
+   * @param threads number of threads to use to compress the BAM file
+   */
+  public void toBAMFile(final File outputFile, final int threads) {
+
+    requireNonNull(outputFile, "outputFile argument cannot be null");
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
+    }
+
+    if (this.bamOutputThread != null) {
+      throw new IllegalStateException(
+          "The output of the mapper is already written in a BAM file");
+    }
+
+    this.bamOutputThread = new BAMOutputThread(outputFile, threads);
+    this.bamOutputThread.start();
+  }
+
   /**
    * Write a FASTQ entry in single end mode.
    * @param name name of the sequence
@@ -595,7 +915,7 @@ public abstract class MapperProcess {
           "Cannot use this writeEntry method in paired-end mode");
     }
 
-    this.writer1.write(ReadSequence.toFastQ(name, sequence, quality) + '\n');
+    this.writer1.writeEntry(name, sequence, quality);
     inputReadsIncr();
   }
 
@@ -610,7 +930,8 @@ public abstract class MapperProcess {
       return;
     }
 
-    this.writer1.write(read.toFastQ() + '\n');
+    this.writer1.writeEntry(read.getName(), read.getSequence(),
+        read.getQuality());
     inputReadsIncr();
   }
 
@@ -630,7 +951,8 @@ public abstract class MapperProcess {
       return;
     }
 
-    this.writer2.write(read.toFastQ() + '\n');
+    this.writer2.writeEntry(read.getName(), read.getSequence(),
+        read.getQuality());
   }
 
   /**
@@ -652,8 +974,8 @@ public abstract class MapperProcess {
           "Cannot use this writeEntry method in single-end mode");
     }
 
-    this.writer1.write(ReadSequence.toFastQ(name1, sequence1, quality1) + '\n');
-    this.writer2.write(ReadSequence.toFastQ(name2, sequence2, quality2) + '\n');
+    this.writer1.writeEntry(name1, sequence1, quality1);
+    this.writer2.writeEntry(name2, sequence2, quality2);
     inputReadsIncr();
   }
 
@@ -786,6 +1108,10 @@ public abstract class MapperProcess {
    */
   public void waitFor() throws IOException {
 
+    if (this.bamOutputThread != null) {
+      this.bamOutputThread.waitEnd();
+    }
+
     for (Result result : this.processResults) {
 
       final int exitValue = result.waitFor();
@@ -837,6 +1163,24 @@ public abstract class MapperProcess {
     return new OutputStreamWriter(os, StandardCharsets.ISO_8859_1);
   }
 
+  /**
+   * Create pipe channel.
+   * @param file the pipe file to create
+   * @return a channel on the pipe
+   * @throws IOException if an error occurs while creating the pipe or the
+   *           channel
+   */
+  private static FileChannel createPipeChannel(final File file)
+      throws IOException {
+
+    FileUtils.createNamedPipe(file);
+
+    @SuppressWarnings("resource")
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+    return raf.getChannel();
+  }
+
   /**
    * Add a list of temporary files to remove at the end of the mapping.
    * @param files files to remove
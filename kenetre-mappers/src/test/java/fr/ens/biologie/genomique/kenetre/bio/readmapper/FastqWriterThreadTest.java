@@ -0,0 +1,391 @@
+package fr.ens.biologie.genomique.kenetre.bio.readmapper;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperProcess.FastqWriterNoThread;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperProcess.FastqWriterThread;
+import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+
+public class FastqWriterThreadTest {
+
+  @Test
+  public void testSameOutputAsWriter() throws IOException {
+
+    final File dir = Files.createTempDirectory("fastqwriter").toFile();
+
+    try {
+      final File expected1 = new File(dir, "expected1.fq");
+      final File expected2 = new File(dir, "expected2.fq");
+      final File result1 = new File(dir, "result1.fq");
+      final File result2 = new File(dir, "result2.fq");
+
+      try (
+          FastqWriterNoThread e1 = new FastqWriterNoThread(
+              new OutputStreamWriter(new FileOutputStream(expected1),
+                  ISO_8859_1));
+          FastqWriterNoThread e2 = new FastqWriterNoThread(
+              new OutputStreamWriter(new FileOutputStream(expected2),
+                  ISO_8859_1));
+          FastqWriterThread r1 =
+              new FastqWriterThread(createChannel(result1), "fastq1");
+          FastqWriterThread r2 =
+              new FastqWriterThread(createChannel(result2), "fastq2")) {
+
+        final Random random = new Random(5);
+
+        // More than 1 MiB buffers are needed
+        for (int i = 0; i < 30000; i++) {
+
+          final String name = randomName(random, i);
+          final String sequence1 = randomSequence(random);
+          final String quality1 = randomQuality(random, sequence1.length());
+          final String sequence2 = randomSequence(random);
+          final String quality2 = randomQuality(random, sequence2.length());
+
+          if (i % 1000 == 0) {
+
+            // Strings are also written as is
+            final String s =
+                "@" + name + "/1\n" + sequence1 + "\n+\n" + quality1;
+            e1.write(s);
+            r1.write(s);
+            e1.write("\n");
+            r1.write("\n");
+          } else {
+            e1.writeEntry(name + "/1", sequence1, quality1);
+            r1.writeEntry(name + "/1", sequence1, quality1);
+          }
+
+          e2.writeEntry(name + "/2", sequence2, quality2);
+          r2.writeEntry(name + "/2", sequence2, quality2);
+        }
+      }
+
+      assertTrue(result1.length() > 2 * 1024 * 1024);
+      assertArrayEquals(Files.readAllBytes(expected1.toPath()),
+          Files.readAllBytes(result1.toPath()));
+      assertArrayEquals(Files.readAllBytes(expected2.toPath()),
+          Files.readAllBytes(result2.toPath()));
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testNamedPipe() throws Exception {
+
+    final File dir = Files.createTempDirectory("fastqwriter").toFile();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      final File pipe = new File(dir, "pipe.fq");
+      final String sequence = randomSequence(new Random(1));
+      final String quality = randomQuality(new Random(1), sequence.length());
+      final MessageDigest expected = newDigest();
+      final LocalReporter reporter = new LocalReporter();
+
+      try (FastqWriterThread writer = new FastqWriterThread(pipe, "fastq1")) {
+
+        writer.setIncrementer(reporter, "group", "fastq1");
+
+        // The mapper starts reading once all the buffers are in use
+        final Thread producer = Thread.currentThread();
+        final Future<byte[]> result = executor.submit(() -> {
+
+          while (producer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(10);
+          }
+
+          final MessageDigest md = newDigest();
+          final byte[] b = new byte[65536];
+          try (InputStream in = new FileInputStream(pipe)) {
+            int n;
+            while ((n = in.read(b)) != -1) {
+              md.update(b, 0, n);
+            }
+          }
+
+          return md.digest();
+        });
+
+        // More data than the pool of buffers can store
+        long size = 0;
+        for (int i = 0; size < 80L * 1024 * 1024; i++) {
+
+          final String name = "read" + i;
+          writer.writeEntry(name, sequence, quality);
+          final String s =
+              ReadSequence.toFastQ(name, sequence, quality) + '\n';
+          expected.update(s.getBytes(ISO_8859_1));
+          size += s.length();
+        }
+
+        writer.close();
+        assertArrayEquals(expected.digest(), result.get());
+      }
+
+      // The writer thread holds the buffer that it writes in the pipe
+      assertEquals(63,
+          reporter.getCounterValue("group", "mapper fastq1 max queue depth"));
+      assertTrue(reporter.getCounterValue("group",
+          "mapper fastq1 producer stall time (ms)") > 0);
+
+    } finally {
+      executor.shutdownNow();
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testInterruptedProducer() throws Exception {
+
+    final File dir = Files.createTempDirectory("fastqwriter").toFile();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      final File pipe = new File(dir, "pipe.fq");
+      final String sequence = randomSequence(new Random(1));
+      final String quality = randomQuality(new Random(1), sequence.length());
+      final int entryLength =
+          ReadSequence.toFastQ("read0", sequence, quality).length() + 11;
+
+      final FastqWriterThread writer = new FastqWriterThread(pipe, "fastq1");
+      final Throwable[] uncaught = new Throwable[1];
+      writer.setUncaughtExceptionHandler((t, e) -> uncaught[0] = e);
+
+      // Interrupt the producer while it waits a free buffer, then read the
+      // pipe
+      final Thread producer = Thread.currentThread();
+      final Future<Long> result = executor.submit(() -> {
+
+        while (producer.getState() != Thread.State.TIMED_WAITING) {
+          Thread.sleep(10);
+        }
+        producer.interrupt();
+
+        long count = 0;
+        final byte[] b = new byte[65536];
+        try (InputStream in = new FileInputStream(pipe)) {
+          int n;
+          while ((n = in.read(b)) != -1) {
+            count += n;
+          }
+        }
+
+        return count;
+      });
+
+      long size = 0;
+      try {
+        for (int i = 0; size < 200L * 1024 * 1024; i++) {
+          final String name = "read" + i;
+          writer.writeEntry(name, sequence, quality);
+          size += ReadSequence.toFastQ(name, sequence, quality).length() + 1;
+        }
+        fail();
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof InterruptedException);
+      }
+
+      // The buffer handed off before the interruption is queued only once
+      writer.close();
+      final long written = result.get();
+      assertNull(uncaught[0]);
+      assertTrue(written >= size);
+      assertTrue(written <= size + entryLength);
+
+    } finally {
+      Thread.interrupted();
+      executor.shutdownNow();
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test
+  public void testErrorOnClose() throws IOException {
+
+    final File dir = Files.createTempDirectory("fastqwriter").toFile();
+
+    try {
+      final File file = new File(dir, "result.fq");
+      final FileChannel channel = createChannel(file);
+      channel.close();
+
+      final FastqWriterThread writer =
+          new FastqWriterThread(channel, "fastq1");
+      writer.writeEntry("read1", "ATGC", "IIII");
+
+      try {
+        writer.close();
+        fail();
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof IOException);
+      }
+
+      // The second close does nothing
+      writer.close();
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testErrorWhileWriting() throws IOException {
+
+    final File dir = Files.createTempDirectory("fastqwriter").toFile();
+
+    try {
+      final File file = new File(dir, "result.fq");
+      Files.createFile(file.toPath());
+
+      // Writing in a read only channel throws a RuntimeException
+      final FastqWriterThread writer = new FastqWriterThread(
+          FileChannel.open(file.toPath(), StandardOpenOption.READ), "fastq1");
+
+      final String sequence = randomSequence(new Random(1));
+      final String quality = randomQuality(new Random(1), sequence.length());
+
+      // The producer gets the error without waiting for free buffers forever
+      long size = 0;
+      try {
+        for (int i = 0; size < 200L * 1024 * 1024; i++) {
+          writer.writeEntry("read" + i, sequence, quality);
+          size += sequence.length();
+        }
+        fail();
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof NonWritableChannelException);
+      }
+
+      // The original error is also thrown by close()
+      try {
+        writer.close();
+        fail();
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof NonWritableChannelException);
+      }
+      assertFalse(writer.isAlive());
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test
+  public void testClose() throws IOException {
+
+    final File dir = Files.createTempDirectory("fastqwriter").toFile();
+
+    try {
+      final File file = new File(dir, "result.fq");
+      final FastqWriterThread writer =
+          new FastqWriterThread(createChannel(file), "fastq1");
+
+      writer.close();
+      writer.close();
+      assertEquals(0, file.length());
+      assertTrue(!writer.isAlive());
+
+      try {
+        writer.writeEntry("read1", "ATGC", "IIII");
+        fail();
+      } catch (IllegalStateException e) {
+        // Expected exception
+      }
+
+      try {
+        writer.write("@read1\nATGC\n+\nIIII\n");
+        fail();
+      } catch (IllegalStateException e) {
+        // Expected exception
+      }
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static FileChannel createChannel(final File file)
+      throws IOException {
+
+    return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private static MessageDigest newDigest() throws NoSuchAlgorithmException {
+
+    return MessageDigest.getInstance("MD5");
+  }
+
+  private static String randomName(final Random random, final int i) {
+
+    switch (random.nextInt(20)) {
+
+    // Characters that are not in ISO-8859-1
+    case 0:
+      return "readé中" + i;
+    case 1:
+      return "read😀" + i + '\ud800';
+
+    default:
+      return "SRR001 HWI:1:" + i + ":" + random.nextInt(100000);
+    }
+  }
+
+  private static String randomSequence(final Random random) {
+
+    final StringBuilder sb = new StringBuilder();
+    final int length = random.nextInt(200);
+
+    for (int i = 0; i < length; i++) {
+      sb.append("ATGCN".charAt(random.nextInt(5)));
+    }
+
+    return sb.toString();
+  }
+
+  private static String randomQuality(final Random random, final int length) {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('!' + random.nextInt(42)));
+    }
+
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,375 @@
+package fr.ens.biologie.genomique.kenetre.bio.readmapper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+
+public class MapperIndexCacheTest {
+
+  private static final int INDEX_SIZE = 1000;
+
+  @Test
+  public void testUnpackOnce() throws IOException {
+
+    final File dir = Files.createTempDirectory("indexcache").toFile();
+
+    try {
+      final MapperIndexCache cache =
+          new MapperIndexCache(new File(dir, "cache"), 1 << 20, null);
+
+      try (MapperIndexCache.Entry e1 =
+          cache.acquire("bowtie-1", createArchive(dir, "index1", 'A'))) {
+
+        assertEquals("bowtie-1", e1.getKey());
+        assertEquals(new File(cache.getDirectory(), "bowtie-1"),
+            e1.getDirectory());
+        assertEquals("A", readIndex(e1));
+        assertEquals(INDEX_SIZE + 1, cache.getSize());
+
+        // The second acquisition does not unpack the index again
+        new File(e1.getDirectory(), "marker").createNewFile();
+        try (MapperIndexCache.Entry e2 =
+            cache.acquire("bowtie-1", createArchive(dir, "index2", 'B'))) {
+
+          assertEquals(e1.getDirectory(), e2.getDirectory());
+          assertEquals("A", readIndex(e2));
+          assertTrue(new File(e2.getDirectory(), "marker").exists());
+        }
+      }
+
+      // The index stays in the cache after the release
+      try (MapperIndexCache.Entry e = cache.acquire("bowtie-1",
+          new ByteArrayInputStream(new byte[0]))) {
+        assertEquals("A", readIndex(e));
+      }
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test
+  public void testConcurrentAcquire() throws Exception {
+
+    final File dir = Files.createTempDirectory("indexcache").toFile();
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      final MapperIndexCache cache =
+          new MapperIndexCache(new File(dir, "cache"), 1 << 20, null);
+      final byte[] archive =
+          Files.readAllBytes(createArchive(dir, "index", 'A').toPath());
+      final AtomicInteger unpackCount = new AtomicInteger();
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<String>> results = new ArrayList<>();
+
+      for (int i = 0; i < 16; i++) {
+        results.add(executor.submit(() -> {
+
+          // Count the archives that are read
+          final InputStream in =
+              new FilterInputStream(new ByteArrayInputStream(archive)) {
+
+                private boolean read;
+
+                @Override
+                public int read(final byte[] b, final int off, final int len)
+                    throws IOException {
+
+                  if (!this.read) {
+                    this.read = true;
+                    unpackCount.incrementAndGet();
+                  }
+                  return super.read(b, off, len);
+                }
+              };
+
+          start.await();
+          try (MapperIndexCache.Entry e = cache.acquire("star-1", in)) {
+            return readIndex(e);
+          }
+        }));
+      }
+
+      start.countDown();
+      for (Future<String> f : results) {
+        assertEquals("A", f.get());
+      }
+
+      assertEquals(1, unpackCount.get());
+      assertEquals(INDEX_SIZE + 1, cache.getSize());
+
+    } finally {
+      executor.shutdown();
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test
+  public void testReferencedEntryNotEvicted() throws IOException {
+
+    final File dir = Files.createTempDirectory("indexcache").toFile();
+
+    try {
+      final MapperIndexCache cache = new MapperIndexCache(
+          new File(dir, "cache"), INDEX_SIZE + INDEX_SIZE / 2, null);
+      final File cacheDir = cache.getDirectory();
+
+      try (MapperIndexCache.Entry a =
+          cache.acquire("a", createArchive(dir, "a", 'A'))) {
+
+        // Both entries are in use, the cache exceeds its budget
+        final MapperIndexCache.Entry b =
+            cache.acquire("b", createArchive(dir, "b", 'B'));
+        assertTrue(new File(cacheDir, "a").isDirectory());
+        assertTrue(new File(cacheDir, "b").isDirectory());
+
+        // Only the released entry can be evicted
+        b.close();
+        assertTrue(new File(cacheDir, "a").isDirectory());
+        assertFalse(new File(cacheDir, "b").exists());
+        assertEquals("A", readIndex(a));
+      }
+
+      // The cache is within its budget
+      assertTrue(new File(cacheDir, "a").isDirectory());
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test
+  public void testReferencedByAnotherProcess() throws Exception {
+
+    final File dir = Files.createTempDirectory("indexcache").toFile();
+
+    try {
+      final File cacheDir = new File(dir, "cache");
+      final File archive = createArchive(dir, "a", 'A');
+
+      // Another process holds the entry
+      final Process process = new ProcessBuilder(
+          new File(System.getProperty("java.home"), "bin/java")
+              .getAbsolutePath(),
+          "-cp", System.getProperty("java.class.path"),
+          MapperIndexCacheTest.class.getName(), cacheDir.getAbsolutePath(),
+          archive.getAbsolutePath()).redirectErrorStream(true).start();
+
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(process.getInputStream(), UTF_8))) {
+        assertEquals("acquired", reader.readLine());
+
+        final MapperIndexCache cache = new MapperIndexCache(cacheDir, 0, null);
+        cache.acquire("b", createArchive(dir, "b", 'B')).close();
+        assertTrue(new File(cacheDir, "a").isDirectory());
+
+        // The lock is released when the process exits
+        process.getOutputStream().close();
+        assertEquals(0, process.waitFor());
+
+        cache.acquire("b", createArchive(dir, "b", 'B')).close();
+        assertFalse(new File(cacheDir, "a").exists());
+      }
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test
+  public void testLRUEviction() throws IOException {
+
+    final File dir = Files.createTempDirectory("indexcache").toFile();
+
+    try {
+      final MapperIndexCache cache = new MapperIndexCache(
+          new File(dir, "cache"), 3 * INDEX_SIZE, null);
+      final File cacheDir = cache.getDirectory();
+      final long time = System.currentTimeMillis();
+
+      cache.acquire("a", createArchive(dir, "a", 'A')).close();
+      cache.acquire("b", createArchive(dir, "b", 'B')).close();
+      new File(cacheDir, "a").setLastModified(time - 30000);
+      new File(cacheDir, "b").setLastModified(time - 20000);
+
+      // Use a again, b is now the least recently used entry
+      cache.acquire("a", createArchive(dir, "a", 'A')).close();
+      cache.acquire("c", createArchive(dir, "c", 'C')).close();
+
+      assertTrue(new File(cacheDir, "a").isDirectory());
+      assertFalse(new File(cacheDir, "b").exists());
+      assertTrue(new File(cacheDir, "c").isDirectory());
+
+      new File(cacheDir, "a").setLastModified(time - 10000);
+      new File(cacheDir, "c").setLastModified(time - 20000);
+      cache.acquire("d", createArchive(dir, "d", 'D')).close();
+
+      assertTrue(new File(cacheDir, "a").isDirectory());
+      assertFalse(new File(cacheDir, "c").exists());
+      assertTrue(new File(cacheDir, "d").isDirectory());
+      assertEquals(2 * (INDEX_SIZE + 1), cache.getSize());
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test
+  public void testStaleReference() throws IOException {
+
+    final File dir = Files.createTempDirectory("indexcache").toFile();
+
+    try {
+      final MapperIndexCache cache =
+          new MapperIndexCache(new File(dir, "cache"), INDEX_SIZE + 1, null);
+      final File cacheDir = cache.getDirectory();
+
+      cache.acquire("a", createArchive(dir, "a", 'A')).close();
+
+      // Reference of a job of another PID namespace: the name of the file is
+      // meaningless, only the lock matters
+      final File liveReference = new File(cacheDir, "a.refs/999999999-job");
+      try (FileChannel channel = FileChannel.open(liveReference.toPath(),
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+
+        channel.lock(0, Long.MAX_VALUE, true);
+        cache.acquire("b", createArchive(dir, "b", 'B')).close();
+
+        assertTrue(new File(cacheDir, "a").isDirectory());
+        assertTrue(liveReference.exists());
+      }
+
+      // Once unlocked, the reference is the one of a job that has crashed
+      cache.acquire("b", createArchive(dir, "b", 'B')).close();
+
+      assertFalse(new File(cacheDir, "a").exists());
+      assertFalse(liveReference.exists());
+      assertTrue(new File(cacheDir, "b").isDirectory());
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test
+  public void testTemporaryDirectoryCleanup() throws IOException {
+
+    final File dir = Files.createTempDirectory("indexcache").toFile();
+
+    try {
+      final MapperIndexCache cache =
+          new MapperIndexCache(new File(dir, "cache"), 1 << 20, null);
+      final File cacheDir = cache.getDirectory();
+
+      // Directories left by jobs that have crashed while unpacking
+      final File tmpA = new File(cacheDir, ".tmp-a");
+      final File tmpB = new File(cacheDir, ".tmp-b");
+      assertTrue(new File(tmpA, "sub").mkdirs());
+      assertTrue(new File(tmpA, "sub/partial").createNewFile());
+      assertTrue(tmpB.mkdir());
+
+      try (MapperIndexCache.Entry e =
+          cache.acquire("a", createArchive(dir, "a", 'A'))) {
+
+        assertEquals("A", readIndex(e));
+        assertFalse(new File(e.getDirectory(), "sub/partial").exists());
+      }
+
+      assertFalse(tmpA.exists());
+      assertFalse(tmpB.exists());
+      for (String name : cacheDir.list()) {
+        assertFalse(name, name.startsWith(".tmp-"));
+        assertFalse(name, name.startsWith(".trash-"));
+      }
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  //
+  // Other process
+  //
+
+  /**
+   * Acquire an entry of a cache until the end of the standard input.
+   * @param args the cache directory and the archive of the "a" entry
+   * @throws IOException if an error occurs while acquiring the entry
+   */
+  public static void main(final String[] args) throws IOException {
+
+    final MapperIndexCache cache =
+        new MapperIndexCache(new File(args[0]), 1 << 20, null);
+
+    try (MapperIndexCache.Entry e = cache.acquire("a", new File(args[1]))) {
+
+      System.out.println("acquired");
+      System.out.flush();
+
+      while (System.in.read() != -1) {
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static File createArchive(final File dir, final String name,
+      final char content) throws IOException {
+
+    final File result = new File(dir, name + ".zip");
+
+    try (ZipOutputStream out =
+        new ZipOutputStream(Files.newOutputStream(result.toPath()))) {
+
+      out.putNextEntry(new ZipEntry("sub/"));
+      out.putNextEntry(new ZipEntry("sub/index.bin"));
+      out.write(new byte[INDEX_SIZE]);
+      out.putNextEntry(new ZipEntry("name.txt"));
+      out.write(content);
+    }
+
+    return result;
+  }
+
+  private static String readIndex(final MapperIndexCache.Entry entry)
+      throws IOException {
+
+    assertEquals(INDEX_SIZE,
+        new File(entry.getDirectory(), "sub/index.bin").length());
+
+    return new String(
+        Files.readAllBytes(
+            new File(entry.getDirectory(), "name.txt").toPath()),
+        UTF_8);
+  }
+
+}
@@ -0,0 +1,175 @@
+package fr.ens.biologie.genomique.kenetre.bio.readmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+
+public class MapperProcessTest {
+
+  private static final int RECORD_COUNT = 1000;
+
+  @Test(timeout = 30000)
+  public void testToBAMFile() throws IOException {
+
+    final File dir = Files.createTempDirectory("mapperprocess").toFile();
+
+    try {
+      final File samFile = createSAMFile(dir);
+      final File bamFile = new File(dir, "output.bam");
+
+      final MapperProcess process = new CatMapperProcess(dir, samFile, -1);
+      process.toBAMFile(bamFile, 2);
+      process.waitFor();
+
+      int count = 0;
+      try (SamReader reader = SamReaderFactory.makeDefault()
+          .validationStringency(ValidationStringency.STRICT).open(bamFile)) {
+
+        for (SAMRecord record : reader) {
+          assertEquals("read" + count, record.getReadName());
+          count++;
+        }
+      }
+      assertEquals(RECORD_COUNT, count);
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testToBAMFileReaderError() throws IOException {
+
+    final File dir = Files.createTempDirectory("mapperprocess").toFile();
+
+    try {
+      final File samFile = createSAMFile(dir);
+      final File bamFile = new File(dir, "output.bam");
+
+      // The output of the mapper fails with an Error after the header
+      final MapperProcess process =
+          new CatMapperProcess(dir, samFile, samFile.length() / 2);
+      process.toBAMFile(bamFile, 2);
+
+      try {
+        process.waitFor();
+        fail("IOException expected");
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof AssertionError);
+      }
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * MapperProcess that outputs the content of a SAM file.
+   */
+  private static final class CatMapperProcess extends MapperProcess {
+
+    private final File samFile;
+    private final long errorOffset;
+
+    @Override
+    protected List<List<String>> createCommandLines() {
+
+      return Arrays.asList(Arrays.asList("cat", this.samFile.getPath()));
+    }
+
+    @Override
+    protected InputStream createCustomInputStream(final InputStream stdout) {
+
+      if (this.errorOffset < 0) {
+        return stdout;
+      }
+
+      return new FilterInputStream(stdout) {
+
+        private long count;
+
+        @Override
+        public int read() throws IOException {
+
+          checkOffset();
+          final int result = super.read();
+          if (result != -1) {
+            this.count++;
+          }
+          return result;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+
+          checkOffset();
+          final int n = super.read(b, off,
+              (int) Math.min(len, errorOffset - this.count));
+          if (n > 0) {
+            this.count += n;
+          }
+          return n;
+        }
+
+        private void checkOffset() {
+
+          if (this.count >= errorOffset) {
+            throw new AssertionError("read error");
+          }
+        }
+      };
+    }
+
+    private CatMapperProcess(final File dir, final File samFile,
+        final long errorOffset) throws IOException {
+
+      super("cat", new PathMapperExecutor(new DummyLogger()), dir, null, false,
+          samFile);
+      this.samFile = samFile;
+      this.errorOffset = errorOffset;
+      startProcess();
+    }
+  }
+
+  private static File createSAMFile(final File dir) throws IOException {
+
+    final File result = new File(dir, "input.sam");
+
+    try (Writer writer = Files.newBufferedWriter(result.toPath())) {
+
+      writer.write("@HD\tVN:1.5\tSO:unsorted\n@SQ\tSN:chr1\tLN:1000000\n");
+
+      for (int i = 0; i < RECORD_COUNT; i++) {
+        writer.write("read"
+            + i + "\t0\tchr1\t" + (i + 1)
+            + "\t60\t8M\t*\t0\t0\tACGTACGT\tIIIIIIII\n");
+      }
+    }
+
+    return result;
+  }
+
+}
@@ -215,6 +215,29 @@ public abstract class AbstractFileGenomeIndexStorage
     put(mapper, genome, additionalDescription, new FileDataPath(indexArchive));
   }
 
+  /**
+   * Get the key of an index of the storage for a mapper index cache. The key
+   * only depends on the content of the index, so the jobs that use the same
+   * index share the same cache entry.
+   * @param mapperInstance mapper to use
+   * @param genome genome description
+   * @param additionalDescription additional parameter for the index
+   * @return the key of the index or null if the index is not in the storage
+   */
+  public String getCacheKey(final MapperInstance mapperInstance,
+      final GenomeDescription genome,
+      final Map<String, String> additionalDescription) {
+
+    requireNonNull(mapperInstance, "Mapper is null");
+    requireNonNull(genome, "Genome description is null");
+    requireNonNull(additionalDescription, "additionalDescription is null");
+
+    final IndexEntry entry = this.entries.get(
+        createKey(mapperInstance, genome, additionalDescription, this.logger));
+
+    return entry == null ? null : entry.mapperName + "-" + entry.genomeMD5;
+  }
+
   //
   // Sum creation method
   //